@@ -0,0 +1,97 @@
+package hospital.server.grpc;
+
+import hospital.server.grpc.BatchOuterClass.BatchCreateResponse;
+import hospital.server.grpc.PatientOuterClass.CreatePatientRequest;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import hospital.server.grpc.PatientServiceEndpointGrpc.PatientServiceEndpointBlockingStub;
+import hospital.server.grpc.PatientServiceEndpointGrpc.PatientServiceEndpointStub;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts the same patients one unary CreatePatient call at a time and as one BatchCreatePatients
+ * stream. Both report patients inserted per second, so the two scores compare directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BatchCreateBenchmark {
+    private static final int PATIENTS = 1_000;
+    private static final CreatePatientRequest REQUEST = CreatePatientRequest.newBuilder()
+            .setName("Name")
+            .setLastName("LastName")
+            .setBirthDate("11/04/1999")
+            .setSex("female")
+            .build();
+
+    private ConfigurableApplicationContext context;
+    private ManagedChannel channel;
+    private PatientServiceEndpointBlockingStub blocking;
+    private PatientServiceEndpointStub async;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkDataset.start("batch-create-benchmark", 0, "hospital.cache.enabled=false");
+        channel = InProcessChannelBuilder.forName("batch-create-benchmark").build();
+        blocking = PatientServiceEndpointGrpc.newBlockingStub(channel);
+        async = PatientServiceEndpointGrpc.newStub(channel);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATIENTS)
+    public long unaryCreates() {
+        long lastId = 0;
+        for (int i = 0; i < PATIENTS; i++) {
+            PatientResponse response = blocking.createPatient(REQUEST);
+            lastId = response.getId();
+        }
+        return lastId;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATIENTS)
+    public BatchCreateResponse batchCreate() {
+        CompletableFuture<BatchCreateResponse> done = new CompletableFuture<>();
+        StreamObserver<CreatePatientRequest> requests = async.batchCreatePatients(new StreamObserver<>() {
+            @Override
+            public void onNext(BatchCreateResponse response) {
+                done.complete(response);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        for (int i = 0; i < PATIENTS; i++) {
+            requests.onNext(REQUEST);
+        }
+        requests.onCompleted();
+        return done.join();
+    }
+}
@@ -0,0 +1,87 @@
+package hospital.server.grpc;
+
+import hospital.server.HospitalServerProperties;
+import hospital.server.SpringHibernateCrudApplication;
+import hospital.server.census.Census;
+import hospital.server.index.RegistrationIndex;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Boots the application for a benchmark, with the gRPC server on an in-process transport and a
+ * private H2 database, and seeds it through JDBC batches. Hospital 1 holds every patient, and
+ * each patient is also registered in one of the other hospitals.
+ */
+final class BenchmarkDataset {
+    static final int HOSPITALS = 100;
+    private static final int SEED_BATCH = 10_000;
+
+    private BenchmarkDataset() {
+    }
+
+    /**
+     * @param name in-process server name and database name, unique per benchmark configuration
+     */
+    static ConfigurableApplicationContext start(String name, int patients, String... properties) {
+        ConfigurableApplicationContext context = startEmpty(name, properties);
+        seed(context.getBean(JdbcTemplate.class), patients);
+        // The census and the registration index were built at startup from the still empty tables
+        context.getBean(Census.class).rebuild(true);
+        if (context.getBean(HospitalServerProperties.class).getIndex().isEnabled()) {
+            context.getBean(RegistrationIndex.class).load();
+        }
+        return context;
+    }
+
+    /**
+     * Boots without seeding, and without touching the id sequences.
+     */
+    static ConfigurableApplicationContext startEmpty(String name, String... properties) {
+        List<String> allProperties = new ArrayList<>(List.of(
+                "grpc.server.port=-1",
+                "grpc.server.in-process-name=" + name,
+                "spring.datasource.url=jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1",
+                "spring.r2dbc.url=r2dbc:h2:mem:///" + name,
+                "spring.jpa.show-sql=false"));
+        allProperties.addAll(List.of(properties));
+        // Arguments rather than default properties, which application.properties would override
+        return new SpringApplicationBuilder(SpringHibernateCrudApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(allProperties.stream().map(property -> "--" + property).toArray(String[]::new));
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate, int patients) {
+        List<Object[]> hospitalRows = new ArrayList<>(HOSPITALS);
+        for (long id = 1; id <= HOSPITALS; id++) {
+            hospitalRows.add(new Object[]{id, "Hospital " + id, "Address " + id});
+        }
+        jdbcTemplate.batchUpdate("insert into hospitals (id, name, address, created_at) values (?, ?, ?, current_timestamp)", hospitalRows);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long from = 1; from <= patients; from += SEED_BATCH) {
+            long to = Math.min(patients, from + SEED_BATCH - 1);
+            List<Object[]> patientRows = new ArrayList<>(SEED_BATCH);
+            List<Object[]> registrationRows = new ArrayList<>(2 * SEED_BATCH);
+            for (long id = from; id <= to; id++) {
+                LocalDate birthDate = LocalDate.of(1920 + random.nextInt(100), 1 + random.nextInt(12), 1 + random.nextInt(28));
+                patientRows.add(new Object[]{id, "Name" + id, "LastName" + id, "name" + id, "lastname" + id,
+                        birthDate, random.nextBoolean() ? "female" : "male"});
+                registrationRows.add(new Object[]{1L, id});
+                registrationRows.add(new Object[]{2 + id % (HOSPITALS - 1), id});
+            }
+            jdbcTemplate.batchUpdate("insert into patients (id, name, last_name, name_key, last_name_key, birth_date, sex, created_at) values (?, ?, ?, ?, ?, ?, ?, current_timestamp)", patientRows);
+            jdbcTemplate.batchUpdate("insert into hospital_patient (hospital_id, patient_id) values (?, ?)", registrationRows);
+        }
+
+        // Keep ids handed out by the pooled sequences clear of the seeded rows
+        jdbcTemplate.execute("alter sequence patients_seq restart with " + (patients + 1000));
+        jdbcTemplate.execute("alter sequence hospitals_seq restart with " + (HOSPITALS + 1000));
+    }
+}
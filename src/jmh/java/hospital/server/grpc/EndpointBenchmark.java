@@ -0,0 +1,157 @@
+package hospital.server.grpc;
+
+import hospital.server.grpc.HospitalOuterClass.HospitalResponse;
+import hospital.server.grpc.HospitalOuterClass.ListByPatientIdRequest;
+import hospital.server.grpc.HospitalOuterClass.ListHospitalsResponse;
+import hospital.server.grpc.HospitalServiceEndpointGrpc.HospitalServiceEndpointBlockingStub;
+import hospital.server.grpc.PatientOuterClass.CreatePatientRequest;
+import hospital.server.grpc.PatientOuterClass.FindByIdRequest;
+import hospital.server.grpc.PatientOuterClass.ListAllPatientsRequest;
+import hospital.server.grpc.PatientOuterClass.ListByHospitalIdRequest;
+import hospital.server.grpc.PatientOuterClass.ListPatientsResponse;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import hospital.server.grpc.PatientOuterClass.RegisterPatientRequest;
+import hospital.server.grpc.PatientOuterClass.RegisterPatientResponse;
+import hospital.server.grpc.PatientServiceEndpointGrpc.PatientServiceEndpointBlockingStub;
+import com.google.protobuf.Empty;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end throughput of the gRPC endpoints: requests go through an in-process channel into the
+ * real Spring context and an H2 database seeded with {@code datasetSize} patients
+ * (see {@link BenchmarkDataset}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EndpointBenchmark {
+    private static final int HOSPITALS = BenchmarkDataset.HOSPITALS;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"1000", "100000", "1000000"})
+    public int datasetSize;
+
+    @Param({"true", "false"})
+    public boolean responseCache;
+
+    private ConfigurableApplicationContext context;
+    private ManagedChannel channel;
+    private PatientServiceEndpointBlockingStub patients;
+    private HospitalServiceEndpointBlockingStub hospitals;
+    private final AtomicLong registrations = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String name = "endpoint-benchmark-" + datasetSize + "-" + responseCache;
+        context = BenchmarkDataset.start(name, datasetSize, "hospital.cache.enabled=" + responseCache);
+
+        channel = InProcessChannelBuilder.forName(name).build();
+        patients = PatientServiceEndpointGrpc.newBlockingStub(channel);
+        hospitals = HospitalServiceEndpointGrpc.newBlockingStub(channel);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        context.close();
+    }
+
+    @Benchmark
+    public PatientResponse findPatientById() {
+        return patients.findById(FindByIdRequest.newBuilder().setId(randomPatientId()).build());
+    }
+
+    @Benchmark
+    public HospitalResponse findHospitalById() {
+        return hospitals.findById(HospitalOuterClass.FindByIdRequest.newBuilder()
+                .setId(1 + ThreadLocalRandom.current().nextInt(HOSPITALS))
+                .build());
+    }
+
+    @Benchmark
+    public PatientResponse createPatient() {
+        return patients.createPatient(CreatePatientRequest.newBuilder()
+                .setName("name")
+                .setLastName("lastName")
+                .setBirthDate("11/04/1999")
+                .setSex("female")
+                .build());
+    }
+
+    /**
+     * Walks (hospital, patient) pairs over hospitals 2..HOSPITALS. Apart from the one seeded
+     * registration per patient these pairs are new, so almost every call takes the insert path.
+     */
+    @Benchmark
+    public RegisterPatientResponse registerPatientInHospital() {
+        long n = registrations.getAndIncrement();
+        long hospitalId = 2 + (n / datasetSize) % (HOSPITALS - 1);
+        long patientId = 1 + n % datasetSize;
+        return patients.registerPatientInHospital(RegisterPatientRequest.newBuilder()
+                .setHospitalId(hospitalId)
+                .setPatientId(patientId)
+                .build());
+    }
+
+    @Benchmark
+    public ListPatientsResponse listAllPatientsPage() {
+        return patients.listAllPatients(ListAllPatientsRequest.newBuilder()
+                .setPageSize(PAGE_SIZE)
+                .setPageToken(randomPageToken())
+                .build());
+    }
+
+    @Benchmark
+    public ListPatientsResponse listPatientsByHospitalIdPage() {
+        return patients.listPatientsByHospitalId(ListByHospitalIdRequest.newBuilder()
+                .setHospitalId(1L)
+                .setPageSize(PAGE_SIZE)
+                .setPageToken(randomPageToken())
+                .build());
+    }
+
+    @Benchmark
+    public ListHospitalsResponse listHospitalsByPatientId() {
+        return hospitals.listHospitalsByPatientId(ListByPatientIdRequest.newBuilder()
+                .setPatientId(randomPatientId())
+                .build());
+    }
+
+    @Benchmark
+    public long streamAllPatients() {
+        long count = 0;
+        Iterator<PatientResponse> stream = patients.streamAllPatients(Empty.getDefaultInstance());
+        while (stream.hasNext()) {
+            stream.next();
+            count++;
+        }
+        return count;
+    }
+
+    private long randomPatientId() {
+        return 1 + ThreadLocalRandom.current().nextLong(datasetSize);
+    }
+
+    // A page starting anywhere in the table, to show that keyset paging does not slow down with depth
+    private String randomPageToken() {
+        long afterId = ThreadLocalRandom.current().nextLong(Math.max(1, datasetSize - PAGE_SIZE));
+        return afterId == 0 ? "" : PageCursor.encode(afterId);
+    }
+}
@@ -0,0 +1,83 @@
+package hospital.server.grpc;
+
+import hospital.server.grpc.PatientOuterClass.FindByIdRequest;
+import hospital.server.grpc.PatientOuterClass.ListByHospitalIdRequest;
+import hospital.server.grpc.PatientOuterClass.ListPatientsResponse;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import hospital.server.grpc.PatientServiceEndpointGrpc.PatientServiceEndpointBlockingStub;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the gRPC executor modes: 128 concurrent clients, mostly point lookups with some roster
+ * pages, against each {@code hospital.grpc.executor-mode}. Sample-time mode reports throughput
+ * together with the latency distribution (p99, p999) per operation. The response cache is off so
+ * every call reaches the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExecutorModeBenchmark {
+    private static final int PATIENTS = 100_000;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"platform-pool", "virtual-threads"})
+    public String executorMode;
+
+    private ConfigurableApplicationContext context;
+    private ManagedChannel channel;
+    private PatientServiceEndpointBlockingStub patients;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String name = "executor-benchmark-" + executorMode;
+        context = BenchmarkDataset.start(name, PATIENTS,
+                "hospital.grpc.executor-mode=" + executorMode,
+                "hospital.cache.enabled=false");
+        channel = InProcessChannelBuilder.forName(name).build();
+        patients = PatientServiceEndpointGrpc.newBlockingStub(channel);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        context.close();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(112)
+    public PatientResponse findById() {
+        return patients.findById(FindByIdRequest.newBuilder()
+                .setId(1 + ThreadLocalRandom.current().nextLong(PATIENTS))
+                .build());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(16)
+    public ListPatientsResponse listPatientsByHospitalId() {
+        long afterId = ThreadLocalRandom.current().nextLong(PATIENTS - PAGE_SIZE);
+        return patients.listPatientsByHospitalId(ListByHospitalIdRequest.newBuilder()
+                .setHospitalId(1L)
+                .setPageSize(PAGE_SIZE)
+                .setPageToken(afterId == 0 ? "" : PageCursor.encode(afterId))
+                .build());
+    }
+}
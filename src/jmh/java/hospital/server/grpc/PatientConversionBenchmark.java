@@ -0,0 +1,97 @@
+package hospital.server.grpc;
+
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-patient cost of turning a birth date into a list response entry and of parsing one from a
+ * request: the {@code Calendar}/{@code String.format}/{@code SimpleDateFormat} path the endpoint
+ * used before, against {@link BirthDateCodec}. Run with the gc profiler to compare allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PatientConversionBenchmark {
+    private static final int PATIENTS = 1000;
+
+    private final LocalDate[] birthDates = new LocalDate[PATIENTS];
+    private final Date[] legacyBirthDates = new Date[PATIENTS];
+    private final String[] formattedBirthDates = new String[PATIENTS];
+    private final SimpleDateFormat legacyFormat = new SimpleDateFormat("dd/MM/yyyy");
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < PATIENTS; i++) {
+            LocalDate date = LocalDate.of(1920 + random.nextInt(100), 1 + random.nextInt(12), 1 + random.nextInt(28));
+            birthDates[i] = date;
+            legacyBirthDates[i] = Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+            formattedBirthDates[i] = BirthDateCodec.format(date);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATIENTS)
+    public void convertLegacy(Blackhole blackhole) {
+        for (int i = 0; i < PATIENTS; i++) {
+            Calendar cal = Calendar.getInstance();
+            cal.setTime(legacyBirthDates[i]);
+            int day = cal.get(Calendar.DAY_OF_MONTH);
+            int month = cal.get(Calendar.MONTH) + 1;
+            int year = cal.get(Calendar.YEAR);
+            String date = String.format("%s/%s/%s", day, month, year);
+            blackhole.consume(response(i, date));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATIENTS)
+    public void convertCodec(Blackhole blackhole) {
+        for (int i = 0; i < PATIENTS; i++) {
+            blackhole.consume(response(i, BirthDateCodec.format(birthDates[i])));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATIENTS)
+    public void parseLegacy(Blackhole blackhole) throws ParseException {
+        for (int i = 0; i < PATIENTS; i++) {
+            blackhole.consume(legacyFormat.parse(formattedBirthDates[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATIENTS)
+    public void parseCodec(Blackhole blackhole) {
+        for (int i = 0; i < PATIENTS; i++) {
+            blackhole.consume(BirthDateCodec.parse(formattedBirthDates[i]));
+        }
+    }
+
+    private static PatientResponse response(long id, String birthDate) {
+        return PatientResponse.newBuilder()
+                .setId(id)
+                .setName("name")
+                .setLastName("lastName")
+                .setBirthDate(birthDate)
+                .setSex("female")
+                .build();
+    }
+}
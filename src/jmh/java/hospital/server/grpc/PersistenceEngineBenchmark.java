@@ -0,0 +1,132 @@
+package hospital.server.grpc;
+
+import hospital.server.grpc.HospitalOuterClass.ListByPatientIdRequest;
+import hospital.server.grpc.HospitalOuterClass.ListHospitalsResponse;
+import hospital.server.grpc.HospitalServiceEndpointGrpc.HospitalServiceEndpointBlockingStub;
+import hospital.server.grpc.PatientOuterClass.FindByIdRequest;
+import hospital.server.grpc.PatientOuterClass.FindByIdsRequest;
+import hospital.server.grpc.PatientOuterClass.FindByIdsResponse;
+import hospital.server.grpc.PatientOuterClass.ListByHospitalIdRequest;
+import hospital.server.grpc.PatientOuterClass.ListPatientsResponse;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import hospital.server.grpc.PatientOuterClass.UpdatePatientRequest;
+import hospital.server.grpc.PatientServiceEndpointGrpc.PatientServiceEndpointBlockingStub;
+import com.google.protobuf.FieldMask;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Load test of the persistence engines: a 128-client mix of unary calls against each
+ * {@code hospital.persistence.engine}, on a platform pool smaller than the client count,
+ * where the JPA engine holds a pool thread per call in flight and the R2DBC engine does not. The
+ * mix covers lookups by id and by ids, updates and both roster directions; with {@code index=false}
+ * both engines page rosters with the same join, with {@code index=true} from the registration index.
+ * The response cache is off, so every lookup reaches the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PersistenceEngineBenchmark {
+    private static final int PATIENTS = 100_000;
+    private static final int PAGE_SIZE = 100;
+    private static final int LOOKUP_IDS = 50;
+
+    @Param({"jpa", "r2dbc"})
+    public String engine;
+
+    @Param({"false", "true"})
+    public boolean index;
+
+    private ConfigurableApplicationContext context;
+    private ManagedChannel channel;
+    private PatientServiceEndpointBlockingStub patients;
+    private HospitalServiceEndpointBlockingStub hospitals;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String name = "engine-benchmark-" + engine + "-" + index;
+        context = BenchmarkDataset.start(name, PATIENTS,
+                "hospital.persistence.engine=" + engine,
+                "hospital.grpc.executor-mode=platform-pool",
+                "hospital.grpc.platform-pool-size=16",
+                "hospital.index.enabled=" + index,
+                "hospital.cache.enabled=false");
+        channel = InProcessChannelBuilder.forName(name).build();
+        patients = PatientServiceEndpointGrpc.newBlockingStub(channel);
+        hospitals = HospitalServiceEndpointGrpc.newBlockingStub(channel);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        context.close();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(88)
+    public PatientResponse findById() {
+        return patients.findById(FindByIdRequest.newBuilder()
+                .setId(1 + ThreadLocalRandom.current().nextLong(PATIENTS))
+                .build());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public ListPatientsResponse listPatientsByHospitalId() {
+        long afterId = ThreadLocalRandom.current().nextLong(PATIENTS - PAGE_SIZE);
+        return patients.listPatientsByHospitalId(ListByHospitalIdRequest.newBuilder()
+                .setHospitalId(1L)
+                .setPageSize(PAGE_SIZE)
+                .setPageToken(afterId == 0 ? "" : PageCursor.encode(afterId))
+                .build());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public FindByIdsResponse findByIds() {
+        long first = 1 + ThreadLocalRandom.current().nextLong(PATIENTS - LOOKUP_IDS);
+        return patients.findByIds(FindByIdsRequest.newBuilder()
+                .addAllIds(LongStream.range(first, first + LOOKUP_IDS).boxed().toList())
+                .build());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(16)
+    public PatientResponse updatePatient() {
+        return patients.updatePatient(UpdatePatientRequest.newBuilder()
+                .setId(1 + ThreadLocalRandom.current().nextLong(PATIENTS))
+                .setName("Renamed")
+                .setUpdateMask(FieldMask.newBuilder().addPaths("name"))
+                .build());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public ListHospitalsResponse listHospitalsByPatientId() {
+        return hospitals.listHospitalsByPatientId(ListByPatientIdRequest.newBuilder()
+                .setPatientId(1 + ThreadLocalRandom.current().nextLong(PATIENTS))
+                .build());
+    }
+}
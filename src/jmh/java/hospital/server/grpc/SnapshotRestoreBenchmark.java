@@ -0,0 +1,113 @@
+package hospital.server.grpc;
+
+import hospital.server.grpc.SnapshotOuterClass.ExportSnapshotRequest;
+import hospital.server.grpc.SnapshotOuterClass.ImportSnapshotRequest;
+import hospital.server.grpc.SnapshotOuterClass.SnapshotResponse;
+import hospital.server.grpc.SnapshotServiceEndpointGrpc.SnapshotServiceEndpointBlockingStub;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Restores a snapshot of the benchmark dataset into an empty store, the case ImportSnapshot is
+ * for: the goal is 10M patients, with their 20M registrations, restored in minutes. Each
+ * invocation boots a fresh server and times one ImportSnapshot call, which includes verifying the
+ * checksum and rebuilding the census. The stores are H2 files rather than in-memory databases,
+ * so the 10M-patient source and target fit the benchmark heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SnapshotRestoreBenchmark {
+    private static final String SNAPSHOT = "restore.snapshot";
+
+    @Param({"1000000", "10000000"})
+    public int patients;
+
+    private Path directory;
+    private int invocation;
+    private String targetName;
+    private ConfigurableApplicationContext target;
+    private ManagedChannel channel;
+    private SnapshotServiceEndpointBlockingStub snapshots;
+
+    @Setup(Level.Trial)
+    public void exportSnapshot() throws Exception {
+        directory = Files.createTempDirectory("snapshot-restore-benchmark");
+        String name = "snapshot-restore-source-" + patients;
+        ConfigurableApplicationContext source = BenchmarkDataset.start(name, patients, properties(name));
+        ManagedChannel sourceChannel = InProcessChannelBuilder.forName(name).build();
+        try {
+            SnapshotServiceEndpointGrpc.newBlockingStub(sourceChannel)
+                    .exportSnapshot(ExportSnapshotRequest.newBuilder().setFileName(SNAPSHOT).build());
+        } finally {
+            sourceChannel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            shutDown(source);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void startEmptyTarget() {
+        targetName = "snapshot-restore-target-" + patients + "-" + invocation++;
+        target = BenchmarkDataset.startEmpty(targetName, properties(targetName));
+        channel = InProcessChannelBuilder.forName(targetName).build();
+        snapshots = SnapshotServiceEndpointGrpc.newBlockingStub(channel);
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopTarget() throws InterruptedException, IOException {
+        channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        shutDown(target);
+        // A restored 10M-patient store takes gigabytes; only the snapshot is kept between invocations
+        Files.deleteIfExists(directory.resolve(targetName + ".mv.db"));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public SnapshotResponse importSnapshot() {
+        SnapshotResponse response = snapshots.importSnapshot(ImportSnapshotRequest.newBuilder().setFileName(SNAPSHOT).build());
+        if (response.getPatients() != patients) {
+            throw new IllegalStateException("Restored " + response.getPatients() + " of " + patients + " patients.");
+        }
+        return response;
+    }
+
+    private String[] properties(String name) {
+        return new String[] {
+                "spring.datasource.url=jdbc:h2:file:" + directory.resolve(name),
+                "hospital.snapshot.directory=" + directory
+        };
+    }
+
+    // Closes the database first, so the file is released before the next store opens
+    private static void shutDown(ConfigurableApplicationContext context) {
+        context.getBean(JdbcTemplate.class).execute("shutdown");
+        context.close();
+    }
+}
@@ -0,0 +1,227 @@
+package hospital.server;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tuning knobs of the hospital server, bound from the {@code hospital.*} properties.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "hospital")
+public class HospitalServerProperties {
+
+    private final Batch batch = new Batch();
+
+    private final Paging paging = new Paging();
+
+    private final Cache cache = new Cache();
+
+    private final Grpc grpc = new Grpc();
+
+    private final Feed feed = new Feed();
+
+    private final Census census = new Census();
+
+    private final Index index = new Index();
+
+    private final SecondLevelCache secondLevelCache = new SecondLevelCache();
+
+    private final Intake intake = new Intake();
+
+    private final Sql sql = new Sql();
+
+    private final Persistence persistence = new Persistence();
+
+    private final Partitions partitions = new Partitions();
+
+    private final Routing routing = new Routing();
+
+    private final Limits limits = new Limits();
+
+    private final Snapshot snapshot = new Snapshot();
+
+    @Getter
+    @Setter
+    public static class Batch {
+        // Rows written or deleted per transaction by the batch RPCs
+        private int size = 500;
+        // Ids per IN-clause lookup of the FindByIds RPCs
+        private int lookupChunkSize = 1000;
+        // Most ids one FindByIds request may ask for; larger requests fail with INVALID_ARGUMENT
+        private int maxLookupIds = 10000;
+    }
+
+    @Getter
+    @Setter
+    public static class Paging {
+        // Rows per page of the list RPCs when a request sets no pageSize; at most 1000
+        private int defaultPageSize = 100;
+    }
+
+    @Getter
+    @Setter
+    public static class Cache {
+        private boolean enabled = true;
+        // Upper bound of the serialized size of all responses held by one FindById cache
+        private long maximumBytes = 64L * 1024 * 1024;
+        // Zero keeps entries until they are evicted or invalidated
+        private Duration ttl = Duration.ZERO;
+    }
+
+    @Getter
+    @Setter
+    public static class Grpc {
+        private ExecutorMode executorMode = ExecutorMode.PLATFORM_POOL;
+        // Thread count of the platform-pool mode
+        private int platformPoolSize = 64;
+        // Calls that may wait for a platform-pool thread; further calls are rejected with RESOURCE_EXHAUSTED
+        private int platformQueueCapacity = 256;
+    }
+
+    @Getter
+    @Setter
+    public static class Feed {
+        // Changes retained for WatchChanges subscribers that lag behind or resume; rounded up to a power of two
+        private int capacity = 65536;
+        // Threads that push events to subscribers
+        private int drainThreads = 2;
+    }
+
+    @Getter
+    @Setter
+    public static class Census {
+        // Concurrent group-by queries of a census rebuild, each over a slice of the hospital ids
+        private int rebuildParallelism = 4;
+    }
+
+    @Getter
+    @Setter
+    public static class Index {
+        // Serve the relationship RPCs and registration checks from an in-memory copy of hospital_patient.
+        // Off by default: the copy holds every registration on the heap
+        private boolean enabled = false;
+    }
+
+    @Getter
+    @Setter
+    public static class SecondLevelCache {
+        // Hibernate's second-level cache for the Hospital and Patient entities and their association collections
+        private boolean enabled = false;
+        // Entries per entity region
+        private long entityMaximumSize = 100_000;
+        // Entries per collection region; one entry is a whole roster or registration list
+        private long collectionMaximumSize = 10_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Intake {
+        private IntakeMode mode = IntakeMode.DIRECT;
+        // Segments of the write-behind log; must be on a local disk that honours fsync
+        private String logDirectory = "intake-log";
+        // How often acknowledged writes are flushed to the database
+        private Duration flushInterval = Duration.ofMillis(200);
+        // Log records applied per database transaction of a flush
+        private int flushBatchSize = 5000;
+        // Failed flushes in a row of one segment after which the intake health check reports down
+        private int failuresBeforeUnhealthy = 3;
+    }
+
+    @Getter
+    @Setter
+    public static class Sql {
+        // Statements of a sampled gRPC call that run at least this long are logged
+        private Duration slowThreshold = Duration.ofMillis(100);
+        // Share of gRPC calls whose slow statements are logged; 0 turns the log off
+        private double slowLogSampleRate = 0.1;
+    }
+
+    @Getter
+    @Setter
+    public static class Persistence {
+        private PersistenceEngine engine = PersistenceEngine.JPA;
+    }
+
+    @Getter
+    @Setter
+    public static class Partitions {
+        // Databases the patients are spread over by id hash; 0 leaves partitioned storage off. Needs the
+        // jpa engine and direct intake. Changing it on existing data needs a PartitionRebalancer run
+        private int count = 0;
+        // JDBC URL of each partition, with %d for its number
+        private String urlTemplate = "jdbc:h2:mem:partition-%d;DB_CLOSE_DELAY=-1";
+    }
+
+    @Getter
+    @Setter
+    public static class Routing {
+        // Read replicas that serve the read-only transactions of gRPC calls; none routes everything to the primary
+        private List<String> replicaUrls = new ArrayList<>();
+        // How long after a write the calls that send the read-your-writes header read the primary;
+        // at least the replicas' lag
+        private Duration readYourWritesWindow = Duration.ofSeconds(1);
+    }
+
+    @Getter
+    @Setter
+    public static class Limits {
+        // Adaptive concurrency limits of the patient and hospital RPCs; calls over a limit are rejected
+        // with RESOURCE_EXHAUSTED instead of waiting for a thread
+        private boolean enabled = false;
+        // Limits of each method, which adapt between the bounds as latency changes
+        private int initialLimit = 20;
+        private int minLimit = 2;
+        private int maxLimit = 500;
+        // Limit of all methods together
+        private int serverInitialLimit = 100;
+        private int serverMaxLimit = 2000;
+        // Share of the server-wide limit the bulk methods may hold; the rest is kept for point calls
+        private double bulkShare = 0.5;
+        // Methods in the bulk priority class, by name; the others are point calls
+        private Set<String> bulkMethods = new LinkedHashSet<>(List.of(
+                "ListAllPatients", "ListAllHospitals", "StreamAllPatients", "StreamAllHospitals",
+                "SearchPatients", "FindByIds", "BatchCreatePatients", "BatchCreateHospitals",
+                "BatchDeletePatients", "BatchDeleteHospitals", "RegisterPatientsInHospital", "RebuildCensus"));
+    }
+
+    @Getter
+    @Setter
+    public static class Snapshot {
+        // The only directory ExportSnapshot and ImportSnapshot read and write; requests name a file in it
+        private String directory = "snapshots";
+        // How long an import waits for patient and hospital calls in flight before it fails
+        private Duration importDrainTimeout = Duration.ofSeconds(30);
+        // Threads inserting the batches of a snapshot import
+        private int importParallelism = 4;
+        // Rows per insert batch, and per transaction, of a snapshot import
+        private int importBatchSize = 5000;
+    }
+
+    public enum ExecutorMode {
+        PLATFORM_POOL,
+        VIRTUAL_THREADS
+    }
+
+    public enum PersistenceEngine {
+        // Every RPC runs on Spring Data JPA and holds its gRPC thread while it queries
+        JPA,
+        // The unary patient and hospital RPCs run over R2DBC and respond when the query completes;
+        // streaming, batch, RegisterPatientsInHospital and the census stay on JPA
+        R2DBC
+    }
+
+    public enum IntakeMode {
+        // CreatePatient and RegisterPatientInHospital commit to the database before they return
+        DIRECT,
+        // They return once the write is synced to the intake log; the database follows in batches
+        WRITE_BEHIND
+    }
+}
@@ -3,13 +3,17 @@ package hospital.server;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
-@SpringBootApplication
+// The r2dbc engine builds its own connection factory; see ReactiveConfiguration
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class)
 @EntityScan(basePackages = "hospital.server")
 @EnableJpaRepositories(basePackages = {"hospital.server"})
 @EnableTransactionManagement
+@ConfigurationPropertiesScan
 public class SpringHibernateCrudApplication {
     public static void main(String[] args) {
         SpringApplication.run(SpringHibernateCrudApplication.class, args);
@@ -0,0 +1,99 @@
+package hospital.server.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.protobuf.MessageLite;
+import hospital.server.HospitalServerProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Id-keyed cache of fully built FindById responses. Entries are weighed by their serialized size,
+ * so the configured bound is in bytes; eviction is Caffeine's W-TinyLFU.
+ */
+public class ResponseCache<V extends MessageLite> {
+    // Rough per-entry cost of the key, node and message object on top of the serialized bytes
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final Cache<Long, V> cache;
+    // Counts invalidations, so a load that ran alongside one is not cached, see putIfUnchanged
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ResponseCache(HospitalServerProperties.Cache settings) {
+        if (!settings.isEnabled()) {
+            this.cache = null;
+            return;
+        }
+        Caffeine<Long, V> builder = Caffeine.newBuilder()
+                .maximumWeight(settings.getMaximumBytes())
+                .weigher((Long id, V response) -> response.getSerializedSize() + ENTRY_OVERHEAD_BYTES)
+                .recordStats();
+        if (!settings.getTtl().isZero() && !settings.getTtl().isNegative()) {
+            builder.expireAfterWrite(settings.getTtl());
+        }
+        this.cache = builder.build();
+    }
+
+    /**
+     * Returns the cached response, or builds it with the loader. A loader returning {@code null}
+     * (row not found) is not cached. An invalidation racing with a load for the same id waits for
+     * the load to finish, so a response built from stale data cannot survive the invalidation.
+     */
+    public V get(long id, LongFunction<V> loader) {
+        if (cache == null) {
+            return loader.apply(id);
+        }
+        return cache.get(id, loader::apply);
+    }
+
+    /**
+     * Returns the cached responses among the ids without loading any. Bulk loads are left uncached
+     * on purpose: unlike {@link #get}, they would not be ordered against invalidations. Loads that
+     * cannot go through {@link #get}, such as reactive ones, cache their result with
+     * {@link #putIfUnchanged}.
+     */
+    public Map<Long, V> getAllPresent(Iterable<Long> ids) {
+        if (cache == null) {
+            return Map.of();
+        }
+        return cache.getAllPresent(ids);
+    }
+
+    /**
+     * @return the stamp to pass to {@link #putIfUnchanged}, taken before the load is issued
+     */
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    /**
+     * Caches a response loaded outside of {@link #get}, unless any invalidation ran since the stamp
+     * was taken: the load may have read the row before the write behind that invalidation. The check
+     * and the put are atomic for the id, so an invalidation cannot slip in between.
+     */
+    public void putIfUnchanged(long stamp, long id, V response) {
+        if (cache != null) {
+            cache.asMap().compute(id, (key, cached) -> invalidations.get() == stamp ? response : cached);
+        }
+    }
+
+    public void invalidate(long id) {
+        if (cache != null) {
+            invalidations.incrementAndGet();
+            cache.invalidate(id);
+        }
+    }
+
+    /**
+     * Publishes hit, miss, eviction and size figures under the {@code cache.*} meters.
+     */
+    public void bindTo(MeterRegistry registry, String name) {
+        if (cache != null) {
+            CaffeineCacheMetrics.monitor(registry, cache, name);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package hospital.server.cache;
+
+import hospital.server.HospitalServerProperties;
+import hospital.server.grpc.HospitalOuterClass.HospitalResponse;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ResponseCacheConfiguration {
+
+    @Bean
+    public ResponseCache<PatientResponse> patientResponseCache(HospitalServerProperties properties, MeterRegistry meterRegistry) {
+        ResponseCache<PatientResponse> cache = new ResponseCache<>(properties.getCache());
+        cache.bindTo(meterRegistry, "patientResponses");
+        return cache;
+    }
+
+    @Bean
+    public ResponseCache<HospitalResponse> hospitalResponseCache(HospitalServerProperties properties, MeterRegistry meterRegistry) {
+        ResponseCache<HospitalResponse> cache = new ResponseCache<>(properties.getCache());
+        cache.bindTo(meterRegistry, "hospitalResponses");
+        return cache;
+    }
+}
@@ -0,0 +1,75 @@
+package hospital.server.cache;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import hospital.server.HospitalServerProperties;
+import hospital.server.model.Hospital;
+import hospital.server.model.Patient;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Hibernate's second-level cache, kept in local Caffeine caches through JCache. Regions are named
+ * after the entity classes and collection roles; each is bounded by entry count. Native statements
+ * on the join table declare it as their query space, so they only invalidate the collection regions.
+ *
+ * <p>The JCache provider shares a cache manager per URI and class loader, so each application
+ * context asks for one under a URI of its own: two contexts in one JVM, as in tests, never see or
+ * destroy each other's regions, and closing the context closes its manager.
+ */
+@Configuration
+public class SecondLevelCacheConfiguration {
+    static final List<String> ENTITY_REGIONS = List.of(Hospital.class.getName(), Patient.class.getName());
+    static final List<String> COLLECTION_REGIONS = List.of(
+            Hospital.class.getName() + ".patients",
+            Patient.class.getName() + ".hospitals");
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "hospital.second-level-cache", name = "enabled", havingValue = "true")
+    public CacheManager secondLevelCacheManager(HospitalServerProperties properties) {
+        HospitalServerProperties.SecondLevelCache settings = properties.getSecondLevelCache();
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(URI.create("hospital-second-level-cache:" + UUID.randomUUID()),
+                SecondLevelCacheConfiguration.class.getClassLoader());
+        ENTITY_REGIONS.forEach(region -> createRegion(cacheManager, region, settings.getEntityMaximumSize()));
+        COLLECTION_REGIONS.forEach(region -> createRegion(cacheManager, region, settings.getCollectionMaximumSize()));
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(HospitalServerProperties properties,
+                                                                    ObjectProvider<CacheManager> secondLevelCacheManager) {
+        HospitalServerProperties.SecondLevelCache settings = properties.getSecondLevelCache();
+        return hibernateProperties -> {
+            if (!settings.isEnabled()) {
+                // Hibernate switches the cache on by itself once it finds hibernate-jcache on the classpath
+                hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, false);
+                return;
+            }
+            hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            hibernateProperties.put(AvailableSettings.USE_QUERY_CACHE, false);
+            hibernateProperties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            hibernateProperties.put(ConfigSettings.CACHE_MANAGER, secondLevelCacheManager.getObject());
+            hibernateProperties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "create-warn");
+        };
+    }
+
+    private static void createRegion(CacheManager cacheManager, String region, long maximumSize) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maximumSize));
+        cacheManager.createCache(region, configuration);
+    }
+}
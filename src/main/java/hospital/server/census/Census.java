@@ -0,0 +1,223 @@
+package hospital.server.census;
+
+import hospital.server.HospitalServerProperties;
+import hospital.server.event.ChangeType;
+import hospital.server.event.HospitalChanged;
+import hospital.server.event.PatientChanged;
+import hospital.server.event.RegistrationChanged;
+import hospital.server.grpc.BirthDateCodec;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import hospital.server.repository.CensusRow;
+import hospital.server.repository.HospitalRepository;
+import hospital.server.repository.PatientRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Patient counts by sex and birth year, overall and per hospital. The counts are adjusted from the
+ * committed change events, so reading them never touches the database; {@link #rebuild} recomputes
+ * them from the tables. Birth years rather than ages are counted, so the counts never go stale as
+ * time passes; callers derive age brackets when they read them.
+ */
+@Component
+public class Census {
+    public static final int UNKNOWN_BIRTH_YEAR = 0;
+
+    private final PatientRepository patientRepository;
+    private final HospitalRepository hospitalRepository;
+    private final HospitalServerProperties properties;
+
+    private volatile State state = new State(new Tally(), new ConcurrentHashMap<>());
+
+    public Census(PatientRepository patientRepository, HospitalRepository hospitalRepository,
+                  HospitalServerProperties properties) {
+        this.patientRepository = patientRepository;
+        this.hospitalRepository = hospitalRepository;
+        this.properties = properties;
+    }
+
+    /**
+     * Counts of one sex and birth-year breakdown. Zero counts are left out, so two equal censuses compare equal.
+     */
+    public record Counts(long patients, Map<String, Long> bySex, Map<Integer, Long> byBirthYear) {
+    }
+
+    public record Verification(boolean globalMatches, int hospitals, int mismatchedHospitals, long elapsedMillis) {
+        public boolean consistent() {
+            return globalMatches && mismatchedHospitals == 0;
+        }
+    }
+
+    public Counts global() {
+        return state.global().counts();
+    }
+
+    /**
+     * @return empty if the hospital does not exist
+     */
+    public Optional<Counts> hospital(long hospitalId) {
+        return Optional.ofNullable(state.hospitals().get(hospitalId)).map(Tally::counts);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        rebuild(true);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPatientChanged(PatientChanged event) {
+        State current = state;
+        PatientResponse patient = event.patient();
+        switch (event.type()) {
+            case CREATED -> current.global().add(patient, 1);
+            case DELETED -> current.global().add(patient, -1);
+            case UPDATED -> {
+                // Without a previous state neither sex nor birth date changed
+                PatientResponse previous = event.previous();
+                if (previous != null && (!previous.getSex().equals(patient.getSex())
+                        || birthYear(previous) != birthYear(patient))) {
+                    current.global().add(previous, -1);
+                    current.global().add(patient, 1);
+                    for (long hospitalId : event.hospitalIds()) {
+                        Tally tally = current.hospitals().get(hospitalId);
+                        if (tally != null) {
+                            tally.add(previous, -1);
+                            tally.add(patient, 1);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onHospitalChanged(HospitalChanged event) {
+        long hospitalId = event.hospital().getId();
+        if (event.type() == ChangeType.CREATED) {
+            state.hospitals().putIfAbsent(hospitalId, new Tally());
+        } else if (event.type() == ChangeType.DELETED) {
+            state.hospitals().remove(hospitalId);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRegistrationChanged(RegistrationChanged event) {
+        Tally tally = state.hospitals().get(event.hospitalId());
+        if (tally != null) {
+            tally.add(event.patient(), event.type() == ChangeType.DELETED ? -1 : 1);
+        }
+    }
+
+    /**
+     * Recomputes the census with group-by queries, the per-hospital one split into id ranges that run
+     * in parallel, and compares it with the maintained counts. Changes committed while the queries run
+     * may be missing from a rebuilt census; a second verification tells whether that happened.
+     *
+     * @param replace whether to replace the maintained counts with the recomputed ones
+     */
+    public Verification rebuild(boolean replace) {
+        long started = System.nanoTime();
+        int parallelism = Math.max(1, properties.getCensus().getRebuildParallelism());
+        List<Long> hospitalIds = hospitalRepository.findAllIds();
+
+        Tally global = new Tally();
+        Map<Long, Tally> hospitals = new ConcurrentHashMap<>();
+        hospitalIds.forEach(hospitalId -> hospitals.put(hospitalId, new Tally()));
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                Thread.ofPlatform().name("census-rebuild-", 0).daemon(true).factory())) {
+            List<CompletableFuture<Void>> queries = new ArrayList<>();
+            queries.add(CompletableFuture.runAsync(
+                    () -> patientRepository.countBySexAndBirthYear().forEach(row -> global.add(row)), executor));
+            int sliceSize = Math.max(1, (hospitalIds.size() + parallelism - 1) / parallelism);
+            for (int from = 0; from < hospitalIds.size(); from += sliceSize) {
+                long fromId = hospitalIds.get(from);
+                long toId = hospitalIds.get(Math.min(from + sliceSize, hospitalIds.size()) - 1);
+                queries.add(CompletableFuture.runAsync(
+                        () -> hospitalRepository.countBySexAndBirthYearPerHospital(fromId, toId).forEach(row -> {
+                            Tally tally = hospitals.get(row.hospitalId());
+                            if (tally != null) {
+                                tally.add(row);
+                            }
+                        }), executor));
+            }
+            CompletableFuture.allOf(queries.toArray(CompletableFuture[]::new)).join();
+        }
+
+        State current = state;
+        boolean globalMatches = global.counts().equals(current.global().counts());
+        int mismatched = 0;
+        for (Map.Entry<Long, Tally> entry : hospitals.entrySet()) {
+            Tally maintained = current.hospitals().get(entry.getKey());
+            if (maintained == null || !entry.getValue().counts().equals(maintained.counts())) {
+                mismatched++;
+            }
+        }
+        // Hospitals the census knows about but the table no longer holds
+        mismatched += (int) current.hospitals().keySet().stream().filter(id -> !hospitals.containsKey(id)).count();
+
+        if (replace) {
+            state = new State(global, new ConcurrentHashMap<>(hospitals));
+        }
+        return new Verification(globalMatches, hospitals.size(), mismatched, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static int birthYear(PatientResponse patient) {
+        String birthDate = patient.getBirthDate();
+        return birthDate.isEmpty() ? UNKNOWN_BIRTH_YEAR : BirthDateCodec.parse(birthDate).getYear();
+    }
+
+    private record State(Tally global, ConcurrentHashMap<Long, Tally> hospitals) {
+    }
+
+    private static final class Tally {
+        private final LongAdder patients = new LongAdder();
+        private final ConcurrentHashMap<String, LongAdder> bySex = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Integer, LongAdder> byBirthYear = new ConcurrentHashMap<>();
+
+        void add(PatientResponse patient, long delta) {
+            add(patient.getSex(), birthYear(patient), delta);
+        }
+
+        void add(CensusRow row) {
+            add(Objects.requireNonNullElse(row.sex(), ""),
+                    Objects.requireNonNullElse(row.birthYear(), UNKNOWN_BIRTH_YEAR),
+                    row.count());
+        }
+
+        private void add(String sex, int birthYear, long delta) {
+            patients.add(delta);
+            bySex.computeIfAbsent(sex, key -> new LongAdder()).add(delta);
+            byBirthYear.computeIfAbsent(birthYear, key -> new LongAdder()).add(delta);
+        }
+
+        Counts counts() {
+            return new Counts(patients.sum(), nonZero(bySex), nonZero(byBirthYear));
+        }
+
+        private static <K> Map<K, Long> nonZero(Map<K, LongAdder> counters) {
+            Map<K, Long> counts = new HashMap<>();
+            counters.forEach((key, counter) -> {
+                long count = counter.sum();
+                if (count != 0) {
+                    counts.put(key, count);
+                }
+            });
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package hospital.server.event;
+
+public enum ChangeType {
+    CREATED,
+    UPDATED,
+    DELETED
+}
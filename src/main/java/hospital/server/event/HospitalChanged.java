@@ -0,0 +1,10 @@
+package hospital.server.event;
+
+import hospital.server.grpc.HospitalOuterClass.HospitalResponse;
+
+/**
+ * A hospital row was created, updated or deleted. For deletions only the id of {@code hospital} is set.
+ * Deleting a hospital drops its registrations without a {@link RegistrationChanged} per patient.
+ */
+public record HospitalChanged(ChangeType type, HospitalResponse hospital) {
+}
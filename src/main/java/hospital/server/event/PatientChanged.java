@@ -0,0 +1,19 @@
+package hospital.server.event;
+
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+
+import java.util.List;
+
+/**
+ * A patient row was created, updated or deleted. {@code patient} is the new state, or the last state
+ * for deletions. {@code previous} is the state before an update; it is only set when the update
+ * included the sex or birth date. {@code hospitalIds} are the hospitals the patient was registered in
+ * when an update changed the sex or birth date, read in the updating transaction, so listeners that
+ * run after the commit need not query for them; empty otherwise.
+ */
+public record PatientChanged(ChangeType type, PatientResponse patient, PatientResponse previous, List<Long> hospitalIds) {
+
+    public PatientChanged(ChangeType type, PatientResponse patient) {
+        this(type, patient, null, List.of());
+    }
+}
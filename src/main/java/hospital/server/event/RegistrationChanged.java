@@ -0,0 +1,10 @@
+package hospital.server.event;
+
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+
+/**
+ * A hospital_patient row was added ({@link ChangeType#CREATED}) or removed ({@link ChangeType#DELETED}).
+ * Carries the patient's state so listeners need not read a row that may already be gone.
+ */
+public record RegistrationChanged(ChangeType type, long hospitalId, PatientResponse patient) {
+}
@@ -0,0 +1,182 @@
+package hospital.server.feed;
+
+import hospital.server.event.ChangeType;
+import hospital.server.event.HospitalChanged;
+import hospital.server.event.PatientChanged;
+import hospital.server.event.RegistrationChanged;
+import hospital.server.grpc.ChangeFeedOuterClass.ChangeEvent;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fans committed changes out to {@code WatchChanges} subscribers. Events are numbered and kept in a
+ * fixed-size ring; every subscriber reads the ring at its own position, only as fast as its
+ * flow-control window allows. Writers never wait for subscribers: one that falls a full ring behind
+ * is sent {@link ChangeEvent.Type#RESYNC_REQUIRED} and its stream is completed.
+ */
+public class ChangeFeed {
+
+    private final AtomicReferenceArray<ChangeEvent> ring;
+    private final int mask;
+    private final Executor drainExecutor;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    // Guarded by this; published trails it until the event is in the ring
+    private long lastSequence;
+    private volatile long published;
+
+    /**
+     * @param capacity number of events retained for slow or resuming subscribers, rounded up to a power of two
+     * @param drainExecutor runs subscriber drains; they never block, so a small pool is enough
+     */
+    public ChangeFeed(int capacity, Executor drainExecutor) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.drainExecutor = drainExecutor;
+    }
+
+    // Changes made outside a transaction are already committed and are published right away
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPatientChanged(PatientChanged event) {
+        ChangeEvent.Type type = switch (event.type()) {
+            case CREATED -> ChangeEvent.Type.PATIENT_CREATED;
+            case UPDATED -> ChangeEvent.Type.PATIENT_UPDATED;
+            case DELETED -> ChangeEvent.Type.PATIENT_DELETED;
+        };
+        append(ChangeEvent.newBuilder().setType(type).setPatient(event.patient()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onHospitalChanged(HospitalChanged event) {
+        ChangeEvent.Type type = switch (event.type()) {
+            case CREATED -> ChangeEvent.Type.HOSPITAL_CREATED;
+            case UPDATED -> ChangeEvent.Type.HOSPITAL_UPDATED;
+            case DELETED -> ChangeEvent.Type.HOSPITAL_DELETED;
+        };
+        append(ChangeEvent.newBuilder().setType(type).setHospital(event.hospital()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRegistrationChanged(RegistrationChanged event) {
+        ChangeEvent.Type type = event.type() == ChangeType.DELETED
+                ? ChangeEvent.Type.PATIENT_UNREGISTERED
+                : ChangeEvent.Type.PATIENT_REGISTERED;
+        append(ChangeEvent.newBuilder()
+                .setType(type)
+                .setHospitalId(event.hospitalId())
+                .setPatientId(event.patient().getId())
+                .setPatient(event.patient()));
+    }
+
+    /**
+     * Attaches a subscriber to the call. Must be invoked from within the RPC method, before it returns.
+     *
+     * @param afterSequence last sequence the client has processed, or 0 to start with the next change
+     */
+    public void subscribe(long afterSequence, ServerCallStreamObserver<ChangeEvent> responseObserver) {
+        Subscription subscription = new Subscription(responseObserver);
+        responseObserver.setOnCancelHandler(subscription::cancel);
+        responseObserver.setOnReadyHandler(subscription::signal);
+
+        long head = published;
+        if (afterSequence == 0) {
+            subscription.cursor = head;
+        } else if (afterSequence > head || afterSequence < head - ring.length()) {
+            subscription.resync(head);
+            return;
+        } else {
+            subscription.cursor = afterSequence;
+        }
+        subscriptions.add(subscription);
+        subscription.signal();
+    }
+
+    public int subscriberCount() {
+        return subscriptions.size();
+    }
+
+    public long lastSequence() {
+        return published;
+    }
+
+    private void append(ChangeEvent.Builder event) {
+        synchronized (this) {
+            long sequence = ++lastSequence;
+            ring.set(index(sequence), event.setSequence(sequence).build());
+            published = sequence;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence & mask);
+    }
+
+    private final class Subscription {
+        private final ServerCallStreamObserver<ChangeEvent> responseObserver;
+        // Guards drain so that only one thread at a time writes to the call
+        private final AtomicInteger wip = new AtomicInteger();
+        // Last sequence sent; only touched by the draining thread once subscribed
+        private long cursor;
+        private volatile boolean cancelled;
+
+        private Subscription(ServerCallStreamObserver<ChangeEvent> responseObserver) {
+            this.responseObserver = responseObserver;
+        }
+
+        void signal() {
+            if (!cancelled && wip.getAndIncrement() == 0) {
+                drainExecutor.execute(this::drain);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        private void drain() {
+            try {
+                int missed = 1;
+                do {
+                    while (!cancelled && cursor < published && responseObserver.isReady()) {
+                        long next = cursor + 1;
+                        ChangeEvent event = ring.get(index(next));
+                        if (event.getSequence() != next) {
+                            // Overwritten by a newer event: this subscriber fell a full ring behind
+                            resync(published);
+                            return;
+                        }
+                        responseObserver.onNext(event);
+                        cursor = next;
+                    }
+                    missed = wip.addAndGet(-missed);
+                } while (missed != 0);
+            } catch (RuntimeException e) {
+                cancel();
+                responseObserver.onError(Status.INTERNAL
+                        .withDescription("Internal error occurred: " + e.getMessage())
+                        .asRuntimeException());
+            }
+        }
+
+        private void resync(long head) {
+            cancel();
+            responseObserver.onNext(ChangeEvent.newBuilder()
+                    .setSequence(head)
+                    .setType(ChangeEvent.Type.RESYNC_REQUIRED)
+                    .build());
+            responseObserver.onCompleted();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package hospital.server.feed;
+
+import hospital.server.HospitalServerProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executors;
+
+@Configuration
+public class ChangeFeedConfiguration {
+
+    @Bean
+    public ChangeFeed changeFeed(HospitalServerProperties properties) {
+        HospitalServerProperties.Feed feed = properties.getFeed();
+        return new ChangeFeed(feed.getCapacity(), Executors.newFixedThreadPool(feed.getDrainThreads(),
+                Thread.ofPlatform().name("change-feed-", 0).daemon(true).factory()));
+    }
+}
@@ -0,0 +1,129 @@
+package hospital.server.grpc;
+
+import hospital.server.grpc.BatchOuterClass.BatchCreateResponse;
+import hospital.server.grpc.BatchOuterClass.BatchCreateResult;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Request side of a client-streaming create RPC. Incoming rows are mapped to entities and written in
+ * groups of {@code batchSize}, one transaction per group, so Hibernate can send them as JDBC batch
+ * inserts. A row that fails to map only fails itself; a group that fails to commit fails all of its rows.
+ */
+final class BatchInsertObserver<Q, E> implements StreamObserver<Q> {
+
+    record RowResult(int index, long id, String error) {
+        boolean failed() {
+            return error != null;
+        }
+    }
+
+    private final StreamObserver<BatchCreateResponse> responseObserver;
+    private final TransactionTemplate transactionTemplate;
+    private final Function<Q, E> mapper;
+    private final Function<List<E>, List<E>> writer;
+    private final ToLongFunction<E> idExtractor;
+    private final int batchSize;
+
+    private final List<E> batch;
+    private final List<Integer> batchIndexes;
+    private final List<RowResult> results = new ArrayList<>();
+    private int nextIndex;
+
+    /**
+     * @param mapper converts a request row to an unsaved entity, throwing {@link IllegalArgumentException} for invalid rows
+     * @param writer saves a group of entities and returns them in the same order
+     */
+    BatchInsertObserver(StreamObserver<BatchCreateResponse> responseObserver, TransactionTemplate transactionTemplate,
+                        Function<Q, E> mapper, Function<List<E>, List<E>> writer, ToLongFunction<E> idExtractor,
+                        int batchSize) {
+        this.responseObserver = responseObserver;
+        this.transactionTemplate = transactionTemplate;
+        this.mapper = mapper;
+        this.writer = writer;
+        this.idExtractor = idExtractor;
+        this.batchSize = Math.max(1, batchSize);
+        this.batch = new ArrayList<>(this.batchSize);
+        this.batchIndexes = new ArrayList<>(this.batchSize);
+    }
+
+    @Override
+    public void onNext(Q request) {
+        int index = nextIndex++;
+        try {
+            batch.add(mapper.apply(request));
+            batchIndexes.add(index);
+        } catch (IllegalArgumentException e) {
+            results.add(new RowResult(index, 0L, e.getMessage()));
+        }
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        // The client gave up; groups that were already committed stay committed.
+        batch.clear();
+        batchIndexes.clear();
+    }
+
+    @Override
+    public void onCompleted() {
+        try {
+            flush();
+            results.sort((a, b) -> Integer.compare(a.index(), b.index()));
+            responseObserver.onNext(toResponse(results));
+            responseObserver.onCompleted();
+        } catch (RuntimeException e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Internal error occurred: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            List<E> saved = transactionTemplate.execute(status -> writer.apply(batch));
+            for (int i = 0; i < batchIndexes.size(); i++) {
+                results.add(new RowResult(batchIndexes.get(i), idExtractor.applyAsLong(saved.get(i)), null));
+            }
+        } catch (RuntimeException e) {
+            String error = "Batch insert failed: " + e.getMessage();
+            for (Integer index : batchIndexes) {
+                results.add(new RowResult(index, 0L, error));
+            }
+        } finally {
+            batch.clear();
+            batchIndexes.clear();
+        }
+    }
+
+    static BatchCreateResponse toResponse(List<RowResult> results) {
+        BatchCreateResponse.Builder responseBuilder = BatchCreateResponse.newBuilder();
+        int failed = 0;
+        for (RowResult result : results) {
+            BatchCreateResult.Builder resultBuilder = BatchCreateResult.newBuilder().setIndex(result.index());
+            if (result.failed()) {
+                failed++;
+                resultBuilder.setError(result.error());
+            } else {
+                resultBuilder.setId(result.id());
+            }
+            responseBuilder.addResults(resultBuilder);
+        }
+        return responseBuilder
+                .setCreatedCount(results.size() - failed)
+                .setFailedCount(failed)
+                .build();
+    }
+}
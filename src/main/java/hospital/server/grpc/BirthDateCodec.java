@@ -0,0 +1,105 @@
+package hospital.server.grpc;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Converts patient birth dates between {@link LocalDate} and the {@code dd/MM/yyyy} text used on the
+ * wire. Hand-rolled instead of {@code DateTimeFormatter}: it is stateless, so it is safe to share
+ * across gRPC threads, and it skips the formatter's parse context and field resolution. Each call
+ * still creates its result: parsing a {@code LocalDate}, formatting a 10-byte array and the
+ * {@code String} built from it.
+ */
+public final class BirthDateCodec {
+    private static final int FORMATTED_LENGTH = 10;
+
+    private BirthDateCodec() {
+    }
+
+    /**
+     * Parses {@code dd/MM/yyyy}. Day and month may also be given with a single digit, which is how
+     * birth dates were rendered before this codec existed.
+     *
+     * @throws IllegalArgumentException if the text is not a valid date in that format
+     */
+    public static LocalDate parse(CharSequence text) {
+        int length = text.length();
+        int pos = 0;
+
+        int day = 0;
+        int dayDigits = 0;
+        while (pos < length && dayDigits < 3 && isDigit(text.charAt(pos))) {
+            day = day * 10 + (text.charAt(pos++) - '0');
+            dayDigits++;
+        }
+        if (dayDigits == 0 || dayDigits > 2 || pos >= length || text.charAt(pos++) != '/') {
+            throw invalid(text);
+        }
+
+        int month = 0;
+        int monthDigits = 0;
+        while (pos < length && monthDigits < 3 && isDigit(text.charAt(pos))) {
+            month = month * 10 + (text.charAt(pos++) - '0');
+            monthDigits++;
+        }
+        if (monthDigits == 0 || monthDigits > 2 || pos >= length || text.charAt(pos++) != '/') {
+            throw invalid(text);
+        }
+
+        if (length - pos != 4) {
+            throw invalid(text);
+        }
+        int year = 0;
+        for (; pos < length; pos++) {
+            char c = text.charAt(pos);
+            if (!isDigit(c)) {
+                throw invalid(text);
+            }
+            year = year * 10 + (c - '0');
+        }
+
+        try {
+            return LocalDate.of(year, month, day);
+        } catch (DateTimeException e) {
+            throw invalid(text);
+        }
+    }
+
+    /**
+     * Formats as {@code dd/MM/yyyy}; a missing date becomes the empty string, the proto3 default.
+     */
+    public static String format(LocalDate date) {
+        if (date == null) {
+            return "";
+        }
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            throw new IllegalArgumentException("Birth date out of range: " + date);
+        }
+        int month = date.getMonthValue();
+        int day = date.getDayOfMonth();
+
+        byte[] chars = new byte[FORMATTED_LENGTH];
+        chars[0] = (byte) ('0' + day / 10);
+        chars[1] = (byte) ('0' + day % 10);
+        chars[2] = '/';
+        chars[3] = (byte) ('0' + month / 10);
+        chars[4] = (byte) ('0' + month % 10);
+        chars[5] = '/';
+        chars[6] = (byte) ('0' + year / 1000);
+        chars[7] = (byte) ('0' + year / 100 % 10);
+        chars[8] = (byte) ('0' + year / 10 % 10);
+        chars[9] = (byte) ('0' + year % 10);
+        // Latin-1 strings are stored as bytes, so this is a single copy into the string
+        return new String(chars, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static IllegalArgumentException invalid(CharSequence text) {
+        return new IllegalArgumentException("Invalid date format: \"" + text + "\", expected dd/MM/yyyy");
+    }
+}
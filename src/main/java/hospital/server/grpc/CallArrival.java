@@ -0,0 +1,53 @@
+package hospital.server.grpc;
+
+import io.grpc.Metadata;
+
+import java.util.concurrent.Executor;
+
+/**
+ * What the server knows of a call before it is handed to the executor: when its stream was created,
+ * and whether the executor's queue was already too long to take it. Both are recorded on the
+ * transport thread by {@link GrpcExecutorConfiguration}, ahead of any time spent queueing, and
+ * read by the interceptors once the call starts.
+ */
+public final class CallArrival {
+    private static final Metadata.Key<String> CREATED_NANOS = Metadata.Key.of("hospital-stream-created-nanos", Metadata.ASCII_STRING_MARSHALLER);
+    private static final ThreadLocal<Boolean> SHED = new ThreadLocal<>();
+
+    /**
+     * Runs the call inline on the transport thread, marked as shed, so the first interceptor that
+     * checks {@link #isShed} closes it without it ever waiting for a pool thread.
+     */
+    static final Executor SHEDDING = task -> {
+        SHED.set(Boolean.TRUE);
+        try {
+            task.run();
+        } finally {
+            SHED.remove();
+        }
+    };
+
+    private CallArrival() {
+    }
+
+    // A client cannot set the time: whatever it sent under the key is dropped first
+    static void stamp(Metadata headers) {
+        headers.discardAll(CREATED_NANOS);
+        headers.put(CREATED_NANOS, Long.toString(System.nanoTime()));
+    }
+
+    /**
+     * @return the {@link System#nanoTime} the call's stream was created at, or now if it was not recorded
+     */
+    public static long createdNanos(Metadata headers) {
+        String created = headers.get(CREATED_NANOS);
+        return created == null ? System.nanoTime() : Long.parseLong(created);
+    }
+
+    /**
+     * Whether the call running on this thread was turned away because the executor's queue was full.
+     */
+    public static boolean isShed() {
+        return SHED.get() != null;
+    }
+}
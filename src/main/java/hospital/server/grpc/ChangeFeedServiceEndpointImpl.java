@@ -0,0 +1,28 @@
+package hospital.server.grpc;
+
+import hospital.server.feed.ChangeFeed;
+import hospital.server.grpc.ChangeFeedOuterClass.ChangeEvent;
+import hospital.server.grpc.ChangeFeedOuterClass.WatchChangesRequest;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.AllArgsConstructor;
+import net.devh.boot.grpc.server.service.GrpcService;
+
+@GrpcService
+@AllArgsConstructor
+public class ChangeFeedServiceEndpointImpl extends ChangeFeedServiceEndpointGrpc.ChangeFeedServiceEndpointImplBase {
+
+    private final ChangeFeed changeFeed;
+
+    @Override
+    public void watchChanges(WatchChangesRequest request, StreamObserver<ChangeEvent> responseObserver) {
+        if (request.getAfterSequence() < 0) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("afterSequence must not be negative.")
+                    .asRuntimeException());
+            return;
+        }
+        changeFeed.subscribe(request.getAfterSequence(), (ServerCallStreamObserver<ChangeEvent>) responseObserver);
+    }
+}
@@ -0,0 +1,128 @@
+package hospital.server.grpc;
+
+import hospital.server.grpc.BatchOuterClass.BatchDeleteRequest;
+import hospital.server.grpc.BatchOuterClass.BatchDeleteResponse;
+import hospital.server.grpc.BatchOuterClass.BatchDeleteResult;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Deletes rows a chunk of ids at a time, one transaction per chunk, so a purge of millions of rows
+ * neither holds one huge transaction open nor issues statements per row. A failed chunk rolls back
+ * on its own; chunks that were already committed stay deleted.
+ */
+final class ChunkedDelete {
+
+    /**
+     * Loads the ids of the rows created before an instant, in keyset order.
+     */
+    @FunctionalInterface
+    interface CreatedBeforeLoader {
+        List<Long> loadAfter(Instant createdBefore, long afterId, int limit);
+    }
+
+    private final TransactionTemplate transactionTemplate;
+    private final Function<List<Long>, Set<Long>> deleter;
+    private final Consumer<Set<Long>> afterCommit;
+    private final int chunkSize;
+
+    /**
+     * @param deleter deletes the existing rows among the given ids with set-based statements and returns their ids
+     * @param afterCommit called with the ids of each committed chunk
+     */
+    ChunkedDelete(TransactionTemplate transactionTemplate, Function<List<Long>, Set<Long>> deleter,
+                  Consumer<Set<Long>> afterCommit, int chunkSize) {
+        this.transactionTemplate = transactionTemplate;
+        this.deleter = deleter;
+        this.afterCommit = afterCommit;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Serves a BatchDelete call of either service: validates the request, deletes by ids or by
+     * creation time, and answers with one result per distinct requested id.
+     *
+     * @param beforeIdDelete called with the distinct requested ids before any is deleted
+     */
+    void serve(BatchDeleteRequest request, CreatedBeforeLoader createdBeforeLoader, Consumer<List<Long>> beforeIdDelete,
+               StreamObserver<BatchDeleteResponse> responseObserver) {
+        if ((request.getIdsCount() > 0) == request.hasCreatedBefore()) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Exactly one of ids and createdBefore must be set.")
+                    .asRuntimeException());
+            return;
+        }
+
+        BatchDeleteResponse.Builder responseBuilder = BatchDeleteResponse.newBuilder();
+        try {
+            if (request.hasCreatedBefore()) {
+                Instant createdBefore = Instant.ofEpochSecond(
+                        request.getCreatedBefore().getSeconds(), request.getCreatedBefore().getNanos());
+                responseBuilder.setDeletedCount(deleteMatching((afterId, limit) ->
+                        createdBeforeLoader.loadAfter(createdBefore, afterId, limit)));
+            } else {
+                List<Long> ids = List.copyOf(new LinkedHashSet<>(request.getIdsList()));
+                beforeIdDelete.accept(ids);
+                Set<Long> deleted = deleteIds(ids);
+                ids.forEach(id -> responseBuilder.addResults(BatchDeleteResult.newBuilder()
+                        .setId(id)
+                        .setDeleted(deleted.contains(id))));
+                responseBuilder.setDeletedCount(deleted.size());
+            }
+        } catch (RuntimeException e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Internal error occurred: " + e.getMessage())
+                    .asRuntimeException());
+            return;
+        }
+
+        responseObserver.onNext(responseBuilder.build());
+        responseObserver.onCompleted();
+    }
+
+    /**
+     * @return the ids that existed and were deleted
+     */
+    Set<Long> deleteIds(List<Long> ids) {
+        Set<Long> deleted = new HashSet<>();
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            deleted.addAll(deleteChunk(ids.subList(from, Math.min(from + chunkSize, ids.size()))));
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes every row the loader returns, walking its ids in keyset order.
+     *
+     * @return the number of rows deleted
+     */
+    long deleteMatching(KeysetStreamer.ChunkLoader<Long> idLoader) {
+        long deleted = 0;
+        long afterId = 0;
+        List<Long> chunk;
+        do {
+            chunk = idLoader.loadAfter(afterId, chunkSize);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            deleted += deleteChunk(chunk).size();
+            afterId = chunk.get(chunk.size() - 1);
+        } while (chunk.size() == chunkSize);
+        return deleted;
+    }
+
+    private Set<Long> deleteChunk(List<Long> ids) {
+        Set<Long> deleted = transactionTemplate.execute(status -> deleter.apply(ids));
+        afterCommit.accept(deleted);
+        return deleted;
+    }
+}
@@ -0,0 +1,22 @@
+package hospital.server.grpc;
+
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Request observer of a client-streaming call that was failed before its first message: whatever
+ * the client still sends is dropped.
+ */
+final class DiscardingObserver<Q> implements StreamObserver<Q> {
+
+    @Override
+    public void onNext(Q request) {
+    }
+
+    @Override
+    public void onError(Throwable t) {
+    }
+
+    @Override
+    public void onCompleted() {
+    }
+}
@@ -0,0 +1,32 @@
+package hospital.server.grpc;
+
+import com.google.protobuf.FieldMask;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads the update masks of the Update RPCs. Paths are the proto field names of the request.
+ */
+final class FieldMasks {
+
+    private FieldMasks() {
+    }
+
+    /**
+     * @return the masked fields, or all updatable fields if the mask is empty
+     * @throws IllegalArgumentException if the mask names a field that cannot be updated
+     */
+    static Set<String> paths(FieldMask mask, Set<String> updatableFields) {
+        if (mask.getPathsCount() == 0) {
+            return updatableFields;
+        }
+        Set<String> paths = new HashSet<>(mask.getPathsList());
+        for (String path : paths) {
+            if (!updatableFields.contains(path)) {
+                throw new IllegalArgumentException("Field cannot be updated: \"" + path + "\"");
+            }
+        }
+        return paths;
+    }
+}
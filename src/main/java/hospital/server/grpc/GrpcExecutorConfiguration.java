@@ -0,0 +1,82 @@
+package hospital.server.grpc;
+
+import hospital.server.HospitalServerProperties;
+import io.grpc.Metadata;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallExecutorSupplier;
+import net.devh.boot.grpc.server.serverfactory.GrpcServerConfigurer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses the executor the gRPC server runs the endpoint methods on. The endpoints block on JDBC,
+ * so in {@code platform-pool} mode the pool size caps concurrent calls; in {@code virtual-threads}
+ * mode every call gets its own virtual thread and the JDBC connection pool
+ * ({@code spring.datasource.hikari.maximum-pool-size}) is what bounds database concurrency.
+ *
+ * <p>In {@code platform-pool} mode a new call is shed once {@code platform-queue-capacity} tasks
+ * wait for a thread: it is run inline and closed with {@code RESOURCE_EXHAUSTED} by
+ * {@code ConcurrencyLimitInterceptor} instead of queueing. The queue itself holds twice that, so
+ * the later callbacks of calls already admitted still find room; past that the pool rejects.
+ */
+@Configuration
+public class GrpcExecutorConfiguration {
+
+    @Bean
+    public ExecutorConfigurer grpcExecutorConfigurer(HospitalServerProperties properties) {
+        HospitalServerProperties.Grpc grpc = properties.getGrpc();
+        return switch (grpc.getExecutorMode()) {
+            case PLATFORM_POOL -> new ExecutorConfigurer(new ThreadPoolExecutor(
+                    grpc.getPlatformPoolSize(), grpc.getPlatformPoolSize(), 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(2 * grpc.getPlatformQueueCapacity()),
+                    Thread.ofPlatform().name("grpc-server-", 0).daemon(true).factory(),
+                    new ThreadPoolExecutor.AbortPolicy()), grpc.getPlatformQueueCapacity());
+            case VIRTUAL_THREADS -> new ExecutorConfigurer(Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("grpc-server-virtual-", 0).factory()), Integer.MAX_VALUE);
+        };
+    }
+
+    // Not exposed as an Executor bean, which would displace Spring's own task executor
+    public static final class ExecutorConfigurer implements GrpcServerConfigurer, DisposableBean {
+        private final ExecutorService executor;
+        private final int shedAtQueued;
+
+        private ExecutorConfigurer(ExecutorService executor, int shedAtQueued) {
+            this.executor = executor;
+            this.shedAtQueued = shedAtQueued;
+        }
+
+        @Override
+        public void accept(ServerBuilder<?> serverBuilder) {
+            // The server's own executor runs the method lookup that asks for the call's executor; were it
+            // the pool, a call would queue for a thread before it could be shed for the queue being full
+            serverBuilder.directExecutor();
+            serverBuilder.callExecutor(new ServerCallExecutorSupplier() {
+                // Called on the transport thread as the stream is created, before the call is queued
+                @Override
+                public <ReqT, RespT> Executor getExecutor(ServerCall<ReqT, RespT> call, Metadata headers) {
+                    CallArrival.stamp(headers);
+                    return queued() >= shedAtQueued ? CallArrival.SHEDDING : executor;
+                }
+            });
+        }
+
+        private int queued() {
+            return executor instanceof ThreadPoolExecutor pool ? pool.getQueue().size() : 0;
+        }
+
+        @Override
+        public void destroy() {
+            executor.shutdown();
+        }
+    }
+}
@@ -1,44 +1,92 @@
 package hospital.server.grpc;
 
+import hospital.server.HospitalServerProperties;
+import hospital.server.cache.ResponseCache;
+import hospital.server.census.Census;
+import hospital.server.event.ChangeType;
+import hospital.server.event.HospitalChanged;
+import hospital.server.index.RegistrationIndex;
 import hospital.server.model.Hospital;
-import hospital.server.model.Patient;
+import hospital.server.partition.PartitionedStorage;
+import hospital.server.reactive.ReactiveHospitalRepository;
+import hospital.server.reactive.ReactivePatientRepository;
 import hospital.server.repository.HospitalRepository;
+import hospital.server.repository.HospitalRow;
+import hospital.server.repository.HospitalUpdate;
 import hospital.server.repository.PatientRepository;
 import com.google.protobuf.Empty;
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
-import jakarta.transaction.Transactional;
 import lombok.AllArgsConstructor;
 import net.devh.boot.grpc.server.service.GrpcService;
+import hospital.server.grpc.BatchOuterClass.BatchCreateResponse;
+import hospital.server.grpc.BatchOuterClass.BatchDeleteRequest;
+import hospital.server.grpc.BatchOuterClass.BatchDeleteResponse;
 import hospital.server.grpc.HospitalOuterClass.*;
 import hospital.server.grpc.HospitalServiceEndpointGrpc.*;
-import org.hibernate.Hibernate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
 
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 @GrpcService
 @AllArgsConstructor
 public class HospitalServiceEndpointImpl extends HospitalServiceEndpointImplBase {
+    private static final int STREAM_CHUNK_SIZE = 500;
+    // Lower bounds of the census age brackets; the last one is open-ended
+    private static final int[] AGE_BRACKET_STARTS = {0, 18, 35, 50, 65};
+    private static final Set<String> UPDATABLE_FIELDS = Set.of("name", "address");
+
     private final HospitalRepository hospitalRepository;
 
     private final PatientRepository patientRepository;
 
+    private final TransactionTemplate transactionTemplate;
+
+    private final HospitalServerProperties properties;
+
+    private final ResponseCache<HospitalResponse> hospitalResponseCache;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Census census;
+
+    private final RegistrationIndex registrationIndex;
+
+    private final ReactiveHospitalRepository reactiveHospitalRepository;
+
+    private final ReactivePatientRepository reactivePatientRepository;
+
+    private final PartitionedStorage partitionedStorage;
+
 
     @Override
     public void findById(FindByIdRequest request, StreamObserver<HospitalResponse> responseObserver) {
+        if (reactiveHospitalRepository.isEnabled()) {
+            findByIdReactively(request.getId(), responseObserver);
+            return;
+        }
         try {
             long id = request.getId();
-            Optional<Hospital> optionalHospitalData = hospitalRepository.findById(id);
+            HospitalResponse hospitalResponse = hospitalResponseCache.get(id, this::loadHospitalResponse);
 
-            if (optionalHospitalData.isEmpty()) {
-                // Patient not found
+            if (hospitalResponse == null) {
+                // Hospital not found
                 responseObserver.onError(Status.NOT_FOUND
                         .withDescription("Hospital with ID " + request.getId() + " does not exist.")
                         .asRuntimeException());
             } else {
-                // Patient found
-                HospitalResponse hospitalResponse = convertToHospitalResponse(optionalHospitalData.get());
+                // Hospital found
                 responseObserver.onNext(hospitalResponse);
                 responseObserver.onCompleted();
             }
@@ -50,67 +98,171 @@ public class HospitalServiceEndpointImpl extends HospitalServiceEndpointImplBase
         }
     }
 
+    @Override
+    public void findByIds(FindByIdsRequest request, StreamObserver<FindByIdsResponse> responseObserver) {
+        if (!IdLookup.checkCount(request.getIdsCount(), properties.getBatch().getMaxLookupIds(), responseObserver)) {
+            return;
+        }
+        if (reactiveHospitalRepository.isEnabled()) {
+            ReactiveResponse.send(findHospitalResponsesReactively(request.getIdsList())
+                    .map(hospitals -> toFindByIdsResponse(request.getIdsList(), hospitals)), responseObserver);
+            return;
+        }
+        try {
+            responseObserver.onNext(toFindByIdsResponse(request.getIdsList(), findHospitalResponses(request.getIdsList())));
+            responseObserver.onCompleted();
+        } catch (Exception e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Internal error occurred: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
 
     @Override
-    @Transactional
     public void listHospitalsByPatientId(ListByPatientIdRequest request, StreamObserver<ListHospitalsResponse> responseObserver) {
         long patientId = request.getPatientId();
-        Optional<Patient> patientOptional = patientRepository.findById(patientId);
-        if (patientOptional.isEmpty()) {
+        PageCursor cursor = PageCursor.parse(request.getPageSize(), request.getPageToken(),
+                properties.getPaging().getDefaultPageSize(), responseObserver);
+        if (cursor == null) {
+            return;
+        }
+        if (reactiveHospitalRepository.isEnabled()) {
+            ReactiveResponse.send(registrationIndex.isReady()
+                    ? listHospitalsFromIndexReactively(patientId, cursor)
+                    : listHospitalsReactively(patientId, cursor), responseObserver);
+            return;
+        }
+        if (partitionedStorage.isEnabled()) {
+            listHospitalsFromPartition(patientId, cursor, responseObserver);
+            return;
+        }
+        if (registrationIndex.isReady()) {
+            listHospitalsFromIndex(patientId, cursor, responseObserver);
+            return;
+        }
+
+        List<HospitalRow> hospitalRows = hospitalRepository.findRowsByPatientId(patientId, cursor.afterId(), cursor.lookahead());
+        // Only an empty page needs to tell an unknown patient apart from one without registrations
+        if (hospitalRows.isEmpty() && !patientRepository.existsById(patientId)) {
             responseObserver.onError(Status.NOT_FOUND
                     .withDescription("Patient with ID " + patientId + " does not exist.")
                     .asRuntimeException());
+            return;
         }
-        Patient patient = patientOptional.get();
-        Hibernate.initialize(patient.getHospitals());
-        List<Hospital> hospitalList = patient.getHospitals();
 
         ListHospitalsResponse.Builder responseBuilder = ListHospitalsResponse.newBuilder();
-        hospitalList.forEach(hospitalData -> {
-            HospitalResponse hospitalResponse = convertToHospitalResponse(hospitalData);
-            responseBuilder.addHospitals(hospitalResponse);
-        });
+        for (HospitalRow hospitalRow : cursor.page(hospitalRows)) {
+            responseBuilder.addHospitals(convertToHospitalResponse(hospitalRow));
+        }
+        responseBuilder.setNextPageToken(cursor.nextPageToken(hospitalRows, HospitalRow::id));
         responseObserver.onNext(responseBuilder.build());
         responseObserver.onCompleted();
     }
 
     @Override
-    public void listAllHospitals(Empty request, StreamObserver<ListHospitalsResponse> responseObserver) {
-        List<Hospital> hospitalDataList = hospitalRepository.findAll();
+    public void listAllHospitals(ListAllHospitalsRequest request, StreamObserver<ListHospitalsResponse> responseObserver) {
+        PageCursor cursor = PageCursor.parse(request.getPageSize(), request.getPageToken(),
+                properties.getPaging().getDefaultPageSize(), responseObserver);
+        if (cursor == null) {
+            return;
+        }
 
-        ListHospitalsResponse.Builder responseBuilder = ListHospitalsResponse.newBuilder();
-        hospitalDataList.forEach(hospitalData -> {
-            HospitalResponse hospitalResponse = convertToHospitalResponse(hospitalData);
-            responseBuilder.addHospitals(hospitalResponse);
-        });
+        if (reactiveHospitalRepository.isEnabled()) {
+            ReactiveResponse.send(reactiveHospitalRepository.findRowsAfterId(cursor.afterId(), cursor.lookaheadLimit())
+                    .collectList()
+                    .map(rows -> toRowsResponse(rows, cursor)), responseObserver);
+            return;
+        }
 
-        responseObserver.onNext(responseBuilder.build());
+        List<Hospital> hospitalDataList = hospitalRepository.findByIdGreaterThanOrderByIdAsc(cursor.afterId(), cursor.lookahead());
+
+        responseObserver.onNext(toListHospitalsResponse(hospitalDataList, cursor));
         responseObserver.onCompleted();
     }
 
+    @Override
+    public void streamAllHospitals(Empty request, StreamObserver<HospitalResponse> responseObserver) {
+        KeysetStreamer.start(responseObserver,
+                (afterId, limit) -> hospitalRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, limit)),
+                Hospital::getId,
+                this::convertToHospitalResponse,
+                STREAM_CHUNK_SIZE);
+    }
+
+
+    @Override
+    public StreamObserver<CreateHospitalRequest> batchCreateHospitals(StreamObserver<BatchCreateResponse> responseObserver) {
+        return new BatchInsertObserver<CreateHospitalRequest, Hospital>(
+                responseObserver,
+                transactionTemplate,
+                request -> Hospital.builder()
+                        .name(request.getName())
+                        .address(request.getAddress())
+                        .build(),
+                hospitals -> {
+                    List<Hospital> saved = hospitalRepository.saveAll(hospitals);
+                    saved.forEach(this::replicate);
+                    // Held back by the change feed until the batch transaction commits
+                    saved.forEach(hospital -> publish(ChangeType.CREATED, convertToHospitalResponse(hospital)));
+                    return saved;
+                },
+                Hospital::getId,
+                properties.getBatch().getSize());
+    }
 
     @Override
     public void createHospital(CreateHospitalRequest request, StreamObserver<HospitalResponse> responseObserver) {
+        if (reactiveHospitalRepository.isEnabled()) {
+            ReactiveResponse.send(reactiveHospitalRepository.create(request.getName(), request.getAddress())
+                    .map(this::convertToHospitalResponse)
+                    .doOnNext(response -> publish(ChangeType.CREATED, response)), responseObserver);
+            return;
+        }
         Hospital hospital = hospitalRepository.save(Hospital.builder()
                 .name(request.getName())
                 .address(request.getAddress())
                 .build());
+        replicate(hospital);
 
         HospitalResponse response = convertToHospitalResponse(hospital);
+        publish(ChangeType.CREATED, response);
         responseObserver.onNext(response);
         responseObserver.onCompleted();
     }
 
     @Override
     public void updateHospital(UpdateHospitalRequest request, StreamObserver<HospitalResponse> responseObserver) {
-        Hospital hospital = hospitalRepository.save(Hospital.builder()
-                .id(request.getId())
-                .name(request.getName())
-                .address(request.getAddress())
-                .build());
+        HospitalUpdate update;
+        try {
+            Set<String> fields = FieldMasks.paths(request.getUpdateMask(), UPDATABLE_FIELDS);
+            update = new HospitalUpdate(
+                    fields.contains("name") ? request.getName() : null,
+                    fields.contains("address") ? request.getAddress() : null);
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription(e.getMessage())
+                    .asRuntimeException());
+            return;
+        }
 
+        long id = request.getId();
+        if (reactiveHospitalRepository.isEnabled()) {
+            ReactiveResponse.send(updateReactively(id, update), responseObserver);
+            return;
+        }
+        HospitalResponse response = transactionTemplate.execute(status -> applyUpdate(id, update));
+        if (response == null) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("Hospital with ID " + id + " does not exist.")
+                    .asRuntimeException());
+            return;
+        }
 
-        HospitalResponse response = convertToHospitalResponse(hospital);
+        if (partitionedStorage.isEnabled()) {
+            partitionedStorage.insertHospital(id, response.getName(), response.getAddress());
+        }
+        hospitalResponseCache.invalidate(id);
         responseObserver.onNext(response);
         responseObserver.onCompleted();
     }
@@ -121,8 +273,12 @@ public class HospitalServiceEndpointImpl extends HospitalServiceEndpointImplBase
 
         if (optionalId.isPresent()) {
             long id = optionalId.get();
-            if (hospitalRepository.existsById(id)) {
-                hospitalRepository.deleteById(id);
+            if (reactiveHospitalRepository.isEnabled()) {
+                ReactiveResponse.send(deleteReactively(id), responseObserver);
+                return;
+            }
+            if (!transactionTemplate.execute(status -> deleteHospitals(List.of(id))).isEmpty()) {
+                hospitalResponseCache.invalidate(id);
                 responseObserver.onNext(DeleteResponse.newBuilder()
                         .setSuccess(true)
                         .build());
@@ -141,6 +297,293 @@ public class HospitalServiceEndpointImpl extends HospitalServiceEndpointImplBase
 
     }
 
+    @Override
+    public void getCensus(GetCensusRequest request, StreamObserver<CensusResponse> responseObserver) {
+        long hospitalId = request.getHospitalId();
+        Optional<Census.Counts> counts = hospitalId == 0 ? Optional.of(census.global()) : census.hospital(hospitalId);
+        if (counts.isEmpty()) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("Hospital with ID " + hospitalId + " does not exist.")
+                    .asRuntimeException());
+            return;
+        }
+
+        responseObserver.onNext(convertToCensusResponse(hospitalId, counts.get(), LocalDate.now().getYear()));
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void rebuildCensus(RebuildCensusRequest request, StreamObserver<RebuildCensusResponse> responseObserver) {
+        // The census is rebuilt from the primary database, which holds no patients when partitioned
+        if (partitionedStorage.isEnabled()) {
+            responseObserver.onError(Status.UNIMPLEMENTED
+                    .withDescription("RebuildCensus is not available with partitioned storage.")
+                    .asRuntimeException());
+            return;
+        }
+        try {
+            Census.Verification verification = census.rebuild(!request.getVerifyOnly());
+            responseObserver.onNext(RebuildCensusResponse.newBuilder()
+                    .setConsistent(verification.consistent())
+                    .setGlobalMatches(verification.globalMatches())
+                    .setHospitalCount(verification.hospitals())
+                    .setMismatchedHospitalCount(verification.mismatchedHospitals())
+                    .setElapsedMillis(verification.elapsedMillis())
+                    .build());
+            responseObserver.onCompleted();
+        } catch (RuntimeException e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Internal error occurred: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
+    @Override
+    public void batchDeleteHospitals(BatchDeleteRequest request, StreamObserver<BatchDeleteResponse> responseObserver) {
+        new ChunkedDelete(transactionTemplate, this::deleteHospitals,
+                deleted -> deleted.forEach(hospitalResponseCache::invalidate), properties.getBatch().getSize())
+                .serve(request, (createdBefore, afterId, limit) ->
+                                hospitalRepository.findIdsCreatedBefore(createdBefore, afterId, PageRequest.of(0, limit)),
+                        ids -> { }, responseObserver);
+    }
+
+    /**
+     * Deletes the existing hospitals among the ids, and their rosters, with three statements whatever
+     * their number. Must run within a transaction.
+     *
+     * @return the ids of the deleted hospitals
+     */
+    private Set<Long> deleteHospitals(Collection<Long> ids) {
+        Set<Long> existing = new LinkedHashSet<>(hospitalRepository.findExistingIds(ids));
+        if (existing.isEmpty()) {
+            return Set.of();
+        }
+        hospitalRepository.deleteRegistrationsByHospitalIdIn(existing);
+        hospitalRepository.deleteRowsByIdIn(existing);
+        if (partitionedStorage.isEnabled()) {
+            // The rosters live in the partitions; a failure here rolls the primary's delete back
+            existing.forEach(partitionedStorage::deleteHospital);
+        }
+
+        // Held back by the listeners until the transaction commits
+        existing.forEach(id -> publish(ChangeType.DELETED, HospitalResponse.newBuilder().setId(id).build()));
+        return existing;
+    }
+
+    /**
+     * @return the hospital after the update, or null if it does not exist
+     */
+    private HospitalResponse applyUpdate(long id, HospitalUpdate update) {
+        if (hospitalRepository.update(id, update) == 0) {
+            return null;
+        }
+        HospitalResponse current;
+        if (update.name() != null && update.address() != null) {
+            current = HospitalResponse.newBuilder()
+                    .setId(id)
+                    .setName(update.name())
+                    .setAddress(update.address())
+                    .build();
+        } else {
+            // Read the column the request did not carry
+            current = hospitalRepository.findRowById(id).map(this::convertToHospitalResponse).orElse(null);
+        }
+        publish(ChangeType.UPDATED, current);
+        return current;
+    }
+
+    // Partitions keep a copy of every hospital, so registrations and roster joins stay local to one
+    private void replicate(Hospital hospital) {
+        if (partitionedStorage.isEnabled()) {
+            partitionedStorage.insertHospital(hospital.getId(), hospital.getName(), hospital.getAddress());
+        }
+    }
+
+    private void publish(ChangeType type, HospitalResponse hospital) {
+        eventPublisher.publishEvent(new HospitalChanged(type, hospital));
+    }
+
+    private ListHospitalsResponse toListHospitalsResponse(List<Hospital> hospitalList, PageCursor cursor) {
+        ListHospitalsResponse.Builder responseBuilder = ListHospitalsResponse.newBuilder();
+        cursor.page(hospitalList).forEach(hospitalData -> {
+            HospitalResponse hospitalResponse = convertToHospitalResponse(hospitalData);
+            responseBuilder.addHospitals(hospitalResponse);
+        });
+        responseBuilder.setNextPageToken(cursor.nextPageToken(hospitalList, Hospital::getId));
+        return responseBuilder.build();
+    }
+
+    private ListHospitalsResponse toRowsResponse(List<HospitalRow> rows, PageCursor cursor) {
+        return ListHospitalsResponse.newBuilder()
+                .addAllHospitals(cursor.page(rows).stream().map(this::convertToHospitalResponse).toList())
+                .setNextPageToken(cursor.nextPageToken(rows, HospitalRow::id))
+                .build();
+    }
+
+    private static FindByIdsResponse toFindByIdsResponse(List<Long> ids, Map<Long, HospitalResponse> hospitals) {
+        FindByIdsResponse.Builder responseBuilder = FindByIdsResponse.newBuilder();
+        for (long id : ids) {
+            HospitalResponse hospital = hospitals.get(id);
+            if (hospital == null) {
+                responseBuilder.addMissingIds(id);
+            } else {
+                responseBuilder.addHospitals(hospital);
+            }
+        }
+        return responseBuilder.build();
+    }
+
+    private static CensusResponse convertToCensusResponse(long hospitalId, Census.Counts counts, int currentYear) {
+        long[] bracketCounts = new long[AGE_BRACKET_STARTS.length];
+        long unknownAge = 0;
+        for (Map.Entry<Integer, Long> entry : counts.byBirthYear().entrySet()) {
+            if (entry.getKey() == Census.UNKNOWN_BIRTH_YEAR) {
+                unknownAge += entry.getValue();
+                continue;
+            }
+            int age = Math.max(0, currentYear - entry.getKey());
+            int bracket = AGE_BRACKET_STARTS.length - 1;
+            while (AGE_BRACKET_STARTS[bracket] > age) {
+                bracket--;
+            }
+            bracketCounts[bracket] += entry.getValue();
+        }
+
+        CensusResponse.Builder responseBuilder = CensusResponse.newBuilder()
+                .setHospitalId(hospitalId)
+                .setPatientCount(counts.patients())
+                .putAllPatientsBySex(counts.bySex())
+                .setUnknownAgeCount(unknownAge);
+        for (int i = 0; i < AGE_BRACKET_STARTS.length; i++) {
+            boolean last = i == AGE_BRACKET_STARTS.length - 1;
+            responseBuilder.addAgeBrackets(AgeBracketCount.newBuilder()
+                    .setMinAge(AGE_BRACKET_STARTS[i])
+                    .setMaxAge(last ? 0 : AGE_BRACKET_STARTS[i + 1] - 1)
+                    .setCount(bracketCounts[i]));
+        }
+        return responseBuilder.build();
+    }
+
+    // Ids come from the index and rows from the response cache or a primary-key lookup, so the
+    // registrations are read without a join
+    private void listHospitalsFromIndex(long patientId, PageCursor cursor, StreamObserver<ListHospitalsResponse> responseObserver) {
+        long[] hospitalIds = registrationIndex.hospitalIds(patientId, cursor.afterId(), cursor.lookaheadLimit());
+        if (hospitalIds.length == 0 && !patientRepository.existsById(patientId)) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("Patient with ID " + patientId + " does not exist.")
+                    .asRuntimeException());
+            return;
+        }
+
+        int pageLength = Math.min(hospitalIds.length, cursor.pageSize());
+        List<Long> ids = Arrays.stream(hospitalIds, 0, pageLength).boxed().toList();
+        responseObserver.onNext(toIndexPage(ids, findHospitalResponses(ids), hospitalIds, pageLength));
+        responseObserver.onCompleted();
+    }
+
+    private static ListHospitalsResponse toIndexPage(List<Long> ids, Map<Long, HospitalResponse> found, long[] hospitalIds, int pageLength) {
+        // A hospital deleted after the index was read has no row left to list
+        return ListHospitalsResponse.newBuilder()
+                .addAllHospitals(ids.stream().map(found::get).filter(Objects::nonNull).toList())
+                .setNextPageToken(hospitalIds.length > pageLength ? PageCursor.encode(hospitalIds[pageLength - 1]) : "")
+                .build();
+    }
+
+    // R2DBC engine: the handler returns once the query is subscribed, and the response is sent when it
+    // completes. Loads fill the response cache unless an invalidation ran meanwhile.
+    private void findByIdReactively(long id, StreamObserver<HospitalResponse> responseObserver) {
+        HospitalResponse cached = hospitalResponseCache.getAllPresent(List.of(id)).get(id);
+        if (cached != null) {
+            responseObserver.onNext(cached);
+            responseObserver.onCompleted();
+            return;
+        }
+        long stamp = hospitalResponseCache.stamp();
+        ReactiveResponse.send(reactiveHospitalRepository.findRowById(id)
+                .map(this::convertToHospitalResponse)
+                .doOnNext(hospital -> hospitalResponseCache.putIfUnchanged(stamp, id, hospital))
+                .switchIfEmpty(ReactiveResponse.notFound("Hospital with ID " + id + " does not exist.")), responseObserver);
+    }
+
+    private Mono<Map<Long, HospitalResponse>> findHospitalResponsesReactively(List<Long> ids) {
+        long stamp = hospitalResponseCache.stamp();
+        return IdLookup.findReactively(ids, hospitalResponseCache.getAllPresent(ids),
+                chunk -> reactiveHospitalRepository.findRowsByIdIn(chunk)
+                        .map(this::convertToHospitalResponse)
+                        .doOnNext(hospital -> hospitalResponseCache.putIfUnchanged(stamp, hospital.getId(), hospital)),
+                HospitalResponse::getId, properties.getBatch().getLookupChunkSize());
+    }
+
+    // R2DBC engine: the keyset join page, with the existence check of an empty page chained after it
+    private Mono<ListHospitalsResponse> listHospitalsReactively(long patientId, PageCursor cursor) {
+        return reactiveHospitalRepository.findRowsByPatientId(patientId, cursor.afterId(), cursor.lookaheadLimit())
+                .collectList()
+                .flatMap(rows -> rows.isEmpty() ? requirePatient(patientId).thenReturn(rows) : Mono.just(rows))
+                .map(rows -> toRowsResponse(rows, cursor));
+    }
+
+    // R2DBC engine: ids from the index, rows from the response cache or reactive primary-key lookups
+    private Mono<ListHospitalsResponse> listHospitalsFromIndexReactively(long patientId, PageCursor cursor) {
+        long[] hospitalIds = registrationIndex.hospitalIds(patientId, cursor.afterId(), cursor.lookaheadLimit());
+        int pageLength = Math.min(hospitalIds.length, cursor.pageSize());
+        List<Long> ids = Arrays.stream(hospitalIds, 0, pageLength).boxed().toList();
+        Mono<Void> patientCheck = hospitalIds.length == 0 ? requirePatient(patientId) : Mono.empty();
+        return patientCheck.then(findHospitalResponsesReactively(ids))
+                .map(found -> toIndexPage(ids, found, hospitalIds, pageLength));
+    }
+
+    private Mono<Void> requirePatient(long patientId) {
+        return reactivePatientRepository.existsById(patientId)
+                .flatMap(exists -> exists
+                        ? Mono.<Void>empty()
+                        : ReactiveResponse.notFound("Patient with ID " + patientId + " does not exist."));
+    }
+
+    // R2DBC engine: announced once the update has committed, then the cached response is dropped
+    private Mono<HospitalResponse> updateReactively(long id, HospitalUpdate update) {
+        return reactiveHospitalRepository.update(id, update)
+                .map(this::convertToHospitalResponse)
+                .doOnNext(current -> {
+                    publish(ChangeType.UPDATED, current);
+                    hospitalResponseCache.invalidate(id);
+                })
+                .switchIfEmpty(ReactiveResponse.notFound("Hospital with ID " + id + " does not exist."));
+    }
+
+    private Mono<DeleteResponse> deleteReactively(long id) {
+        return reactiveHospitalRepository.delete(id)
+                .map(deleted -> {
+                    if (deleted) {
+                        publish(ChangeType.DELETED, HospitalResponse.newBuilder().setId(id).build());
+                        hospitalResponseCache.invalidate(id);
+                    }
+                    return DeleteResponse.newBuilder().setSuccess(deleted).build();
+                });
+    }
+
+    // Partitioned storage: the registrations and the hospital copies live in the patient's partition
+    private void listHospitalsFromPartition(long patientId, PageCursor cursor, StreamObserver<ListHospitalsResponse> responseObserver) {
+        List<HospitalRow> hospitalRows = partitionedStorage.findHospitalRowsByPatientId(patientId, cursor.afterId(), cursor.lookaheadLimit());
+        if (hospitalRows.isEmpty() && partitionedStorage.findRowById(patientId).isEmpty()) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("Patient with ID " + patientId + " does not exist.")
+                    .asRuntimeException());
+            return;
+        }
+        responseObserver.onNext(toRowsResponse(hospitalRows, cursor));
+        responseObserver.onCompleted();
+    }
+
+    private Map<Long, HospitalResponse> findHospitalResponses(List<Long> ids) {
+        return IdLookup.find(ids, hospitalResponseCache.getAllPresent(ids),
+                chunk -> hospitalRepository.findAllById(chunk).stream().map(this::convertToHospitalResponse).toList(),
+                HospitalResponse::getId, properties.getBatch().getLookupChunkSize());
+    }
+
+    private HospitalResponse loadHospitalResponse(long id) {
+        return hospitalRepository.findById(id).map(this::convertToHospitalResponse).orElse(null);
+    }
+
     private HospitalResponse convertToHospitalResponse(Hospital hospital) {
         return HospitalResponse.newBuilder()
                 .setId(hospital.getId())
@@ -148,5 +591,12 @@ public class HospitalServiceEndpointImpl extends HospitalServiceEndpointImplBase
                 .setAddress(hospital.getAddress())
                 .build();
     }
-}
 
+    private HospitalResponse convertToHospitalResponse(HospitalRow hospital) {
+        return HospitalResponse.newBuilder()
+                .setId(hospital.id())
+                .setName(hospital.name())
+                .setAddress(hospital.address())
+                .build();
+    }
+}
@@ -0,0 +1,72 @@
+package hospital.server.grpc;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Looks responses up by id for the FindByIds RPCs and the index-backed list pages: what is already
+ * at hand, such as cached responses, is used as is, and the rest is looked up with one IN-clause
+ * query per chunk.
+ */
+final class IdLookup {
+
+    private IdLookup() {
+    }
+
+    /**
+     * Fails the call with {@code INVALID_ARGUMENT} if it asks for more ids than allowed.
+     *
+     * @return whether the call may proceed
+     */
+    static boolean checkCount(int count, int maximum, StreamObserver<?> responseObserver) {
+        if (count > maximum) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("At most " + maximum + " ids may be requested at once, got " + count + ".")
+                    .asRuntimeException());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param known   responses at hand by id; not modified
+     * @param loader  loads the responses of a chunk of ids, leaving out ids without a row
+     * @return the responses found by id; ids without a row are absent
+     */
+    static <V> Map<Long, V> find(List<Long> ids, Map<Long, V> known, Function<List<Long>, List<V>> loader,
+                                 ToLongFunction<V> idOf, int chunkSize) {
+        Map<Long, V> found = new HashMap<>(known);
+        List<Long> misses = misses(ids, known);
+        int size = Math.max(1, chunkSize);
+        for (int from = 0; from < misses.size(); from += size) {
+            for (V response : loader.apply(misses.subList(from, Math.min(from + size, misses.size())))) {
+                found.put(idOf.applyAsLong(response), response);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * {@link #find} for the R2DBC engine: the chunks are loaded one after the other, without holding a thread meanwhile.
+     */
+    static <V> Mono<Map<Long, V>> findReactively(List<Long> ids, Map<Long, V> known, Function<List<Long>, Flux<V>> loader,
+                                                 ToLongFunction<V> idOf, int chunkSize) {
+        List<Long> misses = misses(ids, known);
+        int size = Math.max(1, chunkSize);
+        return Flux.range(0, (misses.size() + size - 1) / size)
+                .concatMap(chunk -> loader.apply(misses.subList(chunk * size, Math.min((chunk + 1) * size, misses.size()))))
+                .<Map<Long, V>>collect(() -> new HashMap<>(known), (found, response) -> found.put(idOf.applyAsLong(response), response));
+    }
+
+    private static List<Long> misses(List<Long> ids, Map<Long, ?> known) {
+        return ids.stream().distinct().filter(id -> !known.containsKey(id)).toList();
+    }
+}
@@ -0,0 +1,104 @@
+package hospital.server.grpc;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Streams a table to a server-streaming call in id-ordered chunks. The next chunk is only read
+ * from the repository once the client's flow-control window has drained the previous one, so at
+ * most one chunk is held in memory regardless of the table size.
+ */
+final class KeysetStreamer<E, R> implements Runnable {
+
+    /**
+     * Loads up to {@code limit} rows with an id strictly greater than {@code afterId}, ordered by id.
+     */
+    @FunctionalInterface
+    interface ChunkLoader<E> {
+        List<E> loadAfter(long afterId, int limit);
+    }
+
+    private final ServerCallStreamObserver<R> responseObserver;
+    private final ChunkLoader<E> chunkLoader;
+    private final ToLongFunction<E> idExtractor;
+    private final Function<E, R> converter;
+    private final int chunkSize;
+
+    private final Queue<R> pending = new ArrayDeque<>();
+    private long lastId = 0L;
+    private boolean exhausted;
+    private boolean done;
+    private volatile boolean cancelled;
+
+    private KeysetStreamer(ServerCallStreamObserver<R> responseObserver, ChunkLoader<E> chunkLoader,
+                           ToLongFunction<E> idExtractor, Function<E, R> converter, int chunkSize) {
+        this.responseObserver = responseObserver;
+        this.chunkLoader = chunkLoader;
+        this.idExtractor = idExtractor;
+        this.converter = converter;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Hooks a streamer onto the call. Must be invoked from within the RPC method, before it returns;
+     * gRPC then drives the streamer through the on-ready handler.
+     */
+    static <E, R> void start(StreamObserver<R> responseObserver, ChunkLoader<E> chunkLoader,
+                             ToLongFunction<E> idExtractor, Function<E, R> converter, int chunkSize) {
+        ServerCallStreamObserver<R> serverObserver = (ServerCallStreamObserver<R>) responseObserver;
+        KeysetStreamer<E, R> streamer = new KeysetStreamer<>(serverObserver, chunkLoader, idExtractor, converter, chunkSize);
+        serverObserver.setOnCancelHandler(() -> streamer.cancelled = true);
+        serverObserver.setOnReadyHandler(streamer);
+    }
+
+    @Override
+    public void run() {
+        if (done) {
+            return;
+        }
+        try {
+            while (!cancelled && responseObserver.isReady()) {
+                R next = pending.poll();
+                if (next != null) {
+                    responseObserver.onNext(next);
+                } else if (exhausted) {
+                    done = true;
+                    responseObserver.onCompleted();
+                    return;
+                } else {
+                    loadNextChunk();
+                }
+            }
+            if (cancelled) {
+                done = true;
+                pending.clear();
+            }
+        } catch (RuntimeException e) {
+            done = true;
+            pending.clear();
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Internal error occurred: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
+    private void loadNextChunk() {
+        List<E> chunk = chunkLoader.loadAfter(lastId, chunkSize);
+        for (E row : chunk) {
+            pending.add(converter.apply(row));
+        }
+        if (!chunk.isEmpty()) {
+            lastId = idExtractor.applyAsLong(chunk.get(chunk.size() - 1));
+        }
+        if (chunk.size() < chunkSize) {
+            exhausted = true;
+        }
+    }
+}
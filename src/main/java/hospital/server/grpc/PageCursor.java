@@ -0,0 +1,101 @@
+package hospital.server.grpc;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keyset position of a paged list RPC. Page tokens are opaque to clients: they wrap the id of the
+ * last row of the previous page, so the next page is an {@code id > lastId} query whose cost does
+ * not depend on how deep the client has paged.
+ *
+ * <p>A page size of 0 selects {@code hospital.paging.default-page-size}, and no page is larger than
+ * {@link #MAX_PAGE_SIZE}. Before the list RPCs were paged, a request without a page size got every
+ * row; it now gets the first page and a token for the next.
+ */
+record PageCursor(long afterId, int pageSize) {
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private static final byte TOKEN_VERSION = 1;
+    private static final int TOKEN_LENGTH = 1 + Long.BYTES;
+
+    /**
+     * @param defaultPageSize the page size of a request that sets none
+     * @throws IllegalArgumentException if the page size is negative or the token was not issued by this server
+     */
+    static PageCursor of(int requestedPageSize, String pageToken, int defaultPageSize) {
+        if (requestedPageSize < 0) {
+            throw new IllegalArgumentException("Page size must not be negative: " + requestedPageSize);
+        }
+        int pageSize = requestedPageSize == 0 ? Math.max(1, defaultPageSize) : requestedPageSize;
+        return new PageCursor(decode(pageToken), Math.min(pageSize, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * {@link #of} for a handler: fails the call with {@code INVALID_ARGUMENT} instead of throwing.
+     *
+     * @return the cursor, or null if the call was failed
+     */
+    static PageCursor parse(int requestedPageSize, String pageToken, int defaultPageSize, StreamObserver<?> responseObserver) {
+        try {
+            return of(requestedPageSize, pageToken, defaultPageSize);
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription(e.getMessage())
+                    .asRuntimeException());
+            return null;
+        }
+    }
+
+    /**
+     * Asks for one row more than the page size, so the presence of a next page is known without a count query.
+     */
+    Pageable lookahead() {
+        return PageRequest.of(0, pageSize + 1);
+    }
+
+    /**
+     * {@link #lookahead} as a row limit.
+     */
+    int lookaheadLimit() {
+        return pageSize + 1;
+    }
+
+    <E> List<E> page(List<E> rows) {
+        return rows.size() > pageSize ? rows.subList(0, pageSize) : rows;
+    }
+
+    <E> String nextPageToken(List<E> rows, ToLongFunction<E> idExtractor) {
+        if (rows.size() <= pageSize) {
+            return "";
+        }
+        return encode(idExtractor.applyAsLong(rows.get(pageSize - 1)));
+    }
+
+    static String encode(long lastId) {
+        ByteBuffer buffer = ByteBuffer.allocate(TOKEN_LENGTH).put(TOKEN_VERSION).putLong(lastId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    private static long decode(String pageToken) {
+        if (pageToken == null || pageToken.isEmpty()) {
+            return 0L;
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(pageToken);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page token.");
+        }
+        if (bytes.length != TOKEN_LENGTH || bytes[0] != TOKEN_VERSION) {
+            throw new IllegalArgumentException("Invalid page token.");
+        }
+        return ByteBuffer.wrap(bytes, 1, Long.BYTES).getLong();
+    }
+}
@@ -1,50 +1,102 @@
 package hospital.server.grpc;
 
-import hospital.server.model.Hospital;
+import hospital.server.HospitalServerProperties;
+import hospital.server.cache.ResponseCache;
+import hospital.server.event.ChangeType;
+import hospital.server.event.PatientChanged;
+import hospital.server.event.RegistrationChanged;
+import hospital.server.index.RegistrationIndex;
+import hospital.server.intake.WriteBehindIntake;
 import hospital.server.model.Patient;
+import hospital.server.partition.PartitionedStorage;
+import hospital.server.reactive.ReactiveHospitalRepository;
+import hospital.server.reactive.ReactivePatientRepository;
 import hospital.server.repository.HospitalRepository;
 import hospital.server.repository.PatientRepository;
+import hospital.server.repository.PatientRow;
+import hospital.server.repository.PatientSearch;
+import hospital.server.repository.PatientUpdate;
+import hospital.server.repository.RegistrationRow;
 import com.google.protobuf.Empty;
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import jakarta.transaction.Transactional;
 import lombok.AllArgsConstructor;
 import net.devh.boot.grpc.server.service.GrpcService;
+import hospital.server.grpc.BatchOuterClass.BatchCreateResponse;
+import hospital.server.grpc.BatchOuterClass.BatchDeleteRequest;
+import hospital.server.grpc.BatchOuterClass.BatchDeleteResponse;
 import hospital.server.grpc.PatientOuterClass.*;
 import hospital.server.grpc.PatientServiceEndpointGrpc.*;
-import org.hibernate.Hibernate;
-
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 @GrpcService
 @AllArgsConstructor
 public class PatientServiceEndpointImpl extends PatientServiceEndpointImplBase {
+    private static final int STREAM_CHUNK_SIZE = 500;
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+    private static final int MAX_SEARCH_LIMIT = 500;
+    private static final Set<String> UPDATABLE_FIELDS = Set.of("name", "lastName", "birthDate", "sex");
+
     private final PatientRepository patientRepository;
 
     private final HospitalRepository hospitalRepository;
 
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy");
+    private final TransactionTemplate transactionTemplate;
+
+    private final HospitalServerProperties properties;
+
+    private final ResponseCache<PatientResponse> patientResponseCache;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final RegistrationIndex registrationIndex;
+
+    private final WriteBehindIntake writeBehindIntake;
+
+    private final ReactivePatientRepository reactivePatientRepository;
+
+    private final ReactiveHospitalRepository reactiveHospitalRepository;
+
+    private final PartitionedStorage partitionedStorage;
 
 
     @Override
     public void findById(FindByIdRequest request, StreamObserver<PatientResponse> responseObserver) {
         try {
             long id = request.getId();
-            Optional<Patient> optionalPatientData = patientRepository.findById(id);
+            // A write-behind patient is served from memory until its flush commits
+            Optional<PatientResponse> pending = writeBehindIntake.findPending(id);
+            if (pending.isEmpty() && reactivePatientRepository.isEnabled()) {
+                findByIdReactively(id, responseObserver);
+                return;
+            }
+            PatientResponse patientResponse = pending
+                    .orElseGet(() -> patientResponseCache.get(id, this::loadPatientResponse));
 
-            if (optionalPatientData.isEmpty()) {
+            if (patientResponse == null) {
                 // Patient not found
                 responseObserver.onError(Status.NOT_FOUND
                         .withDescription("Patient with ID " + request.getId() + " does not exist.")
                         .asRuntimeException());
             } else {
                 // Patient found
-                PatientResponse patientResponse = convertToPatientResponse(optionalPatientData.get());
                 responseObserver.onNext(patientResponse);
                 responseObserver.onCompleted();
             }
@@ -56,122 +108,363 @@ public class PatientServiceEndpointImpl extends PatientServiceEndpointImplBase {
         }
     }
 
+    @Override
+    public void findByIds(FindByIdsRequest request, StreamObserver<FindByIdsResponse> responseObserver) {
+        if (!IdLookup.checkCount(request.getIdsCount(), properties.getBatch().getMaxLookupIds(), responseObserver)) {
+            return;
+        }
+        if (reactivePatientRepository.isEnabled()) {
+            ReactiveResponse.send(findPatientResponsesReactively(request.getIdsList())
+                    .map(patients -> toFindByIdsResponse(request.getIdsList(), patients)), responseObserver);
+            return;
+        }
+        try {
+            responseObserver.onNext(toFindByIdsResponse(request.getIdsList(), findPatientResponses(request.getIdsList())));
+            responseObserver.onCompleted();
+        } catch (Exception e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Internal error occurred: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
 
     @Override
-    @Transactional
     public void registerPatientInHospital(RegisterPatientRequest request, StreamObserver<RegisterPatientResponse> responseObserver) {
         long hospitalId = request.getHospitalId();
         long patientId = request.getPatientId();
-        Optional<Patient> patientOptional = patientRepository.findById(patientId);
 
-        if (patientOptional.isEmpty()) {
+        // A registration implies that both sides exist, so the index alone answers repeated requests
+        if (registrationIndex.isReady() && registrationIndex.isRegistered(hospitalId, patientId)) {
+            responseObserver.onNext(RegisterPatientResponse.newBuilder()
+                    .setSuccess(true)
+                    .setAlreadyRegistered(true)
+                    .build());
+            responseObserver.onCompleted();
+            return;
+        }
+
+        if (writeBehindIntake.isEnabled()) {
+            registerInIntake(hospitalId, patientId, responseObserver);
+            return;
+        }
+        if (reactivePatientRepository.isEnabled()) {
+            ReactiveResponse.send(registerReactively(hospitalId, patientId), responseObserver);
+            return;
+        }
+
+        // The patient's row is read up front: listeners of the registration event need its state
+        Optional<PatientRow> patient = partitionedStorage.isEnabled()
+                ? partitionedStorage.findRowById(patientId)
+                : patientRepository.findRowById(patientId);
+        if (patient.isEmpty()) {
             responseObserver.onError(Status.NOT_FOUND
                     .withDescription("Patient with ID " + patientId + " does not exist.")
                     .asRuntimeException());
+            return;
+        }
+
+        int inserted = partitionedStorage.isEnabled()
+                ? partitionedStorage.insertRegistration(hospitalId, patientId)
+                : hospitalRepository.insertRegistration(hospitalId, patientId);
+        if (inserted == 1) {
+            eventPublisher.publishEvent(new RegistrationChanged(ChangeType.CREATED, hospitalId,
+                    convertToPatientResponse(patient.get())));
+            responseObserver.onNext(RegisterPatientResponse.newBuilder().setSuccess(true).build());
+            responseObserver.onCompleted();
+            return;
+        }
+
+        // Nothing was inserted: either the hospital is missing or the patient is already registered
+        if (!hospitalRepository.existsById(hospitalId)) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("Hospital with ID " + hospitalId + " does not exist.")
+                    .asRuntimeException());
+            return;
         }
-        Patient patient = patientOptional.get();
 
-        Optional<Hospital> hospitalOptional = hospitalRepository.findById(hospitalId);
+        responseObserver.onNext(RegisterPatientResponse.newBuilder()
+                .setSuccess(true)
+                .setAlreadyRegistered(true)
+                .build());
+        responseObserver.onCompleted();
+    }
 
-        if (hospitalOptional.isEmpty()) {
+    @Override
+    @Transactional
+    public void registerPatientsInHospital(RegisterPatientsRequest request, StreamObserver<RegisterPatientsResponse> responseObserver) {
+        if (rejectIfPartitioned("RegisterPatientsInHospital", responseObserver)) {
+            return;
+        }
+        long hospitalId = request.getHospitalId();
+        if (!hospitalRepository.existsById(hospitalId)) {
             responseObserver.onError(Status.NOT_FOUND
                     .withDescription("Hospital with ID " + hospitalId + " does not exist.")
                     .asRuntimeException());
+            return;
         }
 
-        Hospital hospital = hospitalOptional.get();
-        Hibernate.initialize(hospital.getPatients());
+        Set<Long> patientIds = new LinkedHashSet<>(request.getPatientIdsList());
+        writeBehindIntake.flushIfPending(patientIds);
+        Map<Long, PatientRow> patients = new HashMap<>();
+        if (!patientIds.isEmpty()) {
+            patientRepository.findRowsByIdIn(patientIds).forEach(patient -> patients.put(patient.id(), patient));
+        }
 
-        List<Patient> patients = hospital.getPatients();
-        patients.add(patient);
+        RegisterPatientsResponse.Builder responseBuilder = RegisterPatientsResponse.newBuilder();
+        int registered = 0;
+        for (long patientId : patientIds) {
+            PatientRow patient = patients.get(patientId);
+            if (patient == null) {
+                responseBuilder.addMissingPatientIds(patientId);
+            } else if (registrationIndex.isReady() && registrationIndex.isRegistered(hospitalId, patientId)) {
+                responseBuilder.addAlreadyRegisteredPatientIds(patientId);
+            } else if (hospitalRepository.insertRegistration(hospitalId, patientId) == 1) {
+                eventPublisher.publishEvent(new RegistrationChanged(ChangeType.CREATED, hospitalId,
+                        convertToPatientResponse(patient)));
+                registered++;
+            } else {
+                responseBuilder.addAlreadyRegisteredPatientIds(patientId);
+            }
+        }
 
-        responseObserver.onNext(RegisterPatientResponse.newBuilder().setSuccess(true).build());
+        responseObserver.onNext(responseBuilder.setRegisteredCount(registered).build());
         responseObserver.onCompleted();
     }
 
     @Override
-    @Transactional
     public void listPatientsByHospitalId(ListByHospitalIdRequest request, StreamObserver<ListPatientsResponse> responseObserver) {
         long hospitalId = request.getHospitalId();
-        Optional<Hospital> hospitalOptional = hospitalRepository.findById(hospitalId);
+        PageCursor cursor = PageCursor.parse(request.getPageSize(), request.getPageToken(),
+                properties.getPaging().getDefaultPageSize(), responseObserver);
+        if (cursor == null) {
+            return;
+        }
+        if (reactivePatientRepository.isEnabled()) {
+            ReactiveResponse.send(registrationIndex.isReady()
+                    ? listPatientsFromIndexReactively(hospitalId, cursor)
+                    : listPatientsReactively(hospitalId, cursor), responseObserver);
+            return;
+        }
+        // The index is loaded from the primary database, which holds no registrations when partitioned
+        if (registrationIndex.isReady() && !partitionedStorage.isEnabled()) {
+            listPatientsFromIndex(hospitalId, cursor, responseObserver);
+            return;
+        }
 
-        if (hospitalOptional.isEmpty()) {
+        List<PatientRow> patientRows = partitionedStorage.isEnabled()
+                ? partitionedStorage.findRowsByHospitalId(hospitalId, cursor.afterId(), cursor.lookaheadLimit())
+                : patientRepository.findRowsByHospitalId(hospitalId, cursor.afterId(), cursor.lookahead());
+        // Only an empty page needs to tell an unknown hospital apart from an empty roster
+        if (patientRows.isEmpty() && !hospitalRepository.existsById(hospitalId)) {
             responseObserver.onError(Status.NOT_FOUND
-                    .withDescription("Patient with ID " + hospitalId + " does not exist.")
+                    .withDescription("Hospital with ID " + hospitalId + " does not exist.")
                     .asRuntimeException());
+            return;
         }
 
-        Hospital hospital = hospitalOptional.get();
-        Hibernate.initialize(hospital.getPatients());
-        List<Patient> patientList = hospital.getPatients();
-
         ListPatientsResponse.Builder responseBuilder = ListPatientsResponse.newBuilder();
-        patientList.forEach(patientData -> {
-            PatientResponse patientResponse = convertToPatientResponse(patientData);
-            responseBuilder.addPatients(patientResponse);
-        });
+        for (PatientRow patientRow : cursor.page(patientRows)) {
+            responseBuilder.addPatients(convertToPatientResponse(patientRow));
+        }
+        responseBuilder.setNextPageToken(cursor.nextPageToken(patientRows, PatientRow::id));
         responseObserver.onNext(responseBuilder.build());
         responseObserver.onCompleted();
     }
 
     @Override
-    public void listAllPatients(Empty request, StreamObserver<ListPatientsResponse> responseObserver) {
-        List<Patient> patientList = patientRepository.findAll();
-        ListPatientsResponse.Builder responseBuilder = ListPatientsResponse.newBuilder();
-        patientList.forEach(patientData -> {
-            PatientResponse patientResponse = convertToPatientResponse(patientData);
-            responseBuilder.addPatients(patientResponse);
-        });
+    public void listAllPatients(ListAllPatientsRequest request, StreamObserver<ListPatientsResponse> responseObserver) {
+        PageCursor cursor = PageCursor.parse(request.getPageSize(), request.getPageToken(),
+                properties.getPaging().getDefaultPageSize(), responseObserver);
+        if (cursor == null) {
+            return;
+        }
+
+        if (reactivePatientRepository.isEnabled()) {
+            ReactiveResponse.send(reactivePatientRepository.findRowsAfterId(cursor.afterId(), cursor.lookaheadLimit())
+                    .collectList()
+                    .map(rows -> toRowsResponse(rows, cursor)), responseObserver);
+            return;
+        }
+
+        if (partitionedStorage.isEnabled()) {
+            responseObserver.onNext(toRowsResponse(partitionedStorage.findRowsAfter(cursor.afterId(), cursor.lookaheadLimit()), cursor));
+            responseObserver.onCompleted();
+            return;
+        }
+
+        List<Patient> patientList = patientRepository.findByIdGreaterThanOrderByIdAsc(cursor.afterId(), cursor.lookahead());
 
+        responseObserver.onNext(toListPatientsResponse(patientList, cursor));
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void streamAllPatients(Empty request, StreamObserver<PatientResponse> responseObserver) {
+        if (rejectIfPartitioned("StreamAllPatients", responseObserver)) {
+            return;
+        }
+        KeysetStreamer.start(responseObserver,
+                (afterId, limit) -> patientRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, limit)),
+                Patient::getId,
+                this::convertToPatientResponse,
+                STREAM_CHUNK_SIZE);
+    }
+
+
+    @Override
+    public void searchPatients(SearchPatientsRequest request, StreamObserver<ListPatientsResponse> responseObserver) {
+        if (rejectIfPartitioned("SearchPatients", responseObserver)) {
+            return;
+        }
+        PatientSearch search;
+        try {
+            if (request.getLimit() < 0) {
+                throw new IllegalArgumentException("Limit must not be negative: " + request.getLimit());
+            }
+            search = new PatientSearch(
+                    request.getNamePrefix(),
+                    request.getLastNamePrefix(),
+                    request.getSex(),
+                    request.getBornFrom().isEmpty() ? null : BirthDateCodec.parse(request.getBornFrom()),
+                    request.getBornTo().isEmpty() ? null : BirthDateCodec.parse(request.getBornTo()));
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription(e.getMessage())
+                    .asRuntimeException());
+            return;
+        }
+        int limit = request.getLimit() == 0 ? DEFAULT_SEARCH_LIMIT : Math.min(request.getLimit(), MAX_SEARCH_LIMIT);
+        if (reactivePatientRepository.isEnabled()) {
+            ReactiveResponse.send(reactivePatientRepository.search(search, limit)
+                    .map(this::convertToPatientResponse)
+                    .collectList()
+                    .map(patients -> ListPatientsResponse.newBuilder().addAllPatients(patients).build()), responseObserver);
+            return;
+        }
+
+        List<Patient> patientList = patientRepository.search(search, limit);
+
+        ListPatientsResponse.Builder responseBuilder = ListPatientsResponse.newBuilder();
+        patientList.forEach(patientData -> responseBuilder.addPatients(convertToPatientResponse(patientData)));
         responseObserver.onNext(responseBuilder.build());
         responseObserver.onCompleted();
     }
 
+    @Override
+    public StreamObserver<CreatePatientRequest> batchCreatePatients(StreamObserver<BatchCreateResponse> responseObserver) {
+        if (rejectIfPartitioned("BatchCreatePatients", responseObserver)) {
+            return new DiscardingObserver<>();
+        }
+        return new BatchInsertObserver<CreatePatientRequest, Patient>(
+                responseObserver,
+                transactionTemplate,
+                request -> Patient.builder()
+                        .sex(request.getSex())
+                        .name(request.getName())
+                        .lastName(request.getLastName())
+                        .birthDate(BirthDateCodec.parse(request.getBirthDate()))
+                        .build(),
+                patients -> {
+                    List<Patient> saved = patientRepository.saveAll(patients);
+                    // Held back by the change feed until the batch transaction commits
+                    saved.forEach(patient -> publish(ChangeType.CREATED, convertToPatientResponse(patient)));
+                    return saved;
+                },
+                Patient::getId,
+                properties.getBatch().getSize());
+    }
 
     @Override
     public void createPatient(CreatePatientRequest request, StreamObserver<PatientResponse> responseObserver) {
+        LocalDate birthDate;
         try {
-            Date birthDate = dateFormat.parse(request.getBirthDate());
-
-            Patient patient = patientRepository.save(Patient.builder()
-                    .sex(request.getSex())
-                    .name(request.getName())
-                    .lastName(request.getLastName())
-                    .birthDate(birthDate)
-                    .build());
+            birthDate = BirthDateCodec.parse(request.getBirthDate());
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription(e.getMessage())
+                    .asRuntimeException());
+            return;
+        }
 
-            PatientResponse response = convertToPatientResponse(patient);
+        if (writeBehindIntake.isEnabled()) {
+            try {
+                PatientResponse response = writeBehindIntake.createPatient(
+                        request.getName(), request.getLastName(), birthDate, request.getSex());
+                responseObserver.onNext(response);
+                responseObserver.onCompleted();
+            } catch (UncheckedIOException e) {
+                responseObserver.onError(Status.INTERNAL
+                        .withDescription("Internal error occurred: " + e.getMessage())
+                        .asRuntimeException());
+            }
+            return;
+        }
+        if (partitionedStorage.isEnabled()) {
+            PatientResponse response = convertToPatientResponse(partitionedStorage.createPatient(
+                    request.getName(), request.getLastName(), birthDate, request.getSex()));
+            publish(ChangeType.CREATED, response);
             responseObserver.onNext(response);
             responseObserver.onCompleted();
-        } catch (ParseException e) {
-            responseObserver.onError(Status.INVALID_ARGUMENT
-                    .withDescription("Invalid date format: " + e.getMessage())
-                    .asRuntimeException());
+            return;
+        }
+        if (reactivePatientRepository.isEnabled()) {
+            ReactiveResponse.send(reactivePatientRepository.create(request.getName(), request.getLastName(), birthDate, request.getSex())
+                    .map(this::convertToPatientResponse)
+                    .doOnNext(response -> publish(ChangeType.CREATED, response)), responseObserver);
+            return;
         }
+
+        Patient patient = patientRepository.save(Patient.builder()
+                .sex(request.getSex())
+                .name(request.getName())
+                .lastName(request.getLastName())
+                .birthDate(birthDate)
+                .build());
+
+        PatientResponse response = convertToPatientResponse(patient);
+        publish(ChangeType.CREATED, response);
+        responseObserver.onNext(response);
+        responseObserver.onCompleted();
     }
 
 
     @Override
     public void updatePatient(UpdatePatientRequest request, StreamObserver<PatientResponse> responseObserver) {
+        PatientUpdate update;
         try {
-            Date birthDate = dateFormat.parse(request.getBirthDate());
-
-            Patient patient = patientRepository.save(Patient.builder()
-                    .id(request.getId())
-                    .sex(request.getSex())
-                    .name(request.getName())
-                    .lastName(request.getLastName())
-                    .birthDate(birthDate)
-                    .build());
-
-            PatientResponse response = convertToPatientResponse(patient);
-            responseObserver.onNext(response);
-            responseObserver.onCompleted();
-        } catch (ParseException e) {
+            Set<String> fields = FieldMasks.paths(request.getUpdateMask(), UPDATABLE_FIELDS);
+            update = new PatientUpdate(
+                    fields.contains("name") ? request.getName() : null,
+                    fields.contains("lastName") ? request.getLastName() : null,
+                    fields.contains("birthDate") ? BirthDateCodec.parse(request.getBirthDate()) : null,
+                    fields.contains("sex") ? request.getSex() : null);
+        } catch (IllegalArgumentException e) {
             responseObserver.onError(Status.INVALID_ARGUMENT
-                    .withDescription("Invalid date format: " + e.getMessage())
+                    .withDescription(e.getMessage())
                     .asRuntimeException());
+            return;
         }
+
+        long id = request.getId();
+        writeBehindIntake.flushIfPending(List.of(id));
+        if (reactivePatientRepository.isEnabled()) {
+            ReactiveResponse.send(updateReactively(id, update), responseObserver);
+            return;
+        }
+        PatientResponse response = partitionedStorage.isEnabled()
+                ? applyPartitionedUpdate(id, update)
+                : transactionTemplate.execute(status -> applyUpdate(id, update));
+        if (response == null) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("Patient with ID " + id + " does not exist.")
+                    .asRuntimeException());
+            return;
+        }
+
+        patientResponseCache.invalidate(id);
+        responseObserver.onNext(response);
+        responseObserver.onCompleted();
     }
 
     @Override
@@ -180,8 +473,16 @@ public class PatientServiceEndpointImpl extends PatientServiceEndpointImplBase {
 
         if (optionalId.isPresent()) {
             long id = optionalId.get();
-            if (patientRepository.existsById(id)) {
-                patientRepository.deleteById(id);
+            writeBehindIntake.flushIfPending(List.of(id));
+            if (reactivePatientRepository.isEnabled()) {
+                ReactiveResponse.send(deleteReactively(id), responseObserver);
+                return;
+            }
+            boolean deleted = partitionedStorage.isEnabled()
+                    ? deletePartitioned(id)
+                    : !transactionTemplate.execute(status -> deletePatients(List.of(id))).isEmpty();
+            if (deleted) {
+                patientResponseCache.invalidate(id);
                 responseObserver.onNext(DeleteResponse.newBuilder()
                         .setSuccess(true)
                         .build());
@@ -199,19 +500,373 @@ public class PatientServiceEndpointImpl extends PatientServiceEndpointImplBase {
         responseObserver.onCompleted();
     }
 
+    @Override
+    public void batchDeletePatients(BatchDeleteRequest request, StreamObserver<BatchDeleteResponse> responseObserver) {
+        if (rejectIfPartitioned("BatchDeletePatients", responseObserver)) {
+            return;
+        }
+        new ChunkedDelete(transactionTemplate, this::deletePatients,
+                deleted -> deleted.forEach(patientResponseCache::invalidate), properties.getBatch().getSize())
+                .serve(request, (createdBefore, afterId, limit) ->
+                                patientRepository.findIdsCreatedBefore(createdBefore, afterId, PageRequest.of(0, limit)),
+                        writeBehindIntake::flushIfPending, responseObserver);
+    }
+
+    /**
+     * @return the patient after the update, or null if it does not exist
+     */
+    private PatientResponse applyUpdate(long id, PatientUpdate update) {
+        // The census needs the old sex and birth date to move the patient between its buckets
+        PatientResponse previous = null;
+        if (update.sex() != null || update.birthDate() != null) {
+            Optional<PatientRow> row = patientRepository.findRowById(id);
+            if (row.isEmpty()) {
+                return null;
+            }
+            previous = convertToPatientResponse(row.get());
+        }
+
+        if (patientRepository.update(id, update) == 0) {
+            return null;
+        }
+
+        PatientResponse current;
+        if (previous != null) {
+            current = applyTo(previous, update);
+        } else {
+            // Only names changed: read the columns the response needs but the request did not carry
+            current = patientRepository.findRowById(id).map(this::convertToPatientResponse).orElse(null);
+        }
+        // The census moves the patient in each of its hospitals, after the commit when it may no longer query
+        List<Long> hospitalIds = previous != null && (!previous.getSex().equals(current.getSex())
+                || !previous.getBirthDate().equals(current.getBirthDate()))
+                ? hospitalRepository.findHospitalIdsByPatientId(id)
+                : List.of();
+        eventPublisher.publishEvent(new PatientChanged(ChangeType.UPDATED, current, previous, hospitalIds));
+        return current;
+    }
+
+    private static PatientResponse applyTo(PatientResponse patient, PatientUpdate update) {
+        PatientResponse.Builder builder = patient.toBuilder();
+        if (update.name() != null) {
+            builder.setName(update.name());
+        }
+        if (update.lastName() != null) {
+            builder.setLastName(update.lastName());
+        }
+        if (update.birthDate() != null) {
+            builder.setBirthDate(BirthDateCodec.format(update.birthDate()));
+        }
+        if (update.sex() != null) {
+            builder.setSex(update.sex());
+        }
+        return builder.build();
+    }
+
+    /**
+     * {@link #applyUpdate} on the patient's partition, announced once its transaction has committed.
+     *
+     * @return the patient after the update, or null if it does not exist
+     */
+    private PatientResponse applyPartitionedUpdate(long id, PatientUpdate update) {
+        return partitionedStorage.updatePatient(id, update)
+                .map(updated -> {
+                    PatientResponse current = convertToPatientResponse(updated.current());
+                    PatientResponse previous = updated.previous() == null ? null : convertToPatientResponse(updated.previous());
+                    eventPublisher.publishEvent(new PatientChanged(ChangeType.UPDATED, current, previous, updated.hospitalIds()));
+                    return current;
+                })
+                .orElse(null);
+    }
+
+    /**
+     * Deletes the patient from its partition and announces it, with its registrations, once the
+     * partition's transaction has committed.
+     *
+     * @return whether the patient existed
+     */
+    private boolean deletePartitioned(long id) {
+        Optional<PartitionedStorage.Deleted> deleted = partitionedStorage.deletePatient(id);
+        deleted.ifPresent(last -> {
+            PatientResponse patient = convertToPatientResponse(last.patient());
+            last.hospitalIds().forEach(hospitalId -> eventPublisher.publishEvent(
+                    new RegistrationChanged(ChangeType.DELETED, hospitalId, patient)));
+            publish(ChangeType.DELETED, patient);
+        });
+        return deleted.isPresent();
+    }
+
+    /**
+     * Fails the call with {@code UNIMPLEMENTED} if patients are partitioned: the RPC reads or writes
+     * the primary database only.
+     *
+     * @return whether the call was rejected
+     */
+    private boolean rejectIfPartitioned(String rpc, StreamObserver<?> responseObserver) {
+        if (!partitionedStorage.isEnabled()) {
+            return false;
+        }
+        responseObserver.onError(Status.UNIMPLEMENTED
+                .withDescription(rpc + " is not available with partitioned storage.")
+                .asRuntimeException());
+        return true;
+    }
+
+    /**
+     * Deletes the existing patients among the ids with four statements, whatever their number. Must
+     * run within a transaction.
+     *
+     * @return the ids of the deleted patients
+     */
+    private Set<Long> deletePatients(Collection<Long> ids) {
+        Map<Long, PatientResponse> lastStates = new LinkedHashMap<>();
+        patientRepository.findRowsByIdIn(ids).forEach(patient -> lastStates.put(patient.id(), convertToPatientResponse(patient)));
+        if (lastStates.isEmpty()) {
+            return Set.of();
+        }
+        List<RegistrationRow> registrations = hospitalRepository.findRegistrationsByPatientIdIn(lastStates.keySet());
+        hospitalRepository.deleteRegistrationsByPatientIdIn(lastStates.keySet());
+        patientRepository.deleteRowsByIdIn(lastStates.keySet());
+
+        // Held back by the listeners until the transaction commits
+        registrations.forEach(registration -> eventPublisher.publishEvent(new RegistrationChanged(
+                ChangeType.DELETED, registration.hospitalId(), lastStates.get(registration.patientId()))));
+        lastStates.values().forEach(patient -> publish(ChangeType.DELETED, patient));
+        return lastStates.keySet();
+    }
+
+    private void publish(ChangeType type, PatientResponse patient) {
+        eventPublisher.publishEvent(new PatientChanged(type, patient));
+    }
+
+    private ListPatientsResponse toListPatientsResponse(List<Patient> patientList, PageCursor cursor) {
+        ListPatientsResponse.Builder responseBuilder = ListPatientsResponse.newBuilder();
+        cursor.page(patientList).forEach(patientData -> {
+            PatientResponse patientResponse = convertToPatientResponse(patientData);
+            responseBuilder.addPatients(patientResponse);
+        });
+        responseBuilder.setNextPageToken(cursor.nextPageToken(patientList, Patient::getId));
+        return responseBuilder.build();
+    }
+
+    private ListPatientsResponse toRowsResponse(List<PatientRow> rows, PageCursor cursor) {
+        return ListPatientsResponse.newBuilder()
+                .addAllPatients(cursor.page(rows).stream().map(this::convertToPatientResponse).toList())
+                .setNextPageToken(cursor.nextPageToken(rows, PatientRow::id))
+                .build();
+    }
+
+    private static FindByIdsResponse toFindByIdsResponse(List<Long> ids, Map<Long, PatientResponse> patients) {
+        FindByIdsResponse.Builder responseBuilder = FindByIdsResponse.newBuilder();
+        for (long id : ids) {
+            PatientResponse patient = patients.get(id);
+            if (patient == null) {
+                responseBuilder.addMissingIds(id);
+            } else {
+                responseBuilder.addPatients(patient);
+            }
+        }
+        return responseBuilder.build();
+    }
+
+    // Write-behind registration: the patient may still be pending, and the registration is
+    // acknowledged once it is in the intake log
+    private void registerInIntake(long hospitalId, long patientId, StreamObserver<RegisterPatientResponse> responseObserver) {
+        if (writeBehindIntake.findPending(patientId).isEmpty() && !patientRepository.existsById(patientId)) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("Patient with ID " + patientId + " does not exist.")
+                    .asRuntimeException());
+            return;
+        }
+        if (!hospitalRepository.existsById(hospitalId)) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("Hospital with ID " + hospitalId + " does not exist.")
+                    .asRuntimeException());
+            return;
+        }
+
+        boolean alreadyRegistered = writeBehindIntake.isPendingRegistration(hospitalId, patientId)
+                || (registrationIndex.isReady()
+                        ? registrationIndex.isRegistered(hospitalId, patientId)
+                        : hospitalRepository.existsRegistration(hospitalId, patientId));
+        if (!alreadyRegistered) {
+            try {
+                writeBehindIntake.registerPatient(hospitalId, patientId);
+            } catch (UncheckedIOException e) {
+                responseObserver.onError(Status.INTERNAL
+                        .withDescription("Internal error occurred: " + e.getMessage())
+                        .asRuntimeException());
+                return;
+            }
+        }
+        responseObserver.onNext(RegisterPatientResponse.newBuilder()
+                .setSuccess(true)
+                .setAlreadyRegistered(alreadyRegistered)
+                .build());
+        responseObserver.onCompleted();
+    }
+
+    // R2DBC engine: the handler returns once the query is subscribed, and the response is sent when it
+    // completes. Loads fill the response cache unless an invalidation ran meanwhile.
+    private void findByIdReactively(long id, StreamObserver<PatientResponse> responseObserver) {
+        PatientResponse cached = patientResponseCache.getAllPresent(List.of(id)).get(id);
+        if (cached != null) {
+            responseObserver.onNext(cached);
+            responseObserver.onCompleted();
+            return;
+        }
+        long stamp = patientResponseCache.stamp();
+        ReactiveResponse.send(reactivePatientRepository.findRowById(id)
+                .map(this::convertToPatientResponse)
+                .doOnNext(patient -> patientResponseCache.putIfUnchanged(stamp, id, patient))
+                .switchIfEmpty(ReactiveResponse.notFound("Patient with ID " + id + " does not exist.")), responseObserver);
+    }
+
+    private Mono<Map<Long, PatientResponse>> findPatientResponsesReactively(List<Long> ids) {
+        long stamp = patientResponseCache.stamp();
+        return IdLookup.findReactively(ids, knownPatientResponses(ids),
+                chunk -> reactivePatientRepository.findRowsByIdIn(chunk)
+                        .map(this::convertToPatientResponse)
+                        .doOnNext(patient -> patientResponseCache.putIfUnchanged(stamp, patient.getId(), patient)),
+                PatientResponse::getId, properties.getBatch().getLookupChunkSize());
+    }
+
+    // R2DBC engine: the keyset join page, with the existence check of an empty page chained after it
+    private Mono<ListPatientsResponse> listPatientsReactively(long hospitalId, PageCursor cursor) {
+        return reactivePatientRepository.findRowsByHospitalId(hospitalId, cursor.afterId(), cursor.lookaheadLimit())
+                .collectList()
+                .flatMap(rows -> rows.isEmpty() ? requireHospital(hospitalId).thenReturn(rows) : Mono.just(rows))
+                .map(rows -> toRowsResponse(rows, cursor));
+    }
+
+    // R2DBC engine: ids from the index, rows from the response cache or reactive primary-key lookups
+    private Mono<ListPatientsResponse> listPatientsFromIndexReactively(long hospitalId, PageCursor cursor) {
+        long[] patientIds = registrationIndex.patientIds(hospitalId, cursor.afterId(), cursor.lookaheadLimit());
+        int pageLength = Math.min(patientIds.length, cursor.pageSize());
+        List<Long> ids = Arrays.stream(patientIds, 0, pageLength).boxed().toList();
+        Mono<Void> hospitalCheck = patientIds.length == 0 ? requireHospital(hospitalId) : Mono.empty();
+        return hospitalCheck.then(findPatientResponsesReactively(ids))
+                .map(found -> toIndexPage(ids, found, patientIds, pageLength));
+    }
+
+    private Mono<Void> requireHospital(long hospitalId) {
+        return reactiveHospitalRepository.existsById(hospitalId)
+                .flatMap(exists -> exists
+                        ? Mono.<Void>empty()
+                        : ReactiveResponse.notFound("Hospital with ID " + hospitalId + " does not exist."));
+    }
+
+    // R2DBC engine: the patient's row is read up front, as listeners of the registration event need its state
+    private Mono<RegisterPatientResponse> registerReactively(long hospitalId, long patientId) {
+        return reactivePatientRepository.findRowById(patientId)
+                .switchIfEmpty(ReactiveResponse.notFound("Patient with ID " + patientId + " does not exist."))
+                .flatMap(patient -> reactiveHospitalRepository.insertRegistration(hospitalId, patientId)
+                        .flatMap(inserted -> {
+                            if (inserted == 1) {
+                                eventPublisher.publishEvent(new RegistrationChanged(ChangeType.CREATED, hospitalId,
+                                        convertToPatientResponse(patient)));
+                                return Mono.just(RegisterPatientResponse.newBuilder().setSuccess(true).build());
+                            }
+                            // Nothing was inserted: either the hospital is missing or the patient is already registered
+                            return requireHospital(hospitalId).thenReturn(RegisterPatientResponse.newBuilder()
+                                    .setSuccess(true)
+                                    .setAlreadyRegistered(true)
+                                    .build());
+                        }));
+    }
+
+    // R2DBC engine: announced once the update has committed, then the cached response is dropped
+    private Mono<PatientResponse> updateReactively(long id, PatientUpdate update) {
+        return reactivePatientRepository.update(id, update)
+                .map(updated -> {
+                    PatientResponse current = convertToPatientResponse(updated.current());
+                    PatientResponse previous = updated.previous() == null ? null : convertToPatientResponse(updated.previous());
+                    eventPublisher.publishEvent(new PatientChanged(ChangeType.UPDATED, current, previous, updated.hospitalIds()));
+                    patientResponseCache.invalidate(id);
+                    return current;
+                })
+                .switchIfEmpty(ReactiveResponse.notFound("Patient with ID " + id + " does not exist."));
+    }
+
+    private Mono<DeleteResponse> deleteReactively(long id) {
+        return reactivePatientRepository.delete(id)
+                .map(deleted -> {
+                    PatientResponse patient = convertToPatientResponse(deleted.patient());
+                    deleted.hospitalIds().forEach(hospitalId -> eventPublisher.publishEvent(
+                            new RegistrationChanged(ChangeType.DELETED, hospitalId, patient)));
+                    publish(ChangeType.DELETED, patient);
+                    patientResponseCache.invalidate(id);
+                    return DeleteResponse.newBuilder().setSuccess(true).build();
+                })
+                .defaultIfEmpty(DeleteResponse.newBuilder().setSuccess(false).build());
+    }
+
+    // Ids come from the index and rows from the response cache or a primary-key lookup, so the
+    // roster is read without a join
+    private void listPatientsFromIndex(long hospitalId, PageCursor cursor, StreamObserver<ListPatientsResponse> responseObserver) {
+        long[] patientIds = registrationIndex.patientIds(hospitalId, cursor.afterId(), cursor.lookaheadLimit());
+        if (patientIds.length == 0 && !hospitalRepository.existsById(hospitalId)) {
+            responseObserver.onError(Status.NOT_FOUND
+                    .withDescription("Hospital with ID " + hospitalId + " does not exist.")
+                    .asRuntimeException());
+            return;
+        }
+
+        int pageLength = Math.min(patientIds.length, cursor.pageSize());
+        List<Long> ids = Arrays.stream(patientIds, 0, pageLength).boxed().toList();
+        responseObserver.onNext(toIndexPage(ids, findPatientResponses(ids), patientIds, pageLength));
+        responseObserver.onCompleted();
+    }
+
+    private static ListPatientsResponse toIndexPage(List<Long> ids, Map<Long, PatientResponse> found, long[] patientIds, int pageLength) {
+        // A patient deleted after the index was read has no row left to list
+        return ListPatientsResponse.newBuilder()
+                .addAllPatients(ids.stream().map(found::get).filter(Objects::nonNull).toList())
+                .setNextPageToken(patientIds.length > pageLength ? PageCursor.encode(patientIds[pageLength - 1]) : "")
+                .build();
+    }
+
+    private Map<Long, PatientResponse> findPatientResponses(List<Long> ids) {
+        return IdLookup.find(ids, knownPatientResponses(ids),
+                chunk -> partitionedStorage.isEnabled()
+                        ? partitionedStorage.findRowsByIdIn(chunk).stream().map(this::convertToPatientResponse).toList()
+                        : patientRepository.findAllById(chunk).stream().map(this::convertToPatientResponse).toList(),
+                PatientResponse::getId, properties.getBatch().getLookupChunkSize());
+    }
+
+    // Responses at hand without a query: cached ones, and write-behind patients not yet flushed
+    private Map<Long, PatientResponse> knownPatientResponses(List<Long> ids) {
+        Map<Long, PatientResponse> known = new HashMap<>(patientResponseCache.getAllPresent(ids));
+        if (writeBehindIntake.isEnabled()) {
+            ids.forEach(id -> writeBehindIntake.findPending(id).ifPresent(patient -> known.put(id, patient)));
+        }
+        return known;
+    }
+
+    private PatientResponse loadPatientResponse(long id) {
+        if (partitionedStorage.isEnabled()) {
+            return partitionedStorage.findRowById(id).map(this::convertToPatientResponse).orElse(null);
+        }
+        return patientRepository.findById(id).map(this::convertToPatientResponse).orElse(null);
+    }
+
     private PatientResponse convertToPatientResponse(Patient patient) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(patient.getBirthDate());
-        int day = cal.get(Calendar.DAY_OF_MONTH);
-        int month = cal.get(Calendar.MONTH) + 1;
-        int year = cal.get(Calendar.YEAR);
-        String date = String.format("%s/%s/%s", day, month, year);
         return PatientResponse.newBuilder()
                 .setId(patient.getId())
                 .setName(patient.getName())
                 .setLastName(patient.getLastName())
-                .setBirthDate(date)
+                .setBirthDate(BirthDateCodec.format(patient.getBirthDate()))
                 .setSex(patient.getSex())
                 .build();
     }
+
+    private PatientResponse convertToPatientResponse(PatientRow patient) {
+        return PatientResponse.newBuilder()
+                .setId(patient.id())
+                .setName(patient.name())
+                .setLastName(patient.lastName())
+                .setBirthDate(BirthDateCodec.format(patient.birthDate()))
+                .setSex(patient.sex())
+                .build();
+    }
 }
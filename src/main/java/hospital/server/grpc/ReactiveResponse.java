@@ -0,0 +1,38 @@
+package hospital.server.grpc;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import reactor.core.publisher.Mono;
+
+/**
+ * Completes unary calls of the R2DBC engine: the handler returns once the work is subscribed, and
+ * the response is sent when it completes. A {@link StatusRuntimeException} the work fails with is
+ * passed on as is, anything else fails the call with {@code INTERNAL}.
+ */
+final class ReactiveResponse {
+
+    private ReactiveResponse() {
+    }
+
+    /**
+     * @param response completes with the response, or fails; completing empty is a bug and fails the call
+     */
+    static <T> void send(Mono<T> response, StreamObserver<T> responseObserver) {
+        response.switchIfEmpty(Mono.error(() -> new IllegalStateException("No response was produced.")))
+                .subscribe(value -> {
+                    responseObserver.onNext(value);
+                    responseObserver.onCompleted();
+                }, error -> responseObserver.onError(error instanceof StatusRuntimeException
+                        ? error
+                        : Status.INTERNAL
+                                .withDescription("Internal error occurred: " + error.getMessage())
+                                .asRuntimeException()));
+    }
+
+    static <T> Mono<T> notFound(String description) {
+        return Mono.error(() -> Status.NOT_FOUND
+                .withDescription(description)
+                .asRuntimeException());
+    }
+}
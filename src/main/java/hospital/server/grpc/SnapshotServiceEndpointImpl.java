@@ -0,0 +1,159 @@
+package hospital.server.grpc;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import hospital.server.HospitalServerProperties;
+import hospital.server.census.Census;
+import hospital.server.grpc.SnapshotOuterClass.ExportSnapshotRequest;
+import hospital.server.grpc.SnapshotOuterClass.ImportSnapshotRequest;
+import hospital.server.grpc.SnapshotOuterClass.SnapshotResponse;
+import hospital.server.index.RegistrationIndex;
+import hospital.server.intake.WriteBehindIntake;
+import hospital.server.snapshot.SnapshotExporter;
+import hospital.server.snapshot.SnapshotImportGate;
+import hospital.server.snapshot.SnapshotImporter;
+import hospital.server.snapshot.SnapshotSummary;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import lombok.AllArgsConstructor;
+import net.devh.boot.grpc.server.service.GrpcService;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+@GrpcService
+@AllArgsConstructor
+public class SnapshotServiceEndpointImpl extends SnapshotServiceEndpointGrpc.SnapshotServiceEndpointImplBase {
+
+    private final SnapshotExporter snapshotExporter;
+    private final SnapshotImporter snapshotImporter;
+    private final RegistrationIndex registrationIndex;
+    private final Census census;
+
+    private final SnapshotImportGate snapshotImportGate;
+
+    private final WriteBehindIntake writeBehindIntake;
+
+    private final HospitalServerProperties properties;
+
+    @Override
+    public void exportSnapshot(ExportSnapshotRequest request, StreamObserver<SnapshotResponse> responseObserver) {
+        Path file;
+        try {
+            file = resolve(request.getFileName());
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            responseObserver.onNext(toResponse(snapshotExporter.export(file)));
+            responseObserver.onCompleted();
+        } catch (IOException | RuntimeException e) {
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Snapshot export failed: " + e.getMessage())
+                    .asRuntimeException());
+        }
+    }
+
+    @Override
+    public void importSnapshot(ImportSnapshotRequest request, StreamObserver<SnapshotResponse> responseObserver) {
+        Path file;
+        try {
+            file = resolve(request.getFileName());
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
+        // No patient or hospital call may write while the snapshot loads
+        try {
+            snapshotImportGate.close();
+        } catch (IllegalStateException e) {
+            responseObserver.onError(Status.FAILED_PRECONDITION.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            responseObserver.onError(Status.CANCELLED
+                    .withDescription("Interrupted while waiting for calls in flight.")
+                    .asRuntimeException());
+            return;
+        }
+        // The gate opens before the caller hears back, so a call it makes next is not turned away
+        SnapshotResponse response;
+        try {
+            try {
+                response = loadSnapshot(file, request.getFileName());
+            } finally {
+                snapshotImportGate.open();
+            }
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
+            return;
+        }
+        responseObserver.onNext(response);
+        responseObserver.onCompleted();
+    }
+
+    /**
+     * @throws StatusRuntimeException with the status to close the call with, if the snapshot was not imported
+     */
+    private SnapshotResponse loadSnapshot(Path file, String fileName) {
+        // Acknowledged write-behind patients hold ids and are flushed in the background; none may be waiting
+        int pending = writeBehindIntake.pendingCount();
+        if (pending > 0) {
+            throw Status.FAILED_PRECONDITION
+                    .withDescription(pending + " intake writes are not flushed to the database yet.")
+                    .asRuntimeException();
+        }
+        SnapshotSummary summary;
+        try {
+            summary = snapshotImporter.importFrom(file);
+        } catch (NoSuchFileException e) {
+            throw Status.NOT_FOUND
+                    .withDescription("Snapshot " + fileName + " does not exist.")
+                    .asRuntimeException();
+        } catch (StreamCorruptedException | InvalidProtocolBufferException e) {
+            throw Status.DATA_LOSS.withDescription(e.getMessage()).asRuntimeException();
+        } catch (IllegalStateException e) {
+            throw Status.FAILED_PRECONDITION.withDescription(e.getMessage()).asRuntimeException();
+        } catch (IOException | RuntimeException e) {
+            throw Status.INTERNAL
+                    .withDescription("Snapshot import failed: " + e.getMessage())
+                    .asRuntimeException();
+        }
+
+        // The import published no change events, so rebuild what they would have kept up to date
+        if (registrationIndex.isReady()) {
+            registrationIndex.load();
+        }
+        census.rebuild(true);
+        return toResponse(summary);
+    }
+
+    // Only a plain file name, resolved in hospital.snapshot.directory, so a caller cannot reach the rest of the file system
+    private Path resolve(String fileName) {
+        if (fileName.isBlank()) {
+            throw new IllegalArgumentException("fileName must be set.");
+        }
+        Path name = Path.of(fileName);
+        Path directory = Path.of(properties.getSnapshot().getDirectory()).toAbsolutePath().normalize();
+        Path file = directory.resolve(name).normalize();
+        if (name.isAbsolute() || name.getNameCount() != 1 || !directory.equals(file.getParent())) {
+            throw new IllegalArgumentException("fileName must name a file in the snapshot directory, not a path: " + fileName);
+        }
+        return file;
+    }
+
+    private static SnapshotResponse toResponse(SnapshotSummary summary) {
+        return SnapshotResponse.newBuilder()
+                .setHospitals(summary.hospitals())
+                .setPatients(summary.patients())
+                .setRegistrations(summary.registrations())
+                .setChecksum(summary.checksum())
+                .setElapsedMillis(summary.elapsedMillis())
+                .build();
+    }
+}
@@ -0,0 +1,204 @@
+package hospital.server.index;
+
+import java.util.Arrays;
+
+/**
+ * Map from a long key to a set of longs, with no boxing: keys live in an open-addressing table with
+ * linear probing, each key's values in a sorted {@code long[]}. A value array is replaced rather
+ * than modified, so one handed out by {@link #get} never changes under its reader. Keys and values
+ * must be positive; 0 marks a free slot. Not thread-safe.
+ */
+final class LongSetMultimap {
+    static final long[] EMPTY = new long[0];
+
+    private static final int MIN_CAPACITY = 16;
+    // Object header plus length of an array, and a compressed reference, on a 64-bit JVM
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+
+    private long[] keys = new long[MIN_CAPACITY];
+    private long[][] values = new long[MIN_CAPACITY][];
+    private int size;
+    private long valueCount;
+
+    /**
+     * @return the values of the key in ascending order, empty if it has none
+     */
+    long[] get(long key) {
+        int slot = find(key);
+        return slot < 0 ? EMPTY : values[slot];
+    }
+
+    boolean contains(long key, long value) {
+        return Arrays.binarySearch(get(key), value) >= 0;
+    }
+
+    /**
+     * @return false if the value was already present
+     */
+    boolean add(long key, long value) {
+        requirePositive(key);
+        requirePositive(value);
+        int slot = slotOf(key);
+        if (keys[slot] == 0) {
+            occupy(slot, key, new long[] {value});
+            valueCount++;
+            return true;
+        }
+        long[] current = values[slot];
+        int position = Arrays.binarySearch(current, value);
+        if (position >= 0) {
+            return false;
+        }
+        int insertAt = -position - 1;
+        long[] updated = new long[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, insertAt);
+        updated[insertAt] = value;
+        System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+        values[slot] = updated;
+        valueCount++;
+        return true;
+    }
+
+    /**
+     * Replaces all values of the key. Used for bulk loads, where adding one value at a time would copy
+     * the array once per value.
+     *
+     * @param sortedValues distinct positive values in ascending order; the map takes ownership of the array
+     */
+    void putAll(long key, long[] sortedValues) {
+        requirePositive(key);
+        removeKey(key);
+        if (sortedValues.length == 0) {
+            return;
+        }
+        occupy(slotOf(key), key, sortedValues);
+        valueCount += sortedValues.length;
+    }
+
+    /**
+     * @return false if the value was not present
+     */
+    boolean remove(long key, long value) {
+        int slot = find(key);
+        if (slot < 0) {
+            return false;
+        }
+        long[] current = values[slot];
+        int position = Arrays.binarySearch(current, value);
+        if (position < 0) {
+            return false;
+        }
+        valueCount--;
+        if (current.length == 1) {
+            vacate(slot);
+            return true;
+        }
+        long[] updated = new long[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, position);
+        System.arraycopy(current, position + 1, updated, position, current.length - position - 1);
+        values[slot] = updated;
+        return true;
+    }
+
+    /**
+     * @return the values the key had, empty if none
+     */
+    long[] removeKey(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return EMPTY;
+        }
+        long[] removed = values[slot];
+        valueCount -= removed.length;
+        vacate(slot);
+        return removed;
+    }
+
+    int keyCount() {
+        return size;
+    }
+
+    long valueCount() {
+        return valueCount;
+    }
+
+    /**
+     * Heap footprint of the table and the value arrays, not counting this object itself.
+     */
+    long estimatedBytes() {
+        long table = 2L * ARRAY_HEADER_BYTES + (long) keys.length * (Long.BYTES + REFERENCE_BYTES);
+        return table + (long) size * ARRAY_HEADER_BYTES + valueCount * Long.BYTES;
+    }
+
+    private void occupy(int slot, long key, long[] slotValues) {
+        keys[slot] = key;
+        values[slot] = slotValues;
+        // Kept at most half full, so probe chains stay short
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+    }
+
+    // Backward-shift deletion: later entries of the probe chain move into the hole, so lookups never
+    // need tombstones and the table does not degrade under churn
+    private void vacate(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = 0;
+        values[hole] = null;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[][] oldValues = values;
+        keys = new long[capacity];
+        values = new long[capacity][];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private int find(long key) {
+        if (key <= 0) {
+            return -1;
+        }
+        int slot = slotOf(key);
+        return keys[slot] == key ? slot : -1;
+    }
+
+    // The slot holding the key, or the free slot where it belongs
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(long key) {
+        // Ids are sequential; Fibonacci hashing spreads them across the table
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    private static void requirePositive(long id) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("Ids must be positive: " + id);
+        }
+    }
+}
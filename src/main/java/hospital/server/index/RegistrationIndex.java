@@ -0,0 +1,286 @@
+package hospital.server.index;
+
+import hospital.server.event.ChangeType;
+import hospital.server.event.HospitalChanged;
+import hospital.server.event.PatientChanged;
+import hospital.server.event.RegistrationChanged;
+import hospital.server.repository.HospitalRepository;
+import hospital.server.repository.RegistrationRow;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * In-memory copy of the hospital_patient relation, held in both directions as sorted id arrays in
+ * primitive maps, so relationship reads and membership checks need neither a query nor boxed ids.
+ * It is loaded once the application is ready and kept current from the committed registration,
+ * patient and hospital events; changes committed while it loads are replayed onto the loaded copy
+ * before it serves reads. Like the census, it trails each commit by the time its listeners take.
+ */
+public class RegistrationIndex {
+    // Hospitals whose rosters are read per load query
+    private static final int LOAD_SLICE_SIZE = 256;
+
+    private final HospitalRepository hospitalRepository;
+    private final boolean enabled;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock
+    private Adjacency adjacency = new Adjacency();
+    // Guarded by lock; collects the changes committed while a load runs
+    private List<Consumer<Adjacency>> pending;
+    private volatile boolean ready;
+
+    public RegistrationIndex(HospitalRepository hospitalRepository, boolean enabled) {
+        this.hospitalRepository = hospitalRepository;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return whether the index is loaded; until then callers read the database
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return up to {@code limit} ids of the patients registered in the hospital with an id above {@code afterId}, ascending
+     */
+    public long[] patientIds(long hospitalId, long afterId, int limit) {
+        return read(current -> page(current.patientsByHospital.get(hospitalId), afterId, limit));
+    }
+
+    /**
+     * @return up to {@code limit} ids of the hospitals the patient is registered in with an id above {@code afterId}, ascending
+     */
+    public long[] hospitalIds(long patientId, long afterId, int limit) {
+        return read(current -> page(current.hospitalsByPatient.get(patientId), afterId, limit));
+    }
+
+    public boolean isRegistered(long hospitalId, long patientId) {
+        return read(current -> current.patientsByHospital.contains(hospitalId, patientId));
+    }
+
+    public long registrationCount() {
+        return read(current -> current.patientsByHospital.valueCount());
+    }
+
+    public long estimatedBytes() {
+        return read(current -> current.patientsByHospital.estimatedBytes() + current.hospitalsByPatient.estimatedBytes());
+    }
+
+    /**
+     * Registers the size gauges, among them the footprint per million registrations, the figure to
+     * size the heap by.
+     */
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("hospital.registration.index.registrations", this, RegistrationIndex::registrationCount)
+                .description("Registrations held by the in-memory index")
+                .register(registry);
+        Gauge.builder("hospital.registration.index.bytes", this, RegistrationIndex::estimatedBytes)
+                .description("Estimated heap used by the in-memory registration index")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("hospital.registration.index.bytes.per.million", this, RegistrationIndex::bytesPerMillion)
+                .description("Estimated heap used by the in-memory registration index per million registrations")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (enabled) {
+            load();
+        }
+    }
+
+    /**
+     * Reads the whole relation, a slice of hospitals per query, and swaps it in. Safe to call while
+     * the index is serving: changes keep being applied to the current copy until the swap.
+     */
+    public synchronized void load() {
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Adjacency loaded = new Adjacency();
+        try {
+            List<Long> hospitalIds = hospitalRepository.findAllIds();
+            for (int from = 0; from < hospitalIds.size(); from += LOAD_SLICE_SIZE) {
+                long fromId = hospitalIds.get(from);
+                long toId = hospitalIds.get(Math.min(from + LOAD_SLICE_SIZE, hospitalIds.size()) - 1);
+                loaded.load(hospitalRepository.findRegistrationsByHospitalIdBetween(fromId, toId));
+            }
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            pending.forEach(change -> change.accept(loaded));
+            pending = null;
+            adjacency = loaded;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRegistrationChanged(RegistrationChanged event) {
+        long hospitalId = event.hospitalId();
+        long patientId = event.patient().getId();
+        if (event.type() == ChangeType.DELETED) {
+            apply(current -> current.unregister(hospitalId, patientId));
+        } else if (event.type() == ChangeType.CREATED) {
+            apply(current -> current.register(hospitalId, patientId));
+        }
+    }
+
+    // A patient's registrations are announced as deleted before the patient; this only guards the index
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPatientChanged(PatientChanged event) {
+        if (event.type() == ChangeType.DELETED) {
+            long patientId = event.patient().getId();
+            apply(current -> current.removePatient(patientId));
+        }
+    }
+
+    // Hospital deletes announce no registration events: the roster goes with the hospital
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onHospitalChanged(HospitalChanged event) {
+        if (event.type() == ChangeType.DELETED) {
+            long hospitalId = event.hospital().getId();
+            apply(current -> current.removeHospital(hospitalId));
+        }
+    }
+
+    private void apply(Consumer<Adjacency> change) {
+        lock.writeLock().lock();
+        try {
+            if (ready) {
+                change.accept(adjacency);
+            }
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private <T> T read(Function<Adjacency, T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.apply(adjacency);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private double bytesPerMillion() {
+        long registrations = registrationCount();
+        return registrations == 0 ? 0 : estimatedBytes() * 1_000_000.0 / registrations;
+    }
+
+    private static long[] page(long[] ids, long afterId, int limit) {
+        int position = Arrays.binarySearch(ids, afterId);
+        int from = position >= 0 ? position + 1 : -position - 1;
+        return Arrays.copyOfRange(ids, from, (int) Math.min(ids.length, (long) from + limit));
+    }
+
+    private static final class Adjacency {
+        private final LongSetMultimap patientsByHospital = new LongSetMultimap();
+        private final LongSetMultimap hospitalsByPatient = new LongSetMultimap();
+
+        void register(long hospitalId, long patientId) {
+            patientsByHospital.add(hospitalId, patientId);
+            hospitalsByPatient.add(patientId, hospitalId);
+        }
+
+        void unregister(long hospitalId, long patientId) {
+            patientsByHospital.remove(hospitalId, patientId);
+            hospitalsByPatient.remove(patientId, hospitalId);
+        }
+
+        void removeHospital(long hospitalId) {
+            for (long patientId : patientsByHospital.removeKey(hospitalId)) {
+                hospitalsByPatient.remove(patientId, hospitalId);
+            }
+        }
+
+        void removePatient(long patientId) {
+            for (long hospitalId : hospitalsByPatient.removeKey(patientId)) {
+                patientsByHospital.remove(hospitalId, patientId);
+            }
+        }
+
+        /**
+         * Builds the value arrays in bulk rather than adding one registration at a time, which would
+         * copy an array once per value: a hospital's roster is a run of the rows, and each patient's
+         * hospitals are counted first, then filled in. Slices load in ascending hospital order, so a
+         * patient's hospitals from this slice are appended after those of earlier slices, one copy
+         * per patient and slice.
+         *
+         * @param rows whole rosters of a slice of hospitals, ordered by hospital and then patient id;
+         *             the hospitals follow those of earlier calls
+         */
+        void load(List<RegistrationRow> rows) {
+            Map<Long, Integer> hospitalCounts = new HashMap<>();
+            int start = 0;
+            while (start < rows.size()) {
+                long hospitalId = rows.get(start).hospitalId();
+                int end = start;
+                while (end < rows.size() && rows.get(end).hospitalId() == hospitalId) {
+                    end++;
+                }
+                long[] patientIds = new long[end - start];
+                for (int i = start; i < end; i++) {
+                    long patientId = rows.get(i).patientId();
+                    patientIds[i - start] = patientId;
+                    hospitalCounts.merge(patientId, 1, Integer::sum);
+                }
+                patientsByHospital.putAll(hospitalId, patientIds);
+                start = end;
+            }
+
+            Map<Long, long[]> hospitalIds = new HashMap<>(hospitalCounts.size() * 2);
+            hospitalCounts.forEach((patientId, count) -> hospitalIds.put(patientId, new long[count]));
+            // Backwards over descending hospital ids, filling each array from its end, so it comes out ascending
+            for (int i = rows.size() - 1; i >= 0; i--) {
+                RegistrationRow row = rows.get(i);
+                int position = hospitalCounts.merge(row.patientId(), -1, Integer::sum);
+                hospitalIds.get(row.patientId())[position] = row.hospitalId();
+            }
+            hospitalIds.forEach((patientId, ids) -> {
+                long[] earlier = hospitalsByPatient.get(patientId);
+                long[] merged = ids;
+                if (earlier.length > 0) {
+                    merged = Arrays.copyOf(earlier, earlier.length + ids.length);
+                    System.arraycopy(ids, 0, merged, earlier.length, ids.length);
+                }
+                hospitalsByPatient.putAll(patientId, merged);
+            });
+        }
+    }
+}
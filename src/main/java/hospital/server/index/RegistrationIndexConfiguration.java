@@ -0,0 +1,19 @@
+package hospital.server.index;
+
+import hospital.server.HospitalServerProperties;
+import hospital.server.repository.HospitalRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RegistrationIndexConfiguration {
+
+    @Bean
+    public RegistrationIndex registrationIndex(HospitalRepository hospitalRepository, HospitalServerProperties properties,
+                                               MeterRegistry meterRegistry) {
+        RegistrationIndex index = new RegistrationIndex(hospitalRepository, properties.getIndex().isEnabled());
+        index.bindTo(meterRegistry);
+        return index;
+    }
+}
@@ -0,0 +1,47 @@
+package hospital.server.intake;
+
+import hospital.server.HospitalServerProperties;
+import hospital.server.repository.HospitalRepository;
+import hospital.server.repository.PatientRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class IntakeConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public WriteBehindIntake writeBehindIntake(HospitalServerProperties properties, EntityManagerFactory entityManagerFactory,
+                                               PatientRepository patientRepository, HospitalRepository hospitalRepository,
+                                               JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                               ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) throws IOException {
+        HospitalServerProperties.Intake intake = properties.getIntake();
+        if (intake.getMode() != HospitalServerProperties.IntakeMode.WRITE_BEHIND) {
+            return WriteBehindIntake.disabled();
+        }
+        // A flush commits on its own, also when it runs inside a caller's transaction
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        IntakeStore store = new IntakeStore(patientRepository, hospitalRepository, jdbcTemplate, transactionTemplate,
+                eventPublisher, intake.getFlushBatchSize());
+        WriteBehindIntake writeBehindIntake = new WriteBehindIntake(new IntakeLog(Path.of(intake.getLogDirectory())), store,
+                new PatientIdAllocator(entityManagerFactory), intake.getFlushInterval());
+        writeBehindIntake.bindTo(meterRegistry);
+        return writeBehindIntake;
+    }
+
+    // Part of the readiness group, see management.endpoint.health.group.readiness.include
+    @Bean
+    public IntakeHealthIndicator intakeHealthIndicator(WriteBehindIntake writeBehindIntake, HospitalServerProperties properties) {
+        return new IntakeHealthIndicator(writeBehindIntake, properties.getIntake().getFailuresBeforeUnhealthy());
+    }
+}
@@ -0,0 +1,34 @@
+package hospital.server.intake;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * Reports the write-behind intake down once the same log segment has failed to flush a number of
+ * times in a row. Acknowledged writes keep piling up in memory and in the log meanwhile, so the
+ * instance should stop taking traffic until the segment is dealt with.
+ */
+public class IntakeHealthIndicator implements HealthIndicator {
+    private final WriteBehindIntake intake;
+    private final int failuresBeforeDown;
+
+    public IntakeHealthIndicator(WriteBehindIntake intake, int failuresBeforeDown) {
+        this.intake = intake;
+        this.failuresBeforeDown = Math.max(1, failuresBeforeDown);
+    }
+
+    @Override
+    public Health health() {
+        if (!intake.isEnabled()) {
+            return Health.up().withDetail("mode", "direct").build();
+        }
+        Health.Builder builder = intake.flushFailure()
+                .filter(failure -> failure.consecutiveFailures() >= failuresBeforeDown)
+                .map(failure -> Health.down()
+                        .withDetail("segment", failure.segment().toString())
+                        .withDetail("consecutiveFailures", failure.consecutiveFailures())
+                        .withDetail("error", failure.error()))
+                .orElseGet(Health::up);
+        return builder.withDetail("pending", intake.pendingCount()).build();
+    }
+}
@@ -0,0 +1,241 @@
+package hospital.server.intake;
+
+import hospital.server.grpc.IntakeOuterClass.IntakeRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of acknowledged intake writes, split into numbered segment files. A single writer
+ * thread takes every append queued since its last write, writes them and fsyncs once, so concurrent
+ * callers share the cost of a sync. Each record is framed as length, CRC32C and the serialized
+ * message; a reader stops at the first frame that is incomplete or fails its checksum, which is
+ * where a crash tore the write, and whose caller was therefore never acknowledged.
+ */
+final class IntakeLog implements Closeable {
+    private static final String SEGMENT_PREFIX = "intake-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int FRAME_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final Path directory;
+    private final LinkedBlockingQueue<Append> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    // Guards the current segment against rotation while a group is written
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel segment;
+    private long segmentNumber;
+    // Set when a failed write could not be rolled back; the log refuses appends from then on
+    private volatile IOException broken;
+    private volatile boolean closed;
+
+    private record Append(byte[] record, CompletableFuture<Void> written) {
+    }
+
+    /**
+     * Opens a fresh segment after any left by an earlier run; those stay sealed until {@link #delete}d.
+     */
+    IntakeLog(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        this.segmentNumber = segments().stream().mapToLong(IntakeLog::segmentNumber).max().orElse(0) + 1;
+        this.segment = open(segmentNumber);
+        this.writer = Thread.ofPlatform().name("intake-log-writer").daemon(true).start(this::writeLoop);
+    }
+
+    /**
+     * Returns once the record is durably on disk.
+     */
+    void append(IntakeRecord record) throws IOException {
+        if (closed) {
+            throw new IOException("Intake log is closed.");
+        }
+        if (broken != null) {
+            throw new IOException("Intake log failed earlier and accepts no writes.", broken);
+        }
+        Append append = new Append(record.toByteArray(), new CompletableFuture<>());
+        queue.add(append);
+        try {
+            append.written().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the intake log.");
+        } catch (ExecutionException e) {
+            throw new IOException("Intake log write failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Starts a new segment unless the current one is empty, and returns every segment before it,
+     * oldest first. Records in those segments are all acknowledged and will not change.
+     */
+    List<Path> seal() throws IOException {
+        lock.lock();
+        try {
+            if (segment.size() > 0) {
+                segment.close();
+                segment = open(++segmentNumber);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return sealedSegments();
+    }
+
+    List<Path> sealedSegments() throws IOException {
+        long current;
+        lock.lock();
+        try {
+            current = segmentNumber;
+        } finally {
+            lock.unlock();
+        }
+        return segments().stream().filter(path -> segmentNumber(path) < current).toList();
+    }
+
+    static List<IntakeRecord> read(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        List<IntakeRecord> records = new ArrayList<>();
+        CRC32C checksum = new CRC32C();
+        while (buffer.remaining() >= FRAME_HEADER_BYTES) {
+            int length = buffer.getInt();
+            int expected = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            checksum.reset();
+            checksum.update(buffer.array(), buffer.position(), length);
+            if ((int) checksum.getValue() != expected) {
+                break;
+            }
+            records.add(IntakeRecord.parseFrom(ByteBuffer.wrap(buffer.array(), buffer.position(), length)));
+            buffer.position(buffer.position() + length);
+        }
+        return records;
+    }
+
+    void delete(Path segment) throws IOException {
+        Files.deleteIfExists(segment);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        IOException closing = new IOException("Intake log is closed.");
+        queue.forEach(append -> append.written().completeExceptionally(closing));
+        queue.clear();
+        lock.lock();
+        try {
+            segment.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        List<Append> group = new ArrayList<>();
+        while (!closed) {
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(group);
+            lock.lock();
+            try {
+                write(group);
+                group.forEach(append -> append.written().complete(null));
+            } catch (IOException | RuntimeException e) {
+                group.forEach(append -> append.written().completeExceptionally(e));
+            } finally {
+                lock.unlock();
+                group.clear();
+            }
+        }
+    }
+
+    private void write(List<Append> group) throws IOException {
+        if (broken != null) {
+            throw broken;
+        }
+        int size = 0;
+        for (Append append : group) {
+            size += FRAME_HEADER_BYTES + append.record().length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        CRC32C checksum = new CRC32C();
+        for (Append append : group) {
+            checksum.reset();
+            checksum.update(append.record());
+            buffer.putInt(append.record().length).putInt((int) checksum.getValue()).put(append.record());
+        }
+        buffer.flip();
+
+        long start = segment.position();
+        try {
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            segment.force(false);
+        } catch (IOException e) {
+            // A torn frame would hide every record appended after it, so cut the group off again
+            try {
+                segment.truncate(start);
+                segment.position(start);
+            } catch (IOException rollback) {
+                e.addSuppressed(rollback);
+                broken = e;
+            }
+            throw e;
+        }
+    }
+
+    private FileChannel open(long number) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(SEGMENT_PREFIX + String.format("%020d", number) + SEGMENT_SUFFIX),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        // Sync the directory too, so the new segment's entry survives a crash
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        }
+        return channel;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(IntakeLog::isSegment)
+                    .sorted(Comparator.comparingLong(IntakeLog::segmentNumber))
+                    .toList();
+        }
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
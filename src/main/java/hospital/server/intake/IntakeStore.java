@@ -0,0 +1,153 @@
+package hospital.server.intake;
+
+import hospital.server.event.ChangeType;
+import hospital.server.event.PatientChanged;
+import hospital.server.event.RegistrationChanged;
+import hospital.server.grpc.BirthDateCodec;
+import hospital.server.grpc.IntakeOuterClass.IntakeRecord;
+import hospital.server.grpc.IntakeOuterClass.PatientCreated;
+import hospital.server.grpc.IntakeOuterClass.PatientRegistered;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import hospital.server.model.Patient;
+import hospital.server.repository.HospitalRepository;
+import hospital.server.repository.PatientRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies intake records to the database, a chunk per transaction. Applying is idempotent, so a
+ * segment whose flush was cut short by a crash is simply applied again: patients whose id already
+ * exists and registrations already present are skipped, and only what was written is announced.
+ */
+class IntakeStore {
+    private static final String INSERT_PATIENT = "insert into patients "
+            + "(id, name, last_name, name_key, last_name_key, birth_date, sex, created_at) values (?, ?, ?, ?, ?, ?, ?, ?)";
+    // allocationSize of the patients_seq generator
+    private static final int SEQUENCE_ALLOCATION = 50;
+
+    private final PatientRepository patientRepository;
+    private final HospitalRepository hospitalRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int chunkSize;
+
+    IntakeStore(PatientRepository patientRepository, HospitalRepository hospitalRepository, JdbcTemplate jdbcTemplate,
+                TransactionTemplate transactionTemplate, ApplicationEventPublisher eventPublisher, int chunkSize) {
+        this.patientRepository = patientRepository;
+        this.hospitalRepository = hospitalRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Moves patients_seq past the id, so that ids handed out from now on cannot collide with logged
+     * patients, even when the database was restored to a state before they were allocated. The
+     * sequence is never moved back. Past the id by a whole block, as Hibernate's pooled optimizer
+     * hands out the block below the value it reads.
+     */
+    void restartSequencePast(long id) {
+        long restart = id + SEQUENCE_ALLOCATION + 1;
+        Long next = jdbcTemplate.queryForObject(
+                "select base_value from information_schema.sequences where sequence_name = 'PATIENTS_SEQ'", Long.class);
+        if (next == null || next < restart) {
+            jdbcTemplate.execute("alter sequence patients_seq restart with " + restart);
+        }
+    }
+
+    /**
+     * Applies the records in log order. Throws if a chunk fails to commit; the chunks before it stay committed.
+     */
+    void apply(List<IntakeRecord> records) {
+        for (int from = 0; from < records.size(); from += chunkSize) {
+            List<IntakeRecord> chunk = records.subList(from, Math.min(from + chunkSize, records.size()));
+            transactionTemplate.executeWithoutResult(status -> applyChunk(chunk));
+        }
+    }
+
+    private void applyChunk(List<IntakeRecord> chunk) {
+        Map<Long, PatientCreated> created = new LinkedHashMap<>();
+        List<PatientRegistered> registrations = new ArrayList<>();
+        for (IntakeRecord record : chunk) {
+            switch (record.getEntryCase()) {
+                case PATIENTCREATED -> created.put(record.getPatientCreated().getPatient().getId(), record.getPatientCreated());
+                case PATIENTREGISTERED -> registrations.add(record.getPatientRegistered());
+                default -> throw new IllegalStateException("Unknown intake record: " + record.getEntryCase());
+            }
+        }
+
+        // Patients first: a registration in the chunk may refer to a patient created earlier in it
+        Set<Long> existing = created.isEmpty() ? Set.of() : new HashSet<>(patientRepository.findExistingIds(created.keySet()));
+        List<Object[]> rows = new ArrayList<>();
+        List<PatientResponse> inserted = new ArrayList<>();
+        for (PatientCreated patientCreated : created.values()) {
+            PatientResponse patient = patientCreated.getPatient();
+            if (!existing.contains(patient.getId())) {
+                rows.add(row(patientCreated));
+                inserted.add(patient);
+            }
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_PATIENT, rows);
+        }
+        // Held back by the listeners until this chunk commits
+        inserted.forEach(patient -> eventPublisher.publishEvent(new PatientChanged(ChangeType.CREATED, patient)));
+
+        if (registrations.isEmpty()) {
+            return;
+        }
+        Map<Long, PatientResponse> patients = new HashMap<>();
+        created.forEach((id, patientCreated) -> patients.put(id, patientCreated.getPatient()));
+        Set<Long> unknown = new HashSet<>();
+        registrations.forEach(registration -> {
+            if (!patients.containsKey(registration.getPatientId())) {
+                unknown.add(registration.getPatientId());
+            }
+        });
+        if (!unknown.isEmpty()) {
+            patientRepository.findRowsByIdIn(unknown).forEach(row -> patients.put(row.id(), PatientResponse.newBuilder()
+                    .setId(row.id())
+                    .setName(row.name())
+                    .setLastName(row.lastName())
+                    .setBirthDate(BirthDateCodec.format(row.birthDate()))
+                    .setSex(row.sex())
+                    .build()));
+        }
+        for (PatientRegistered registration : registrations) {
+            // Also 0 when the hospital or the patient was deleted in the meantime
+            if (hospitalRepository.insertRegistration(registration.getHospitalId(), registration.getPatientId()) == 1) {
+                eventPublisher.publishEvent(new RegistrationChanged(ChangeType.CREATED, registration.getHospitalId(),
+                        patients.get(registration.getPatientId())));
+            }
+        }
+    }
+
+    private static Object[] row(PatientCreated patientCreated) {
+        PatientResponse patient = patientCreated.getPatient();
+        Instant createdAt = Instant.ofEpochSecond(patientCreated.getCreatedAt().getSeconds(), patientCreated.getCreatedAt().getNanos());
+        return new Object[] {
+                patient.getId(),
+                patient.getName(),
+                patient.getLastName(),
+                Patient.searchKey(patient.getName()),
+                Patient.searchKey(patient.getLastName()),
+                patient.getBirthDate().isEmpty() ? null : Date.valueOf(BirthDateCodec.parse(patient.getBirthDate())),
+                patient.getSex(),
+                Timestamp.from(createdAt)
+        };
+    }
+}
@@ -0,0 +1,33 @@
+package hospital.server.intake;
+
+import hospital.server.model.Patient;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+
+/**
+ * Hands out patient ids before the row is written, from the same pooled sequence generator that
+ * Hibernate uses for saves, so write-behind and direct inserts never collide. The generator caches
+ * a block of ids per sequence call.
+ */
+class PatientIdAllocator {
+    private final SessionFactoryImplementor sessionFactory;
+    private final BeforeExecutionGenerator generator;
+
+    PatientIdAllocator(EntityManagerFactory entityManagerFactory) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.generator = (BeforeExecutionGenerator) sessionFactory.getMappingMetamodel()
+                .getEntityDescriptor(Patient.class)
+                .getGenerator();
+    }
+
+    long next() {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Object id = generator.generate((SharedSessionContractImplementor) session, null, null, EventType.INSERT);
+            return ((Number) id).longValue();
+        }
+    }
+}
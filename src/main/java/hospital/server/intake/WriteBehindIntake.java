@@ -0,0 +1,287 @@
+package hospital.server.intake;
+
+import com.google.protobuf.Timestamp;
+import hospital.server.grpc.BirthDateCodec;
+import hospital.server.grpc.IntakeOuterClass.IntakeRecord;
+import hospital.server.grpc.IntakeOuterClass.PatientCreated;
+import hospital.server.grpc.IntakeOuterClass.PatientRegistered;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind mode of CreatePatient and RegisterPatientInHospital ({@code hospital.intake.mode=write-behind}).
+ * A write is acknowledged once it is synced to the {@link IntakeLog}; a background stage seals the
+ * log segment at every flush interval and applies it to the database in large transactions. Until
+ * then the write is held in memory, so FindById sees a patient from the moment it is acknowledged.
+ * Segments left by a crash are picked up at startup and flushed like any other; before any new id is
+ * handed out, the patient sequence is moved past the ids they hold.
+ *
+ * <p>Writes that must see a pending patient in the database, such as updates and deletes, call
+ * {@link #flushIfPending} first.
+ */
+public class WriteBehindIntake implements Closeable {
+    private final IntakeLog log;
+    private final IntakeStore store;
+    private final PatientIdAllocator idAllocator;
+    private final Duration flushInterval;
+    private final ScheduledExecutorService flusher;
+
+    private final ConcurrentHashMap<Long, PatientResponse> pendingPatients = new ConcurrentHashMap<>();
+    private final Set<PendingRegistration> pendingRegistrations = ConcurrentHashMap.newKeySet();
+    private final AtomicLong flushFailures = new AtomicLong();
+    // The segment the last flush failed on, cleared by a flush that applies every segment
+    private volatile FlushFailure flushFailure;
+
+    private record PendingRegistration(long hospitalId, long patientId) {
+    }
+
+    /**
+     * @param consecutiveFailures flushes in a row that failed on this segment
+     */
+    public record FlushFailure(Path segment, int consecutiveFailures, String error) {
+    }
+
+    /**
+     * The intake of the direct mode: every call writes straight to the database.
+     */
+    public static WriteBehindIntake disabled() {
+        return new WriteBehindIntake();
+    }
+
+    private WriteBehindIntake() {
+        this.log = null;
+        this.store = null;
+        this.idAllocator = null;
+        this.flushInterval = null;
+        this.flusher = null;
+    }
+
+    WriteBehindIntake(IntakeLog log, IntakeStore store, PatientIdAllocator idAllocator, Duration flushInterval) throws IOException {
+        this.log = log;
+        this.store = store;
+        this.idAllocator = idAllocator;
+        long maxLoggedId = 0;
+        for (Path segment : log.sealedSegments()) {
+            for (IntakeRecord record : IntakeLog.read(segment)) {
+                track(record);
+                if (record.hasPatientCreated()) {
+                    maxLoggedId = Math.max(maxLoggedId, record.getPatientCreated().getPatient().getId());
+                }
+            }
+        }
+        if (maxLoggedId > 0) {
+            store.restartSequencePast(maxLoggedId);
+        }
+        this.flushInterval = flushInterval;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("intake-flusher").daemon(true).factory());
+    }
+
+    // Flushes announce their writes, so they wait until the listeners are in place. Segments recovered
+    // from a crash go out with the first flush.
+    @EventListener(ApplicationReadyEvent.class)
+    public void startFlushing() {
+        if (isEnabled()) {
+            long intervalMillis = Math.max(1, flushInterval.toMillis());
+            flusher.scheduleWithFixedDelay(this::flushQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isEnabled() {
+        return log != null;
+    }
+
+    /**
+     * Logs a new patient and returns it with its allocated id once the log is synced.
+     *
+     * @throws UncheckedIOException if the log could not be written; nothing was acknowledged then
+     * @throws IllegalStateException if the intake is disabled
+     */
+    public PatientResponse createPatient(String name, String lastName, LocalDate birthDate, String sex) {
+        requireEnabled();
+        PatientResponse patient = PatientResponse.newBuilder()
+                .setId(idAllocator.next())
+                .setName(name)
+                .setLastName(lastName)
+                .setBirthDate(BirthDateCodec.format(birthDate))
+                .setSex(sex)
+                .build();
+        // Tracked before the sync: a flush right after it must find the patient to retire it
+        pendingPatients.put(patient.getId(), patient);
+        try {
+            log.append(IntakeRecord.newBuilder()
+                    .setPatientCreated(PatientCreated.newBuilder()
+                            .setPatient(patient)
+                            .setCreatedAt(timestamp(Instant.now())))
+                    .build());
+        } catch (IOException e) {
+            pendingPatients.remove(patient.getId());
+            throw new UncheckedIOException(e);
+        }
+        return patient;
+    }
+
+    /**
+     * Logs a registration. The caller has checked that both sides exist and the patient is not yet registered.
+     *
+     * @throws UncheckedIOException if the log could not be written; nothing was acknowledged then
+     * @throws IllegalStateException if the intake is disabled
+     */
+    public void registerPatient(long hospitalId, long patientId) {
+        requireEnabled();
+        PendingRegistration registration = new PendingRegistration(hospitalId, patientId);
+        pendingRegistrations.add(registration);
+        try {
+            log.append(IntakeRecord.newBuilder()
+                    .setPatientRegistered(PatientRegistered.newBuilder()
+                            .setHospitalId(hospitalId)
+                            .setPatientId(patientId))
+                    .build());
+        } catch (IOException e) {
+            pendingRegistrations.remove(registration);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void requireEnabled() {
+        if (!isEnabled()) {
+            throw new IllegalStateException("The write-behind intake is disabled; set hospital.intake.mode=write-behind.");
+        }
+    }
+
+    /**
+     * @return the patient if it is acknowledged but not yet in the database
+     */
+    public Optional<PatientResponse> findPending(long patientId) {
+        return Optional.ofNullable(pendingPatients.get(patientId));
+    }
+
+    public boolean isPendingRegistration(long hospitalId, long patientId) {
+        return pendingRegistrations.contains(new PendingRegistration(hospitalId, patientId));
+    }
+
+    /**
+     * Flushes right away if any of the patients is still pending, so that the caller finds them in the database.
+     */
+    public void flushIfPending(Collection<Long> patientIds) {
+        if (isEnabled() && patientIds.stream().anyMatch(pendingPatients::containsKey)) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Seals the current segment and applies every sealed one, oldest first. A segment is deleted once
+     * all of it is committed; one that fails stays for the next flush.
+     */
+    public synchronized void flush() throws IOException {
+        for (Path segment : log.seal()) {
+            try {
+                List<IntakeRecord> records = IntakeLog.read(segment);
+                store.apply(records);
+                records.forEach(this::retire);
+                log.delete(segment);
+            } catch (IOException | RuntimeException e) {
+                FlushFailure previous = flushFailure;
+                int failures = previous != null && previous.segment().equals(segment) ? previous.consecutiveFailures() + 1 : 1;
+                flushFailure = new FlushFailure(segment, failures, e.toString());
+                throw e;
+            }
+        }
+        flushFailure = null;
+    }
+
+    /**
+     * @return the segment the last flush failed on, empty once a flush has applied every segment
+     */
+    public Optional<FlushFailure> flushFailure() {
+        return Optional.ofNullable(flushFailure);
+    }
+
+    public int pendingCount() {
+        return pendingPatients.size() + pendingRegistrations.size();
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("hospital.intake.pending", this, WriteBehindIntake::pendingCount)
+                .description("Acknowledged intake writes not yet flushed to the database")
+                .register(registry);
+        FunctionCounter.builder("hospital.intake.flush.failures", flushFailures, AtomicLong::get)
+                .description("Intake flushes that failed and were left for the next attempt")
+                .register(registry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(30, TimeUnit.SECONDS);
+            // Whatever is left stays in the log and is flushed at the next start
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            log.close();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            flushFailures.incrementAndGet();
+        }
+    }
+
+    private void track(IntakeRecord record) {
+        switch (record.getEntryCase()) {
+            case PATIENTCREATED -> pendingPatients.put(record.getPatientCreated().getPatient().getId(),
+                    record.getPatientCreated().getPatient());
+            case PATIENTREGISTERED -> pendingRegistrations.add(new PendingRegistration(
+                    record.getPatientRegistered().getHospitalId(), record.getPatientRegistered().getPatientId()));
+            default -> {
+            }
+        }
+    }
+
+    private void retire(IntakeRecord record) {
+        switch (record.getEntryCase()) {
+            case PATIENTCREATED -> pendingPatients.remove(record.getPatientCreated().getPatient().getId());
+            case PATIENTREGISTERED -> pendingRegistrations.remove(new PendingRegistration(
+                    record.getPatientRegistered().getHospitalId(), record.getPatientRegistered().getPatientId()));
+            default -> {
+            }
+        }
+    }
+
+    private static Timestamp timestamp(Instant instant) {
+        return Timestamp.newBuilder().setSeconds(instant.getEpochSecond()).setNanos(instant.getNano()).build();
+    }
+}
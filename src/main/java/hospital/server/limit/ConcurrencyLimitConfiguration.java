@@ -0,0 +1,23 @@
+package hospital.server.limit;
+
+import hospital.server.HospitalServerProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.devh.boot.grpc.common.util.InterceptorOrder;
+import net.devh.boot.grpc.server.interceptor.GrpcGlobalServerInterceptor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+
+@Configuration
+public class ConcurrencyLimitConfiguration {
+
+    // Right after the call metrics (+0), so shed calls are still timed, and before the SQL statement
+    // counting (+2) and read routing (+3), so nothing else runs for a call it sheds
+    @Bean
+    @GrpcGlobalServerInterceptor
+    @Order(InterceptorOrder.ORDER_TRACING_METRICS + 1)
+    public ConcurrencyLimitInterceptor concurrencyLimitInterceptor(MeterRegistry meterRegistry,
+                                                                   HospitalServerProperties properties) {
+        return new ConcurrencyLimitInterceptor(meterRegistry, properties.getLimits());
+    }
+}
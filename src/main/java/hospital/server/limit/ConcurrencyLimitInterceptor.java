@@ -0,0 +1,214 @@
+package hospital.server.limit;
+
+import hospital.server.HospitalServerProperties;
+import hospital.server.grpc.CallArrival;
+import hospital.server.grpc.HospitalServiceEndpointGrpc;
+import hospital.server.grpc.PatientServiceEndpointGrpc;
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sheds load from the patient and hospital services before it queues for threads. Every method has
+ * its own {@link VegasLimit} on calls in flight, and all of them share a server-wide one. Methods
+ * are point calls or bulk calls; bulk calls may hold only {@code bulkShare} of the server-wide limit,
+ * so a burst of scans leaves room for lookups and registrations. A call over a limit is closed at
+ * once with {@code RESOURCE_EXHAUSTED} and a {@code grpc-retry-pushback-ms} trailer of about the
+ * method's recent latency. Only unary calls adapt the limits; streams hold a slot while they run.
+ * Latency is measured from the creation of the call's stream, so time spent queueing for a thread
+ * counts, and a call cancelled after its deadline passed counts as dropped.
+ *
+ * <p>Calls of any service that the executor shed for a full queue are closed here too, before
+ * anything else runs for them, whether or not the limits are enabled.
+ */
+public class ConcurrencyLimitInterceptor implements ServerInterceptor {
+    static final Metadata.Key<String> RETRY_PUSHBACK = Metadata.Key.of("grpc-retry-pushback-ms", Metadata.ASCII_STRING_MARSHALLER);
+    private static final Set<String> SERVICES = Set.of(
+            PatientServiceEndpointGrpc.SERVICE_NAME, HospitalServiceEndpointGrpc.SERVICE_NAME);
+    private static final long MIN_PUSHBACK_MILLIS = 10;
+
+    private final MeterRegistry registry;
+    private final HospitalServerProperties.Limits settings;
+    private final VegasLimit serverLimit;
+    private final AtomicInteger serverInFlight = new AtomicInteger();
+    private final AtomicInteger bulkInFlight = new AtomicInteger();
+    private final ConcurrentHashMap<String, MethodLimit> methods = new ConcurrentHashMap<>();
+    private final Counter shed;
+
+    public ConcurrencyLimitInterceptor(MeterRegistry registry, HospitalServerProperties.Limits settings) {
+        this.registry = registry;
+        this.settings = settings;
+        this.serverLimit = new VegasLimit(settings.getServerInitialLimit(), settings.getMinLimit(), settings.getServerMaxLimit());
+        Gauge.builder("grpc.server.concurrency.limit.server", serverLimit, VegasLimit::get)
+                .description("Calls the patient and hospital services may have in flight together")
+                .register(registry);
+        this.shed = Counter.builder("grpc.server.executor.rejected")
+                .description("Calls rejected with RESOURCE_EXHAUSTED because the executor's queue was full")
+                .register(registry);
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        MethodDescriptor<ReqT, RespT> descriptor = call.getMethodDescriptor();
+        if (CallArrival.isShed()) {
+            shed.increment();
+            MethodLimit method = methods.get(descriptor.getFullMethodName());
+            return reject(call, "Server queue of " + descriptor.getFullMethodName() + " is full",
+                    method == null ? MIN_PUSHBACK_MILLIS : method.pushbackMillis());
+        }
+        if (!settings.isEnabled() || !SERVICES.contains(descriptor.getServiceName())) {
+            return next.startCall(call, headers);
+        }
+        MethodLimit method = methods.computeIfAbsent(descriptor.getFullMethodName(),
+                name -> new MethodLimit(name, settings.getBulkMethods().contains(descriptor.getBareMethodName())));
+        Permit permit = acquire(method, descriptor.getType() == MethodDescriptor.MethodType.UNARY,
+                CallArrival.createdNanos(headers), Context.current().getDeadline());
+        if (permit == null) {
+            method.rejected.increment();
+            return reject(call, "Concurrency limit of " + descriptor.getFullMethodName() + " reached",
+                    method.pushbackMillis());
+        }
+
+        ServerCall<ReqT, RespT> limitedCall = new SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                permit.release(status.getCode());
+                super.close(status, trailers);
+            }
+        };
+
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(limitedCall, headers);
+        } catch (RuntimeException e) {
+            permit.release(Status.Code.UNKNOWN);
+            throw e;
+        }
+        return new SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onCancel() {
+                permit.release(Status.Code.CANCELLED);
+                super.onCancel();
+            }
+        };
+    }
+
+    private static <ReqT, RespT> ServerCall.Listener<ReqT> reject(ServerCall<ReqT, RespT> call, String reason,
+                                                                  long pushbackMillis) {
+        Metadata trailers = new Metadata();
+        trailers.put(RETRY_PUSHBACK, Long.toString(pushbackMillis));
+        call.close(Status.RESOURCE_EXHAUSTED.withDescription(reason + "; retry in " + pushbackMillis + " ms."), trailers);
+        return new ServerCall.Listener<>() {
+        };
+    }
+
+    // Takes a slot of the method, of the server and, for bulk methods, of the bulk share; null when any is full
+    private Permit acquire(MethodLimit method, boolean unary, long startNanos, Deadline deadline) {
+        int methodInFlight = method.inFlight.incrementAndGet();
+        int inFlight = serverInFlight.incrementAndGet();
+        int limit = serverLimit.get();
+        boolean admitted = methodInFlight <= method.limit.get() && inFlight <= limit;
+        if (admitted && method.bulk) {
+            admitted = bulkInFlight.incrementAndGet() <= Math.max(1, (int) (limit * settings.getBulkShare()));
+            if (!admitted) {
+                bulkInFlight.decrementAndGet();
+            }
+        }
+        if (!admitted) {
+            method.inFlight.decrementAndGet();
+            serverInFlight.decrementAndGet();
+            return null;
+        }
+        return new Permit(method, unary, methodInFlight, inFlight, startNanos, deadline);
+    }
+
+    private final class MethodLimit {
+        private final boolean bulk;
+        private final VegasLimit limit;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Counter rejected;
+        // Moving average of the latency; racy updates only blur the retry hint
+        private volatile long averageNanos;
+
+        private MethodLimit(String method, boolean bulk) {
+            this.bulk = bulk;
+            this.limit = new VegasLimit(settings.getInitialLimit(), settings.getMinLimit(), settings.getMaxLimit());
+            Gauge.builder("grpc.server.concurrency.limit", limit, VegasLimit::get)
+                    .description("Calls of the method that may be in flight")
+                    .tag("method", method)
+                    .register(registry);
+            this.rejected = Counter.builder("grpc.server.concurrency.rejected")
+                    .description("Calls rejected with RESOURCE_EXHAUSTED by the concurrency limits")
+                    .tag("method", method)
+                    .tag("priority", bulk ? "bulk" : "point")
+                    .register(registry);
+        }
+
+        private void sample(long rttNanos) {
+            long average = averageNanos;
+            averageNanos = average == 0 ? rttNanos : average + (rttNanos - average) / 8;
+        }
+
+        private long pushbackMillis() {
+            return Math.max(MIN_PUSHBACK_MILLIS, TimeUnit.NANOSECONDS.toMillis(averageNanos));
+        }
+    }
+
+    // Releases the slots exactly once, whichever of close() and onCancel() comes first
+    private final class Permit {
+        private final MethodLimit method;
+        private final boolean unary;
+        private final int methodInFlight;
+        private final int serverInFlightAtStart;
+        private final long startNanos;
+        private final Deadline deadline;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(MethodLimit method, boolean unary, int methodInFlight, int serverInFlightAtStart,
+                       long startNanos, Deadline deadline) {
+            this.method = method;
+            this.unary = unary;
+            this.methodInFlight = methodInFlight;
+            this.serverInFlightAtStart = serverInFlightAtStart;
+            this.startNanos = startNanos;
+            this.deadline = deadline;
+        }
+
+        private void release(Status.Code code) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            method.inFlight.decrementAndGet();
+            serverInFlight.decrementAndGet();
+            if (method.bulk) {
+                bulkInFlight.decrementAndGet();
+            }
+            // A call the client gave up on says nothing about the server's latency, unless it ran out of time
+            boolean expired = code == Status.Code.CANCELLED && deadline != null && deadline.isExpired();
+            if (unary && (code != Status.Code.CANCELLED || expired)) {
+                long rttNanos = System.nanoTime() - startNanos;
+                boolean dropped = code == Status.Code.DEADLINE_EXCEEDED || expired;
+                method.sample(rttNanos);
+                method.limit.onSample(rttNanos, methodInFlight, dropped);
+                serverLimit.onSample(rttNanos, serverInFlightAtStart, dropped);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package hospital.server.limit;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A concurrency limit that adapts like TCP Vegas: the lowest latency seen stands for the latency
+ * without queueing, and the share of a sample's latency above it estimates how many calls queue.
+ * The limit grows while few queue and shrinks as more do, or when calls time out.
+ */
+final class VegasLimit {
+    private static final int PROBE_MULTIPLIER = 30;
+
+    private final int minLimit;
+    private final int maxLimit;
+    // Guarded by this
+    private double limit;
+    private long noLoadNanos;
+    private long samplesUntilProbe;
+    private volatile int current;
+
+    VegasLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.current = (int) limit;
+        this.samplesUntilProbe = nextProbe();
+    }
+
+    int get() {
+        return current;
+    }
+
+    /**
+     * @param rttNanos  how long the call took
+     * @param inFlight  calls in flight when it started, itself included
+     * @param dropped   whether it timed out, which shrinks the limit whatever its latency
+     */
+    synchronized void onSample(long rttNanos, int inFlight, boolean dropped) {
+        if (rttNanos <= 0) {
+            return;
+        }
+        double threshold = Math.max(1, Math.log10(limit));
+        double next;
+        if (dropped) {
+            // A call that ran out of time never stands for the latency without queueing
+            next = limit - threshold;
+        } else if (--samplesUntilProbe <= 0) {
+            // Forget the no-load latency now and then, so it follows the database when it gets slower
+            samplesUntilProbe = nextProbe();
+            noLoadNanos = rttNanos;
+            return;
+        } else if (noLoadNanos == 0 || rttNanos < noLoadNanos) {
+            noLoadNanos = rttNanos;
+            return;
+        } else if (inFlight * 2 < limit) {
+            // Too few calls to tell whether the limit holds any back
+            return;
+        } else {
+            double queued = Math.ceil(limit * (1 - (double) noLoadNanos / rttNanos));
+            if (queued <= threshold) {
+                next = limit + 6 * threshold;
+            } else if (queued < 3 * threshold) {
+                next = limit + threshold;
+            } else if (queued > 6 * threshold) {
+                next = limit - threshold;
+            } else {
+                return;
+            }
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+        current = (int) limit;
+    }
+
+    private long nextProbe() {
+        return PROBE_MULTIPLIER * (long) limit + ThreadLocalRandom.current().nextInt(100);
+    }
+}
@@ -0,0 +1,72 @@
+package hospital.server.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The SQL statements one gRPC call runs, as recorded by {@link StatementRecordingDataSource}. A
+ * call's instance is bound to the thread while one of its listener callbacks runs, which is where
+ * unary and client-streaming handlers do their database work; statements run from other threads,
+ * such as a server stream's producer or a background flush, belong to no call.
+ */
+public final class CallStatements {
+    private static final ThreadLocal<CallStatements> CURRENT = new ThreadLocal<>();
+
+    private final String method;
+    private final boolean sampled;
+    private final long slowThresholdNanos;
+    // Callbacks of a call run one at a time, but not necessarily on the same thread
+    private final AtomicInteger count = new AtomicInteger();
+
+    CallStatements(String method, boolean sampled, long slowThresholdNanos) {
+        this.method = method;
+        this.sampled = sampled;
+        this.slowThresholdNanos = slowThresholdNanos;
+    }
+
+    /**
+     * @return the call whose callback runs on this thread, or null outside of one
+     */
+    public static CallStatements current() {
+        return CURRENT.get();
+    }
+
+    public String method() {
+        return method;
+    }
+
+    /**
+     * @return statements run for the call so far, a JDBC batch counting once
+     */
+    public int count() {
+        return count.get();
+    }
+
+    void executed(String sql, long elapsedNanos, boolean batch) {
+        int statementNumber = count.incrementAndGet();
+        if (sampled && elapsedNanos >= slowThresholdNanos) {
+            SlowStatementLog.log(this, statementNumber, sql, elapsedNanos, batch);
+        }
+    }
+
+    void run(Runnable callback) {
+        call(() -> {
+            callback.run();
+            return null;
+        });
+    }
+
+    <T> T call(Supplier<T> callback) {
+        CallStatements previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return callback.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
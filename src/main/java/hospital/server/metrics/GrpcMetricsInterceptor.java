@@ -0,0 +1,105 @@
+package hospital.server.metrics;
+
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records every gRPC call under {@code grpc.server.calls}: a timer per method and status code with
+ * p50/p99/p999 and a percentile histogram, plus a {@code grpc.server.calls.active} gauge of calls in
+ * flight per method. Meters are created once per method and status, so the per-call cost is two
+ * map lookups and a timer update.
+ */
+public class GrpcMetricsInterceptor implements ServerInterceptor {
+    private final MeterRegistry registry;
+    private final ConcurrentHashMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    public GrpcMetricsInterceptor(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        MethodMetrics metrics = methods.computeIfAbsent(call.getMethodDescriptor().getFullMethodName(), MethodMetrics::new);
+        CallRecorder recorder = new CallRecorder(metrics);
+
+        ServerCall<ReqT, RespT> monitoredCall = new SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                recorder.finish(status.getCode());
+                super.close(status, trailers);
+            }
+        };
+
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(monitoredCall, headers);
+        } catch (RuntimeException e) {
+            recorder.finish(Status.Code.UNKNOWN);
+            throw e;
+        }
+        return new SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onCancel() {
+                recorder.finish(Status.Code.CANCELLED);
+                super.onCancel();
+            }
+        };
+    }
+
+    private final class MethodMetrics {
+        private final String method;
+        private final AtomicInteger active = new AtomicInteger();
+        private final ConcurrentHashMap<Status.Code, Timer> timers = new ConcurrentHashMap<>();
+
+        private MethodMetrics(String method) {
+            this.method = method;
+            Gauge.builder("grpc.server.calls.active", active, AtomicInteger::get)
+                    .description("gRPC calls currently in flight")
+                    .tag("method", method)
+                    .register(registry);
+        }
+
+        private Timer timer(Status.Code code) {
+            return timers.computeIfAbsent(code, c -> Timer.builder("grpc.server.calls")
+                    .description("Latency of completed gRPC calls")
+                    .tag("method", method)
+                    .tag("status", c.name())
+                    .publishPercentiles(0.5, 0.99, 0.999)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+    }
+
+    // Closes a call exactly once, whichever of close() and onCancel() comes first
+    private static final class CallRecorder {
+        private final MethodMetrics metrics;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private CallRecorder(MethodMetrics metrics) {
+            this.metrics = metrics;
+            metrics.active.incrementAndGet();
+        }
+
+        private void finish(Status.Code code) {
+            if (finished.compareAndSet(false, true)) {
+                metrics.active.decrementAndGet();
+                metrics.timer(code).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
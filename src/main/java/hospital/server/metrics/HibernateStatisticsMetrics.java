@@ -0,0 +1,74 @@
+package hospital.server.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes Hibernate's session factory statistics as counters, plus hit counts and the hit ratio of
+ * each second-level cache region. They only move while {@code hibernate.generate_statistics} is enabled.
+ */
+public class HibernateStatisticsMetrics implements MeterBinder {
+    private final Statistics statistics;
+
+    public HibernateStatisticsMetrics(SessionFactory sessionFactory) {
+        this.statistics = sessionFactory.getStatistics();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        counter(registry, "hibernate.statements.prepared", "JDBC statements prepared", Statistics::getPrepareStatementCount);
+        counter(registry, "hibernate.queries.executed", "HQL and native queries executed", Statistics::getQueryExecutionCount);
+        counter(registry, "hibernate.entities.loaded", "Entities loaded from the database", Statistics::getEntityLoadCount);
+        counter(registry, "hibernate.entities.fetched", "Entities fetched lazily", Statistics::getEntityFetchCount);
+        counter(registry, "hibernate.collections.loaded", "Collections loaded", Statistics::getCollectionLoadCount);
+        counter(registry, "hibernate.collections.fetched", "Collections fetched lazily", Statistics::getCollectionFetchCount);
+        counter(registry, "hibernate.flushes", "Session flushes", Statistics::getFlushCount);
+        counter(registry, "hibernate.transactions", "Completed transactions", Statistics::getTransactionCount);
+
+        // Regions only exist while hospital.second-level-cache.enabled is set
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+            if (regionStatistics != null) {
+                bindRegion(registry, region, regionStatistics);
+            }
+        }
+    }
+
+    private static void bindRegion(MeterRegistry registry, String region, CacheRegionStatistics regionStatistics) {
+        FunctionCounter.builder("hibernate.second.level.cache.hits", regionStatistics, CacheRegionStatistics::getHitCount)
+                .description("Second-level cache lookups that found an entry")
+                .tag("region", region)
+                .register(registry);
+        FunctionCounter.builder("hibernate.second.level.cache.misses", regionStatistics, CacheRegionStatistics::getMissCount)
+                .description("Second-level cache lookups that went to the database")
+                .tag("region", region)
+                .register(registry);
+        FunctionCounter.builder("hibernate.second.level.cache.puts", regionStatistics, CacheRegionStatistics::getPutCount)
+                .description("Entries put into the second-level cache")
+                .tag("region", region)
+                .register(registry);
+        Gauge.builder("hibernate.second.level.cache.hit.ratio", regionStatistics, HibernateStatisticsMetrics::hitRatio)
+                .description("Share of second-level cache lookups that found an entry")
+                .tag("region", region)
+                .register(registry);
+    }
+
+    private static double hitRatio(CacheRegionStatistics regionStatistics) {
+        long hits = regionStatistics.getHitCount();
+        long lookups = hits + regionStatistics.getMissCount();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    private void counter(MeterRegistry registry, String name, String description, ToDoubleFunction<Statistics> value) {
+        FunctionCounter.builder(name, statistics, value)
+                .description(description)
+                .register(registry);
+    }
+}
@@ -0,0 +1,53 @@
+package hospital.server.metrics;
+
+import hospital.server.HospitalServerProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import net.devh.boot.grpc.common.util.InterceptorOrder;
+import net.devh.boot.grpc.server.interceptor.GrpcGlobalServerInterceptor;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class MetricsConfiguration {
+
+    // Outermost, so every call is timed, including those the concurrency limits (+1) shed
+    @Bean
+    @GrpcGlobalServerInterceptor
+    @Order(InterceptorOrder.ORDER_TRACING_METRICS)
+    public GrpcMetricsInterceptor grpcMetricsInterceptor(MeterRegistry meterRegistry) {
+        return new GrpcMetricsInterceptor(meterRegistry);
+    }
+
+    // After the concurrency limits (+1), so statements are counted only for calls that were admitted
+    @Bean
+    @GrpcGlobalServerInterceptor
+    @Order(InterceptorOrder.ORDER_TRACING_METRICS + 2)
+    public SqlStatementInterceptor sqlStatementInterceptor(MeterRegistry meterRegistry, HospitalServerProperties properties) {
+        HospitalServerProperties.Sql sql = properties.getSql();
+        return new SqlStatementInterceptor(meterRegistry, sql.getSlowLogSampleRate(), sql.getSlowThreshold());
+    }
+
+    // Wraps the datasource JPA and JdbcTemplate share, whether Boot's or the read-write routing's
+    @Bean
+    public static BeanPostProcessor statementRecordingPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource dataSource && beanName.equals("dataSource")
+                        ? new StatementRecordingDataSource(dataSource)
+                        : bean;
+            }
+        };
+    }
+
+    @Bean
+    public HibernateStatisticsMetrics hibernateStatisticsMetrics(EntityManagerFactory entityManagerFactory) {
+        return new HibernateStatisticsMetrics(entityManagerFactory.unwrap(SessionFactory.class));
+    }
+}
@@ -0,0 +1,26 @@
+package hospital.server.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs statements of sampled gRPC calls that exceed the slow threshold, as one structured record
+ * with the method, the elapsed time and the statement that ran.
+ */
+@Slf4j
+final class SlowStatementLog {
+
+    private SlowStatementLog() {
+    }
+
+    static void log(CallStatements call, int statementNumber, String sql, long elapsedNanos, boolean batch) {
+        log.atWarn()
+                .addKeyValue("grpc.method", call.method())
+                .addKeyValue("elapsed.ms", TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
+                .addKeyValue("batch", batch)
+                .addKeyValue("statement.number", statementNumber)
+                .addKeyValue("sql", sql)
+                .log("Slow SQL statement");
+    }
+}
@@ -0,0 +1,86 @@
+package hospital.server.metrics;
+
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Binds a {@link CallStatements} to every callback of a gRPC call and, when the call closes, records
+ * how many statements it ran under {@code hospital.sql.statements.per.call}, per method. A
+ * method whose count grows with the size of its result is issuing a query per row.
+ */
+public class SqlStatementInterceptor implements ServerInterceptor {
+    private final MeterRegistry registry;
+    private final double slowLogSampleRate;
+    private final long slowThresholdNanos;
+    private final ConcurrentHashMap<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public SqlStatementInterceptor(MeterRegistry registry, double slowLogSampleRate, Duration slowThreshold) {
+        this.registry = registry;
+        this.slowLogSampleRate = slowLogSampleRate;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        String method = call.getMethodDescriptor().getFullMethodName();
+        // Sampled per call, so a sampled call logs all of its slow statements
+        boolean sampled = slowLogSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < slowLogSampleRate;
+        CallStatements statements = new CallStatements(method, sampled, slowThresholdNanos);
+
+        ServerCall<ReqT, RespT> countedCall = new SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                summary(method).record(statements.count());
+                super.close(status, trailers);
+            }
+        };
+
+        ServerCall.Listener<ReqT> listener = statements.call(() -> next.startCall(countedCall, headers));
+        return new SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onMessage(ReqT message) {
+                statements.run(() -> super.onMessage(message));
+            }
+
+            @Override
+            public void onHalfClose() {
+                statements.run(super::onHalfClose);
+            }
+
+            @Override
+            public void onCancel() {
+                statements.run(super::onCancel);
+            }
+
+            @Override
+            public void onComplete() {
+                statements.run(super::onComplete);
+            }
+
+            @Override
+            public void onReady() {
+                statements.run(super::onReady);
+            }
+        };
+    }
+
+    private DistributionSummary summary(String method) {
+        return summaries.computeIfAbsent(method, m -> DistributionSummary.builder("hospital.sql.statements.per.call")
+                .description("SQL statements run by one gRPC call")
+                .tag("method", m)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry));
+    }
+}
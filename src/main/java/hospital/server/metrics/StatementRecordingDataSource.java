@@ -0,0 +1,115 @@
+package hospital.server.metrics;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Records every statement run on a connection of the wrapped datasource to the gRPC call on the
+ * current thread: Hibernate's and JdbcTemplate's alike, as both take their connections from here.
+ * A statement counts once per execution, and a JDBC batch once per round trip. The execution is
+ * timed where it happens, so a slow one is logged with the SQL that ran.
+ */
+public class StatementRecordingDataSource extends DelegatingDataSource {
+
+    public StatementRecordingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return proxy(Connection.class, new ConnectionHandler(super.getConnection()));
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return proxy(Connection.class, new ConnectionHandler(super.getConnection(username, password)));
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
+    // Hands out statements that record their executions
+    private record ConnectionHandler(Connection connection) implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (isIdentityMethod(method)) {
+                return identity(proxy, method, args);
+            }
+            Object result = forward(connection, method, args);
+            if (result instanceof Statement statement) {
+                // prepareStatement and prepareCall name their SQL up front, createStatement on execution
+                String sql = method.getName().startsWith("prepare") ? (String) args[0] : null;
+                return proxy(method.getReturnType(), new StatementHandler(statement, sql));
+            }
+            return result;
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final String preparedSql;
+        // The first statement of a batch of plain statements, which carry no SQL of their own
+        private String batchSql;
+
+        StatementHandler(Statement statement, String preparedSql) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (isIdentityMethod(method)) {
+                return identity(proxy, method, args);
+            }
+            String name = method.getName();
+            if (name.equals("addBatch") && preparedSql == null && batchSql == null) {
+                batchSql = (String) args[0];
+            }
+            if (!name.startsWith("execute")) {
+                return forward(statement, method, args);
+            }
+            boolean batch = name.endsWith("Batch");
+            String sql = preparedSql != null ? preparedSql : batch ? batchSql : (String) args[0];
+            long startNanos = System.nanoTime();
+            try {
+                return forward(statement, method, args);
+            } finally {
+                if (batch) {
+                    batchSql = null;
+                }
+                CallStatements call = CallStatements.current();
+                if (call != null) {
+                    call.executed(sql, System.nanoTime() - startNanos, batch);
+                }
+            }
+        }
+    }
+
+    private static boolean isIdentityMethod(Method method) {
+        return method.getDeclaringClass() == Object.class
+                && (method.getName().equals("equals") || method.getName().equals("hashCode"));
+    }
+
+    // A proxy is equal only to itself, as the JDBC objects it stands for are
+    private static Object identity(Object proxy, Method method, Object[] args) {
+        return method.getName().equals("equals") ? proxy == args[0] : System.identityHashCode(proxy);
+    }
+
+    private static Object forward(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -2,33 +2,53 @@ package hospital.server.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.CreationTimestamp;
 
+import java.time.Instant;
 import java.util.List;
 
 @Entity
+// Only cached when hospital.second-level-cache.enabled is set
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Getter
 @Setter
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "hospitals")
+@Table(name = "hospitals", indexes = {
+        // Retention purges select by creation time
+        @Index(name = "idx_hospitals_created_at", columnList = "created_at")
+})
 public class Hospital {
     public Hospital(String name) {
         this.name = name;
     }
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence rather than IDENTITY, so inserts can be sent as JDBC batches
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "hospitals_seq")
+    @SequenceGenerator(name = "hospitals_seq", sequenceName = "hospitals_seq", allocationSize = 50)
     private Long id;
     private String name;
 
     private String address;
 
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
     @ManyToMany
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JoinTable(
             name = "hospital_patient", // Custom join table name
             joinColumns = @JoinColumn(name = "hospital_id"),
-            inverseJoinColumns = @JoinColumn(name = "patient_id ")
+            inverseJoinColumns = @JoinColumn(name = "patient_id"),
+            // Backs the duplicate check of registrations and the patient -> hospitals lookup
+            uniqueConstraints = @UniqueConstraint(name = "uk_hospital_patient", columnNames = {"hospital_id", "patient_id"}),
+            indexes = @Index(name = "idx_hospital_patient_patient", columnList = "patient_id")
     )
     private List<Patient> patients;
 
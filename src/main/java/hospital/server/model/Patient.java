@@ -2,27 +2,65 @@ package hospital.server.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.CreationTimestamp;
 
-import java.util.Date;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Locale;
 
 @Entity
+// Only cached when hospital.second-level-cache.enabled is set
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Getter
 @Setter
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "patients")
+@Table(name = "patients", indexes = {
+        // Prefix search: by last name (then name), or by name alone
+        @Index(name = "idx_patients_last_name_key", columnList = "last_name_key, name_key"),
+        @Index(name = "idx_patients_name_key", columnList = "name_key"),
+        // Retention purges select by creation time
+        @Index(name = "idx_patients_created_at", columnList = "created_at")
+})
 public class Patient {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence rather than IDENTITY, so inserts can be sent as JDBC batches
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "patients_seq")
+    @SequenceGenerator(name = "patients_seq", sequenceName = "patients_seq", allocationSize = 50)
     private Long id;
     private String name;
     private String lastName;
-    private Date birthDate;
+    private LocalDate birthDate;
     private String sex;
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+    // Lower-cased copies of name and lastName, so case-insensitive prefix search can use an index
+    @Setter(AccessLevel.NONE)
+    @Column(name = "name_key")
+    private String nameKey;
+    @Setter(AccessLevel.NONE)
+    @Column(name = "last_name_key")
+    private String lastNameKey;
     // Other fields like address, medical record, etc.
     @ManyToMany(mappedBy = "patients")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private List<Hospital> hospitals;
     // Constructors, getters, and setters
+
+    @PrePersist
+    @PreUpdate
+    void updateSearchKeys() {
+        nameKey = searchKey(name);
+        lastNameKey = searchKey(lastName);
+    }
+
+    public static String searchKey(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
 }
@@ -0,0 +1,59 @@
+package hospital.server.partition;
+
+import hospital.server.HospitalServerProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opens the partitions of {@code hospital.partitions.*}, each with its own connection pool and the
+ * credentials of the primary datasource, and publishes the patients held per partition so a skewed
+ * layout shows up. With no partitions configured, the endpoints get a disabled storage.
+ */
+@Configuration
+public class PartitionConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public PartitionedStorage partitionedStorage(HospitalServerProperties properties, DataSourceProperties primary,
+                                                 JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        HospitalServerProperties.Partitions partitions = properties.getPartitions();
+        if (partitions.getCount() <= 0) {
+            return PartitionedStorage.disabled();
+        }
+        // Both write patients to the primary database only
+        if (properties.getPersistence().getEngine() != HospitalServerProperties.PersistenceEngine.JPA
+                || properties.getIntake().getMode() != HospitalServerProperties.IntakeMode.DIRECT) {
+            throw new IllegalStateException("hospital.partitions.count needs hospital.persistence.engine=jpa "
+                    + "and hospital.intake.mode=direct.");
+        }
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int partition = 0; partition < partitions.getCount(); partition++) {
+            dataSources.add(DataSourceBuilder.create()
+                    .url(String.format(partitions.getUrlTemplate(), partition))
+                    .username(primary.getUsername())
+                    .password(primary.getPassword())
+                    .build());
+        }
+        // The primary's sequence keeps handing out the ids, one value per patient: Hibernate's pooled
+        // optimizer uses the block below each value it draws, so the two never collide
+        PartitionedStorage storage = new PartitionedStorage(dataSources,
+                () -> jdbcTemplate.queryForObject("select next value for patients_seq", Long.class));
+        storage.createSchema();
+        for (int partition = 0; partition < partitions.getCount(); partition++) {
+            int index = partition;
+            Gauge.builder("hospital.partition.patients", storage, s -> s.patientCount(index))
+                    .description("Patients stored in the partition")
+                    .tag("partition", Integer.toString(partition))
+                    .register(meterRegistry);
+        }
+        return storage;
+    }
+}
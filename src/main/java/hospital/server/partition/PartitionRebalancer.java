@@ -0,0 +1,124 @@
+package hospital.server.partition;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves patients, with their registrations, to the partitions a new partition count assigns them,
+ * and copies the hospitals to partitions that are new. Partition i is the same database before and
+ * after. Each chunk of patients is copied with MERGE in one transaction of the new partition, then
+ * deleted in one transaction of the old, so a chunk is never half copied or half deleted. A run cut
+ * short between the two leaves the chunk in both partitions; running again finishes it. The server
+ * must not write to the partitions while it runs, and should recount its partitions after.
+ *
+ * <p>Run as {@code PartitionRebalancer <jdbc-url-template> <username> <password> <from-count> <to-count>},
+ * where the template holds a {@code %d} for the partition number.
+ */
+public final class PartitionRebalancer {
+    private static final int CHUNK_SIZE = 1000;
+    private static final String PATIENT_COLUMNS = "id, name, last_name, name_key, last_name_key, birth_date, sex, created_at";
+
+    private PartitionRebalancer() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 5) {
+            System.err.println("Usage: PartitionRebalancer <jdbc-url-template> <username> <password> <from-count> <to-count>");
+            System.exit(2);
+        }
+        int fromCount = Integer.parseInt(args[3]);
+        int toCount = Integer.parseInt(args[4]);
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int partition = 0; partition < Math.max(fromCount, toCount); partition++) {
+            dataSources.add(new DriverManagerDataSource(String.format(args[0], partition), args[1], args[2]));
+        }
+        long moved = rebalance(dataSources, fromCount, toCount);
+        System.out.println("Moved " + moved + " patients from " + fromCount + " to " + toCount + " partitions.");
+    }
+
+    /**
+     * @param dataSources every partition of both layouts, in partition order
+     * @return the number of patients moved
+     */
+    public static long rebalance(List<DataSource> dataSources, int fromCount, int toCount) {
+        if (fromCount < 1 || toCount < 1 || dataSources.size() < Math.max(fromCount, toCount)) {
+            throw new IllegalArgumentException("Need a data source for each of max(" + fromCount + ", " + toCount + ") partitions.");
+        }
+        List<JdbcTemplate> partitions = dataSources.stream().map(JdbcTemplate::new).toList();
+        List<TransactionTemplate> transactions = dataSources.stream()
+                .map(dataSource -> new TransactionTemplate(new DataSourceTransactionManager(dataSource)))
+                .toList();
+        partitions.subList(0, toCount).forEach(PartitionedStorage::createSchema);
+
+        // Registrations need their hospital in the target partition
+        List<Map<String, Object>> hospitals = partitions.get(0).queryForList("select id, name, address, created_at from hospitals");
+        for (int partition = fromCount; partition < toCount; partition++) {
+            JdbcTemplate to = partitions.get(partition);
+            transactions.get(partition).executeWithoutResult(status -> merge(to, "hospitals", "id", hospitals));
+        }
+
+        long moved = 0;
+        for (int source = 0; source < fromCount; source++) {
+            JdbcTemplate from = partitions.get(source);
+            long afterId = 0;
+            List<Long> ids;
+            do {
+                ids = from.queryForList("select id from patients where id > ? order by id limit ?", Long.class, afterId, CHUNK_SIZE);
+                Map<Integer, List<Long>> leaving = new HashMap<>();
+                for (long id : ids) {
+                    int destination = PartitionedStorage.partitionOf(id, toCount);
+                    if (destination != source) {
+                        leaving.computeIfAbsent(destination, d -> new ArrayList<>()).add(id);
+                    }
+                }
+                for (Map.Entry<Integer, List<Long>> entry : leaving.entrySet()) {
+                    move(from, transactions.get(source), partitions.get(entry.getKey()), transactions.get(entry.getKey()),
+                            entry.getValue());
+                    moved += entry.getValue().size();
+                }
+                afterId = ids.isEmpty() ? afterId : ids.get(ids.size() - 1);
+            } while (ids.size() == CHUNK_SIZE);
+        }
+        return moved;
+    }
+
+    // The two partitions share no transaction: the copy commits before the delete starts, so a
+    // failure in between leaves copies behind rather than losing rows
+    private static void move(JdbcTemplate from, TransactionTemplate fromTransaction, JdbcTemplate to,
+                             TransactionTemplate toTransaction, List<Long> ids) {
+        String in = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        Object[] arguments = ids.toArray();
+        List<Map<String, Object>> patients = from.queryForList(
+                "select " + PATIENT_COLUMNS + " from patients where id in (" + in + ")", arguments);
+        List<Map<String, Object>> registrations = from.queryForList(
+                "select hospital_id, patient_id from hospital_patient where patient_id in (" + in + ")", arguments);
+        toTransaction.executeWithoutResult(status -> {
+            merge(to, "patients", "id", patients);
+            merge(to, "hospital_patient", "hospital_id, patient_id", registrations);
+        });
+        fromTransaction.executeWithoutResult(status -> {
+            from.update("delete from hospital_patient where patient_id in (" + in + ")", arguments);
+            from.update("delete from patients where id in (" + in + ")", arguments);
+        });
+    }
+
+    // H2's MERGE ... KEY: inserts each row, or overwrites the one with the same key; one batch for all
+    private static void merge(JdbcTemplate partition, String table, String key, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<String> columns = List.copyOf(rows.get(0).keySet());
+        String values = String.join(", ", Collections.nCopies(columns.size(), "?"));
+        partition.batchUpdate("merge into " + table + " (" + String.join(", ", columns) + ") key (" + key + ") values (" + values + ")",
+                rows.stream().map(row -> columns.stream().map(row::get).toArray()).toList());
+    }
+}
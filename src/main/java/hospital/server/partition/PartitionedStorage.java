@@ -0,0 +1,385 @@
+package hospital.server.partition;
+
+import hospital.server.model.Patient;
+import hospital.server.repository.HospitalRow;
+import hospital.server.repository.PatientRow;
+import hospital.server.repository.PatientUpdate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Patients and their hospital_patient rows spread over N databases by a hash of the patient id,
+ * with the hospitals table replicated to every partition so a roster join stays local. Point
+ * operations go to the patient's partition; listings ask every partition for its first page in
+ * parallel and merge the sorted pages, which is exact because each partition's page is a prefix of
+ * its own id order. Hospitals are also kept in the primary database, which hands out the patient
+ * ids from its sequence.
+ *
+ * <p>The partition of an id depends on the partition count, so changing the count needs a
+ * {@link PartitionRebalancer} run over the data.
+ */
+public class PartitionedStorage implements Closeable {
+    private static final String PATIENT_COLUMNS = "p.id, p.name, p.last_name, p.birth_date, p.sex";
+    private static final String HOSPITAL_COLUMNS = "h.id, h.name, h.address";
+    private static final RowMapper<PatientRow> PATIENT_ROW = (rs, rowNum) -> new PatientRow(
+            rs.getLong("id"),
+            rs.getString("name"),
+            rs.getString("last_name"),
+            rs.getObject("birth_date", LocalDate.class),
+            rs.getString("sex"));
+    private static final RowMapper<HospitalRow> HOSPITAL_ROW = (rs, rowNum) -> new HospitalRow(
+            rs.getLong("id"),
+            rs.getString("name"),
+            rs.getString("address"));
+
+    private final List<DataSource> dataSources;
+    private final List<JdbcTemplate> partitions;
+    private final List<TransactionTemplate> transactions;
+    private final LongSupplier patientIds;
+    private final ExecutorService executor;
+    // Patients per partition, counted once and then kept current by the writes going through here
+    private final AtomicLongArray patientCounts;
+
+    /**
+     * The state a patient update leaves, and what the census needs to follow it.
+     *
+     * @param previous    the patient before the update, only read when its sex or birth date was set
+     * @param hospitalIds the patient's hospitals, only read when its sex or birth date changed
+     */
+    public record Updated(PatientRow previous, PatientRow current, List<Long> hospitalIds) {
+    }
+
+    /**
+     * @param hospitalIds the hospitals the patient was registered in
+     */
+    public record Deleted(PatientRow patient, List<Long> hospitalIds) {
+    }
+
+    /**
+     * The storage of an unpartitioned server: nothing is stored through it.
+     */
+    public static PartitionedStorage disabled() {
+        return new PartitionedStorage();
+    }
+
+    private PartitionedStorage() {
+        this.dataSources = null;
+        this.partitions = null;
+        this.transactions = null;
+        this.patientIds = null;
+        this.executor = null;
+        this.patientCounts = null;
+    }
+
+    /**
+     * @param dataSources one per partition, in partition order; the order must stay the same across restarts
+     * @param patientIds  hands out the ids of new patients
+     */
+    public PartitionedStorage(List<DataSource> dataSources, LongSupplier patientIds) {
+        if (dataSources.isEmpty()) {
+            throw new IllegalArgumentException("At least one partition is required.");
+        }
+        this.dataSources = List.copyOf(dataSources);
+        this.partitions = dataSources.stream().map(JdbcTemplate::new).toList();
+        this.transactions = dataSources.stream()
+                .map(dataSource -> new TransactionTemplate(new DataSourceTransactionManager(dataSource)))
+                .toList();
+        this.patientIds = patientIds;
+        // Scatter-gather threads only wait on their partition's query
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("partition-", 0).factory());
+        this.patientCounts = new AtomicLongArray(dataSources.size());
+    }
+
+    public boolean isEnabled() {
+        return partitions != null;
+    }
+
+    public int partitionCount() {
+        return partitions.size();
+    }
+
+    public int partitionOf(long patientId) {
+        return partitionOf(patientId, partitions.size());
+    }
+
+    /**
+     * Stable across releases: the stored layout depends on it.
+     */
+    static int partitionOf(long patientId, int partitionCount) {
+        // Ids are sequential; Fibonacci hashing spreads consecutive ids across partitions
+        long mixed = patientId * 0x9E3779B97F4A7C15L;
+        return Math.floorMod(mixed ^ (mixed >>> 32), partitionCount);
+    }
+
+    /**
+     * Creates the tables the partitions need, if missing. The layout matches the JPA mapping.
+     */
+    public void createSchema() {
+        partitions.forEach(PartitionedStorage::createSchema);
+        recountPatients();
+    }
+
+    static void createSchema(JdbcTemplate partition) {
+        partition.execute("create table if not exists hospitals (id bigint primary key, name varchar(255), "
+                + "address varchar(255), created_at timestamp(6) with time zone not null)");
+        partition.execute("create table if not exists patients (id bigint primary key, name varchar(255), "
+                + "last_name varchar(255), name_key varchar(255), last_name_key varchar(255), birth_date date, "
+                + "sex varchar(255), created_at timestamp(6) with time zone not null)");
+        partition.execute("create table if not exists hospital_patient (hospital_id bigint not null, "
+                + "patient_id bigint not null, constraint uk_hospital_patient unique (hospital_id, patient_id))");
+        partition.execute("create index if not exists idx_hospital_patient_patient on hospital_patient (patient_id)");
+    }
+
+    /**
+     * Writes the hospital to every partition.
+     */
+    public void insertHospital(long id, String name, String address) {
+        forEachPartition(partition -> partition.update("merge into hospitals (id, name, address, created_at) key (id) "
+                + "values (?, ?, ?, current_timestamp)", id, name, address));
+    }
+
+    /**
+     * Deletes the hospital and its registrations from every partition.
+     */
+    public void deleteHospital(long id) {
+        forEachPartition(partition -> {
+            partition.update("delete from hospital_patient where hospital_id = ?", id);
+            return partition.update("delete from hospitals where id = ?", id);
+        });
+    }
+
+    /**
+     * Inserts a patient under the next id, in the partition that id hashes to.
+     */
+    public PatientRow createPatient(String name, String lastName, LocalDate birthDate, String sex) {
+        PatientRow patient = new PatientRow(patientIds.getAsLong(), name, lastName, birthDate, sex);
+        insertPatient(patient);
+        return patient;
+    }
+
+    public void insertPatient(PatientRow patient) {
+        partition(patient.id()).update("insert into patients "
+                        + "(id, name, last_name, name_key, last_name_key, birth_date, sex, created_at) "
+                        + "values (?, ?, ?, ?, ?, ?, ?, current_timestamp)",
+                patient.id(), patient.name(), patient.lastName(), Patient.searchKey(patient.name()),
+                Patient.searchKey(patient.lastName()), patient.birthDate() == null ? null : Date.valueOf(patient.birthDate()),
+                patient.sex());
+        patientCounts.incrementAndGet(partitionOf(patient.id()));
+    }
+
+    /**
+     * Writes the requested columns, with the search keys of the names, in one transaction of the
+     * patient's partition with the reads the change announcement needs.
+     *
+     * @return empty if the patient does not exist
+     */
+    public Optional<Updated> updatePatient(long patientId, PatientUpdate update) {
+        List<String> assignments = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        if (update.name() != null) {
+            assignments.add("name = ?, name_key = ?");
+            values.add(update.name());
+            values.add(Patient.searchKey(update.name()));
+        }
+        if (update.lastName() != null) {
+            assignments.add("last_name = ?, last_name_key = ?");
+            values.add(update.lastName());
+            values.add(Patient.searchKey(update.lastName()));
+        }
+        if (update.birthDate() != null) {
+            assignments.add("birth_date = ?");
+            values.add(Date.valueOf(update.birthDate()));
+        }
+        if (update.sex() != null) {
+            assignments.add("sex = ?");
+            values.add(update.sex());
+        }
+        values.add(patientId);
+        JdbcTemplate partition = partition(patientId);
+        return transaction(patientId).execute(status -> {
+            // The census needs the old sex and birth date to move the patient between its buckets
+            PatientRow previous = null;
+            if (update.sex() != null || update.birthDate() != null) {
+                Optional<PatientRow> row = findRowById(patientId);
+                if (row.isEmpty()) {
+                    return Optional.empty();
+                }
+                previous = row.get();
+            }
+            if (!assignments.isEmpty() && partition.update("update patients set " + String.join(", ", assignments)
+                    + " where id = ?", values.toArray()) == 0) {
+                return Optional.empty();
+            }
+            Optional<PatientRow> current = findRowById(patientId);
+            if (current.isEmpty()) {
+                return Optional.empty();
+            }
+            boolean moved = previous != null && (!Objects.equals(previous.sex(), current.get().sex())
+                    || !Objects.equals(previous.birthDate(), current.get().birthDate()));
+            return Optional.of(new Updated(previous, current.get(), moved ? findHospitalIdsByPatientId(patientId) : List.of()));
+        });
+    }
+
+    /**
+     * @return 1 if the registration was added; 0 if it existed or either side is missing
+     */
+    public int insertRegistration(long hospitalId, long patientId) {
+        return partition(patientId).update("insert into hospital_patient (hospital_id, patient_id) "
+                + "select h.id, p.id from hospitals h, patients p where h.id = ? and p.id = ? "
+                + "and not exists (select 1 from hospital_patient hp where hp.hospital_id = h.id and hp.patient_id = p.id)",
+                hospitalId, patientId);
+    }
+
+    /**
+     * Deletes the patient and its registrations, both of which live in the patient's partition, in
+     * one transaction.
+     *
+     * @return the patient's last state, empty if it does not exist
+     */
+    public Optional<Deleted> deletePatient(long patientId) {
+        JdbcTemplate partition = partition(patientId);
+        Optional<Deleted> deleted = transaction(patientId).execute(status -> findRowById(patientId).map(patient -> {
+            List<Long> hospitalIds = findHospitalIdsByPatientId(patientId);
+            partition.update("delete from hospital_patient where patient_id = ?", patientId);
+            // A concurrent delete may have won since the read; only one of them reports the patient
+            return partition.update("delete from patients where id = ?", patientId) == 1 ? new Deleted(patient, hospitalIds) : null;
+        }));
+        if (deleted.isPresent()) {
+            patientCounts.decrementAndGet(partitionOf(patientId));
+        }
+        return deleted;
+    }
+
+    public Optional<PatientRow> findRowById(long patientId) {
+        return partition(patientId).query("select " + PATIENT_COLUMNS + " from patients p where p.id = ?",
+                PATIENT_ROW, patientId).stream().findFirst();
+    }
+
+    /**
+     * Looks the ids up with one IN-clause query per partition they fall into, in parallel.
+     */
+    public List<PatientRow> findRowsByIdIn(Collection<Long> patientIds) {
+        Map<Integer, List<Long>> byPartition = new HashMap<>();
+        patientIds.forEach(id -> byPartition.computeIfAbsent(partitionOf(id), p -> new ArrayList<>()).add(id));
+        List<CompletableFuture<List<PatientRow>>> lookups = byPartition.entrySet().stream()
+                .map(entry -> CompletableFuture.supplyAsync(() -> partitions.get(entry.getKey()).query(
+                        "select " + PATIENT_COLUMNS + " from patients p where p.id in ("
+                                + String.join(", ", Collections.nCopies(entry.getValue().size(), "?")) + ")",
+                        PATIENT_ROW, entry.getValue().toArray()), executor))
+                .toList();
+        return lookups.stream().flatMap(lookup -> lookup.join().stream()).toList();
+    }
+
+    /**
+     * Keyset page of the patients registered in a hospital, gathered from every partition.
+     */
+    public List<PatientRow> findRowsByHospitalId(long hospitalId, long afterId, int limit) {
+        return gather(partition -> partition.query("select " + PATIENT_COLUMNS + " from hospital_patient hp "
+                + "join patients p on p.id = hp.patient_id where hp.hospital_id = ? and hp.patient_id > ? "
+                + "order by hp.patient_id limit ?", PATIENT_ROW, hospitalId, afterId, limit), limit);
+    }
+
+    /**
+     * Keyset page of all patients, gathered from every partition.
+     */
+    public List<PatientRow> findRowsAfter(long afterId, int limit) {
+        return gather(partition -> partition.query("select " + PATIENT_COLUMNS + " from patients p where p.id > ? "
+                + "order by p.id limit ?", PATIENT_ROW, afterId, limit), limit);
+    }
+
+    /**
+     * Keyset page of the hospitals a patient is registered in. Both the registrations and the
+     * hospital copies live in the patient's partition, so this is one local join.
+     */
+    public List<HospitalRow> findHospitalRowsByPatientId(long patientId, long afterId, int limit) {
+        return partition(patientId).query("select " + HOSPITAL_COLUMNS + " from hospital_patient hp "
+                + "join hospitals h on h.id = hp.hospital_id where hp.patient_id = ? and hp.hospital_id > ? "
+                + "order by hp.hospital_id limit ?", HOSPITAL_ROW, patientId, afterId, limit);
+    }
+
+    public List<Long> findHospitalIdsByPatientId(long patientId) {
+        return partition(patientId).queryForList("select hospital_id from hospital_patient where patient_id = ?",
+                Long.class, patientId);
+    }
+
+    /**
+     * Patients in the partition, as of the last count plus the writes made through this storage
+     * since; cheap enough for every metrics scrape.
+     */
+    public long patientCount(int partition) {
+        return patientCounts.get(partition);
+    }
+
+    /**
+     * Counts the patients of every partition afresh, for writes that bypassed this storage such as
+     * a {@link PartitionRebalancer} run.
+     */
+    public void recountPatients() {
+        List<Long> counts = forEachPartition(partition -> partition.queryForObject("select count(*) from patients", Long.class));
+        for (int partition = 0; partition < counts.size(); partition++) {
+            patientCounts.set(partition, counts.get(partition));
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!isEnabled()) {
+            return;
+        }
+        executor.shutdown();
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    // Closing the others matters more than the cause
+                }
+            }
+        }
+    }
+
+    private JdbcTemplate partition(long patientId) {
+        return partitions.get(partitionOf(patientId));
+    }
+
+    private TransactionTemplate transaction(long patientId) {
+        return transactions.get(partitionOf(patientId));
+    }
+
+    private List<PatientRow> gather(Function<JdbcTemplate, List<PatientRow>> pageQuery, int limit) {
+        return forEachPartition(pageQuery).stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingLong(PatientRow::id))
+                .limit(limit)
+                .toList();
+    }
+
+    private <T> List<T> forEachPartition(Function<JdbcTemplate, T> operation) {
+        List<CompletableFuture<T>> results = partitions.stream()
+                .map(partition -> CompletableFuture.supplyAsync(() -> operation.apply(partition), executor))
+                .toList();
+        return results.stream().map(CompletableFuture::join).toList();
+    }
+}
@@ -0,0 +1,96 @@
+package hospital.server.reactive;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.Statement;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Statement plumbing shared by the reactive repositories. Work is subscribed on the given scheduler,
+ * as r2dbc-h2 runs a query on the thread that subscribes.
+ */
+final class R2dbcClient {
+    private final ConnectionFactory connectionFactory;
+    private final Scheduler scheduler;
+
+    R2dbcClient(ConnectionFactory connectionFactory, Scheduler scheduler) {
+        this.connectionFactory = connectionFactory;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Runs one statement on a connection of its own, in auto-commit.
+     */
+    <T> Flux<T> query(String sql, Function<Statement, Statement> binder, Function<Row, T> mapper) {
+        return Flux.usingWhen(connectionFactory.create(), connection -> query(connection, sql, binder, mapper), Connection::close)
+                .subscribeOn(scheduler);
+    }
+
+    <T> Mono<T> queryOne(String sql, Function<Statement, Statement> binder, Function<Row, T> mapper) {
+        return query(sql, binder, mapper).next();
+    }
+
+    Mono<Long> update(String sql, Function<Statement, Statement> binder) {
+        return Mono.usingWhen(connectionFactory.create(), connection -> update(connection, sql, binder), Connection::close)
+                .subscribeOn(scheduler);
+    }
+
+    /**
+     * Runs the work in one transaction, committed before its result is emitted. An error rolls the
+     * transaction back, and so does a cancellation.
+     */
+    <T> Mono<T> inTransaction(Function<Connection, Mono<T>> work) {
+        return Mono.usingWhen(connectionFactory.create(),
+                        connection -> Mono.from(connection.beginTransaction())
+                                .then(Mono.defer(() -> work.apply(connection)).map(Optional::of).defaultIfEmpty(Optional.empty()))
+                                .flatMap(result -> Mono.from(connection.commitTransaction()).thenReturn(result))
+                                .onErrorResume(error -> Mono.from(connection.rollbackTransaction()).then(Mono.error(error))),
+                        Connection::close,
+                        (connection, error) -> connection.close(),
+                        connection -> Mono.from(connection.rollbackTransaction()).then(Mono.from(connection.close())))
+                .flatMap(Mono::justOrEmpty)
+                .subscribeOn(scheduler);
+    }
+
+    static <T> Flux<T> query(Connection connection, String sql, Function<Statement, Statement> binder, Function<Row, T> mapper) {
+        return Flux.defer(() -> binder.apply(connection.createStatement(sql)).execute())
+                .flatMap(result -> result.map((row, metadata) -> mapper.apply(row)));
+    }
+
+    /**
+     * @return the number of rows the statement changed
+     */
+    static Mono<Long> update(Connection connection, String sql, Function<Statement, Statement> binder) {
+        return Flux.defer(() -> binder.apply(connection.createStatement(sql)).execute())
+                .flatMap(Result::getRowsUpdated)
+                .reduce(0L, Long::sum);
+    }
+
+    /**
+     * @return {@code $first, ..., $(first + count - 1)}, the markers of an IN list
+     */
+    static String markers(int first, int count) {
+        return IntStream.range(first, first + count).mapToObj(index -> "$" + index).collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Binds the values to the markers of {@link #markers}, starting at the given 1-based marker.
+     */
+    static Statement bindAll(Statement statement, int first, Collection<Long> values) {
+        int index = first - 1;
+        for (long value : values) {
+            statement.bind(index++, value);
+        }
+        return statement;
+    }
+}
@@ -0,0 +1,75 @@
+package hospital.server.reactive;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hospital.server.HospitalServerProperties;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.r2dbc.ConnectionFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The r2dbc engine. Boot's R2DBC auto-configuration is excluded, since Boot drops its JDBC
+ * datasource, and with it JPA, as soon as a connection factory exists; the pool is built here
+ * from {@code spring.r2dbc.*} only when {@code hospital.persistence.engine=r2dbc}.
+ */
+@Configuration
+@EnableConfigurationProperties({R2dbcProperties.class, DataSourceProperties.class})
+public class ReactiveConfiguration {
+
+    // Must point at the JPA engine's database
+    @Bean(destroyMethod = "dispose")
+    @ConditionalOnProperty(prefix = "hospital.persistence", name = "engine", havingValue = "r2dbc")
+    public ConnectionPool connectionFactory(R2dbcProperties r2dbc) {
+        ConnectionFactory connectionFactory = ConnectionFactoryBuilder.withUrl(r2dbc.getUrl())
+                .username(r2dbc.getUsername())
+                .password(r2dbc.getPassword())
+                .build();
+        R2dbcProperties.Pool pool = r2dbc.getPool();
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .initialSize(pool.getInitialSize())
+                .maxSize(pool.getMaxSize())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .build());
+    }
+
+    // The JPA repositories still serve everything the r2dbc engine does not, and Boot's datasource
+    // backs off once the pool above exists; read replicas bring a datasource of their own
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    @ConditionalOnExpression("'${hospital.persistence.engine:jpa}' == 'r2dbc' and '${hospital.routing.replica-urls:}' == ''")
+    public HikariDataSource dataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReactivePatientRepository reactivePatientRepository(HospitalServerProperties properties,
+                                                               ObjectProvider<ConnectionFactory> connectionFactory) {
+        if (!isR2dbc(properties)) {
+            return ReactivePatientRepository.disabled();
+        }
+        return new ReactivePatientRepository(connectionFactory.getObject(), Schedulers.boundedElastic());
+    }
+
+    @Bean
+    public ReactiveHospitalRepository reactiveHospitalRepository(HospitalServerProperties properties,
+                                                                 ObjectProvider<ConnectionFactory> connectionFactory) {
+        if (!isR2dbc(properties)) {
+            return ReactiveHospitalRepository.disabled();
+        }
+        return new ReactiveHospitalRepository(connectionFactory.getObject(), Schedulers.boundedElastic());
+    }
+
+    private static boolean isR2dbc(HospitalServerProperties properties) {
+        return properties.getPersistence().getEngine() == HospitalServerProperties.PersistenceEngine.R2DBC;
+    }
+}
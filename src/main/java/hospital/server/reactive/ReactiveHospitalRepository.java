@@ -0,0 +1,161 @@
+package hospital.server.reactive;
+
+import hospital.server.repository.HospitalRow;
+import hospital.server.repository.HospitalUpdate;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.Statement;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The hospital operations of {@code hospital.persistence.engine=r2dbc}; see {@link ReactivePatientRepository}.
+ */
+public class ReactiveHospitalRepository {
+    private static final String HOSPITAL_COLUMNS = "h.id, h.name, h.address";
+
+    private final R2dbcClient client;
+
+    /**
+     * The repository of the JPA engine: nothing is read through it.
+     */
+    public static ReactiveHospitalRepository disabled() {
+        return new ReactiveHospitalRepository(null);
+    }
+
+    public ReactiveHospitalRepository(ConnectionFactory connectionFactory, Scheduler scheduler) {
+        this(new R2dbcClient(connectionFactory, scheduler));
+    }
+
+    ReactiveHospitalRepository(R2dbcClient client) {
+        this.client = client;
+    }
+
+    public boolean isEnabled() {
+        return client != null;
+    }
+
+    public Mono<HospitalRow> findRowById(long id) {
+        return client.queryOne("select " + HOSPITAL_COLUMNS + " from hospitals h where h.id = $1",
+                statement -> statement.bind(0, id), ReactiveHospitalRepository::hospitalRow);
+    }
+
+    /**
+     * Rows of the ids in one IN-clause query; ids without a row are left out.
+     */
+    public Flux<HospitalRow> findRowsByIdIn(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        return client.query("select " + HOSPITAL_COLUMNS + " from hospitals h where h.id in (" + R2dbcClient.markers(1, ids.size()) + ")",
+                statement -> R2dbcClient.bindAll(statement, 1, ids), ReactiveHospitalRepository::hospitalRow);
+    }
+
+    /**
+     * Keyset page of all hospitals, in id order.
+     */
+    public Flux<HospitalRow> findRowsAfterId(long afterId, int limit) {
+        return client.query("select " + HOSPITAL_COLUMNS + " from hospitals h where h.id > $1 order by h.id limit $2",
+                statement -> statement.bind(0, afterId).bind(1, limit), ReactiveHospitalRepository::hospitalRow);
+    }
+
+    /**
+     * Keyset page of the hospitals a patient is registered in, in id order.
+     */
+    public Flux<HospitalRow> findRowsByPatientId(long patientId, long afterId, int limit) {
+        return client.query("select " + HOSPITAL_COLUMNS + " from hospital_patient hp join hospitals h on h.id = hp.hospital_id "
+                        + "where hp.patient_id = $1 and hp.hospital_id > $2 order by hp.hospital_id limit $3",
+                statement -> statement.bind(0, patientId).bind(1, afterId).bind(2, limit),
+                ReactiveHospitalRepository::hospitalRow);
+    }
+
+    public Mono<Boolean> existsById(long id) {
+        return client.query("select 1 from hospitals where id = $1", statement -> statement.bind(0, id), row -> true)
+                .hasElements();
+    }
+
+    /**
+     * The statement of {@code HospitalRepository.insertRegistration}.
+     *
+     * @return 0 when either side is missing or the patient is already registered
+     */
+    public Mono<Long> insertRegistration(long hospitalId, long patientId) {
+        return client.update("insert into hospital_patient (hospital_id, patient_id) "
+                        + "select h.id, p.id from hospitals h, patients p where h.id = $1 and p.id = $2 "
+                        + "and not exists (select 1 from hospital_patient hp where hp.hospital_id = $3 and hp.patient_id = $4)",
+                statement -> statement.bind(0, hospitalId).bind(1, patientId).bind(2, hospitalId).bind(3, patientId));
+    }
+
+    /**
+     * Inserts a hospital with the next value of hospitals_seq as its id; see {@link ReactivePatientRepository#create}.
+     */
+    public Mono<HospitalRow> create(String name, String address) {
+        return client.inTransaction(connection -> R2dbcClient.query(connection, "select next value for hospitals_seq",
+                        Function.identity(), row -> row.get(0, Long.class))
+                .next()
+                .flatMap(id -> R2dbcClient.update(connection,
+                                "insert into hospitals (id, name, address, created_at) values ($1, $2, $3, current_timestamp)",
+                                statement -> bindNullable(bindNullable(statement.bind(0, id), 1, name), 2, address))
+                        .thenReturn(new HospitalRow(id, name, address))));
+    }
+
+    /**
+     * Writes the requested columns and reads the hospital back in one transaction.
+     *
+     * @return the hospital after the update, empty if it does not exist
+     */
+    public Mono<HospitalRow> update(long id, HospitalUpdate update) {
+        List<String> assignments = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        if (update.name() != null) {
+            values.add(update.name());
+            assignments.add("name = $" + values.size());
+        }
+        if (update.address() != null) {
+            values.add(update.address());
+            assignments.add("address = $" + values.size());
+        }
+        if (assignments.isEmpty()) {
+            return findRowById(id);
+        }
+        String sql = "update hospitals set " + String.join(", ", assignments) + " where id = $" + (values.size() + 1);
+        return client.inTransaction(connection -> R2dbcClient.update(connection, sql, statement -> {
+                    for (int i = 0; i < values.size(); i++) {
+                        statement.bind(i, values.get(i));
+                    }
+                    return statement.bind(values.size(), id);
+                })
+                .filter(rows -> rows > 0)
+                .flatMap(rows -> R2dbcClient.query(connection, "select " + HOSPITAL_COLUMNS + " from hospitals h where h.id = $1",
+                                statement -> statement.bind(0, id), ReactiveHospitalRepository::hospitalRow)
+                        .next()));
+    }
+
+    /**
+     * Deletes the hospital and its roster in one transaction.
+     *
+     * @return whether the hospital existed
+     */
+    public Mono<Boolean> delete(long id) {
+        return client.inTransaction(connection -> R2dbcClient.update(connection, "delete from hospital_patient where hospital_id = $1",
+                        statement -> statement.bind(0, id))
+                .then(R2dbcClient.update(connection, "delete from hospitals where id = $1", statement -> statement.bind(0, id)))
+                .map(rows -> rows > 0));
+    }
+
+    private static Statement bindNullable(Statement statement, int index, String value) {
+        return value == null ? statement.bindNull(index, String.class) : statement.bind(index, value);
+    }
+
+    private static HospitalRow hospitalRow(Row row) {
+        return new HospitalRow(
+                row.get("id", Long.class),
+                row.get("name", String.class),
+                row.get("address", String.class));
+    }
+}
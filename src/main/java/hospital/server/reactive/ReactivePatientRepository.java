@@ -0,0 +1,304 @@
+package hospital.server.reactive;
+
+import hospital.server.model.Patient;
+import hospital.server.repository.PatientRow;
+import hospital.server.repository.PatientSearch;
+import hospital.server.repository.PatientUpdate;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.Statement;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * The patient operations of {@code hospital.persistence.engine=r2dbc}, issued over R2DBC against the
+ * same database as the JPA repositories. Results arrive as publishers, so callers complete their
+ * responses from the query's completion instead of waiting for it. Writes that span several
+ * statements run in one transaction and emit once it is committed, so callers announce them after
+ * the commit as the JPA engine's listeners do.
+ *
+ * <p>r2dbc-h2 runs a query on the thread that subscribes, so queries are subscribed on the given
+ * scheduler rather than on the caller's thread; with a networked driver they would not occupy a
+ * thread at all while the database works.
+ */
+public class ReactivePatientRepository {
+    private static final String PATIENT_COLUMNS = "p.id, p.name, p.last_name, p.birth_date, p.sex";
+    private static final char LIKE_ESCAPE = '\\';
+
+    private final R2dbcClient client;
+
+    /**
+     * The state a patient update leaves, and what the census needs to follow it.
+     *
+     * @param previous    the patient before the update, only read when its sex or birth date was set
+     * @param hospitalIds the patient's hospitals, only read when its sex or birth date changed
+     */
+    public record Updated(PatientRow previous, PatientRow current, List<Long> hospitalIds) {
+    }
+
+    /**
+     * @param hospitalIds the hospitals the patient was registered in
+     */
+    public record Deleted(PatientRow patient, List<Long> hospitalIds) {
+    }
+
+    /**
+     * The repository of the JPA engine: nothing is read through it.
+     */
+    public static ReactivePatientRepository disabled() {
+        return new ReactivePatientRepository(null);
+    }
+
+    public ReactivePatientRepository(ConnectionFactory connectionFactory, Scheduler scheduler) {
+        this(new R2dbcClient(connectionFactory, scheduler));
+    }
+
+    ReactivePatientRepository(R2dbcClient client) {
+        this.client = client;
+    }
+
+    public boolean isEnabled() {
+        return client != null;
+    }
+
+    public Mono<PatientRow> findRowById(long id) {
+        return client.queryOne("select " + PATIENT_COLUMNS + " from patients p where p.id = $1",
+                statement -> statement.bind(0, id), ReactivePatientRepository::patientRow);
+    }
+
+    /**
+     * Rows of the ids in one IN-clause query; ids without a row are left out.
+     */
+    public Flux<PatientRow> findRowsByIdIn(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        return client.query("select " + PATIENT_COLUMNS + " from patients p where p.id in (" + R2dbcClient.markers(1, ids.size()) + ")",
+                statement -> R2dbcClient.bindAll(statement, 1, ids), ReactivePatientRepository::patientRow);
+    }
+
+    /**
+     * Keyset page of all patients, in id order.
+     */
+    public Flux<PatientRow> findRowsAfterId(long afterId, int limit) {
+        return client.query("select " + PATIENT_COLUMNS + " from patients p where p.id > $1 order by p.id limit $2",
+                statement -> statement.bind(0, afterId).bind(1, limit), ReactivePatientRepository::patientRow);
+    }
+
+    /**
+     * Keyset page of the patients registered in a hospital, in id order.
+     */
+    public Flux<PatientRow> findRowsByHospitalId(long hospitalId, long afterId, int limit) {
+        return client.query("select " + PATIENT_COLUMNS + " from hospital_patient hp join patients p on p.id = hp.patient_id "
+                        + "where hp.hospital_id = $1 and hp.patient_id > $2 order by hp.patient_id limit $3",
+                statement -> statement.bind(0, hospitalId).bind(1, afterId).bind(2, limit),
+                ReactivePatientRepository::patientRow);
+    }
+
+    public Mono<Boolean> existsById(long id) {
+        return client.query("select 1 from patients where id = $1", statement -> statement.bind(0, id), row -> true)
+                .hasElements();
+    }
+
+    /**
+     * The search of {@code PatientSearchRepositoryImpl}: prefix filters on the lower-cased name
+     * columns, ordered by the index they run on.
+     */
+    public Flux<PatientRow> search(PatientSearch search, int limit) {
+        List<String> predicates = new ArrayList<>();
+        List<String> order = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        if (hasText(search.lastNamePrefix())) {
+            values.add(likePrefix(search.lastNamePrefix()));
+            predicates.add("p.last_name_key like $" + values.size() + " escape '" + LIKE_ESCAPE + "'");
+            order.add("p.last_name_key");
+            order.add("p.name_key");
+        }
+        if (hasText(search.namePrefix())) {
+            values.add(likePrefix(search.namePrefix()));
+            predicates.add("p.name_key like $" + values.size() + " escape '" + LIKE_ESCAPE + "'");
+            if (order.isEmpty()) {
+                order.add("p.name_key");
+            }
+        }
+        if (hasText(search.sex())) {
+            values.add(search.sex());
+            predicates.add("p.sex = $" + values.size());
+        }
+        if (search.bornFrom() != null) {
+            values.add(search.bornFrom());
+            predicates.add("p.birth_date >= $" + values.size());
+        }
+        if (search.bornTo() != null) {
+            values.add(search.bornTo());
+            predicates.add("p.birth_date <= $" + values.size());
+        }
+        order.add("p.id");
+        values.add(limit);
+
+        String sql = "select " + PATIENT_COLUMNS + " from patients p"
+                + (predicates.isEmpty() ? "" : " where " + String.join(" and ", predicates))
+                + " order by " + String.join(", ", order)
+                + " limit $" + values.size();
+        return client.query(sql, statement -> {
+            for (int i = 0; i < values.size(); i++) {
+                statement.bind(i, values.get(i));
+            }
+            return statement;
+        }, ReactivePatientRepository::patientRow);
+    }
+
+    /**
+     * Inserts a patient with the next value of patients_seq as its id. Hibernate's pooled optimizer
+     * hands out the block below each value it draws, so a value drawn here is never handed out
+     * there; the rest of its block goes unused.
+     */
+    public Mono<PatientRow> create(String name, String lastName, LocalDate birthDate, String sex) {
+        return client.inTransaction(connection -> R2dbcClient.query(connection, "select next value for patients_seq",
+                        Function.identity(), row -> row.get(0, Long.class))
+                .next()
+                .flatMap(id -> R2dbcClient.update(connection, "insert into patients "
+                                + "(id, name, last_name, name_key, last_name_key, birth_date, sex, created_at) "
+                                + "values ($1, $2, $3, $4, $5, $6, $7, current_timestamp)",
+                        statement -> {
+                            statement.bind(0, id);
+                            bindNullable(statement, 1, name, String.class);
+                            bindNullable(statement, 2, lastName, String.class);
+                            bindNullable(statement, 3, Patient.searchKey(name), String.class);
+                            bindNullable(statement, 4, Patient.searchKey(lastName), String.class);
+                            bindNullable(statement, 5, birthDate, LocalDate.class);
+                            return bindNullable(statement, 6, sex, String.class);
+                        })
+                        .thenReturn(new PatientRow(id, name, lastName, birthDate, sex))));
+    }
+
+    /**
+     * Writes the requested columns in one transaction with the reads the change announcement needs.
+     *
+     * @return empty if the patient does not exist
+     */
+    public Mono<Updated> update(long id, PatientUpdate update) {
+        boolean movesInCensus = update.sex() != null || update.birthDate() != null;
+        return client.inTransaction(connection -> {
+            // The census needs the old sex and birth date to move the patient between its buckets
+            Mono<Optional<PatientRow>> previous = movesInCensus
+                    ? rowById(connection, id).map(Optional::of)
+                    : Mono.just(Optional.empty());
+            return previous.flatMap(before -> updateColumns(connection, id, update)
+                    .filter(rows -> rows > 0)
+                    .flatMap(rows -> rowById(connection, id))
+                    .flatMap(after -> {
+                        PatientRow beforeRow = before.orElse(null);
+                        boolean moved = beforeRow != null && (!Objects.equals(beforeRow.sex(), after.sex())
+                                || !Objects.equals(beforeRow.birthDate(), after.birthDate()));
+                        Mono<List<Long>> hospitalIds = moved ? hospitalIds(connection, id) : Mono.just(List.of());
+                        return hospitalIds.map(ids -> new Updated(beforeRow, after, ids));
+                    }));
+        });
+    }
+
+    /**
+     * Deletes the patient and its registrations in one transaction.
+     *
+     * @return the patient's last state, empty if it does not exist
+     */
+    public Mono<Deleted> delete(long id) {
+        return client.inTransaction(connection -> rowById(connection, id)
+                .flatMap(patient -> hospitalIds(connection, id)
+                        .flatMap(hospitalIds -> R2dbcClient.update(connection, "delete from hospital_patient where patient_id = $1",
+                                        statement -> statement.bind(0, id))
+                                .then(R2dbcClient.update(connection, "delete from patients where id = $1",
+                                        statement -> statement.bind(0, id)))
+                                .thenReturn(new Deleted(patient, hospitalIds)))));
+    }
+
+    private static Mono<PatientRow> rowById(Connection connection, long id) {
+        return R2dbcClient.query(connection, "select " + PATIENT_COLUMNS + " from patients p where p.id = $1",
+                        statement -> statement.bind(0, id), ReactivePatientRepository::patientRow)
+                .next();
+    }
+
+    private static Mono<List<Long>> hospitalIds(Connection connection, long patientId) {
+        return R2dbcClient.query(connection, "select hospital_id from hospital_patient where patient_id = $1",
+                        statement -> statement.bind(0, patientId), row -> row.get(0, Long.class))
+                .collectList();
+    }
+
+    // The statement of PatientUpdateRepositoryImpl: only the requested columns, search keys with their names
+    private static Mono<Long> updateColumns(Connection connection, long id, PatientUpdate update) {
+        List<String> assignments = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        if (update.name() != null) {
+            values.add(update.name());
+            assignments.add("name = $" + values.size());
+            values.add(Patient.searchKey(update.name()));
+            assignments.add("name_key = $" + values.size());
+        }
+        if (update.lastName() != null) {
+            values.add(update.lastName());
+            assignments.add("last_name = $" + values.size());
+            values.add(Patient.searchKey(update.lastName()));
+            assignments.add("last_name_key = $" + values.size());
+        }
+        if (update.birthDate() != null) {
+            values.add(update.birthDate());
+            assignments.add("birth_date = $" + values.size());
+        }
+        if (update.sex() != null) {
+            values.add(update.sex());
+            assignments.add("sex = $" + values.size());
+        }
+        if (assignments.isEmpty()) {
+            // Nothing to write; the update still reports whether the patient exists
+            return R2dbcClient.query(connection, "select 1 from patients where id = $1",
+                    statement -> statement.bind(0, id), row -> 1L).count();
+        }
+        values.add(id);
+        return R2dbcClient.update(connection, "update patients set " + String.join(", ", assignments) + " where id = $" + values.size(),
+                statement -> {
+                    for (int i = 0; i < values.size(); i++) {
+                        statement.bind(i, values.get(i));
+                    }
+                    return statement;
+                });
+    }
+
+    private static <T> Statement bindNullable(Statement statement, int index, T value, Class<T> type) {
+        return value == null ? statement.bindNull(index, type) : statement.bind(index, value);
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isEmpty();
+    }
+
+    private static String likePrefix(String prefix) {
+        String key = Patient.searchKey(prefix);
+        StringBuilder pattern = new StringBuilder(key.length() + 2);
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                pattern.append(LIKE_ESCAPE);
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+
+    private static PatientRow patientRow(Row row) {
+        return new PatientRow(
+                row.get("id", Long.class),
+                row.get("name", String.class),
+                row.get("last_name", String.class),
+                row.get("birth_date", LocalDate.class),
+                row.get("sex", String.class));
+    }
+}
@@ -0,0 +1,11 @@
+package hospital.server.repository;
+
+/**
+ * Number of patients of one sex and birth year, in one hospital or (with a hospital id of 0) overall.
+ */
+public record CensusRow(Long hospitalId, String sex, Integer birthYear, Long count) {
+
+    public CensusRow(String sex, Integer birthYear, Long count) {
+        this(0L, sex, birthYear, count);
+    }
+}
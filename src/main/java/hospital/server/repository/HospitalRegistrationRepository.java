@@ -0,0 +1,23 @@
+package hospital.server.repository;
+
+import java.util.Collection;
+
+public interface HospitalRegistrationRepository {
+
+    /**
+     * Adds one hospital_patient row without loading the roster.
+     *
+     * @return 1 if the row was added, 0 when either side is missing or the patient is already registered
+     */
+    int insertRegistration(long hospitalId, long patientId);
+
+    /**
+     * @return the number of hospital_patient rows removed
+     */
+    int deleteRegistrationsByPatientIdIn(Collection<Long> patientIds);
+
+    /**
+     * @return the number of hospital_patient rows removed
+     */
+    int deleteRegistrationsByHospitalIdIn(Collection<Long> hospitalIds);
+}
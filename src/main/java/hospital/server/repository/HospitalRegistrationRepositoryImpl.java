@@ -0,0 +1,84 @@
+package hospital.server.repository;
+
+import hospital.server.model.Hospital;
+import hospital.server.model.Patient;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+/**
+ * Writes hospital_patient with native statements. Each names the join table as its only query
+ * space, so Hibernate leaves the entity regions of the second-level cache alone, and evicts the
+ * cached rosters and registrations the statement changed itself, since the query space alone does
+ * not reach the collection regions. A delete knows only one side of the rows it removes, so the
+ * other side's region is evicted whole rather than queried first.
+ */
+class HospitalRegistrationRepositoryImpl implements HospitalRegistrationRepository {
+    private static final String ROSTER = Hospital.class.getName() + ".patients";
+    private static final String REGISTRATIONS = Patient.class.getName() + ".hospitals";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int insertRegistration(long hospitalId, long patientId) {
+        // The unique key on the join table makes the duplicate check an index lookup
+        int inserted = statement("insert into hospital_patient (hospital_id, patient_id) "
+                + "select h.id, p.id from hospitals h, patients p "
+                + "where h.id = :hospitalId and p.id = :patientId "
+                + "and not exists (select 1 from hospital_patient hp where hp.hospital_id = :hospitalId and hp.patient_id = :patientId)")
+                .setParameter("hospitalId", hospitalId)
+                .setParameter("patientId", patientId)
+                .executeUpdate();
+        if (inserted > 0) {
+            Cache cache = cache();
+            cache.evictCollectionData(ROSTER, hospitalId);
+            cache.evictCollectionData(REGISTRATIONS, patientId);
+        }
+        return inserted;
+    }
+
+    // Patient is the inverse side of the association, so deleting one does not remove its join rows
+    @Override
+    @Transactional
+    public int deleteRegistrationsByPatientIdIn(Collection<Long> patientIds) {
+        int deleted = statement("delete from hospital_patient where patient_id in (:patientIds)")
+                .setParameter("patientIds", patientIds)
+                .executeUpdate();
+        if (deleted > 0) {
+            Cache cache = cache();
+            patientIds.forEach(patientId -> cache.evictCollectionData(REGISTRATIONS, patientId));
+            cache.evictCollectionData(ROSTER);
+        }
+        return deleted;
+    }
+
+    @Override
+    @Transactional
+    public int deleteRegistrationsByHospitalIdIn(Collection<Long> hospitalIds) {
+        int deleted = statement("delete from hospital_patient where hospital_id in (:hospitalIds)")
+                .setParameter("hospitalIds", hospitalIds)
+                .executeUpdate();
+        if (deleted > 0) {
+            Cache cache = cache();
+            hospitalIds.forEach(hospitalId -> cache.evictCollectionData(ROSTER, hospitalId));
+            cache.evictCollectionData(REGISTRATIONS);
+        }
+        return deleted;
+    }
+
+    private Query statement(String sql) {
+        return entityManager.createNativeQuery(sql).setHint(HibernateHints.HINT_NATIVE_SPACES, "hospital_patient");
+    }
+
+    private Cache cache() {
+        return entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getCache();
+    }
+}
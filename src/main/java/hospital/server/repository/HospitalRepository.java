@@ -1,9 +1,78 @@
 package hospital.server.repository;
 
 import hospital.server.model.Hospital;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface HospitalRepository extends JpaRepository<Hospital, Long> {
+public interface HospitalRepository extends JpaRepository<Hospital, Long>, HospitalUpdateRepository,
+        HospitalRegistrationRepository {
+
+    // Keyset chunk: the next hospitals after the given id, in id order
+    List<Hospital> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    // Keyset page of the hospitals a patient is registered in, projected straight from the join
+    @Transactional(readOnly = true)
+    @Query("select new hospital.server.repository.HospitalRow(h.id, h.name, h.address) "
+            + "from Hospital h join h.patients p where p.id = :patientId and h.id > :afterId order by h.id")
+    List<HospitalRow> findRowsByPatientId(@Param("patientId") long patientId, @Param("afterId") long afterId, Pageable pageable);
+
+    @Transactional(readOnly = true)
+    @Query("select new hospital.server.repository.HospitalRow(h.id, h.name, h.address) from Hospital h where h.id = :id")
+    Optional<HospitalRow> findRowById(@Param("id") long id);
+
+    @Transactional(readOnly = true)
+    @Query("select case when count(p) > 0 then true else false end from Hospital h join h.patients p "
+            + "where h.id = :hospitalId and p.id = :patientId")
+    boolean existsRegistration(@Param("hospitalId") long hospitalId, @Param("patientId") long patientId);
+
+    @Transactional(readOnly = true)
+    @Query(value = "select hospital_id from hospital_patient where patient_id = :patientId", nativeQuery = true)
+    List<Long> findHospitalIdsByPatientId(@Param("patientId") long patientId);
+
+    @Transactional(readOnly = true)
+    @Query("select new hospital.server.repository.RegistrationRow(h.id, p.id) from Hospital h join h.patients p where p.id in :patientIds")
+    List<RegistrationRow> findRegistrationsByPatientIdIn(@Param("patientIds") Collection<Long> patientIds);
+
+    // Rosters of the hospitals with an id in [fromId, toId], ordered for building sorted id arrays
+    @Transactional(readOnly = true)
+    @Query("select new hospital.server.repository.RegistrationRow(h.id, p.id) from Hospital h join h.patients p "
+            + "where h.id between :fromId and :toId order by h.id, p.id")
+    List<RegistrationRow> findRegistrationsByHospitalIdBetween(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    @Transactional(readOnly = true)
+    @Query("select h.id from Hospital h where h.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    // Keyset chunk of the ids of hospitals created before the given instant
+    @Transactional(readOnly = true)
+    @Query("select h.id from Hospital h where h.createdAt < :createdBefore and h.id > :afterId order by h.id")
+    List<Long> findIdsCreatedBefore(@Param("createdBefore") Instant createdBefore, @Param("afterId") long afterId, Pageable pageable);
+
+    // Single DELETE statement; the caller removes the hospitals' hospital_patient rows first
+    @Modifying
+    @Transactional
+    @Query("delete from Hospital h where h.id in :ids")
+    int deleteRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Transactional(readOnly = true)
+    @Query("select h.id from Hospital h order by h.id")
+    List<Long> findAllIds();
+
+    // Census of the rosters of the hospitals with an id in [fromId, toId]
+    @Transactional(readOnly = true)
+    @Query("select new hospital.server.repository.CensusRow(h.id, p.sex, year(p.birthDate), count(p)) "
+            + "from Hospital h join h.patients p where h.id between :fromId and :toId "
+            + "group by h.id, p.sex, year(p.birthDate)")
+    List<CensusRow> countBySexAndBirthYearPerHospital(@Param("fromId") long fromId, @Param("toId") long toId);
 }
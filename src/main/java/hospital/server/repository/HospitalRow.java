@@ -0,0 +1,7 @@
+package hospital.server.repository;
+
+/**
+ * Read-only projection of a hospital's columns, for listings that do not need a managed entity.
+ */
+public record HospitalRow(Long id, String name, String address) {
+}
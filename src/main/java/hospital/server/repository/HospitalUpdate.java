@@ -0,0 +1,7 @@
+package hospital.server.repository;
+
+/**
+ * Columns to change in a hospital row. Null fields are left as they are.
+ */
+public record HospitalUpdate(String name, String address) {
+}
@@ -0,0 +1,9 @@
+package hospital.server.repository;
+
+public interface HospitalUpdateRepository {
+
+    /**
+     * @return the number of rows changed, 0 if the hospital does not exist
+     */
+    int update(long id, HospitalUpdate update);
+}
@@ -0,0 +1,37 @@
+package hospital.server.repository;
+
+import hospital.server.model.Hospital;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Writes only the requested columns with a single UPDATE statement. No entity is loaded, so the
+ * roster in hospital_patient is never rewritten.
+ */
+class HospitalUpdateRepositoryImpl implements HospitalUpdateRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int update(long id, HospitalUpdate update) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Hospital> query = cb.createCriteriaUpdate(Hospital.class);
+        Root<Hospital> hospital = query.from(Hospital.class);
+
+        if (update.name() != null) {
+            query.set(hospital.<String>get("name"), update.name());
+        }
+        if (update.address() != null) {
+            query.set(hospital.<String>get("address"), update.address());
+        }
+
+        query.where(cb.equal(hospital.<Long>get("id"), id));
+        return entityManager.createQuery(query).executeUpdate();
+    }
+}
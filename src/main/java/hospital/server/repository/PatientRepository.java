@@ -1,10 +1,60 @@
 package hospital.server.repository;
 
 import hospital.server.model.Patient;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 
 @Repository
-public interface PatientRepository extends JpaRepository<Patient, Long> {
+public interface PatientRepository extends JpaRepository<Patient, Long>, PatientSearchRepository, PatientUpdateRepository {
+
+    // Keyset chunk: the next patients after the given id, in id order
+    List<Patient> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    // Keyset page of the patients registered in a hospital, projected straight from the join
+    @Transactional(readOnly = true)
+    @Query("select new hospital.server.repository.PatientRow(p.id, p.name, p.lastName, p.birthDate, p.sex) "
+            + "from Hospital h join h.patients p where h.id = :hospitalId and p.id > :afterId order by p.id")
+    List<PatientRow> findRowsByHospitalId(@Param("hospitalId") long hospitalId, @Param("afterId") long afterId, Pageable pageable);
+
+    @Transactional(readOnly = true)
+    @Query("select new hospital.server.repository.PatientRow(p.id, p.name, p.lastName, p.birthDate, p.sex) "
+            + "from Patient p where p.id = :id")
+    Optional<PatientRow> findRowById(@Param("id") long id);
+
+    @Transactional(readOnly = true)
+    @Query("select new hospital.server.repository.PatientRow(p.id, p.name, p.lastName, p.birthDate, p.sex) "
+            + "from Patient p where p.id in :ids")
+    List<PatientRow> findRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Transactional(readOnly = true)
+    @Query("select p.id from Patient p where p.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    // Keyset chunk of the ids of patients created before the given instant
+    @Transactional(readOnly = true)
+    @Query("select p.id from Patient p where p.createdAt < :createdBefore and p.id > :afterId order by p.id")
+    List<Long> findIdsCreatedBefore(@Param("createdBefore") Instant createdBefore, @Param("afterId") long afterId, Pageable pageable);
+
+    // Single DELETE statement; the caller removes the patients' hospital_patient rows first
+    @Modifying
+    @Transactional
+    @Query("delete from Patient p where p.id in :ids")
+    int deleteRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Census of all patients; a null birth year stands for an unknown birth date
+    @Transactional(readOnly = true)
+    @Query("select new hospital.server.repository.CensusRow(p.sex, year(p.birthDate), count(p)) "
+            + "from Patient p group by p.sex, year(p.birthDate)")
+    List<CensusRow> countBySexAndBirthYear();
 }
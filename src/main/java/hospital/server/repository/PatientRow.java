@@ -0,0 +1,9 @@
+package hospital.server.repository;
+
+import java.time.LocalDate;
+
+/**
+ * Read-only projection of a patient's columns, for listings that do not need a managed entity.
+ */
+public record PatientRow(Long id, String name, String lastName, LocalDate birthDate, String sex) {
+}
@@ -0,0 +1,10 @@
+package hospital.server.repository;
+
+import java.time.LocalDate;
+
+/**
+ * Filters of a patient search. Null or empty fields do not restrict the result; name prefixes
+ * are matched case-insensitively, birth-date bounds are inclusive.
+ */
+public record PatientSearch(String namePrefix, String lastNamePrefix, String sex, LocalDate bornFrom, LocalDate bornTo) {
+}
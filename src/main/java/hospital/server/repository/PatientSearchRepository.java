@@ -0,0 +1,10 @@
+package hospital.server.repository;
+
+import hospital.server.model.Patient;
+
+import java.util.List;
+
+public interface PatientSearchRepository {
+
+    List<Patient> search(PatientSearch search, int limit);
+}
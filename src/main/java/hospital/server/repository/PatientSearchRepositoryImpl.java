@@ -0,0 +1,83 @@
+package hospital.server.repository;
+
+import hospital.server.model.Patient;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the search as a criteria query over the indexed lower-cased name columns. Results are
+ * ordered by the index the prefix filter runs on, so the database can stop after {@code limit}
+ * rows instead of sorting every match.
+ */
+class PatientSearchRepositoryImpl implements PatientSearchRepository {
+    private static final char LIKE_ESCAPE = '\\';
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Patient> search(PatientSearch search, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Patient> query = cb.createQuery(Patient.class);
+        Root<Patient> patient = query.from(Patient.class);
+
+        List<Predicate> predicates = new ArrayList<>();
+        List<Order> order = new ArrayList<>();
+        if (hasText(search.lastNamePrefix())) {
+            predicates.add(cb.like(patient.<String>get("lastNameKey"), likePrefix(search.lastNamePrefix()), LIKE_ESCAPE));
+            order.add(cb.asc(patient.<String>get("lastNameKey")));
+            order.add(cb.asc(patient.<String>get("nameKey")));
+        }
+        if (hasText(search.namePrefix())) {
+            predicates.add(cb.like(patient.<String>get("nameKey"), likePrefix(search.namePrefix()), LIKE_ESCAPE));
+            if (order.isEmpty()) {
+                order.add(cb.asc(patient.<String>get("nameKey")));
+            }
+        }
+        if (hasText(search.sex())) {
+            predicates.add(cb.equal(patient.<String>get("sex"), search.sex()));
+        }
+        if (search.bornFrom() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(patient.<LocalDate>get("birthDate"), search.bornFrom()));
+        }
+        if (search.bornTo() != null) {
+            predicates.add(cb.lessThanOrEqualTo(patient.<LocalDate>get("birthDate"), search.bornTo()));
+        }
+        order.add(cb.asc(patient.<Long>get("id")));
+
+        query.select(patient)
+                .where(predicates.toArray(Predicate[]::new))
+                .orderBy(order);
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isEmpty();
+    }
+
+    private static String likePrefix(String prefix) {
+        String key = Patient.searchKey(prefix);
+        StringBuilder pattern = new StringBuilder(key.length() + 2);
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                pattern.append(LIKE_ESCAPE);
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+}
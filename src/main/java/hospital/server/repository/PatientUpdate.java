@@ -0,0 +1,9 @@
+package hospital.server.repository;
+
+import java.time.LocalDate;
+
+/**
+ * Columns to change in a patient row. Null fields are left as they are.
+ */
+public record PatientUpdate(String name, String lastName, LocalDate birthDate, String sex) {
+}
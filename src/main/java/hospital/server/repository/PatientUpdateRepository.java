@@ -0,0 +1,9 @@
+package hospital.server.repository;
+
+public interface PatientUpdateRepository {
+
+    /**
+     * @return the number of rows changed, 0 if the patient does not exist
+     */
+    int update(long id, PatientUpdate update);
+}
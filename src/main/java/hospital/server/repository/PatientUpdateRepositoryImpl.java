@@ -0,0 +1,48 @@
+package hospital.server.repository;
+
+import hospital.server.model.Patient;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+
+/**
+ * Writes only the requested columns with a single UPDATE statement. No entity is loaded, so the
+ * hospital_patient rows are never touched. The statement bypasses the entity callbacks, so the
+ * lower-cased search keys are set here along with the names they are derived from.
+ */
+class PatientUpdateRepositoryImpl implements PatientUpdateRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int update(long id, PatientUpdate update) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Patient> query = cb.createCriteriaUpdate(Patient.class);
+        Root<Patient> patient = query.from(Patient.class);
+
+        if (update.name() != null) {
+            query.set(patient.<String>get("name"), update.name());
+            query.set(patient.<String>get("nameKey"), Patient.searchKey(update.name()));
+        }
+        if (update.lastName() != null) {
+            query.set(patient.<String>get("lastName"), update.lastName());
+            query.set(patient.<String>get("lastNameKey"), Patient.searchKey(update.lastName()));
+        }
+        if (update.birthDate() != null) {
+            query.set(patient.<LocalDate>get("birthDate"), update.birthDate());
+        }
+        if (update.sex() != null) {
+            query.set(patient.<String>get("sex"), update.sex());
+        }
+
+        query.where(cb.equal(patient.<Long>get("id"), id));
+        return entityManager.createQuery(query).executeUpdate();
+    }
+}
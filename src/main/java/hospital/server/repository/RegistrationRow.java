@@ -0,0 +1,7 @@
+package hospital.server.repository;
+
+/**
+ * One hospital_patient row.
+ */
+public record RegistrationRow(Long hospitalId, Long patientId) {
+}
@@ -0,0 +1,60 @@
+package hospital.server.routing;
+
+import java.util.function.Supplier;
+
+/**
+ * Where the read-only transactions of one gRPC call may go. Only calls are routed to replicas:
+ * work outside a call, such as loading the registration index or rebuilding the census, reads the
+ * primary. A call that has written reads the primary from then on, and so do calls that asked for
+ * read-your-writes while a write is recent.
+ */
+public final class ReadRouting {
+    private static final ThreadLocal<ReadRouting> CURRENT = new ThreadLocal<>();
+
+    private final boolean readYourWrites;
+    private volatile boolean written;
+
+    ReadRouting(boolean readYourWrites) {
+        this.readYourWrites = readYourWrites;
+    }
+
+    /**
+     * @return the routing of the call whose callback runs on this thread, or null outside of one
+     */
+    static ReadRouting current() {
+        return CURRENT.get();
+    }
+
+    boolean isReadYourWrites() {
+        return readYourWrites;
+    }
+
+    boolean hasWritten() {
+        return written;
+    }
+
+    void markWritten() {
+        written = true;
+    }
+
+    void run(Runnable callback) {
+        call(() -> {
+            callback.run();
+            return null;
+        });
+    }
+
+    <T> T call(Supplier<T> callback) {
+        ReadRouting previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return callback.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package hospital.server.routing;
+
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+
+/**
+ * Binds a {@link ReadRouting} to every callback of a gRPC call. Clients that must see their own
+ * writes send the {@code read-your-writes} header; any value turns it on.
+ */
+public class ReadRoutingInterceptor implements ServerInterceptor {
+    static final Metadata.Key<String> READ_YOUR_WRITES = Metadata.Key.of("read-your-writes", Metadata.ASCII_STRING_MARSHALLER);
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        ReadRouting routing = new ReadRouting(headers.containsKey(READ_YOUR_WRITES));
+        ServerCall.Listener<ReqT> listener = routing.call(() -> next.startCall(call, headers));
+        return new SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onMessage(ReqT message) {
+                routing.run(() -> super.onMessage(message));
+            }
+
+            @Override
+            public void onHalfClose() {
+                routing.run(super::onHalfClose);
+            }
+
+            @Override
+            public void onCancel() {
+                routing.run(super::onCancel);
+            }
+
+            @Override
+            public void onComplete() {
+                routing.run(super::onComplete);
+            }
+
+            @Override
+            public void onReady() {
+                routing.run(super::onReady);
+            }
+        };
+    }
+}
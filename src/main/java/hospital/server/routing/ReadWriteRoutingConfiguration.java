@@ -0,0 +1,66 @@
+package hospital.server.routing;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hospital.server.HospitalServerProperties;
+import net.devh.boot.grpc.common.util.InterceptorOrder;
+import net.devh.boot.grpc.server.interceptor.GrpcGlobalServerInterceptor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Read replicas ({@code hospital.routing.replica-urls}). Replaces Boot's single datasource with the
+ * primary pool, one pool per replica with the primary's credentials, and the routing in front of
+ * them. Replicas must carry the primary's schema; any copy of its database will do, such as an H2
+ * file copied from the primary's.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "hospital.routing", name = "replica-urls")
+public class ReadWriteRoutingConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties primaryProperties) {
+        return primaryProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReadWriteRoutingDataSource readWriteRoutingDataSource(HikariDataSource primaryDataSource,
+                                                                 DataSourceProperties primaryProperties,
+                                                                 HospitalServerProperties properties) {
+        HospitalServerProperties.Routing routing = properties.getRouting();
+        List<DataSource> replicas = routing.getReplicaUrls().stream()
+                .map(url -> (DataSource) DataSourceBuilder.create()
+                        .url(url)
+                        .username(primaryProperties.getUsername())
+                        .password(primaryProperties.getPassword())
+                        .build())
+                .toList();
+        return new ReadWriteRoutingDataSource(primaryDataSource, replicas, routing.getReadYourWritesWindow());
+    }
+
+    // The datasource JPA and JdbcTemplate use
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource readWriteRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readWriteRoutingDataSource);
+    }
+
+    // After metrics (+0), limits (+1) and statement counting (+2): the routing is bound around the
+    // endpoint's own callbacks, and a call the limits shed never gets one
+    @Bean
+    @GrpcGlobalServerInterceptor
+    @Order(InterceptorOrder.ORDER_TRACING_METRICS + 3)
+    public ReadRoutingInterceptor readRoutingInterceptor() {
+        return new ReadRoutingInterceptor();
+    }
+}
@@ -0,0 +1,90 @@
+package hospital.server.routing;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the read-only transactions of gRPC calls to the replicas, round robin, and everything else
+ * to the primary. The decision needs the transaction's read-only flag, which is only known once the
+ * transaction has begun, so this must sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} that fetches the
+ * connection at the first statement.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    private static final String PRIMARY = "primary";
+
+    private final List<DataSource> replicas;
+    private final List<String> replicaKeys = new ArrayList<>();
+    private final long readYourWritesWindowNanos;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    // Commit time of the latest write, on the System.nanoTime() scale
+    private volatile long lastWriteNanos;
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas, Duration readYourWritesWindow) {
+        this.replicas = List.copyOf(replicas);
+        this.readYourWritesWindowNanos = readYourWritesWindow.toNanos();
+        this.lastWriteNanos = System.nanoTime() - readYourWritesWindowNanos - 1;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            replicaKeys.add("replica-" + i);
+            targets.put("replica-" + i, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        ReadRouting call = ReadRouting.current();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            // Connections outside of transactions, such as the proxy's probe of the defaults, write nothing here
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                recordWrite(call);
+            }
+            return PRIMARY;
+        }
+        if (call == null || call.hasWritten() || replicaKeys.isEmpty()
+                || (call.isReadYourWrites() && System.nanoTime() - lastWriteNanos < readYourWritesWindowNanos)) {
+            return PRIMARY;
+        }
+        return replicaKeys.get(Math.floorMod(nextReplica.getAndIncrement(), replicaKeys.size()));
+    }
+
+    // Every read-write transaction counts as a write, which errs towards the primary
+    private void recordWrite(ReadRouting call) {
+        if (call != null) {
+            call.markWritten();
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                lastWriteNanos = System.nanoTime();
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        for (DataSource replica : replicas) {
+            if (replica instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    // Closing the others matters more than the cause
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package hospital.server.snapshot;
+
+import hospital.server.grpc.SnapshotOuterClass.SnapshotRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads the records of a snapshot file through memory-mapped windows, so the file is paged in by
+ * the OS rather than copied through a buffer. A mapping is limited to 2 GB, so larger files are
+ * read a window at a time; a record that crosses the end of a window is read from the next one,
+ * which starts at that record.
+ */
+final class MappedRecordReader implements Closeable {
+    private static final long WINDOW_BYTES = 1L << 30;
+    // Far above any real record; a larger length means the file is damaged
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private final Path path;
+    private final FileChannel channel;
+    // Where the records end and the checksum begins
+    private final long end;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    MappedRecordReader(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < SnapshotExporter.MAGIC.length + SnapshotExporter.CHECKSUM_BYTES) {
+                throw new StreamCorruptedException(path + " is too short to be a snapshot.");
+            }
+            this.end = size - SnapshotExporter.CHECKSUM_BYTES;
+            map(0);
+            byte[] magic = new byte[SnapshotExporter.MAGIC.length];
+            window.get(magic);
+            if (!Arrays.equals(magic, SnapshotExporter.MAGIC)) {
+                throw new StreamCorruptedException(path + " is not a snapshot.");
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Recomputes the checksum over the whole file and compares it with the stored one.
+     *
+     * @return the checksum
+     */
+    int verifyChecksum() throws IOException {
+        CRC32C checksum = new CRC32C();
+        for (long start = 0; start < end; start += WINDOW_BYTES) {
+            checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_BYTES, end - start)));
+        }
+        ByteBuffer stored = ByteBuffer.allocate(SnapshotExporter.CHECKSUM_BYTES);
+        while (stored.hasRemaining()) {
+            if (channel.read(stored, end + stored.position()) < 0) {
+                throw new StreamCorruptedException(path + " ends inside its checksum.");
+            }
+        }
+        int computed = (int) checksum.getValue();
+        if (stored.getInt(0) != computed) {
+            throw new StreamCorruptedException(path + " fails its checksum: stored " + Integer.toHexString(stored.getInt(0))
+                    + ", computed " + Integer.toHexString(computed) + ".");
+        }
+        return computed;
+    }
+
+    /**
+     * @return the next record, or null after the last one
+     */
+    SnapshotRecord next() throws IOException {
+        if (position() == end) {
+            return null;
+        }
+        int length = readLength();
+        if (length > end - position()) {
+            throw new StreamCorruptedException(path + " ends inside a record.");
+        }
+        if (window.remaining() < length) {
+            map(position());
+        }
+        ByteBuffer record = window.slice(window.position(), length);
+        window.position(window.position() + length);
+        return SnapshotRecord.parseFrom(record);
+    }
+
+    // The varint length prefix of writeDelimitedTo and writeUInt32NoTag
+    private int readLength() throws IOException {
+        int length = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position() == end) {
+                throw new StreamCorruptedException(path + " ends inside a record length.");
+            }
+            if (!window.hasRemaining()) {
+                map(position());
+            }
+            byte b = window.get();
+            length |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                if (length < 0 || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+                return length;
+            }
+        }
+        throw new StreamCorruptedException(path + " holds an invalid record length.");
+    }
+
+    private long position() {
+        return windowStart + window.position();
+    }
+
+    private void map(long start) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_BYTES, channel.size() - start));
+        windowStart = start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,41 @@
+package hospital.server.snapshot;
+
+import hospital.server.HospitalServerProperties;
+import net.devh.boot.grpc.common.util.InterceptorOrder;
+import net.devh.boot.grpc.server.interceptor.GrpcGlobalServerInterceptor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Configuration
+public class SnapshotConfiguration {
+
+    @Bean
+    public SnapshotExporter snapshotExporter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        // One consistent view of the tables, however long the export takes
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        return new SnapshotExporter(jdbcTemplate, transactionTemplate);
+    }
+
+    @Bean
+    public SnapshotImporter snapshotImporter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                             HospitalServerProperties properties) {
+        HospitalServerProperties.Snapshot snapshot = properties.getSnapshot();
+        return new SnapshotImporter(jdbcTemplate, new TransactionTemplate(transactionManager),
+                snapshot.getImportParallelism(), snapshot.getImportBatchSize());
+    }
+
+    // Last of ours, after read routing (+3): only calls that get this far hold the store against an import
+    @Bean
+    @GrpcGlobalServerInterceptor
+    @Order(InterceptorOrder.ORDER_TRACING_METRICS + 4)
+    public SnapshotImportGate snapshotImportGate(HospitalServerProperties properties) {
+        return new SnapshotImportGate(properties.getSnapshot().getImportDrainTimeout());
+    }
+}
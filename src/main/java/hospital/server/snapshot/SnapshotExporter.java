@@ -0,0 +1,176 @@
+package hospital.server.snapshot;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Timestamp;
+import hospital.server.grpc.BirthDateCodec;
+import hospital.server.grpc.SnapshotOuterClass.SnapshotEnd;
+import hospital.server.grpc.SnapshotOuterClass.SnapshotHospital;
+import hospital.server.grpc.SnapshotOuterClass.SnapshotPatient;
+import hospital.server.grpc.SnapshotOuterClass.SnapshotRecord;
+import hospital.server.grpc.SnapshotOuterClass.SnapshotRegistration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes the whole store to a snapshot file: an eight-byte magic, then length-delimited
+ * {@code SnapshotRecord}s (every hospital, every patient, every registration, and an end record
+ * with their counts), then the CRC32C of everything before it as a big-endian int. Tables are read
+ * in id order, a page per query, within one repeatable-read transaction. Null columns are left
+ * unset in their record. The file is written next to the target and moved over it once complete.
+ */
+public class SnapshotExporter {
+    static final byte[] MAGIC = "HSNAPv02".getBytes(StandardCharsets.US_ASCII);
+    static final int CHECKSUM_BYTES = Integer.BYTES;
+    private static final int PAGE_SIZE = 10_000;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * @param transactionTemplate a read-only, repeatable-read template, so the tables are read as of one point in time
+     */
+    public SnapshotExporter(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    public SnapshotSummary export(Path path) throws IOException {
+        long started = System.nanoTime();
+        Path partial = path.resolveSibling(path.getFileName() + ".partial");
+        SnapshotEnd counts;
+        int checksum;
+        try (OutputStream file = Files.newOutputStream(partial)) {
+            CheckedOutputStream checked = new CheckedOutputStream(file, new CRC32C());
+            checked.write(MAGIC);
+            CodedOutputStream output = CodedOutputStream.newInstance(checked, BUFFER_BYTES);
+            try {
+                counts = transactionTemplate.execute(status -> writeRecords(output));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            output.flush();
+            checksum = (int) checked.getChecksum().getValue();
+            file.write(ByteBuffer.allocate(CHECKSUM_BYTES).putInt(checksum).array());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new SnapshotSummary(counts.getHospitals(), counts.getPatients(), counts.getRegistrations(), checksum,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private SnapshotEnd writeRecords(CodedOutputStream output) {
+        SnapshotEnd.Builder counts = SnapshotEnd.newBuilder();
+        long afterId = 0;
+        int page;
+        do {
+            page = 0;
+            for (SnapshotHospital hospital : jdbcTemplate.query(
+                    "select id, name, address, created_at from hospitals where id > ? order by id limit ?",
+                    SnapshotExporter::hospital, afterId, PAGE_SIZE)) {
+                write(output, SnapshotRecord.newBuilder().setHospital(hospital).build());
+                afterId = hospital.getId();
+                page++;
+            }
+            counts.setHospitals(counts.getHospitals() + page);
+        } while (page == PAGE_SIZE);
+
+        afterId = 0;
+        do {
+            page = 0;
+            for (SnapshotPatient patient : jdbcTemplate.query(
+                    "select id, name, last_name, birth_date, sex, created_at from patients where id > ? order by id limit ?",
+                    SnapshotExporter::patient, afterId, PAGE_SIZE)) {
+                write(output, SnapshotRecord.newBuilder().setPatient(patient).build());
+                afterId = patient.getId();
+                page++;
+            }
+            counts.setPatients(counts.getPatients() + page);
+        } while (page == PAGE_SIZE);
+
+        // Keyset over the (hospital_id, patient_id) unique constraint
+        long afterHospitalId = 0;
+        long afterPatientId = 0;
+        do {
+            page = 0;
+            for (SnapshotRegistration registration : jdbcTemplate.query(
+                    "select hospital_id, patient_id from hospital_patient where hospital_id > ? or (hospital_id = ? and patient_id > ?) "
+                            + "order by hospital_id, patient_id limit ?",
+                    (rs, rowNum) -> SnapshotRegistration.newBuilder()
+                            .setHospitalId(rs.getLong("hospital_id"))
+                            .setPatientId(rs.getLong("patient_id"))
+                            .build(),
+                    afterHospitalId, afterHospitalId, afterPatientId, PAGE_SIZE)) {
+                write(output, SnapshotRecord.newBuilder().setRegistration(registration).build());
+                afterHospitalId = registration.getHospitalId();
+                afterPatientId = registration.getPatientId();
+                page++;
+            }
+            counts.setRegistrations(counts.getRegistrations() + page);
+        } while (page == PAGE_SIZE);
+
+        SnapshotEnd end = counts.build();
+        write(output, SnapshotRecord.newBuilder().setEnd(end).build());
+        return end;
+    }
+
+    private static void write(CodedOutputStream output, SnapshotRecord record) {
+        try {
+            output.writeUInt32NoTag(record.getSerializedSize());
+            record.writeTo(output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static SnapshotHospital hospital(ResultSet rs, int rowNum) throws SQLException {
+        SnapshotHospital.Builder hospital = SnapshotHospital.newBuilder()
+                .setId(rs.getLong("id"))
+                .setCreatedAt(timestamp(rs.getTimestamp("created_at").toInstant()));
+        setIfPresent(rs.getString("name"), hospital::setName);
+        setIfPresent(rs.getString("address"), hospital::setAddress);
+        return hospital.build();
+    }
+
+    private static SnapshotPatient patient(ResultSet rs, int rowNum) throws SQLException {
+        SnapshotPatient.Builder patient = SnapshotPatient.newBuilder()
+                .setId(rs.getLong("id"))
+                .setCreatedAt(timestamp(rs.getTimestamp("created_at").toInstant()));
+        setIfPresent(rs.getString("name"), patient::setName);
+        setIfPresent(rs.getString("last_name"), patient::setLastName);
+        LocalDate birthDate = rs.getObject("birth_date", LocalDate.class);
+        if (birthDate != null) {
+            patient.setBirthDate(BirthDateCodec.format(birthDate));
+        }
+        setIfPresent(rs.getString("sex"), patient::setSex);
+        return patient.build();
+    }
+
+    private static void setIfPresent(String value, Consumer<String> setter) {
+        if (value != null) {
+            setter.accept(value);
+        }
+    }
+
+    private static Timestamp timestamp(Instant instant) {
+        return Timestamp.newBuilder().setSeconds(instant.getEpochSecond()).setNanos(instant.getNano()).build();
+    }
+}
@@ -0,0 +1,127 @@
+package hospital.server.snapshot;
+
+import hospital.server.grpc.HospitalServiceEndpointGrpc;
+import hospital.server.grpc.PatientServiceEndpointGrpc;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the patient and hospital services out of the store while a snapshot loads. An import
+ * closes the gate, waits for the calls already in flight to finish, and until it opens the gate
+ * again new calls are closed with {@code UNAVAILABLE}. Without it, a CreatePatient racing the import
+ * could draw an id the snapshot also holds, or add a row to a store that was checked to be empty.
+ */
+public class SnapshotImportGate implements ServerInterceptor {
+    private static final Set<String> SERVICES = Set.of(
+            PatientServiceEndpointGrpc.SERVICE_NAME, HospitalServiceEndpointGrpc.SERVICE_NAME);
+
+    private final Duration drainTimeout;
+    // Guarded by this
+    private int inFlight;
+    private boolean closed;
+
+    /**
+     * @param drainTimeout how long an import waits for calls in flight before it gives up
+     */
+    public SnapshotImportGate(Duration drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        if (!SERVICES.contains(call.getMethodDescriptor().getServiceName())) {
+            return next.startCall(call, headers);
+        }
+        if (!enter()) {
+            call.close(Status.UNAVAILABLE.withDescription("A snapshot import is running; retry once it is done."),
+                    new Metadata());
+            return new ServerCall.Listener<>() {
+            };
+        }
+        // Leaves exactly once, whichever of close() and onCancel() comes first
+        AtomicBoolean left = new AtomicBoolean();
+        Runnable leave = () -> {
+            if (left.compareAndSet(false, true)) {
+                leave();
+            }
+        };
+        ServerCall<ReqT, RespT> gatedCall = new SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                leave.run();
+                super.close(status, trailers);
+            }
+        };
+
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(gatedCall, headers);
+        } catch (RuntimeException e) {
+            leave.run();
+            throw e;
+        }
+        return new SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onCancel() {
+                leave.run();
+                super.onCancel();
+            }
+        };
+    }
+
+    /**
+     * Turns new calls away and waits for those in flight to finish.
+     *
+     * @throws IllegalStateException if another import holds the gate, or calls are still in flight after the
+     *                               drain timeout; the gate is left as it was then
+     */
+    public synchronized void close() throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Another snapshot import is running.");
+        }
+        closed = true;
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        try {
+            while (inFlight > 0) {
+                long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    throw new IllegalStateException(inFlight + " patient and hospital calls were still in flight after "
+                            + drainTimeout.toMillis() + " ms.");
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            closed = false;
+            throw e;
+        }
+    }
+
+    public synchronized void open() {
+        closed = false;
+    }
+
+    private synchronized boolean enter() {
+        if (closed) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    private synchronized void leave() {
+        if (--inFlight == 0) {
+            notifyAll();
+        }
+    }
+}
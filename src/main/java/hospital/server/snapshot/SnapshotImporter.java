@@ -0,0 +1,243 @@
+package hospital.server.snapshot;
+
+import com.google.protobuf.Timestamp;
+import hospital.server.grpc.BirthDateCodec;
+import hospital.server.grpc.SnapshotOuterClass.SnapshotEnd;
+import hospital.server.grpc.SnapshotOuterClass.SnapshotHospital;
+import hospital.server.grpc.SnapshotOuterClass.SnapshotPatient;
+import hospital.server.grpc.SnapshotOuterClass.SnapshotRecord;
+import hospital.server.model.Patient;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Loads a snapshot written by {@link SnapshotExporter} into an empty store. The checksum is
+ * verified over the whole file first, so a damaged file loads nothing. Records are then parsed in
+ * file order and inserted in JDBC batches, a transaction each, on a pool of threads; each table
+ * finishes before the next starts, as registrations need their hospital and patient. A failed load
+ * empties the tables again.
+ *
+ * <p>Rows go in with plain SQL, so no change events are published: the caller rebuilds whatever
+ * is derived from the tables, and change feed subscribers do not see imported rows.
+ */
+public class SnapshotImporter {
+    private static final String INSERT_HOSPITAL = "insert into hospitals (id, name, address, created_at) values (?, ?, ?, ?)";
+    private static final String INSERT_PATIENT = "insert into patients "
+            + "(id, name, last_name, name_key, last_name_key, birth_date, sex, created_at) values (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_REGISTRATION = "insert into hospital_patient (hospital_id, patient_id) values (?, ?)";
+    // allocationSize of the hospitals_seq and patients_seq generators
+    private static final int SEQUENCE_ALLOCATION = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int parallelism;
+    private final int batchSize;
+
+    public SnapshotImporter(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, int parallelism, int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.parallelism = Math.max(1, parallelism);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * @throws IllegalStateException      if the store holds rows, or has handed out ids that imported rows could reuse
+     * @throws StreamCorruptedException   if the file is not a complete snapshot
+     */
+    public SnapshotSummary importFrom(Path path) throws IOException {
+        long started = System.nanoTime();
+        checkEmpty();
+        try (MappedRecordReader reader = new MappedRecordReader(path)) {
+            int checksum = reader.verifyChecksum();
+            SnapshotEnd counts;
+            try {
+                counts = load(reader, path);
+            } catch (IOException | RuntimeException e) {
+                clear();
+                throw e;
+            }
+            restartSequence("hospitals_seq", "hospitals");
+            restartSequence("patients_seq", "patients");
+            return new SnapshotSummary(counts.getHospitals(), counts.getPatients(), counts.getRegistrations(), checksum,
+                    (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    private SnapshotEnd load(MappedRecordReader reader, Path path) throws IOException {
+        try (BatchLoader loader = new BatchLoader()) {
+            // Hospitals, patients and registrations read so far
+            long[] counts = new long[3];
+            // Records come grouped by table in this order; the number of the current group
+            int section = SnapshotRecord.EntryCase.HOSPITAL.getNumber();
+            List<Object[]> rows = new ArrayList<>(batchSize);
+            SnapshotRecord record;
+            while ((record = reader.next()) != null) {
+                int entry = record.getEntryCase().getNumber();
+                if (entry == SnapshotRecord.EntryCase.ENTRY_NOT_SET.getNumber() || entry < section) {
+                    throw new StreamCorruptedException(path + " holds a " + record.getEntryCase() + " record out of order.");
+                }
+                if (entry > section) {
+                    loader.submit(sql(section), rows);
+                    rows = new ArrayList<>(batchSize);
+                    loader.awaitSubmitted();
+                    section = entry;
+                }
+                switch (record.getEntryCase()) {
+                    case HOSPITAL -> rows.add(hospitalRow(record.getHospital()));
+                    case PATIENT -> rows.add(patientRow(record.getPatient()));
+                    case REGISTRATION -> rows.add(new Object[] {
+                            record.getRegistration().getHospitalId(), record.getRegistration().getPatientId()});
+                    case END -> {
+                        if (reader.next() != null) {
+                            throw new StreamCorruptedException(path + " holds records after its end record.");
+                        }
+                        SnapshotEnd end = record.getEnd();
+                        if (end.getHospitals() != counts[0] || end.getPatients() != counts[1] || end.getRegistrations() != counts[2]) {
+                            throw new StreamCorruptedException(path + " holds " + counts[0] + " hospitals, " + counts[1]
+                                    + " patients and " + counts[2] + " registrations, but its end record counts " + end + ".");
+                        }
+                        return end;
+                    }
+                    default -> throw new IllegalStateException("Unknown snapshot record: " + record.getEntryCase());
+                }
+                counts[entry - 1]++;
+                if (rows.size() == batchSize) {
+                    loader.submit(sql(section), rows);
+                    rows = new ArrayList<>(batchSize);
+                }
+            }
+            throw new StreamCorruptedException(path + " has no end record.");
+        }
+    }
+
+    private static String sql(int section) {
+        return switch (SnapshotRecord.EntryCase.forNumber(section)) {
+            case HOSPITAL -> INSERT_HOSPITAL;
+            case PATIENT -> INSERT_PATIENT;
+            case REGISTRATION -> INSERT_REGISTRATION;
+            default -> throw new IllegalArgumentException("No table for snapshot section " + section);
+        };
+    }
+
+    private void checkEmpty() {
+        // A sequence past its start may back ids Hibernate holds in memory, which would collide with imported rows
+        Boolean used = jdbcTemplate.queryForObject("select exists(select 1 from hospitals) or exists(select 1 from patients) "
+                + "or exists(select 1 from information_schema.sequences "
+                + "where sequence_name in ('HOSPITALS_SEQ', 'PATIENTS_SEQ') and base_value <> start_value)", Boolean.class);
+        if (Boolean.TRUE.equals(used)) {
+            throw new IllegalStateException("Snapshots are only imported into a store that has never held hospitals or patients.");
+        }
+    }
+
+    private void clear() {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("delete from hospital_patient");
+            jdbcTemplate.update("delete from patients");
+            jdbcTemplate.update("delete from hospitals");
+        });
+    }
+
+    // Past the imported ids by a whole block: Hibernate's pooled optimizer hands out the block below the value it reads
+    private void restartSequence(String sequence, String table) {
+        Long maxId = jdbcTemplate.queryForObject("select max(id) from " + table, Long.class);
+        if (maxId != null) {
+            jdbcTemplate.execute("alter sequence " + sequence + " restart with " + (maxId + SEQUENCE_ALLOCATION + 1));
+        }
+    }
+
+    // Unset fields were null columns
+    private static Object[] hospitalRow(SnapshotHospital hospital) {
+        return new Object[] {
+                hospital.getId(),
+                hospital.hasName() ? hospital.getName() : null,
+                hospital.hasAddress() ? hospital.getAddress() : null,
+                sqlTimestamp(hospital.getCreatedAt())
+        };
+    }
+
+    private static Object[] patientRow(SnapshotPatient patient) {
+        String name = patient.hasName() ? patient.getName() : null;
+        String lastName = patient.hasLastName() ? patient.getLastName() : null;
+        return new Object[] {
+                patient.getId(),
+                name,
+                lastName,
+                Patient.searchKey(name),
+                Patient.searchKey(lastName),
+                patient.hasBirthDate() ? Date.valueOf(BirthDateCodec.parse(patient.getBirthDate())) : null,
+                patient.hasSex() ? patient.getSex() : null,
+                sqlTimestamp(patient.getCreatedAt())
+        };
+    }
+
+    private static java.sql.Timestamp sqlTimestamp(Timestamp timestamp) {
+        return java.sql.Timestamp.from(Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanos()));
+    }
+
+    // Runs batches on the pool, with at most two per thread waiting, so parsing cannot run far ahead of the inserts
+    private final class BatchLoader implements AutoCloseable {
+        private final ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                Thread.ofPlatform().name("snapshot-import-", 0).daemon(true).factory());
+        private final Semaphore permits = new Semaphore(2 * parallelism);
+        private final List<Future<?>> submitted = new ArrayList<>();
+
+        void submit(String sql, List<Object[]> rows) throws IOException {
+            if (rows.isEmpty()) {
+                return;
+            }
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while importing a snapshot.");
+            }
+            submitted.add(executor.submit(() -> {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, rows));
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+
+        void awaitSubmitted() throws IOException {
+            try {
+                for (Future<?> batch : submitted) {
+                    batch.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while importing a snapshot.");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new CompletionException(e.getCause());
+            } finally {
+                submitted.clear();
+            }
+        }
+
+        @Override
+        public void close() {
+            // Waits for running batches, so a failed load is cleared after them
+            executor.shutdownNow();
+            executor.close();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package hospital.server.snapshot;
+
+/**
+ * What a snapshot export or import moved, and the checksum of the file.
+ */
+public record SnapshotSummary(long hospitals, long patients, long registrations, int checksum, long elapsedMillis) {
+}
@@ -1,15 +1,32 @@
 package hospital.server;
 
+import static org.junit.jupiter.api.Assertions.*;
 
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.springframework.test.context.ContextConfiguration;
-import org.springframework.test.context.junit.jupiter.SpringExtension;
+import io.r2dbc.spi.ConnectionFactory;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
 
+import javax.sql.DataSource;
 
-@ExtendWith(SpringExtension.class)
-@ContextConfiguration(classes = SpringHibernateCrudApplication.class)
+/**
+ * Starts the server with the default properties, that is the JPA engine, whatever else is on the
+ * classpath.
+ */
+@SpringBootTest(properties = {
+        "grpc.server.port=-1",
+        "grpc.server.in-process-name=spring-hibernate-crud-application-test"})
 public class SpringHibernateCrudApplicationTest {
 
+    @Autowired
+    private ApplicationContext context;
 
+    @Test
+    void contextLoadsTest() {
+        assertEquals(1, context.getBeanNamesForType(DataSource.class).length);
+        assertEquals(1, context.getBeanNamesForType(EntityManagerFactory.class).length);
+        assertEquals(0, context.getBeanNamesForType(ConnectionFactory.class).length);
+    }
 }
-
@@ -0,0 +1,117 @@
+package hospital.server.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import hospital.server.model.Hospital;
+import hospital.server.model.Patient;
+import hospital.server.repository.HospitalRepository;
+import hospital.server.repository.HospitalUpdate;
+import hospital.server.repository.PatientRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+/**
+ * Runs the repositories against the second-level cache and checks that each kind of write leaves
+ * no stale entry behind, and that statements on the join table leave the entity regions alone.
+ */
+@SpringBootTest(properties = {
+        "grpc.server.port=-1",
+        "grpc.server.in-process-name=second-level-cache-test",
+        "spring.datasource.url=jdbc:h2:mem:second-level-cache-test;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.url=r2dbc:h2:mem:///second-level-cache-test",
+        "hospital.second-level-cache.enabled=true"})
+class SecondLevelCacheTest {
+    private static final String ROSTER = Hospital.class.getName() + ".patients";
+    private static final String REGISTRATIONS = Patient.class.getName() + ".hospitals";
+
+    @Autowired
+    private HospitalRepository hospitalRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Cache cache;
+    private long hospitalId;
+    private long patientId;
+
+    @BeforeEach
+    void setUp() {
+        cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        hospitalId = hospitalRepository.save(new Hospital("Cached Hospital")).getId();
+        patientId = patientRepository.save(Patient.builder()
+                .name("Cached")
+                .lastName("Patient")
+                .birthDate(LocalDate.of(1990, 1, 1))
+                .sex("female")
+                .build()).getId();
+    }
+
+    // Loads the hospital and its roster, and the patient and its registrations, into the cache
+    private int warm() {
+        return transactionTemplate.execute(status -> {
+            patientRepository.findById(patientId).orElseThrow().getHospitals().size();
+            return hospitalRepository.findById(hospitalId).orElseThrow().getPatients().size();
+        });
+    }
+
+    @Test
+    void registrationEvictsOnlyCollectionRegionsTest() {
+        assertEquals(0, warm());
+        assertTrue(cache.containsEntity(Hospital.class, hospitalId));
+        assertTrue(cache.containsCollection(ROSTER, hospitalId));
+        assertTrue(cache.containsCollection(REGISTRATIONS, patientId));
+
+        assertEquals(1, hospitalRepository.insertRegistration(hospitalId, patientId));
+
+        // The native insert names hospital_patient as its query space, so the entities stay cached
+        assertFalse(cache.containsCollection(ROSTER, hospitalId));
+        assertFalse(cache.containsCollection(REGISTRATIONS, patientId));
+        assertTrue(cache.containsEntity(Hospital.class, hospitalId));
+        assertTrue(cache.containsEntity(Patient.class, patientId));
+        assertEquals(1, warm());
+    }
+
+    @Test
+    void updateEvictsStaleHospitalTest() {
+        warm();
+        assertTrue(cache.containsEntity(Hospital.class, hospitalId));
+
+        assertEquals(1, hospitalRepository.update(hospitalId, new HospitalUpdate("Renamed Hospital", null)));
+
+        assertFalse(cache.containsEntity(Hospital.class, hospitalId));
+        assertEquals("Renamed Hospital", hospitalRepository.findById(hospitalId).orElseThrow().getName());
+    }
+
+    @Test
+    void deleteEvictsHospitalAndRosterTest() {
+        hospitalRepository.insertRegistration(hospitalId, patientId);
+        assertEquals(1, warm());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            hospitalRepository.deleteRegistrationsByHospitalIdIn(Set.of(hospitalId));
+            hospitalRepository.deleteRowsByIdIn(Set.of(hospitalId));
+        });
+
+        assertFalse(cache.containsEntity(Hospital.class, hospitalId));
+        assertFalse(cache.containsCollection(ROSTER, hospitalId));
+        assertFalse(cache.containsCollection(REGISTRATIONS, patientId));
+        assertTrue(hospitalRepository.findById(hospitalId).isEmpty());
+        assertEquals(0, (int) transactionTemplate.execute(status ->
+                patientRepository.findById(patientId).orElseThrow().getHospitals().size()));
+    }
+}
@@ -0,0 +1,104 @@
+package hospital.server.census;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import hospital.server.HospitalServerProperties;
+import hospital.server.event.ChangeType;
+import hospital.server.event.HospitalChanged;
+import hospital.server.event.PatientChanged;
+import hospital.server.event.RegistrationChanged;
+import hospital.server.grpc.HospitalOuterClass.HospitalResponse;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import hospital.server.repository.CensusRow;
+import hospital.server.repository.HospitalRepository;
+import hospital.server.repository.PatientRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+@ExtendWith(MockitoExtension.class)
+class CensusTest {
+
+    @Mock
+    private PatientRepository patientRepository;
+
+    @Mock
+    private HospitalRepository hospitalRepository;
+
+    private final PatientResponse patient = PatientResponse.newBuilder()
+            .setId(1L)
+            .setSex("male")
+            .setBirthDate("11/04/1999")
+            .build();
+
+    private Census census() {
+        return new Census(patientRepository, hospitalRepository, new HospitalServerProperties());
+    }
+
+    @Test
+    void countsFollowChangeEventsTest() {
+        Census census = census();
+        census.onHospitalChanged(new HospitalChanged(ChangeType.CREATED, HospitalResponse.newBuilder().setId(2L).build()));
+        census.onPatientChanged(new PatientChanged(ChangeType.CREATED, patient));
+        census.onRegistrationChanged(new RegistrationChanged(ChangeType.CREATED, 2L, patient));
+
+        PatientResponse updated = patient.toBuilder().setSex("female").build();
+        census.onPatientChanged(new PatientChanged(ChangeType.UPDATED, updated, patient, List.of(2L)));
+
+        Census.Counts expected = new Census.Counts(1L, Map.of("female", 1L), Map.of(1999, 1L));
+        assertEquals(expected, census.global());
+        assertEquals(expected, census.hospital(2L).orElseThrow());
+        // The hospitals came with the event; the listener runs after the commit and does not query
+        verifyNoInteractions(hospitalRepository);
+
+        census.onRegistrationChanged(new RegistrationChanged(ChangeType.DELETED, 2L, updated));
+        census.onPatientChanged(new PatientChanged(ChangeType.DELETED, updated));
+
+        assertEquals(new Census.Counts(0L, Map.of(), Map.of()), census.global());
+        assertEquals(0L, census.hospital(2L).orElseThrow().patients());
+    }
+
+    @Test
+    void updateWithoutAttributeChangesLeavesCountsTest() {
+        Census census = census();
+        census.onPatientChanged(new PatientChanged(ChangeType.CREATED, patient));
+
+        census.onPatientChanged(new PatientChanged(ChangeType.UPDATED, patient.toBuilder().setName("renamed").build(), patient, List.of()));
+
+        verifyNoInteractions(hospitalRepository);
+        assertEquals(1L, census.global().patients());
+    }
+
+    @Test
+    void rebuildRecomputesFromTablesTest() {
+        Census census = census();
+        when(hospitalRepository.findAllIds()).thenReturn(List.of(2L, 3L));
+        when(patientRepository.countBySexAndBirthYear()).thenReturn(List.of(
+                new CensusRow("male", 1999, 2L),
+                new CensusRow("female", null, 1L)));
+        // Two hospitals and four rebuild threads: one id range per hospital
+        when(hospitalRepository.countBySexAndBirthYearPerHospital(2L, 2L)).thenReturn(List.of(
+                new CensusRow(2L, "male", 1999, 2L)));
+        when(hospitalRepository.countBySexAndBirthYearPerHospital(3L, 3L)).thenReturn(List.of());
+
+        Census.Verification verification = census.rebuild(false);
+
+        assertFalse(verification.consistent());
+        assertEquals(2, verification.hospitals());
+        assertEquals(2, verification.mismatchedHospitals());
+        assertEquals(0L, census.global().patients());
+
+        census.rebuild(true);
+
+        assertEquals(3L, census.global().patients());
+        assertEquals(1L, census.global().byBirthYear().get(Census.UNKNOWN_BIRTH_YEAR));
+        assertEquals(2L, census.hospital(2L).orElseThrow().patients());
+        assertEquals(0L, census.hospital(3L).orElseThrow().patients());
+        assertTrue(census.rebuild(false).consistent());
+    }
+}
@@ -0,0 +1,114 @@
+package hospital.server.feed;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import hospital.server.event.ChangeType;
+import hospital.server.event.HospitalChanged;
+import hospital.server.event.PatientChanged;
+import hospital.server.event.RegistrationChanged;
+import hospital.server.grpc.ChangeFeedOuterClass.ChangeEvent;
+import hospital.server.grpc.HospitalOuterClass.HospitalResponse;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import io.grpc.stub.ServerCallStreamObserver;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.List;
+
+class ChangeFeedTest {
+
+    // Drains run on the calling thread, so every assertion sees the final state
+    private final ChangeFeed changeFeed = new ChangeFeed(4, Runnable::run);
+
+    @Test
+    void deliversChangesInSequenceTest() {
+        ServerCallStreamObserver<ChangeEvent> responseObserver = Mockito.mock(ServerCallStreamObserver.class);
+        when(responseObserver.isReady()).thenReturn(true);
+
+        changeFeed.subscribe(0L, responseObserver);
+        changeFeed.onPatientChanged(new PatientChanged(ChangeType.CREATED, PatientResponse.newBuilder().setId(1L).build()));
+        changeFeed.onRegistrationChanged(new RegistrationChanged(ChangeType.CREATED, 2L, PatientResponse.newBuilder().setId(1L).build()));
+
+        ArgumentCaptor<ChangeEvent> events = ArgumentCaptor.forClass(ChangeEvent.class);
+        verify(responseObserver, times(2)).onNext(events.capture());
+        List<ChangeEvent> delivered = events.getAllValues();
+        assertEquals(1L, delivered.get(0).getSequence());
+        assertEquals(ChangeEvent.Type.PATIENT_CREATED, delivered.get(0).getType());
+        assertEquals(1L, delivered.get(0).getPatient().getId());
+        assertEquals(2L, delivered.get(1).getSequence());
+        assertEquals(ChangeEvent.Type.PATIENT_REGISTERED, delivered.get(1).getType());
+        assertEquals(2L, delivered.get(1).getHospitalId());
+        assertEquals(1L, delivered.get(1).getPatientId());
+    }
+
+    @Test
+    void waitsForReadyBeforeSendingTest() {
+        ServerCallStreamObserver<ChangeEvent> responseObserver = Mockito.mock(ServerCallStreamObserver.class);
+        ArgumentCaptor<Runnable> onReadyHandler = ArgumentCaptor.forClass(Runnable.class);
+        when(responseObserver.isReady()).thenReturn(false);
+
+        changeFeed.subscribe(0L, responseObserver);
+        changeFeed.onHospitalChanged(new HospitalChanged(ChangeType.UPDATED, HospitalResponse.newBuilder().setId(3L).build()));
+        verify(responseObserver, never()).onNext(any());
+
+        when(responseObserver.isReady()).thenReturn(true);
+        verify(responseObserver).setOnReadyHandler(onReadyHandler.capture());
+        onReadyHandler.getValue().run();
+
+        verify(responseObserver).onNext(argThat(event -> event.getType() == ChangeEvent.Type.HOSPITAL_UPDATED));
+    }
+
+    @Test
+    void resumesAfterGivenSequenceTest() {
+        for (long id = 1; id <= 3; id++) {
+            changeFeed.onPatientChanged(new PatientChanged(ChangeType.UPDATED, PatientResponse.newBuilder().setId(id).build()));
+        }
+        ServerCallStreamObserver<ChangeEvent> responseObserver = Mockito.mock(ServerCallStreamObserver.class);
+        when(responseObserver.isReady()).thenReturn(true);
+
+        changeFeed.subscribe(1L, responseObserver);
+
+        ArgumentCaptor<ChangeEvent> events = ArgumentCaptor.forClass(ChangeEvent.class);
+        verify(responseObserver, times(2)).onNext(events.capture());
+        assertEquals(2L, events.getAllValues().get(0).getSequence());
+        assertEquals(3L, events.getAllValues().get(1).getSequence());
+        verify(responseObserver, never()).onCompleted();
+    }
+
+    @Test
+    void slowSubscriberIsToldToResyncTest() {
+        ServerCallStreamObserver<ChangeEvent> responseObserver = Mockito.mock(ServerCallStreamObserver.class);
+        ArgumentCaptor<Runnable> onReadyHandler = ArgumentCaptor.forClass(Runnable.class);
+        when(responseObserver.isReady()).thenReturn(false);
+        changeFeed.subscribe(0L, responseObserver);
+
+        // One more change than the ring holds, while the subscriber is not reading
+        for (long id = 1; id <= 5; id++) {
+            changeFeed.onPatientChanged(new PatientChanged(ChangeType.UPDATED, PatientResponse.newBuilder().setId(id).build()));
+        }
+        when(responseObserver.isReady()).thenReturn(true);
+        verify(responseObserver).setOnReadyHandler(onReadyHandler.capture());
+        onReadyHandler.getValue().run();
+
+        verify(responseObserver).onNext(ChangeEvent.newBuilder()
+                .setSequence(5L)
+                .setType(ChangeEvent.Type.RESYNC_REQUIRED)
+                .build());
+        verify(responseObserver).onCompleted();
+        assertEquals(0, changeFeed.subscriberCount());
+    }
+
+    @Test
+    void unknownPositionRequiresResyncTest() {
+        ServerCallStreamObserver<ChangeEvent> responseObserver = Mockito.mock(ServerCallStreamObserver.class);
+
+        // The sequence of a previous server run
+        changeFeed.subscribe(42L, responseObserver);
+
+        verify(responseObserver).onNext(argThat(event -> event.getType() == ChangeEvent.Type.RESYNC_REQUIRED));
+        verify(responseObserver).onCompleted();
+    }
+}
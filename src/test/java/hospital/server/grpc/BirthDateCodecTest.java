@@ -0,0 +1,40 @@
+package hospital.server.grpc;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+class BirthDateCodecTest {
+
+    @Test
+    void formatPadsDayAndMonthTest() {
+        assertEquals("01/04/1999", BirthDateCodec.format(LocalDate.of(1999, 4, 1)));
+        assertEquals("31/12/2020", BirthDateCodec.format(LocalDate.of(2020, 12, 31)));
+        assertEquals("", BirthDateCodec.format(null));
+    }
+
+    @Test
+    void parseTest() {
+        assertEquals(LocalDate.of(1999, 4, 11), BirthDateCodec.parse("11/04/1999"));
+        // Single-digit day and month, as rendered by older versions of the server
+        assertEquals(LocalDate.of(1999, 4, 1), BirthDateCodec.parse("1/4/1999"));
+    }
+
+    @Test
+    void roundTripTest() {
+        LocalDate date = LocalDate.of(1950, 2, 28);
+        assertEquals(date, BirthDateCodec.parse(BirthDateCodec.format(date)));
+    }
+
+    @Test
+    void parseRejectsInvalidDatesTest() {
+        assertThrows(IllegalArgumentException.class, () -> BirthDateCodec.parse(""));
+        assertThrows(IllegalArgumentException.class, () -> BirthDateCodec.parse("1999-04-11"));
+        assertThrows(IllegalArgumentException.class, () -> BirthDateCodec.parse("11/04/99"));
+        assertThrows(IllegalArgumentException.class, () -> BirthDateCodec.parse("111/04/1999"));
+        assertThrows(IllegalArgumentException.class, () -> BirthDateCodec.parse("31/02/1999"));
+        assertThrows(IllegalArgumentException.class, () -> BirthDateCodec.parse("11/04/1999x"));
+    }
+}
@@ -0,0 +1,189 @@
+package hospital.server.grpc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import hospital.server.HospitalServerProperties;
+import hospital.server.SpringHibernateCrudApplication;
+import hospital.server.grpc.HospitalOuterClass.CreateHospitalRequest;
+import hospital.server.grpc.HospitalOuterClass.FindByIdRequest;
+import hospital.server.grpc.HospitalOuterClass.HospitalResponse;
+import hospital.server.grpc.HospitalServiceEndpointGrpc.HospitalServiceEndpointBlockingStub;
+import hospital.server.limit.ConcurrencyLimitInterceptor;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallExecutorSupplier;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Boots the application once per {@code hospital.grpc.executor-mode}, serves a call in each, and
+ * checks which kind of thread the configured executor runs on; and fills the platform pool's queue
+ * to check that the next call is shed before it queues, both at the executor supplier and through a
+ * running server.
+ */
+class GrpcExecutorConfigurationTest {
+
+    // Arguments rather than default properties, which application.properties would override
+    private static ConfigurableApplicationContext start(String name, String... properties) {
+        Stream<String> server = Stream.of(
+                "grpc.server.port=-1",
+                "grpc.server.in-process-name=" + name,
+                "spring.datasource.url=jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        return new SpringApplicationBuilder(SpringHibernateCrudApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(Stream.concat(server, Stream.of(properties)).map(property -> "--" + property).toArray(String[]::new));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"platform-pool", "virtual-threads"})
+    void serverRunsCallsOnConfiguredExecutorTest(String executorMode) throws Exception {
+        String name = "executor-mode-test-" + executorMode;
+        try (ConfigurableApplicationContext context = start(name, "hospital.grpc.executor-mode=" + executorMode)) {
+            ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+            try {
+                HospitalServiceEndpointBlockingStub hospitals = HospitalServiceEndpointGrpc.newBlockingStub(channel);
+                HospitalResponse created = hospitals.createHospital(CreateHospitalRequest.newBuilder()
+                        .setName("Executor Hospital")
+                        .setAddress("Executor Street")
+                        .build());
+                HospitalResponse found = hospitals.findById(FindByIdRequest.newBuilder().setId(created.getId()).build());
+                assertEquals("Executor Hospital", found.getName());
+            } finally {
+                channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            }
+
+            Executor executor = pool(context.getBean(GrpcExecutorConfiguration.ExecutorConfigurer.class));
+            Thread thread = CompletableFuture.supplyAsync(Thread::currentThread, executor).get(10, TimeUnit.SECONDS);
+
+            boolean virtual = executorMode.equals("virtual-threads");
+            assertEquals(virtual, thread.isVirtual());
+            assertTrue(thread.getName().startsWith(virtual ? "grpc-server-virtual-" : "grpc-server-"), thread.getName());
+        }
+    }
+
+    @Test
+    void serverShedsCallOnceQueueIsFullTest() throws Exception {
+        String name = "executor-shed-test";
+        try (ConfigurableApplicationContext context = start(name,
+                "hospital.grpc.platform-pool-size=1", "hospital.grpc.platform-queue-capacity=1")) {
+            Executor pool = pool(context.getBean(GrpcExecutorConfiguration.ExecutorConfigurer.class));
+            ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch busy = new CountDownLatch(1);
+            try {
+                // Holds the only thread, then leaves one task waiting for it
+                pool.execute(() -> {
+                    started.countDown();
+                    try {
+                        busy.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+                pool.execute(() -> {
+                });
+
+                StatusRuntimeException error = assertThrows(StatusRuntimeException.class, () -> HospitalServiceEndpointGrpc
+                        .newBlockingStub(channel)
+                        .withDeadlineAfter(10, TimeUnit.SECONDS)
+                        .findById(FindByIdRequest.newBuilder().setId(1).build()));
+                assertEquals(Status.Code.RESOURCE_EXHAUSTED, error.getStatus().getCode(), error.getStatus().getDescription());
+                Metadata trailers = error.getTrailers();
+                assertNotNull(trailers);
+                assertNotNull(trailers.get(Metadata.Key.of("grpc-retry-pushback-ms", Metadata.ASCII_STRING_MARSHALLER)));
+                assertEquals(1, context.getBean(MeterRegistry.class).get("grpc.server.executor.rejected").counter().count());
+            } finally {
+                busy.countDown();
+                channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void callIsShedOnceQueueIsFullTest() throws Exception {
+        HospitalServerProperties properties = new HospitalServerProperties();
+        properties.getGrpc().setPlatformPoolSize(1);
+        properties.getGrpc().setPlatformQueueCapacity(1);
+        GrpcExecutorConfiguration.ExecutorConfigurer configurer = new GrpcExecutorConfiguration().grpcExecutorConfigurer(properties);
+        ServerCallExecutorSupplier supplier = supplier(configurer);
+        Executor pool = pool(configurer);
+
+        ServerCall<Object, Object> call = mock(ServerCall.class);
+        when(call.getMethodDescriptor()).thenReturn((MethodDescriptor<Object, Object>) (MethodDescriptor<?, ?>)
+                HospitalServiceEndpointGrpc.getFindByIdMethod());
+        Metadata headers = new Metadata();
+        headers.put(Metadata.Key.of("hospital-stream-created-nanos", Metadata.ASCII_STRING_MARSHALLER), "1");
+        assertSame(pool, supplier.getExecutor(call, headers));
+        // The client's own value is replaced by the server's
+        assertTrue(CallArrival.createdNanos(headers) > 1);
+
+        CountDownLatch busy = new CountDownLatch(1);
+        try {
+            pool.execute(() -> {
+                try {
+                    busy.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            pool.execute(() -> {
+            });
+            // One task waits already, so the next call is run inline and rejected by the limit interceptor
+            Executor shedding = supplier.getExecutor(call, new Metadata());
+            assertSame(CallArrival.SHEDDING, shedding);
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(registry, properties.getLimits());
+            ServerCallHandler<Object, Object> handler = mock(ServerCallHandler.class);
+            shedding.execute(() -> interceptor.interceptCall(call, new Metadata(), handler));
+
+            ArgumentCaptor<Status> status = ArgumentCaptor.forClass(Status.class);
+            verify(call).close(status.capture(), any());
+            assertEquals(Status.Code.RESOURCE_EXHAUSTED, status.getValue().getCode());
+            verifyNoInteractions(handler);
+            assertEquals(1, registry.get("grpc.server.executor.rejected").counter().count());
+            assertFalse(CallArrival.isShed());
+        } finally {
+            busy.countDown();
+            configurer.destroy();
+        }
+    }
+
+    private static ServerCallExecutorSupplier supplier(GrpcExecutorConfiguration.ExecutorConfigurer configurer) {
+        ServerBuilder<?> serverBuilder = mock(ServerBuilder.class);
+        configurer.accept(serverBuilder);
+        verify(serverBuilder).directExecutor();
+        ArgumentCaptor<ServerCallExecutorSupplier> supplier = ArgumentCaptor.forClass(ServerCallExecutorSupplier.class);
+        verify(serverBuilder).callExecutor(supplier.capture());
+        return supplier.getValue();
+    }
+
+    // The executor the calls run on while its queue has room
+    @SuppressWarnings("unchecked")
+    private static Executor pool(GrpcExecutorConfiguration.ExecutorConfigurer configurer) {
+        return supplier(configurer).getExecutor(mock(ServerCall.class), new Metadata());
+    }
+}
@@ -1,21 +1,54 @@
 package hospital.server.grpc;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import hospital.server.HospitalServerProperties;
+import hospital.server.cache.ResponseCache;
+import hospital.server.census.Census;
+import hospital.server.event.ChangeType;
+import hospital.server.event.HospitalChanged;
+import hospital.server.index.RegistrationIndex;
 import hospital.server.model.Hospital;
+import hospital.server.partition.PartitionedStorage;
+import hospital.server.reactive.ReactiveHospitalRepository;
+import hospital.server.reactive.ReactivePatientRepository;
 import hospital.server.repository.HospitalRepository;
+import hospital.server.repository.HospitalRow;
+import hospital.server.repository.HospitalUpdate;
 import hospital.server.repository.PatientRepository;
+import com.google.protobuf.Empty;
+import com.google.protobuf.FieldMask;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import io.grpc.stub.StreamObserver;
+import hospital.server.grpc.BatchOuterClass.BatchDeleteRequest;
+import hospital.server.grpc.BatchOuterClass.BatchDeleteResponse;
+import hospital.server.grpc.BatchOuterClass.BatchDeleteResult;
 import hospital.server.grpc.HospitalOuterClass.*;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @ExtendWith(MockitoExtension.class)
 class HospitalServiceEndpointImplTest {
@@ -23,6 +56,35 @@ class HospitalServiceEndpointImplTest {
     @Mock
     private HospitalRepository hospitalRepository;
 
+    @Mock
+    private PatientRepository patientRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Spy
+    private HospitalServerProperties properties = new HospitalServerProperties();
+
+    @Spy
+    private ResponseCache<HospitalResponse> hospitalResponseCache = new ResponseCache<>(new HospitalServerProperties.Cache());
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private RegistrationIndex registrationIndex;
+
+    @Mock
+    private Census census;
+
+    @Mock
+    private ReactiveHospitalRepository reactiveHospitalRepository;
+
+    @Mock
+    private ReactivePatientRepository reactivePatientRepository;
+
+    @Mock
+    private PartitionedStorage partitionedStorage;
 
     @InjectMocks
     private HospitalServiceEndpointImpl hospitalService;
@@ -49,6 +111,40 @@ class HospitalServiceEndpointImplTest {
         verify(responseObserver).onCompleted();
     }
 
+    @Test
+    void findByIdsLooksUpInChunksAndReportsMissingIdsTest() {
+        properties.getBatch().setLookupChunkSize(2);
+        FindByIdsRequest request = FindByIdsRequest.newBuilder().addAllIds(List.of(3L, 1L, 4L, 1L)).build();
+        StreamObserver<FindByIdsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        Hospital first = Hospital.builder().id(1L).name("First").address("1 Test Lane").build();
+        Hospital third = Hospital.builder().id(3L).name("Third").address("3 Test Lane").build();
+
+        when(hospitalRepository.findAllById(List.of(3L, 1L))).thenReturn(List.of(first, third));
+        when(hospitalRepository.findAllById(List.of(4L))).thenReturn(List.of());
+
+        hospitalService.findByIds(request, responseObserver);
+
+        ArgumentCaptor<FindByIdsResponse> captor = ArgumentCaptor.forClass(FindByIdsResponse.class);
+        verify(responseObserver).onNext(captor.capture());
+        verify(responseObserver).onCompleted();
+        assertEquals(List.of(3L, 1L, 1L), captor.getValue().getHospitalsList().stream().map(HospitalResponse::getId).toList());
+        assertEquals(List.of(4L), captor.getValue().getMissingIdsList());
+    }
+
+    @Test
+    void findByIdsOverLimitIsRejectedTest() {
+        properties.getBatch().setMaxLookupIds(2);
+        FindByIdsRequest request = FindByIdsRequest.newBuilder().addAllIds(List.of(1L, 2L, 3L)).build();
+        StreamObserver<FindByIdsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        hospitalService.findByIds(request, responseObserver);
+
+        ArgumentCaptor<StatusRuntimeException> error = ArgumentCaptor.forClass(StatusRuntimeException.class);
+        verify(responseObserver).onError(error.capture());
+        assertEquals(Status.Code.INVALID_ARGUMENT, error.getValue().getStatus().getCode());
+        verifyNoInteractions(hospitalRepository);
+    }
+
     @Test
     void deleteExistingHospitalTest() {
         DeleteHospitalRequest request = DeleteHospitalRequest.newBuilder()
@@ -56,13 +152,18 @@ class HospitalServiceEndpointImplTest {
                 .build();
         StreamObserver<DeleteResponse> responseObserver = Mockito.mock(StreamObserver.class);
 
-        when(hospitalRepository.existsById(1L)).thenReturn(true);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(hospitalRepository.findExistingIds(List.of(1L))).thenReturn(List.of(1L));
 
         hospitalService.deleteHospital(request, responseObserver);
 
-        verify(hospitalRepository).existsById(1L);
+        verify(hospitalRepository).deleteRegistrationsByHospitalIdIn(Set.of(1L));
+        verify(hospitalRepository).deleteRowsByIdIn(Set.of(1L));
         verify(responseObserver).onNext(DeleteResponse.newBuilder().setSuccess(true).build());
         verify(responseObserver).onCompleted();
+        verify(eventPublisher).publishEvent(new HospitalChanged(ChangeType.DELETED,
+                HospitalResponse.newBuilder().setId(1L).build()));
     }
 
     @Test
@@ -72,13 +173,17 @@ class HospitalServiceEndpointImplTest {
                 .build();
         StreamObserver<DeleteResponse> responseObserver = Mockito.mock(StreamObserver.class);
 
-        when(hospitalRepository.existsById(1L)).thenReturn(false);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(hospitalRepository.findExistingIds(List.of(1L))).thenReturn(List.of());
 
         hospitalService.deleteHospital(request, responseObserver);
 
-        verify(hospitalRepository).existsById(1L);
+        verify(hospitalRepository).findExistingIds(List.of(1L));
+        verify(hospitalRepository, never()).deleteRowsByIdIn(any());
         verify(responseObserver).onNext(DeleteResponse.newBuilder().setSuccess(false).build());
         verify(responseObserver).onCompleted();
+        verifyNoInteractions(eventPublisher);
     }
 
     @Test
@@ -124,5 +229,269 @@ class HospitalServiceEndpointImplTest {
         verify(responseObserver).onError(any(RuntimeException.class));
     }
 
-}
+    @Test
+    void streamAllHospitalsTest() {
+        ServerCallStreamObserver<HospitalResponse> responseObserver = Mockito.mock(ServerCallStreamObserver.class);
+        ArgumentCaptor<Runnable> onReadyHandler = ArgumentCaptor.forClass(Runnable.class);
+        Hospital first = Hospital.builder().id(1L).name("first").address("Munich").build();
+        Hospital second = Hospital.builder().id(2L).name("second").address("Berlin").build();
+
+        when(responseObserver.isReady()).thenReturn(true);
+        when(hospitalRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class))).thenReturn(List.of(first, second));
+
+        hospitalService.streamAllHospitals(Empty.getDefaultInstance(), responseObserver);
+        verify(responseObserver).setOnReadyHandler(onReadyHandler.capture());
+        onReadyHandler.getValue().run();
+
+        verify(responseObserver, times(2)).onNext(any(HospitalResponse.class));
+        verify(responseObserver).onCompleted();
+    }
+
+    @Test
+    void streamAllHospitalsWaitsForReadyTest() {
+        ServerCallStreamObserver<HospitalResponse> responseObserver = Mockito.mock(ServerCallStreamObserver.class);
+        ArgumentCaptor<Runnable> onReadyHandler = ArgumentCaptor.forClass(Runnable.class);
+
+        when(responseObserver.isReady()).thenReturn(false);
+
+        hospitalService.streamAllHospitals(Empty.getDefaultInstance(), responseObserver);
+        verify(responseObserver).setOnReadyHandler(onReadyHandler.capture());
+        onReadyHandler.getValue().run();
+
+        verifyNoInteractions(hospitalRepository);
+        verify(responseObserver, never()).onNext(any(HospitalResponse.class));
+    }
+
+    @Test
+    void listAllHospitalsPagesTest() {
+        ListAllHospitalsRequest request = ListAllHospitalsRequest.newBuilder()
+                .setPageSize(1)
+                .build();
+        StreamObserver<ListHospitalsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<ListHospitalsResponse> response = ArgumentCaptor.forClass(ListHospitalsResponse.class);
+        Hospital first = Hospital.builder().id(1L).name("first").address("Munich").build();
+        Hospital second = Hospital.builder().id(2L).name("second").address("Berlin").build();
+
+        when(hospitalRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class))).thenReturn(List.of(first, second));
+
+        hospitalService.listAllHospitals(request, responseObserver);
+
+        verify(responseObserver).onNext(response.capture());
+        verify(responseObserver).onCompleted();
+        assertEquals(1, response.getValue().getHospitalsCount());
+        assertEquals(PageCursor.encode(1L), response.getValue().getNextPageToken());
+    }
+
+    @Test
+    void listAllHospitalsInvalidPageTokenTest() {
+        ListAllHospitalsRequest request = ListAllHospitalsRequest.newBuilder()
+                .setPageToken("not-a-token")
+                .build();
+        StreamObserver<ListHospitalsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<StatusRuntimeException> error = ArgumentCaptor.forClass(StatusRuntimeException.class);
+
+        hospitalService.listAllHospitals(request, responseObserver);
+
+        verify(responseObserver).onError(error.capture());
+        assertEquals(Status.Code.INVALID_ARGUMENT, error.getValue().getStatus().getCode());
+        verifyNoInteractions(hospitalRepository);
+    }
+
+    @Test
+    void listHospitalsByNonExistingPatientIdTest() {
+        ListByPatientIdRequest request = ListByPatientIdRequest.newBuilder()
+                .setPatientId(1L)
+                .build();
+        StreamObserver<ListHospitalsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<StatusRuntimeException> error = ArgumentCaptor.forClass(StatusRuntimeException.class);
+
+        when(hospitalRepository.findRowsByPatientId(eq(1L), eq(0L), any(Pageable.class))).thenReturn(List.of());
+        when(patientRepository.existsById(1L)).thenReturn(false);
+
+        hospitalService.listHospitalsByPatientId(request, responseObserver);
+
+        verify(responseObserver).onError(error.capture());
+        assertEquals(Status.Code.NOT_FOUND, error.getValue().getStatus().getCode());
+        verify(responseObserver, never()).onNext(any());
+    }
+
+    @Test
+    void findByIdServesRepeatedLookupsFromCacheTest() {
+        FindByIdRequest request = FindByIdRequest.newBuilder()
+                .setId(1L)
+                .build();
+        StreamObserver<HospitalResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        Hospital mockHospital = Hospital.builder()
+                .id(1L)
+                .name("hospital")
+                .address("Munich")
+                .build();
 
+        when(hospitalRepository.findById(1L)).thenReturn(Optional.of(mockHospital));
+
+        hospitalService.findById(request, responseObserver);
+        hospitalService.findById(request, responseObserver);
+
+        verify(hospitalRepository, times(1)).findById(1L);
+        verify(responseObserver, times(2)).onNext(any(HospitalResponse.class));
+    }
+
+    @Test
+    void deleteInvalidatesCachedResponseTest() {
+        FindByIdRequest request = FindByIdRequest.newBuilder()
+                .setId(1L)
+                .build();
+        StreamObserver<HospitalResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        StreamObserver<DeleteResponse> deleteObserver = Mockito.mock(StreamObserver.class);
+        Hospital mockHospital = Hospital.builder()
+                .id(1L)
+                .name("hospital")
+                .address("Munich")
+                .build();
+
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(hospitalRepository.findById(1L)).thenReturn(Optional.of(mockHospital), Optional.empty());
+        when(hospitalRepository.findExistingIds(List.of(1L))).thenReturn(List.of(1L));
+
+        hospitalService.findById(request, responseObserver);
+        hospitalService.deleteHospital(DeleteHospitalRequest.newBuilder().setId(1L).build(), deleteObserver);
+        hospitalService.findById(request, responseObserver);
+
+        verify(hospitalRepository, times(2)).findById(1L);
+        verify(responseObserver).onError(any(RuntimeException.class));
+    }
+
+    @Test
+    void listHospitalsByPatientIdTest() {
+        ListByPatientIdRequest request = ListByPatientIdRequest.newBuilder()
+                .setPatientId(1L)
+                .build();
+        StreamObserver<ListHospitalsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        when(hospitalRepository.findRowsByPatientId(eq(1L), eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(new HospitalRow(2L, "hospital", "Munich")));
+
+        hospitalService.listHospitalsByPatientId(request, responseObserver);
+
+        verify(responseObserver).onNext(ListHospitalsResponse.newBuilder()
+                .addHospitals(HospitalResponse.newBuilder().setId(2L).setName("hospital").setAddress("Munich"))
+                .build());
+        verify(responseObserver).onCompleted();
+        verifyNoInteractions(patientRepository);
+    }
+
+
+    @Test
+    void getCensusTest() {
+        StreamObserver<CensusResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<CensusResponse> response = ArgumentCaptor.forClass(CensusResponse.class);
+        int currentYear = LocalDate.now().getYear();
+
+        when(census.hospital(1L)).thenReturn(Optional.of(new Census.Counts(4L,
+                Map.of("female", 3L, "male", 1L),
+                Map.of(currentYear - 10, 1L, currentYear - 40, 2L, Census.UNKNOWN_BIRTH_YEAR, 1L))));
+
+        hospitalService.getCensus(GetCensusRequest.newBuilder().setHospitalId(1L).build(), responseObserver);
+
+        verify(responseObserver).onNext(response.capture());
+        verify(responseObserver).onCompleted();
+        assertEquals(4L, response.getValue().getPatientCount());
+        assertEquals(3L, response.getValue().getPatientsBySexMap().get("female"));
+        assertEquals(1L, response.getValue().getUnknownAgeCount());
+        assertEquals(1L, response.getValue().getAgeBrackets(0).getCount());
+        assertEquals(2L, response.getValue().getAgeBrackets(2).getCount());
+        assertEquals(0, response.getValue().getAgeBrackets(4).getMaxAge());
+        verifyNoInteractions(hospitalRepository, patientRepository);
+    }
+
+    @Test
+    void getCensusOfNonExistingHospitalTest() {
+        StreamObserver<CensusResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<StatusRuntimeException> error = ArgumentCaptor.forClass(StatusRuntimeException.class);
+
+        when(census.hospital(9L)).thenReturn(Optional.empty());
+
+        hospitalService.getCensus(GetCensusRequest.newBuilder().setHospitalId(9L).build(), responseObserver);
+
+        verify(responseObserver).onError(error.capture());
+        assertEquals(Status.Code.NOT_FOUND, error.getValue().getStatus().getCode());
+    }
+
+    @Test
+    void updateHospitalWithoutMaskWritesAllFieldsTest() {
+        UpdateHospitalRequest request = UpdateHospitalRequest.newBuilder()
+                .setId(1L)
+                .setName("Renamed Hospital")
+                .setAddress("1 New Street")
+                .build();
+        StreamObserver<HospitalResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(hospitalRepository.update(1L, new HospitalUpdate("Renamed Hospital", "1 New Street"))).thenReturn(1);
+
+        hospitalService.updateHospital(request, responseObserver);
+
+        HospitalResponse expected = HospitalResponse.newBuilder()
+                .setId(1L)
+                .setName("Renamed Hospital")
+                .setAddress("1 New Street")
+                .build();
+        verify(responseObserver).onNext(expected);
+        verify(responseObserver).onCompleted();
+        verify(hospitalRepository, never()).save(any());
+        verify(hospitalRepository, never()).findRowById(anyLong());
+        verify(eventPublisher).publishEvent(new HospitalChanged(ChangeType.UPDATED, expected));
+    }
+
+    @Test
+    void updateNonExistingHospitalTest() {
+        UpdateHospitalRequest request = UpdateHospitalRequest.newBuilder()
+                .setId(9L)
+                .setAddress("1 New Street")
+                .setUpdateMask(FieldMask.newBuilder().addPaths("address"))
+                .build();
+        StreamObserver<HospitalResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<StatusRuntimeException> error = ArgumentCaptor.forClass(StatusRuntimeException.class);
+
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(hospitalRepository.update(9L, new HospitalUpdate(null, "1 New Street"))).thenReturn(0);
+
+        hospitalService.updateHospital(request, responseObserver);
+
+        verify(responseObserver).onError(error.capture());
+        assertEquals(Status.Code.NOT_FOUND, error.getValue().getStatus().getCode());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void batchDeleteHospitalsByIdsTest() {
+        BatchDeleteRequest request = BatchDeleteRequest.newBuilder()
+                .addAllIds(List.of(1L, 2L, 3L))
+                .build();
+        StreamObserver<BatchDeleteResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        properties.getBatch().setSize(2);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(hospitalRepository.findExistingIds(List.of(1L, 2L))).thenReturn(List.of(1L, 2L));
+        when(hospitalRepository.findExistingIds(List.of(3L))).thenReturn(List.of());
+
+        hospitalService.batchDeleteHospitals(request, responseObserver);
+
+        // Registrations go first, in the same transaction as their hospitals
+        InOrder order = inOrder(hospitalRepository);
+        order.verify(hospitalRepository).deleteRegistrationsByHospitalIdIn(Set.of(1L, 2L));
+        order.verify(hospitalRepository).deleteRowsByIdIn(Set.of(1L, 2L));
+        verify(transactionTemplate, times(2)).execute(any());
+        verify(responseObserver).onNext(BatchDeleteResponse.newBuilder()
+                .setDeletedCount(2)
+                .addResults(BatchDeleteResult.newBuilder().setId(1L).setDeleted(true))
+                .addResults(BatchDeleteResult.newBuilder().setId(2L).setDeleted(true))
+                .addResults(BatchDeleteResult.newBuilder().setId(3L).setDeleted(false))
+                .build());
+        verify(responseObserver).onCompleted();
+    }
+}
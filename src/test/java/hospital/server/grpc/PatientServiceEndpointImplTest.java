@@ -2,22 +2,63 @@ package hospital.server.grpc;
 
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import hospital.server.HospitalServerProperties;
+import hospital.server.cache.ResponseCache;
+import hospital.server.event.ChangeType;
+import hospital.server.event.PatientChanged;
+import hospital.server.event.RegistrationChanged;
+import hospital.server.index.RegistrationIndex;
+import hospital.server.intake.WriteBehindIntake;
 import hospital.server.model.Patient;
+import hospital.server.partition.PartitionedStorage;
+import hospital.server.reactive.ReactiveHospitalRepository;
+import hospital.server.reactive.ReactivePatientRepository;
 import hospital.server.repository.HospitalRepository;
 import hospital.server.repository.PatientRepository;
+import hospital.server.repository.PatientRow;
+import hospital.server.repository.PatientSearch;
+import hospital.server.repository.PatientUpdate;
+import hospital.server.repository.RegistrationRow;
+import com.google.protobuf.Empty;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.Timestamp;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import io.grpc.stub.StreamObserver;
+import hospital.server.grpc.BatchOuterClass.BatchCreateResponse;
+import hospital.server.grpc.BatchOuterClass.BatchDeleteRequest;
+import hospital.server.grpc.BatchOuterClass.BatchDeleteResponse;
+import hospital.server.grpc.BatchOuterClass.BatchDeleteResult;
 import hospital.server.grpc.PatientOuterClass.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @ExtendWith(MockitoExtension.class)
 public class PatientServiceEndpointImplTest {
@@ -25,9 +66,86 @@ public class PatientServiceEndpointImplTest {
     @Mock
     private PatientRepository patientRepository;
 
+    @Mock
+    private HospitalRepository hospitalRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Spy
+    private HospitalServerProperties properties = new HospitalServerProperties();
+
+    @Spy
+    private ResponseCache<PatientResponse> patientResponseCache = new ResponseCache<>(new HospitalServerProperties.Cache());
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private RegistrationIndex registrationIndex;
+
+    @Mock
+    private WriteBehindIntake writeBehindIntake;
+
+    @Mock
+    private ReactivePatientRepository reactivePatientRepository;
+
+    @Mock
+    private ReactiveHospitalRepository reactiveHospitalRepository;
+
+    @Mock
+    private PartitionedStorage partitionedStorage;
+
     @InjectMocks
     private PatientServiceEndpointImpl patientService;
 
+    private final PatientRow patientRow = new PatientRow(1L, "testName", "testLastName", LocalDate.of(1999, 4, 11), "male");
+
+    private void runTransactionsInline() {
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    @Test
+    void findByIdsServesCachedPatientsWithoutQueryingThemTest() {
+        PatientResponse cached = PatientResponse.newBuilder().setId(1L).setName("cachedName").build();
+        patientResponseCache.get(1L, id -> cached);
+        FindByIdsRequest request = FindByIdsRequest.newBuilder().addAllIds(List.of(2L, 1L, 3L)).build();
+        StreamObserver<FindByIdsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        Patient patient = Patient.builder()
+                .id(2L)
+                .name("testName")
+                .lastName("testLastName")
+                .sex("male")
+                .birthDate(LocalDate.of(1999, 4, 11))
+                .build();
+
+        when(patientRepository.findAllById(List.of(2L, 3L))).thenReturn(List.of(patient));
+
+        patientService.findByIds(request, responseObserver);
+
+        ArgumentCaptor<FindByIdsResponse> captor = ArgumentCaptor.forClass(FindByIdsResponse.class);
+        verify(responseObserver).onNext(captor.capture());
+        verify(responseObserver).onCompleted();
+        assertEquals(List.of(2L, 1L), captor.getValue().getPatientsList().stream().map(PatientResponse::getId).toList());
+        assertEquals("cachedName", captor.getValue().getPatients(1).getName());
+        assertEquals(List.of(3L), captor.getValue().getMissingIdsList());
+    }
+
+    @Test
+    void findByIdsOverLimitIsRejectedTest() {
+        properties.getBatch().setMaxLookupIds(2);
+        FindByIdsRequest request = FindByIdsRequest.newBuilder().addAllIds(List.of(1L, 2L, 3L)).build();
+        StreamObserver<FindByIdsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        patientService.findByIds(request, responseObserver);
+
+        ArgumentCaptor<StatusRuntimeException> error = ArgumentCaptor.forClass(StatusRuntimeException.class);
+        verify(responseObserver).onError(error.capture());
+        assertEquals(Status.Code.INVALID_ARGUMENT, error.getValue().getStatus().getCode());
+        verifyNoInteractions(patientRepository);
+    }
+
     @Test
     void createPatientTest() {
         CreatePatientRequest request = CreatePatientRequest.newBuilder()
@@ -42,7 +160,7 @@ public class PatientServiceEndpointImplTest {
                 .name(request.getName())
                 .lastName(request.getLastName())
                 .sex(request.getSex())
-                .birthDate(new Date(1999, 4, 11))
+                .birthDate(LocalDate.of(1999, 4, 11))
                 .build();
 
         when(patientRepository.save(any(Patient.class))).thenReturn(mockPatient);
@@ -52,6 +170,34 @@ public class PatientServiceEndpointImplTest {
         verify(patientRepository).save(any(Patient.class));
         verify(responseObserver).onNext(any(PatientResponse.class));
         verify(responseObserver).onCompleted();
+        ArgumentCaptor<PatientChanged> event = ArgumentCaptor.forClass(PatientChanged.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(ChangeType.CREATED, event.getValue().type());
+        assertEquals(1L, event.getValue().patient().getId());
+    }
+
+    @Test
+    void createPatientWriteBehindAcknowledgesWithoutSavingTest() {
+        CreatePatientRequest request = CreatePatientRequest.newBuilder()
+                .setName("testName")
+                .setLastName("testLastName")
+                .setSex("male")
+                .setBirthDate("11/04/1999")
+                .build();
+        StreamObserver<PatientResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        PatientResponse logged = PatientResponse.newBuilder().setId(7L).setName("testName").build();
+
+        when(writeBehindIntake.isEnabled()).thenReturn(true);
+        when(writeBehindIntake.createPatient("testName", "testLastName", LocalDate.of(1999, 4, 11), "male"))
+                .thenReturn(logged);
+
+        patientService.createPatient(request, responseObserver);
+
+        verify(responseObserver).onNext(logged);
+        verify(responseObserver).onCompleted();
+        // The flush announces the patient once it is committed
+        verify(patientRepository, never()).save(any(Patient.class));
+        verify(eventPublisher, never()).publishEvent(any());
     }
 
     @Test
@@ -61,13 +207,24 @@ public class PatientServiceEndpointImplTest {
                 .build();
         StreamObserver<DeleteResponse> responseObserver = Mockito.mock(StreamObserver.class);
 
-        when(patientRepository.existsById(1L)).thenReturn(true);
+        runTransactionsInline();
+        when(patientRepository.findRowsByIdIn(List.of(1L))).thenReturn(List.of(patientRow));
+        when(hospitalRepository.findRegistrationsByPatientIdIn(Set.of(1L))).thenReturn(List.of(new RegistrationRow(2L, 1L)));
 
         patientService.deletePatient(request, responseObserver);
 
-        verify(patientRepository).existsById(1L);
+        verify(hospitalRepository).deleteRegistrationsByPatientIdIn(Set.of(1L));
+        verify(patientRepository).deleteRowsByIdIn(Set.of(1L));
         verify(responseObserver).onNext(DeleteResponse.newBuilder().setSuccess(true).build());
         verify(responseObserver).onCompleted();
+        ArgumentCaptor<Object> events = ArgumentCaptor.forClass(Object.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        RegistrationChanged unregistered = (RegistrationChanged) events.getAllValues().get(0);
+        assertEquals(ChangeType.DELETED, unregistered.type());
+        assertEquals(2L, unregistered.hospitalId());
+        PatientChanged deleted = (PatientChanged) events.getAllValues().get(1);
+        assertEquals(ChangeType.DELETED, deleted.type());
+        assertEquals("male", deleted.patient().getSex());
     }
 
     @Test
@@ -77,11 +234,13 @@ public class PatientServiceEndpointImplTest {
                 .build();
         StreamObserver<DeleteResponse> responseObserver = Mockito.mock(StreamObserver.class);
 
-        when(patientRepository.existsById(1L)).thenReturn(false);
+        runTransactionsInline();
+        when(patientRepository.findRowsByIdIn(List.of(1L))).thenReturn(List.of());
 
         patientService.deletePatient(request, responseObserver);
 
-        verify(patientRepository).existsById(1L);
+        verify(patientRepository).findRowsByIdIn(List.of(1L));
+        verify(patientRepository, never()).deleteRowsByIdIn(any());
         verify(responseObserver).onNext(DeleteResponse.newBuilder().setSuccess(false).build());
         verify(responseObserver).onCompleted();
     }
@@ -98,7 +257,7 @@ public class PatientServiceEndpointImplTest {
                 .name("testName")
                 .lastName("testLastName")
                 .sex("male")
-                .birthDate(new Date(1999, 4, 11))
+                .birthDate(LocalDate.of(1999, 4, 11))
                 .build();
 
         when(patientRepository.findById(1L)).thenReturn(Optional.ofNullable(mockPatient));
@@ -110,6 +269,48 @@ public class PatientServiceEndpointImplTest {
         verify(responseObserver).onCompleted();
     }
 
+    @Test
+    void findByIdOnR2dbcEngineRespondsFromQueryTest() {
+        FindByIdRequest request = FindByIdRequest.newBuilder()
+                .setId(1L)
+                .build();
+        StreamObserver<PatientResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        when(reactivePatientRepository.isEnabled()).thenReturn(true);
+        when(reactivePatientRepository.findRowById(1L)).thenReturn(Mono.just(patientRow));
+
+        patientService.findById(request, responseObserver);
+
+        verify(responseObserver).onNext(PatientResponse.newBuilder()
+                .setId(1L)
+                .setName("testName")
+                .setLastName("testLastName")
+                .setBirthDate("11/04/1999")
+                .setSex("male")
+                .build());
+        verify(responseObserver).onCompleted();
+        verifyNoInteractions(patientRepository);
+    }
+
+    @Test
+    void listPatientsByNonExistingHospitalIdOnR2dbcEngineTest() {
+        ListByHospitalIdRequest request = ListByHospitalIdRequest.newBuilder()
+                .setHospitalId(9L)
+                .build();
+        StreamObserver<ListPatientsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        when(reactivePatientRepository.isEnabled()).thenReturn(true);
+        when(reactivePatientRepository.findRowsByHospitalId(9L, 0L, properties.getPaging().getDefaultPageSize() + 1)).thenReturn(Flux.empty());
+        when(reactiveHospitalRepository.existsById(9L)).thenReturn(Mono.just(false));
+
+        patientService.listPatientsByHospitalId(request, responseObserver);
+
+        ArgumentCaptor<StatusRuntimeException> error = ArgumentCaptor.forClass(StatusRuntimeException.class);
+        verify(responseObserver).onError(error.capture());
+        assertEquals(Status.Code.NOT_FOUND, error.getValue().getStatus().getCode());
+        verifyNoInteractions(patientRepository, hospitalRepository);
+    }
+
     @Test
     void findByNonExistingIdTest() {
         FindByIdRequest request = FindByIdRequest.newBuilder()
@@ -125,4 +326,481 @@ public class PatientServiceEndpointImplTest {
         verify(responseObserver).onError(any(RuntimeException.class));
     }
 
+    @Test
+    void streamAllPatientsTest() {
+        ServerCallStreamObserver<PatientResponse> responseObserver = Mockito.mock(ServerCallStreamObserver.class);
+        ArgumentCaptor<Runnable> onReadyHandler = ArgumentCaptor.forClass(Runnable.class);
+        Patient mockPatient = Patient.builder()
+                .id(1L)
+                .name("testName")
+                .lastName("testLastName")
+                .sex("male")
+                .birthDate(LocalDate.of(1999, 4, 11))
+                .build();
+
+        when(responseObserver.isReady()).thenReturn(true);
+        when(patientRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class))).thenReturn(List.of(mockPatient));
+
+        patientService.streamAllPatients(Empty.getDefaultInstance(), responseObserver);
+        verify(responseObserver).setOnReadyHandler(onReadyHandler.capture());
+        onReadyHandler.getValue().run();
+
+        verify(responseObserver).onNext(any(PatientResponse.class));
+        verify(responseObserver).onCompleted();
+    }
+
+    @Test
+    void listAllPatientsWithoutPageSizeReturnsDefaultPageTest() {
+        properties.getPaging().setDefaultPageSize(2);
+        StreamObserver<ListPatientsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<ListPatientsResponse> response = ArgumentCaptor.forClass(ListPatientsResponse.class);
+        List<Patient> patients = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            patients.add(Patient.builder().id(id).name("testName").lastName("testLastName").sex("male").build());
+        }
+
+        when(patientRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 3))).thenReturn(patients);
+
+        patientService.listAllPatients(ListAllPatientsRequest.getDefaultInstance(), responseObserver);
+
+        verify(responseObserver).onNext(response.capture());
+        assertEquals(2, response.getValue().getPatientsCount());
+        assertEquals(PageCursor.encode(2L), response.getValue().getNextPageToken());
+    }
+
+    @Test
+    void listPatientsByHospitalIdFromRegistrationIndexTest() {
+        ListByHospitalIdRequest request = ListByHospitalIdRequest.newBuilder()
+                .setHospitalId(1L)
+                .setPageSize(1)
+                .build();
+        StreamObserver<ListPatientsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<ListPatientsResponse> response = ArgumentCaptor.forClass(ListPatientsResponse.class);
+        Patient patient = Patient.builder()
+                .id(6L)
+                .name("testName")
+                .lastName("testLastName")
+                .sex("male")
+                .birthDate(LocalDate.of(1999, 4, 11))
+                .build();
+
+        when(registrationIndex.isReady()).thenReturn(true);
+        when(registrationIndex.patientIds(1L, 0L, 2)).thenReturn(new long[] {6L, 7L});
+        when(patientRepository.findAllById(List.of(6L))).thenReturn(List.of(patient));
+
+        patientService.listPatientsByHospitalId(request, responseObserver);
+
+        verify(responseObserver).onNext(response.capture());
+        verify(responseObserver).onCompleted();
+        assertEquals(List.of(6L), response.getValue().getPatientsList().stream().map(PatientResponse::getId).toList());
+        assertEquals(PageCursor.encode(6L), response.getValue().getNextPageToken());
+        verify(patientRepository, never()).findRowsByHospitalId(anyLong(), anyLong(), any(Pageable.class));
+        verifyNoInteractions(hospitalRepository);
+    }
+
+    @Test
+    void listPatientsByHospitalIdLastPageTest() {
+        ListByHospitalIdRequest request = ListByHospitalIdRequest.newBuilder()
+                .setHospitalId(1L)
+                .setPageSize(2)
+                .setPageToken(PageCursor.encode(5L))
+                .build();
+        StreamObserver<ListPatientsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<ListPatientsResponse> response = ArgumentCaptor.forClass(ListPatientsResponse.class);
+        PatientRow patientRow = new PatientRow(6L, "testName", "testLastName", LocalDate.of(1999, 4, 11), "male");
+
+        when(patientRepository.findRowsByHospitalId(eq(1L), eq(5L), any(Pageable.class))).thenReturn(List.of(patientRow));
+
+        patientService.listPatientsByHospitalId(request, responseObserver);
+
+        verify(responseObserver).onNext(response.capture());
+        verify(responseObserver).onCompleted();
+        assertEquals(1, response.getValue().getPatientsCount());
+        assertTrue(response.getValue().getNextPageToken().isEmpty());
+        verifyNoInteractions(hospitalRepository);
+    }
+
+    @Test
+    void listPatientsByNonExistingHospitalIdTest() {
+        ListByHospitalIdRequest request = ListByHospitalIdRequest.newBuilder()
+                .setHospitalId(1L)
+                .build();
+        StreamObserver<ListPatientsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<StatusRuntimeException> error = ArgumentCaptor.forClass(StatusRuntimeException.class);
+
+        when(patientRepository.findRowsByHospitalId(eq(1L), eq(0L), any(Pageable.class))).thenReturn(List.of());
+        when(hospitalRepository.existsById(1L)).thenReturn(false);
+
+        patientService.listPatientsByHospitalId(request, responseObserver);
+
+        verify(responseObserver).onError(error.capture());
+        assertEquals(Status.Code.NOT_FOUND, error.getValue().getStatus().getCode());
+        verify(responseObserver, never()).onNext(any());
+    }
+
+    @Test
+    void batchCreatePatientsTest() {
+        StreamObserver<BatchCreateResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<BatchCreateResponse> response = ArgumentCaptor.forClass(BatchCreateResponse.class);
+        Patient savedPatient = Patient.builder()
+                .id(7L)
+                .name("testName")
+                .lastName("testLastName")
+                .sex("male")
+                .birthDate(LocalDate.of(1999, 4, 11))
+                .build();
+
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(patientRepository.saveAll(ArgumentMatchers.<Patient>anyList())).thenReturn(List.of(savedPatient));
+
+        StreamObserver<CreatePatientRequest> requestObserver = patientService.batchCreatePatients(responseObserver);
+        requestObserver.onNext(CreatePatientRequest.newBuilder()
+                .setName("testName")
+                .setLastName("testLastName")
+                .setSex("male")
+                .setBirthDate("11/04/1999")
+                .build());
+        requestObserver.onNext(CreatePatientRequest.newBuilder()
+                .setName("otherName")
+                .setBirthDate("not a date")
+                .build());
+        requestObserver.onCompleted();
+
+        verify(patientRepository).saveAll(ArgumentMatchers.<Patient>anyList());
+        verify(responseObserver).onNext(response.capture());
+        verify(responseObserver).onCompleted();
+        assertEquals(1, response.getValue().getCreatedCount());
+        assertEquals(1, response.getValue().getFailedCount());
+        assertEquals(7L, response.getValue().getResults(0).getId());
+        assertFalse(response.getValue().getResults(1).getError().isEmpty());
+    }
+
+    @Test
+    void registerPatientInHospitalTest() {
+        RegisterPatientRequest request = RegisterPatientRequest.newBuilder()
+                .setPatientId(1L)
+                .setHospitalId(2L)
+                .build();
+        StreamObserver<RegisterPatientResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        when(patientRepository.findRowById(1L)).thenReturn(Optional.of(patientRow));
+        when(hospitalRepository.insertRegistration(2L, 1L)).thenReturn(1);
+
+        patientService.registerPatientInHospital(request, responseObserver);
+
+        verify(responseObserver).onNext(RegisterPatientResponse.newBuilder().setSuccess(true).build());
+        verify(responseObserver).onCompleted();
+        verify(hospitalRepository, never()).existsById(any());
+        ArgumentCaptor<RegistrationChanged> event = ArgumentCaptor.forClass(RegistrationChanged.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(2L, event.getValue().hospitalId());
+        assertEquals(1L, event.getValue().patient().getId());
+        assertEquals("11/04/1999", event.getValue().patient().getBirthDate());
+    }
+
+    @Test
+    void registerAlreadyRegisteredPatientTest() {
+        RegisterPatientRequest request = RegisterPatientRequest.newBuilder()
+                .setPatientId(1L)
+                .setHospitalId(2L)
+                .build();
+        StreamObserver<RegisterPatientResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        when(patientRepository.findRowById(1L)).thenReturn(Optional.of(patientRow));
+        when(hospitalRepository.insertRegistration(2L, 1L)).thenReturn(0);
+        when(hospitalRepository.existsById(2L)).thenReturn(true);
+
+        patientService.registerPatientInHospital(request, responseObserver);
+
+        verify(responseObserver).onNext(RegisterPatientResponse.newBuilder()
+                .setSuccess(true)
+                .setAlreadyRegistered(true)
+                .build());
+        verify(responseObserver).onCompleted();
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void registerPatientAlreadyInRegistrationIndexTest() {
+        RegisterPatientRequest request = RegisterPatientRequest.newBuilder()
+                .setPatientId(1L)
+                .setHospitalId(2L)
+                .build();
+        StreamObserver<RegisterPatientResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        when(registrationIndex.isReady()).thenReturn(true);
+        when(registrationIndex.isRegistered(2L, 1L)).thenReturn(true);
+
+        patientService.registerPatientInHospital(request, responseObserver);
+
+        verify(responseObserver).onNext(RegisterPatientResponse.newBuilder()
+                .setSuccess(true)
+                .setAlreadyRegistered(true)
+                .build());
+        verify(responseObserver).onCompleted();
+        verifyNoInteractions(patientRepository, hospitalRepository, eventPublisher);
+    }
+
+    @Test
+    void registerPatientsInHospitalTest() {
+        RegisterPatientsRequest request = RegisterPatientsRequest.newBuilder()
+                .setHospitalId(2L)
+                .addAllPatientIds(List.of(1L, 3L, 4L))
+                .build();
+        StreamObserver<RegisterPatientsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        when(hospitalRepository.existsById(2L)).thenReturn(true);
+        when(patientRepository.findRowsByIdIn(Set.of(1L, 3L, 4L))).thenReturn(List.of(patientRow,
+                new PatientRow(3L, "otherName", "otherLastName", LocalDate.of(1990, 1, 1), "female")));
+        when(hospitalRepository.insertRegistration(2L, 1L)).thenReturn(1);
+        when(hospitalRepository.insertRegistration(2L, 3L)).thenReturn(0);
+
+        patientService.registerPatientsInHospital(request, responseObserver);
+
+        verify(responseObserver).onNext(RegisterPatientsResponse.newBuilder()
+                .setRegisteredCount(1)
+                .addAlreadyRegisteredPatientIds(3L)
+                .addMissingPatientIds(4L)
+                .build());
+        verify(responseObserver).onCompleted();
+        verify(hospitalRepository, never()).insertRegistration(2L, 4L);
+    }
+
+    @Test
+    void findByIdServesRepeatedLookupsFromCacheTest() {
+        FindByIdRequest request = FindByIdRequest.newBuilder()
+                .setId(1L)
+                .build();
+        StreamObserver<PatientResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        Patient mockPatient = Patient.builder()
+                .id(1L)
+                .name("testName")
+                .lastName("testLastName")
+                .sex("male")
+                .birthDate(LocalDate.of(1999, 4, 11))
+                .build();
+
+        when(patientRepository.findById(1L)).thenReturn(Optional.of(mockPatient));
+
+        patientService.findById(request, responseObserver);
+        patientService.findById(request, responseObserver);
+
+        verify(patientRepository, times(1)).findById(1L);
+        verify(responseObserver, times(2)).onNext(any(PatientResponse.class));
+    }
+
+    @Test
+    void deleteInvalidatesCachedResponseTest() {
+        FindByIdRequest request = FindByIdRequest.newBuilder()
+                .setId(1L)
+                .build();
+        StreamObserver<PatientResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        StreamObserver<DeleteResponse> deleteObserver = Mockito.mock(StreamObserver.class);
+        Patient mockPatient = Patient.builder()
+                .id(1L)
+                .name("testName")
+                .lastName("testLastName")
+                .sex("male")
+                .birthDate(LocalDate.of(1999, 4, 11))
+                .build();
+
+        runTransactionsInline();
+        when(patientRepository.findById(1L)).thenReturn(Optional.of(mockPatient), Optional.empty());
+        when(patientRepository.findRowsByIdIn(List.of(1L))).thenReturn(List.of(patientRow));
+
+        patientService.findById(request, responseObserver);
+        patientService.deletePatient(DeletePatientRequest.newBuilder().setId(1L).build(), deleteObserver);
+        patientService.findById(request, responseObserver);
+
+        verify(patientRepository, times(2)).findById(1L);
+        verify(responseObserver).onError(any(RuntimeException.class));
+    }
+
+    @Test
+    void searchPatientsTest() {
+        SearchPatientsRequest request = SearchPatientsRequest.newBuilder()
+                .setLastNamePrefix("test")
+                .setBornFrom("01/01/1990")
+                .build();
+        StreamObserver<ListPatientsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<PatientSearch> search = ArgumentCaptor.forClass(PatientSearch.class);
+        Patient mockPatient = Patient.builder()
+                .id(1L)
+                .name("testName")
+                .lastName("testLastName")
+                .sex("male")
+                .birthDate(LocalDate.of(1999, 4, 11))
+                .build();
+
+        when(patientRepository.search(any(PatientSearch.class), eq(50))).thenReturn(List.of(mockPatient));
+
+        patientService.searchPatients(request, responseObserver);
+
+        verify(patientRepository).search(search.capture(), eq(50));
+        assertEquals("test", search.getValue().lastNamePrefix());
+        assertEquals(LocalDate.of(1990, 1, 1), search.getValue().bornFrom());
+        assertNull(search.getValue().bornTo());
+        verify(responseObserver).onNext(any(ListPatientsResponse.class));
+        verify(responseObserver).onCompleted();
+    }
+
+    @Test
+    void searchPatientsInvalidBirthDateTest() {
+        SearchPatientsRequest request = SearchPatientsRequest.newBuilder()
+                .setBornTo("1999-04-11")
+                .build();
+        StreamObserver<ListPatientsResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        patientService.searchPatients(request, responseObserver);
+
+        verify(responseObserver).onError(any(StatusRuntimeException.class));
+        verifyNoInteractions(patientRepository);
+    }
+
+
+    @Test
+    void updatePatientWritesOnlyMaskedFieldsTest() {
+        UpdatePatientRequest request = UpdatePatientRequest.newBuilder()
+                .setId(1L)
+                .setName("renamed")
+                .setSex("ignored")
+                .setUpdateMask(FieldMask.newBuilder().addPaths("name"))
+                .build();
+        StreamObserver<PatientResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        runTransactionsInline();
+        when(patientRepository.update(1L, new PatientUpdate("renamed", null, null, null))).thenReturn(1);
+        when(patientRepository.findRowById(1L)).thenReturn(Optional.of(
+                new PatientRow(1L, "renamed", "testLastName", LocalDate.of(1999, 4, 11), "male")));
+
+        patientService.updatePatient(request, responseObserver);
+
+        verify(patientRepository, never()).save(any());
+        verify(responseObserver).onNext(argThat(patient -> patient.getName().equals("renamed") && patient.getSex().equals("male")));
+        verify(responseObserver).onCompleted();
+        ArgumentCaptor<PatientChanged> event = ArgumentCaptor.forClass(PatientChanged.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertNull(event.getValue().previous());
+    }
+
+    @Test
+    void updatePatientSexKeepsPreviousStateTest() {
+        UpdatePatientRequest request = UpdatePatientRequest.newBuilder()
+                .setId(1L)
+                .setSex("female")
+                .setUpdateMask(FieldMask.newBuilder().addPaths("sex"))
+                .build();
+        StreamObserver<PatientResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        runTransactionsInline();
+        when(patientRepository.findRowById(1L)).thenReturn(Optional.of(patientRow));
+        when(patientRepository.update(1L, new PatientUpdate(null, null, null, "female"))).thenReturn(1);
+        when(hospitalRepository.findHospitalIdsByPatientId(1L)).thenReturn(List.of(2L, 3L));
+
+        patientService.updatePatient(request, responseObserver);
+
+        // The response is derived from the previous row, without reading it again
+        verify(patientRepository, times(1)).findRowById(1L);
+        ArgumentCaptor<PatientChanged> event = ArgumentCaptor.forClass(PatientChanged.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals("male", event.getValue().previous().getSex());
+        // Read within the update, for listeners that run after the commit
+        assertEquals(List.of(2L, 3L), event.getValue().hospitalIds());
+        assertEquals("female", event.getValue().patient().getSex());
+        assertEquals("testName", event.getValue().patient().getName());
+        verify(responseObserver).onNext(event.getValue().patient());
+    }
+
+    @Test
+    void updateNonExistingPatientTest() {
+        UpdatePatientRequest request = UpdatePatientRequest.newBuilder()
+                .setId(9L)
+                .setName("renamed")
+                .setUpdateMask(FieldMask.newBuilder().addPaths("name"))
+                .build();
+        StreamObserver<PatientResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<StatusRuntimeException> error = ArgumentCaptor.forClass(StatusRuntimeException.class);
+
+        runTransactionsInline();
+        when(patientRepository.update(eq(9L), any(PatientUpdate.class))).thenReturn(0);
+
+        patientService.updatePatient(request, responseObserver);
+
+        verify(responseObserver).onError(error.capture());
+        assertEquals(Status.Code.NOT_FOUND, error.getValue().getStatus().getCode());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void updatePatientUnknownMaskPathTest() {
+        UpdatePatientRequest request = UpdatePatientRequest.newBuilder()
+                .setId(1L)
+                .setUpdateMask(FieldMask.newBuilder().addPaths("hospitals"))
+                .build();
+        StreamObserver<PatientResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<StatusRuntimeException> error = ArgumentCaptor.forClass(StatusRuntimeException.class);
+
+        patientService.updatePatient(request, responseObserver);
+
+        verify(responseObserver).onError(error.capture());
+        assertEquals(Status.Code.INVALID_ARGUMENT, error.getValue().getStatus().getCode());
+        verifyNoInteractions(patientRepository, transactionTemplate);
+    }
+
+    @Test
+    void batchDeletePatientsByIdsTest() {
+        BatchDeleteRequest request = BatchDeleteRequest.newBuilder()
+                .addAllIds(List.of(1L, 5L, 1L))
+                .build();
+        StreamObserver<BatchDeleteResponse> responseObserver = Mockito.mock(StreamObserver.class);
+
+        runTransactionsInline();
+        when(patientRepository.findRowsByIdIn(List.of(1L, 5L))).thenReturn(List.of(patientRow));
+
+        patientService.batchDeletePatients(request, responseObserver);
+
+        verify(hospitalRepository).deleteRegistrationsByPatientIdIn(Set.of(1L));
+        verify(patientRepository).deleteRowsByIdIn(Set.of(1L));
+        verify(responseObserver).onNext(BatchDeleteResponse.newBuilder()
+                .setDeletedCount(1)
+                .addResults(BatchDeleteResult.newBuilder().setId(1L).setDeleted(true))
+                .addResults(BatchDeleteResult.newBuilder().setId(5L).setDeleted(false))
+                .build());
+        verify(responseObserver).onCompleted();
+    }
+
+    @Test
+    void batchDeletePatientsCreatedBeforeDeletesInChunksTest() {
+        Instant cutoff = Instant.parse("2024-01-01T00:00:00Z");
+        BatchDeleteRequest request = BatchDeleteRequest.newBuilder()
+                .setCreatedBefore(Timestamp.newBuilder().setSeconds(cutoff.getEpochSecond()))
+                .build();
+        StreamObserver<BatchDeleteResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        PatientRow otherRow = new PatientRow(2L, "otherName", "otherLastName", LocalDate.of(1990, 1, 1), "female");
+
+        properties.getBatch().setSize(2);
+        runTransactionsInline();
+        when(patientRepository.findIdsCreatedBefore(eq(cutoff), eq(0L), any(Pageable.class))).thenReturn(List.of(1L, 2L));
+        when(patientRepository.findIdsCreatedBefore(eq(cutoff), eq(2L), any(Pageable.class))).thenReturn(List.of());
+        when(patientRepository.findRowsByIdIn(List.of(1L, 2L))).thenReturn(List.of(patientRow, otherRow));
+
+        patientService.batchDeletePatients(request, responseObserver);
+
+        verify(patientRepository).deleteRowsByIdIn(Set.of(1L, 2L));
+        verify(responseObserver).onNext(BatchDeleteResponse.newBuilder().setDeletedCount(2).build());
+        verify(responseObserver).onCompleted();
+    }
+
+    @Test
+    void batchDeletePatientsNeedsExactlyOneSelectionTest() {
+        StreamObserver<BatchDeleteResponse> responseObserver = Mockito.mock(StreamObserver.class);
+        ArgumentCaptor<StatusRuntimeException> error = ArgumentCaptor.forClass(StatusRuntimeException.class);
+
+        patientService.batchDeletePatients(BatchDeleteRequest.getDefaultInstance(), responseObserver);
+
+        verify(responseObserver).onError(error.capture());
+        assertEquals(Status.Code.INVALID_ARGUMENT, error.getValue().getStatus().getCode());
+        verifyNoInteractions(patientRepository, transactionTemplate);
+    }
 }
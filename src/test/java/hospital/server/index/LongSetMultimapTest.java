@@ -0,0 +1,58 @@
+package hospital.server.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class LongSetMultimapTest {
+
+    @Test
+    void valuesStaySortedAndDistinctTest() {
+        LongSetMultimap map = new LongSetMultimap();
+
+        assertTrue(map.add(1L, 30L));
+        assertTrue(map.add(1L, 10L));
+        assertTrue(map.add(1L, 20L));
+        assertFalse(map.add(1L, 20L));
+
+        assertArrayEquals(new long[] {10L, 20L, 30L}, map.get(1L));
+        assertTrue(map.contains(1L, 10L));
+        assertFalse(map.contains(2L, 10L));
+        assertEquals(3L, map.valueCount());
+
+        assertTrue(map.remove(1L, 20L));
+        assertFalse(map.remove(1L, 20L));
+        assertArrayEquals(new long[] {10L, 30L}, map.get(1L));
+    }
+
+    @Test
+    void keysSurviveResizesAndRemovalsTest() {
+        LongSetMultimap map = new LongSetMultimap();
+        for (long key = 1; key <= 10_000; key++) {
+            map.add(key, key + 1);
+        }
+        // Removing every other key shifts probe chains back over the freed slots
+        for (long key = 1; key <= 10_000; key += 2) {
+            assertArrayEquals(new long[] {key + 1}, map.removeKey(key));
+        }
+
+        assertEquals(5_000, map.keyCount());
+        assertEquals(5_000L, map.valueCount());
+        for (long key = 1; key <= 10_000; key++) {
+            assertEquals(key % 2 == 0, map.contains(key, key + 1), "key " + key);
+        }
+    }
+
+    @Test
+    void removingTheLastValueRemovesTheKeyTest() {
+        LongSetMultimap map = new LongSetMultimap();
+        map.putAll(7L, new long[] {1L, 2L});
+
+        map.remove(7L, 1L);
+        map.remove(7L, 2L);
+
+        assertEquals(0, map.keyCount());
+        assertSame(LongSetMultimap.EMPTY, map.get(7L));
+        assertThrows(IllegalArgumentException.class, () -> map.add(0L, 1L));
+    }
+}
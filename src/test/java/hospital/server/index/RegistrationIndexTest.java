@@ -0,0 +1,106 @@
+package hospital.server.index;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import hospital.server.event.ChangeType;
+import hospital.server.event.HospitalChanged;
+import hospital.server.event.PatientChanged;
+import hospital.server.event.RegistrationChanged;
+import hospital.server.grpc.HospitalOuterClass.HospitalResponse;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import hospital.server.repository.HospitalRepository;
+import hospital.server.repository.RegistrationRow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+@ExtendWith(MockitoExtension.class)
+class RegistrationIndexTest {
+
+    @Mock
+    private HospitalRepository hospitalRepository;
+
+    private static PatientResponse patient(long id) {
+        return PatientResponse.newBuilder().setId(id).build();
+    }
+
+    @Test
+    void loadsTheRelationAndFollowsChangesTest() {
+        RegistrationIndex index = new RegistrationIndex(hospitalRepository, true);
+        when(hospitalRepository.findAllIds()).thenReturn(List.of(1L, 2L));
+        when(hospitalRepository.findRegistrationsByHospitalIdBetween(1L, 2L)).thenReturn(List.of(
+                new RegistrationRow(1L, 10L), new RegistrationRow(1L, 11L), new RegistrationRow(2L, 10L)));
+
+        index.loadOnStartup();
+
+        assertTrue(index.isReady());
+        assertArrayEquals(new long[] {10L, 11L}, index.patientIds(1L, 0L, 10));
+        assertArrayEquals(new long[] {11L}, index.patientIds(1L, 10L, 10));
+        assertArrayEquals(new long[] {1L}, index.hospitalIds(10L, 0L, 1));
+        assertEquals(3L, index.registrationCount());
+
+        index.onRegistrationChanged(new RegistrationChanged(ChangeType.CREATED, 2L, patient(12L)));
+        index.onHospitalChanged(new HospitalChanged(ChangeType.DELETED, HospitalResponse.newBuilder().setId(1L).build()));
+        index.onRegistrationChanged(new RegistrationChanged(ChangeType.DELETED, 2L, patient(10L)));
+        index.onPatientChanged(new PatientChanged(ChangeType.DELETED, patient(10L)));
+
+        assertArrayEquals(new long[0], index.patientIds(1L, 0L, 10));
+        assertArrayEquals(new long[] {12L}, index.patientIds(2L, 0L, 10));
+        assertArrayEquals(new long[0], index.hospitalIds(10L, 0L, 10));
+        assertTrue(index.isRegistered(2L, 12L));
+        assertEquals(1L, index.registrationCount());
+        assertTrue(index.estimatedBytes() > 0);
+    }
+
+    @Test
+    void patientInHospitalsOfSeveralSlicesKeepsThemAllInOrderTest() {
+        RegistrationIndex index = new RegistrationIndex(hospitalRepository, true);
+        // 300 hospitals load as two slices, 1..256 and 257..300
+        List<Long> hospitalIds = LongStream.rangeClosed(1, 300).boxed().toList();
+        when(hospitalRepository.findAllIds()).thenReturn(hospitalIds);
+        when(hospitalRepository.findRegistrationsByHospitalIdBetween(1L, 256L)).thenReturn(List.of(
+                new RegistrationRow(3L, 10L), new RegistrationRow(3L, 11L), new RegistrationRow(200L, 10L)));
+        when(hospitalRepository.findRegistrationsByHospitalIdBetween(257L, 300L)).thenReturn(List.of(
+                new RegistrationRow(257L, 10L), new RegistrationRow(300L, 10L), new RegistrationRow(300L, 11L)));
+
+        index.load();
+
+        assertArrayEquals(new long[] {3L, 200L, 257L, 300L}, index.hospitalIds(10L, 0L, 10));
+        assertArrayEquals(new long[] {3L, 300L}, index.hospitalIds(11L, 0L, 10));
+        assertArrayEquals(new long[] {10L, 11L}, index.patientIds(300L, 0L, 10));
+        assertEquals(6L, index.registrationCount());
+    }
+
+    @Test
+    void changesCommittedDuringALoadAreReplayedTest() {
+        RegistrationIndex index = new RegistrationIndex(hospitalRepository, true);
+        when(hospitalRepository.findAllIds()).thenReturn(List.of(1L));
+        when(hospitalRepository.findRegistrationsByHospitalIdBetween(1L, 1L)).thenAnswer(invocation -> {
+            // Committed after the query read the table
+            index.onRegistrationChanged(new RegistrationChanged(ChangeType.CREATED, 1L, patient(11L)));
+            index.onRegistrationChanged(new RegistrationChanged(ChangeType.DELETED, 1L, patient(10L)));
+            return List.of(new RegistrationRow(1L, 10L));
+        });
+
+        index.load();
+
+        assertArrayEquals(new long[] {11L}, index.patientIds(1L, 0L, 10));
+    }
+
+    @Test
+    void disabledIndexNeverLoadsTest() {
+        RegistrationIndex index = new RegistrationIndex(hospitalRepository, false);
+
+        index.loadOnStartup();
+        index.onRegistrationChanged(new RegistrationChanged(ChangeType.CREATED, 1L, patient(10L)));
+
+        assertFalse(index.isReady());
+        assertFalse(index.isRegistered(1L, 10L));
+        verifyNoInteractions(hospitalRepository);
+    }
+}
@@ -0,0 +1,71 @@
+package hospital.server.intake;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import hospital.server.grpc.IntakeOuterClass.IntakeRecord;
+import hospital.server.grpc.IntakeOuterClass.PatientRegistered;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+class IntakeLogTest {
+
+    @TempDir
+    Path directory;
+
+    private static IntakeRecord registration(long hospitalId, long patientId) {
+        return IntakeRecord.newBuilder()
+                .setPatientRegistered(PatientRegistered.newBuilder()
+                        .setHospitalId(hospitalId)
+                        .setPatientId(patientId))
+                .build();
+    }
+
+    @Test
+    void sealedSegmentsHoldAppendsInOrderTest() throws Exception {
+        try (IntakeLog log = new IntakeLog(directory)) {
+            log.append(registration(1L, 1L));
+            log.append(registration(1L, 2L));
+
+            List<Path> sealed = log.seal();
+            assertEquals(1, sealed.size());
+            assertEquals(List.of(registration(1L, 1L), registration(1L, 2L)), IntakeLog.read(sealed.get(0)));
+
+            // Nothing was appended since, so there is nothing new to seal
+            assertEquals(sealed, log.seal());
+
+            log.delete(sealed.get(0));
+            assertTrue(log.sealedSegments().isEmpty());
+        }
+    }
+
+    @Test
+    void reopenedLogKeepsEarlierSegmentsSealedTest() throws Exception {
+        try (IntakeLog log = new IntakeLog(directory)) {
+            log.append(registration(1L, 1L));
+        }
+
+        try (IntakeLog log = new IntakeLog(directory)) {
+            List<Path> sealed = log.sealedSegments();
+            assertEquals(1, sealed.size());
+            assertEquals(List.of(registration(1L, 1L)), IntakeLog.read(sealed.get(0)));
+        }
+    }
+
+    @Test
+    void readStopsAtTornFrameTest() throws Exception {
+        Path segment;
+        try (IntakeLog log = new IntakeLog(directory)) {
+            log.append(registration(1L, 1L));
+            segment = log.seal().get(0);
+        }
+        // A frame header promising more bytes than were written, as a crash mid-write leaves it
+        Files.write(segment, new byte[] {0, 0, 0, 64, 1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        assertEquals(List.of(registration(1L, 1L)), IntakeLog.read(segment));
+    }
+}
@@ -0,0 +1,206 @@
+package hospital.server.intake;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+import com.google.protobuf.Timestamp;
+import hospital.server.SpringHibernateCrudApplication;
+import hospital.server.event.PatientChanged;
+import hospital.server.event.RegistrationChanged;
+import hospital.server.grpc.IntakeOuterClass.IntakeRecord;
+import hospital.server.grpc.IntakeOuterClass.PatientCreated;
+import hospital.server.grpc.IntakeOuterClass.PatientRegistered;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import hospital.server.model.Hospital;
+import hospital.server.repository.HospitalRepository;
+import hospital.server.repository.PatientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays intake logs against the database: twice over, after a flush that was cut short, and at
+ * a restart whose log holds ids the patient sequence has not handed out yet.
+ */
+@SpringBootTest(properties = {
+        "grpc.server.port=-1",
+        "grpc.server.in-process-name=write-behind-intake-test",
+        "spring.datasource.url=jdbc:h2:mem:write-behind-intake-test;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.url=r2dbc:h2:mem:///write-behind-intake-test"})
+class WriteBehindIntakeTest {
+    // Far above anything the patient sequence hands out in this context
+    private static final long FIRST_LOGGED_ID = 1_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private HospitalRepository hospitalRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final List<Object> events = new ArrayList<>();
+    private long hospitalId;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("delete from hospital_patient");
+        jdbcTemplate.update("delete from patients where id >= ?", FIRST_LOGGED_ID);
+        hospitalId = hospitalRepository.save(new Hospital("Intake Hospital")).getId();
+    }
+
+    private IntakeStore store(int chunkSize) {
+        return new IntakeStore(patientRepository, hospitalRepository, jdbcTemplate, transactionTemplate, events::add, chunkSize);
+    }
+
+    private static IntakeRecord created(long patientId) {
+        return IntakeRecord.newBuilder()
+                .setPatientCreated(PatientCreated.newBuilder()
+                        .setPatient(PatientResponse.newBuilder()
+                                .setId(patientId)
+                                .setName("Logged")
+                                .setLastName("Patient" + patientId)
+                                .setBirthDate("01/01/1990")
+                                .setSex("female"))
+                        .setCreatedAt(Timestamp.newBuilder().setSeconds(1_700_000_000L)))
+                .build();
+    }
+
+    private static IntakeRecord registered(long hospitalId, long patientId) {
+        return IntakeRecord.newBuilder()
+                .setPatientRegistered(PatientRegistered.newBuilder()
+                        .setHospitalId(hospitalId)
+                        .setPatientId(patientId))
+                .build();
+    }
+
+    private List<IntakeRecord> log() {
+        return List.of(
+                created(FIRST_LOGGED_ID),
+                created(FIRST_LOGGED_ID + 1),
+                registered(hospitalId, FIRST_LOGGED_ID),
+                created(FIRST_LOGGED_ID + 2),
+                registered(hospitalId, FIRST_LOGGED_ID + 2));
+    }
+
+    private long count(Class<?> eventType) {
+        return events.stream().filter(eventType::isInstance).count();
+    }
+
+    private void assertApplied() {
+        assertEquals(3, patientRepository.findExistingIds(List.of(FIRST_LOGGED_ID, FIRST_LOGGED_ID + 1, FIRST_LOGGED_ID + 2)).size());
+        assertEquals(2, jdbcTemplate.queryForObject("select count(*) from hospital_patient where hospital_id = ?", Long.class, hospitalId));
+    }
+
+    @Test
+    void replayingLogTwiceWritesAndAnnouncesOnceTest() {
+        IntakeStore store = store(2);
+
+        store.apply(log());
+        store.apply(log());
+
+        assertApplied();
+        assertEquals(3, count(PatientChanged.class));
+        assertEquals(2, count(RegistrationChanged.class));
+    }
+
+    @Test
+    void replayAfterPartialApplyFinishesTheRestTest() {
+        IntakeStore store = store(2);
+        // The flush before the crash committed its first chunk only
+        store.apply(log().subList(0, 2));
+        assertEquals(2, count(PatientChanged.class));
+
+        store.apply(log());
+
+        assertApplied();
+        assertEquals(3, count(PatientChanged.class));
+        assertEquals(2, count(RegistrationChanged.class));
+    }
+
+    @Test
+    void disabledIntakeRefusesWritesTest() {
+        WriteBehindIntake intake = WriteBehindIntake.disabled();
+
+        assertThrows(IllegalStateException.class, () -> intake.createPatient("New", "Patient", null, "male"));
+        assertThrows(IllegalStateException.class, () -> intake.registerPatient(hospitalId, FIRST_LOGGED_ID));
+        assertEquals(0, intake.pendingCount());
+    }
+
+    @Test
+    void restartMovesSequencePastLoggedIdsTest() throws Exception {
+        Path logDirectory = directory.resolve("intake-log");
+        long loggedId = 5_000L;
+        // A run that acknowledged the patient and stopped before flushing it
+        try (IntakeLog log = new IntakeLog(logDirectory)) {
+            log.append(created(loggedId));
+        }
+
+        String name = "write-behind-intake-restart-test";
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringHibernateCrudApplication.class)
+                .web(WebApplicationType.NONE)
+                // Arguments rather than default properties, which application.properties would override
+                .run("--grpc.server.port=-1",
+                        "--grpc.server.in-process-name=" + name,
+                        "--spring.datasource.url=jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1",
+                        "--hospital.intake.mode=write-behind",
+                        "--hospital.intake.log-directory=" + logDirectory)) {
+            WriteBehindIntake intake = context.getBean(WriteBehindIntake.class);
+
+            PatientResponse patient = intake.createPatient("New", "Patient", null, "male");
+            assertTrue(patient.getId() > loggedId, "allocated " + patient.getId());
+
+            intake.flush();
+            PatientRepository patients = context.getBean(PatientRepository.class);
+            assertEquals(2, patients.findExistingIds(List.of(loggedId, patient.getId())).size());
+            assertTrue(intake.flushFailure().isEmpty());
+        }
+    }
+
+    @Test
+    void segmentThatKeepsFailingTurnsHealthDownTest() throws Exception {
+        IntakeStore store = mock(IntakeStore.class);
+        doThrow(new IllegalStateException("constraint violated")).when(store).apply(anyList());
+        WriteBehindIntake intake = new WriteBehindIntake(new IntakeLog(directory), store, mock(PatientIdAllocator.class),
+                Duration.ofMinutes(1));
+        IntakeHealthIndicator health = new IntakeHealthIndicator(intake, 2);
+        try {
+            intake.registerPatient(hospitalId, FIRST_LOGGED_ID);
+
+            assertThrows(IllegalStateException.class, intake::flush);
+            assertEquals(Status.UP, health.health().getStatus());
+            assertThrows(IllegalStateException.class, intake::flush);
+            assertEquals(Status.DOWN, health.health().getStatus());
+            assertEquals(2, health.health().getDetails().get("consecutiveFailures"));
+            assertEquals(1, health.health().getDetails().get("pending"));
+
+            doNothing().when(store).apply(anyList());
+            intake.flush();
+            assertEquals(Status.UP, health.health().getStatus());
+            assertEquals(0, health.health().getDetails().get("pending"));
+        } finally {
+            intake.close();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package hospital.server.limit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import hospital.server.HospitalServerProperties;
+import hospital.server.grpc.PatientServiceEndpointGrpc;
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+class ConcurrencyLimitInterceptorTest {
+
+    private SimpleMeterRegistry registry;
+    private HospitalServerProperties.Limits settings;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        settings = new HospitalServerProperties.Limits();
+        settings.setEnabled(true);
+        settings.setInitialLimit(1);
+        settings.setMinLimit(1);
+        settings.setMaxLimit(1);
+        settings.setServerInitialLimit(2);
+        settings.setServerMaxLimit(2);
+        settings.setBulkShare(0.5);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServerCall<Object, Object> call(MethodDescriptor<?, ?> method) {
+        ServerCall<Object, Object> call = mock(ServerCall.class);
+        when(call.getMethodDescriptor()).thenReturn((MethodDescriptor<Object, Object>) method);
+        return call;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServerCallHandler<Object, Object> handler() {
+        ServerCallHandler<Object, Object> handler = mock(ServerCallHandler.class);
+        when(handler.startCall(any(), any())).thenReturn(mock(ServerCall.Listener.class));
+        return handler;
+    }
+
+    private static void assertRejected(ServerCall<Object, Object> call) {
+        ArgumentCaptor<Status> status = ArgumentCaptor.forClass(Status.class);
+        ArgumentCaptor<Metadata> trailers = ArgumentCaptor.forClass(Metadata.class);
+        verify(call).close(status.capture(), trailers.capture());
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, status.getValue().getCode());
+        assertNotNull(trailers.getValue().get(ConcurrencyLimitInterceptor.RETRY_PUSHBACK));
+    }
+
+    @Test
+    void callOverMethodLimitIsRejectedUntilSlotIsReleasedTest() {
+        ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(registry, settings);
+        ServerCallHandler<Object, Object> handler = handler();
+        ServerCall<Object, Object> first = call(PatientServiceEndpointGrpc.getFindByIdMethod());
+        ServerCall<Object, Object> second = call(PatientServiceEndpointGrpc.getFindByIdMethod());
+
+        ServerCall.Listener<Object> firstListener = interceptor.interceptCall(first, new Metadata(), handler);
+        interceptor.interceptCall(second, new Metadata(), handler);
+
+        assertRejected(second);
+        verify(handler, times(1)).startCall(any(), any());
+        assertEquals(1, registry.get("grpc.server.concurrency.rejected").tag("priority", "point").counter().count());
+
+        firstListener.onCancel();
+        interceptor.interceptCall(call(PatientServiceEndpointGrpc.getFindByIdMethod()), new Metadata(), handler);
+        verify(handler, times(2)).startCall(any(), any());
+    }
+
+    @Test
+    void bulkCallsLeaveRoomForPointCallsTest() {
+        ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(registry, settings);
+        ServerCallHandler<Object, Object> handler = handler();
+        ServerCall<Object, Object> search = call(PatientServiceEndpointGrpc.getSearchPatientsMethod());
+
+        interceptor.interceptCall(call(PatientServiceEndpointGrpc.getListAllPatientsMethod()), new Metadata(), handler);
+        interceptor.interceptCall(search, new Metadata(), handler);
+        interceptor.interceptCall(call(PatientServiceEndpointGrpc.getFindByIdMethod()), new Metadata(), handler);
+
+        // The server-wide limit of two admits one bulk call, and the point call gets the other slot
+        assertRejected(search);
+        verify(handler, times(2)).startCall(any(), any());
+    }
+
+    @Test
+    void disabledInterceptorAdmitsEveryCallTest() {
+        settings.setEnabled(false);
+        ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(registry, settings);
+        ServerCallHandler<Object, Object> handler = handler();
+
+        for (int i = 0; i < 5; i++) {
+            interceptor.interceptCall(call(PatientServiceEndpointGrpc.getFindByIdMethod()), new Metadata(), handler);
+        }
+
+        verify(handler, times(5)).startCall(any(), any());
+    }
+
+    @Test
+    void cancellationAfterDeadlineShrinksLimitTest() throws Exception {
+        settings.setInitialLimit(10);
+        settings.setMaxLimit(10);
+        ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(registry, settings);
+        ServerCallHandler<Object, Object> handler = handler();
+
+        // A client that merely went away leaves the limit alone
+        interceptor.interceptCall(call(PatientServiceEndpointGrpc.getFindByIdMethod()), new Metadata(), handler).onCancel();
+        assertEquals(10, registry.get("grpc.server.concurrency.limit").gauge().value());
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            Context.CancellableContext expired = Context.current().withDeadline(Deadline.after(0, TimeUnit.NANOSECONDS), scheduler);
+            ServerCall.Listener<Object> listener = expired.call(() -> interceptor.interceptCall(
+                    call(PatientServiceEndpointGrpc.getFindByIdMethod()), new Metadata(), handler));
+            listener.onCancel();
+        } finally {
+            scheduler.shutdownNow();
+        }
+        assertEquals(9, registry.get("grpc.server.concurrency.limit").gauge().value());
+    }
+}
@@ -0,0 +1,102 @@
+package hospital.server.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import hospital.server.grpc.PatientServiceEndpointGrpc;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class GrpcMetricsInterceptorTest {
+    private static final String METHOD = PatientServiceEndpointGrpc.getFindByIdMethod().getFullMethodName();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final GrpcMetricsInterceptor interceptor = new GrpcMetricsInterceptor(registry);
+
+    @SuppressWarnings("unchecked")
+    private static ServerCall<Object, Object> call() {
+        ServerCall<Object, Object> call = mock(ServerCall.class);
+        when(call.getMethodDescriptor())
+                .thenReturn((MethodDescriptor<Object, Object>) (MethodDescriptor<?, ?>) PatientServiceEndpointGrpc.getFindByIdMethod());
+        return call;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServerCallHandler<Object, Object> handler() {
+        ServerCallHandler<Object, Object> handler = mock(ServerCallHandler.class);
+        when(handler.startCall(any(), any())).thenReturn(mock(ServerCall.Listener.class));
+        return handler;
+    }
+
+    // The call the interceptor handed to the service in place of the transport's
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ServerCall<Object, Object> forwardedCall(ServerCallHandler<Object, Object> handler) {
+        ArgumentCaptor<ServerCall> forwarded = ArgumentCaptor.forClass(ServerCall.class);
+        verify(handler).startCall(forwarded.capture(), any());
+        return forwarded.getValue();
+    }
+
+    private double active() {
+        return registry.get("grpc.server.calls.active").tag("method", METHOD).gauge().value();
+    }
+
+    private long completed(Status.Code code) {
+        return registry.get("grpc.server.calls").tag("method", METHOD).tag("status", code.name()).timer().count();
+    }
+
+    @Test
+    void closedCallIsTimedByMethodAndStatusTest() {
+        ServerCall<Object, Object> call = call();
+        ServerCallHandler<Object, Object> handler = handler();
+
+        interceptor.interceptCall(call, new Metadata(), handler);
+        assertEquals(1, active());
+
+        forwardedCall(handler).close(Status.OK, new Metadata());
+
+        verify(call).close(eq(Status.OK), any());
+        assertEquals(1, completed(Status.Code.OK));
+        assertEquals(0, active());
+    }
+
+    @Test
+    void cancelAfterCloseIsRecordedOnceTest() {
+        ServerCallHandler<Object, Object> handler = handler();
+
+        ServerCall.Listener<Object> listener = interceptor.interceptCall(call(), new Metadata(), handler);
+        forwardedCall(handler).close(Status.NOT_FOUND, new Metadata());
+        listener.onCancel();
+
+        assertEquals(1, completed(Status.Code.NOT_FOUND));
+        assertNull(registry.find("grpc.server.calls").tag("status", Status.Code.CANCELLED.name()).timer());
+        assertEquals(0, active());
+    }
+
+    @Test
+    void callCancelledBeforeCloseIsRecordedAsCancelledTest() {
+        ServerCall.Listener<Object> listener = interceptor.interceptCall(call(), new Metadata(), handler());
+
+        listener.onCancel();
+
+        assertEquals(1, completed(Status.Code.CANCELLED));
+        assertEquals(0, active());
+    }
+
+    @Test
+    void failingStartIsRecordedAsUnknownTest() {
+        ServerCallHandler<Object, Object> handler = handler();
+        when(handler.startCall(any(), any())).thenThrow(new IllegalStateException("boom"));
+
+        assertThrows(IllegalStateException.class, () -> interceptor.interceptCall(call(), new Metadata(), handler));
+
+        assertEquals(1, completed(Status.Code.UNKNOWN));
+        assertEquals(0, active());
+    }
+}
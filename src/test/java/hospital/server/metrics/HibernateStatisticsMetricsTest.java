@@ -0,0 +1,73 @@
+package hospital.server.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import hospital.server.model.Hospital;
+import hospital.server.repository.HospitalRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = {
+        "grpc.server.port=-1",
+        "grpc.server.in-process-name=hibernate-statistics-test",
+        "spring.datasource.url=jdbc:h2:mem:hibernate-statistics-test;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.url=r2dbc:h2:mem:///hibernate-statistics-test"})
+class HibernateStatisticsMetricsTest {
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private HospitalRepository hospitalRepository;
+
+    private double counter(String name) {
+        return registry.get(name).functionCounter().count();
+    }
+
+    @Test
+    void sessionWorkMovesStatisticsCountersTest() {
+        double prepared = counter("hibernate.statements.prepared");
+        double loaded = counter("hibernate.entities.loaded");
+        double transactions = counter("hibernate.transactions");
+
+        // Each repository call runs in a session and transaction of its own, so the lookup loads from the database
+        long id = hospitalRepository.save(new Hospital("Statistics Hospital")).getId();
+        assertTrue(hospitalRepository.findById(id).isPresent());
+
+        assertTrue(counter("hibernate.statements.prepared") >= prepared + 2);
+        assertTrue(counter("hibernate.entities.loaded") >= loaded + 1);
+        assertTrue(counter("hibernate.transactions") >= transactions + 2);
+        // The second-level cache is off in this context, so no region meters exist
+        assertNull(registry.find("hibernate.second.level.cache.hits").functionCounter());
+    }
+
+    @Test
+    void cacheRegionMetersAreTaggedWithRegionTest() {
+        String region = "hospital.server.model.Hospital";
+        SessionFactory sessionFactory = mock(SessionFactory.class);
+        Statistics statistics = mock(Statistics.class);
+        CacheRegionStatistics regionStatistics = mock(CacheRegionStatistics.class);
+        when(sessionFactory.getStatistics()).thenReturn(statistics);
+        when(statistics.getSecondLevelCacheRegionNames()).thenReturn(new String[] {region});
+        when(statistics.getCacheRegionStatistics(region)).thenReturn(regionStatistics);
+        when(regionStatistics.getHitCount()).thenReturn(3L);
+        when(regionStatistics.getMissCount()).thenReturn(1L);
+        when(regionStatistics.getPutCount()).thenReturn(2L);
+        SimpleMeterRegistry regionRegistry = new SimpleMeterRegistry();
+
+        new HibernateStatisticsMetrics(sessionFactory).bindTo(regionRegistry);
+
+        assertEquals(3, regionRegistry.get("hibernate.second.level.cache.hits").tag("region", region).functionCounter().count());
+        assertEquals(1, regionRegistry.get("hibernate.second.level.cache.misses").tag("region", region).functionCounter().count());
+        assertEquals(2, regionRegistry.get("hibernate.second.level.cache.puts").tag("region", region).functionCounter().count());
+        assertEquals(0.75, regionRegistry.get("hibernate.second.level.cache.hit.ratio").tag("region", region).gauge().value());
+        assertNotNull(regionRegistry.get("hibernate.flushes").functionCounter());
+    }
+}
@@ -0,0 +1,123 @@
+package hospital.server.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import hospital.server.grpc.HospitalOuterClass;
+import hospital.server.grpc.HospitalServiceEndpointGrpc;
+import hospital.server.grpc.PatientOuterClass;
+import hospital.server.grpc.PatientServiceEndpointGrpc;
+import hospital.server.model.Hospital;
+import hospital.server.repository.HospitalRepository;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Counts the statements of real calls through the application's datasource: the statement budgets
+ * of the RPCs that must not query per row, and what each kind of JDBC access counts as.
+ */
+@SpringBootTest(properties = {
+        "grpc.server.port=-1",
+        "grpc.server.in-process-name=statement-recording-test",
+        "spring.datasource.url=jdbc:h2:mem:statement-recording-test;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.url=r2dbc:h2:mem:///statement-recording-test",
+        "hospital.batch.lookup-chunk-size=10"})
+class StatementRecordingDataSourceTest {
+    private static final long FIRST_ID = 1_000_000L;
+    private static final int ROWS = 25;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private HospitalRepository hospitalRepository;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        channel = InProcessChannelBuilder.forName("statement-recording-test").build();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private static List<Long> ids() {
+        return LongStream.range(FIRST_ID, FIRST_ID + ROWS).boxed().toList();
+    }
+
+    private DistributionSummary statementsPerCall(MethodDescriptor<?, ?> method) {
+        return registry.get("hospital.sql.statements.per.call").tag("method", method.getFullMethodName()).summary();
+    }
+
+    private static CallStatements call() {
+        return new CallStatements("test", false, Long.MAX_VALUE);
+    }
+
+    @Test
+    void jpaAndJdbcTemplateStatementsCountTowardsCallTest() {
+        assertInstanceOf(StatementRecordingDataSource.class, dataSource);
+        long hospitalId = hospitalRepository.save(new Hospital("Counted Hospital")).getId();
+        CallStatements statements = call();
+
+        statements.run(() -> {
+            assertTrue(hospitalRepository.findById(hospitalId).isPresent());
+            assertEquals(1, jdbcTemplate.queryForObject("select count(*) from hospitals where id = ?", Long.class, hospitalId));
+            // One round trip however many rows it carries
+            jdbcTemplate.batchUpdate("update hospitals set address = ? where id = ?",
+                    List.of(new Object[] {"First Street", hospitalId}, new Object[] {"Second Street", hospitalId}));
+        });
+        // Outside of the call
+        jdbcTemplate.queryForObject("select count(*) from hospitals", Long.class);
+
+        assertEquals(3, statements.count());
+        assertNull(CallStatements.current());
+    }
+
+    @Test
+    void findByIdsRunsOneStatementPerChunkTest() {
+        jdbcTemplate.batchUpdate("insert into hospitals (id, name, address, created_at) values (?, ?, ?, current_timestamp)",
+                ids().stream().map(id -> new Object[] {id, "Hospital" + id, "Address" + id}).toList());
+        jdbcTemplate.batchUpdate("insert into patients (id, name, last_name, name_key, last_name_key, birth_date, sex, created_at) "
+                        + "values (?, ?, ?, ?, ?, ?, ?, current_timestamp)",
+                ids().stream().map(id -> new Object[] {id, "Name" + id, "LastName" + id, "name" + id, "lastname" + id,
+                        Date.valueOf("1990-01-01"), "female"}).toList());
+
+        HospitalOuterClass.FindByIdsResponse hospitals = HospitalServiceEndpointGrpc.newBlockingStub(channel)
+                .findByIds(HospitalOuterClass.FindByIdsRequest.newBuilder().addAllIds(ids()).build());
+        PatientOuterClass.FindByIdsResponse patients = PatientServiceEndpointGrpc.newBlockingStub(channel)
+                .findByIds(PatientOuterClass.FindByIdsRequest.newBuilder().addAllIds(ids()).build());
+
+        assertEquals(ROWS, hospitals.getHospitalsCount());
+        assertEquals(ROWS, patients.getPatientsCount());
+        // 25 ids in chunks of 10: three lookups, not one per id
+        DistributionSummary hospitalStatements = statementsPerCall(HospitalServiceEndpointGrpc.getFindByIdsMethod());
+        assertEquals(1, hospitalStatements.count());
+        assertEquals(3, hospitalStatements.totalAmount());
+        DistributionSummary patientStatements = statementsPerCall(PatientServiceEndpointGrpc.getFindByIdsMethod());
+        assertEquals(1, patientStatements.count());
+        assertEquals(3, patientStatements.totalAmount());
+    }
+}
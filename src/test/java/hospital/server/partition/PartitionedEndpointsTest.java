@@ -0,0 +1,170 @@
+package hospital.server.partition;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import hospital.server.grpc.HospitalOuterClass;
+import hospital.server.grpc.HospitalOuterClass.HospitalResponse;
+import hospital.server.grpc.HospitalServiceEndpointGrpc;
+import hospital.server.grpc.HospitalServiceEndpointGrpc.HospitalServiceEndpointBlockingStub;
+import hospital.server.grpc.PatientOuterClass.CreatePatientRequest;
+import hospital.server.grpc.PatientOuterClass.DeletePatientRequest;
+import hospital.server.grpc.PatientOuterClass.FindByIdRequest;
+import hospital.server.grpc.PatientOuterClass.FindByIdsRequest;
+import hospital.server.grpc.PatientOuterClass.ListAllPatientsRequest;
+import hospital.server.grpc.PatientOuterClass.ListByHospitalIdRequest;
+import hospital.server.grpc.PatientOuterClass.ListPatientsResponse;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import hospital.server.grpc.PatientOuterClass.RegisterPatientRequest;
+import hospital.server.grpc.PatientOuterClass.SearchPatientsRequest;
+import hospital.server.grpc.PatientOuterClass.UpdatePatientRequest;
+import hospital.server.grpc.PatientServiceEndpointGrpc;
+import hospital.server.grpc.PatientServiceEndpointGrpc.PatientServiceEndpointBlockingStub;
+import hospital.server.repository.PatientRepository;
+import com.google.protobuf.FieldMask;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the patient calls over three partitions: each patient lands in the partition its id
+ * hashes to and nowhere else, and roster and all-patient pages merge the partitions in id order.
+ */
+@SpringBootTest(properties = {
+        "grpc.server.port=-1",
+        "grpc.server.in-process-name=partitioned-endpoints-test",
+        "spring.datasource.url=jdbc:h2:mem:partitioned-endpoints-test;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.url=r2dbc:h2:mem:///partitioned-endpoints-test",
+        "hospital.partitions.count=3",
+        "hospital.partitions.url-template=jdbc:h2:mem:partitioned-endpoints-test-%d;DB_CLOSE_DELAY=-1"})
+class PartitionedEndpointsTest {
+    private static final int PATIENTS = 20;
+
+    @Autowired
+    private PartitionedStorage partitionedStorage;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    private ManagedChannel channel;
+    private PatientServiceEndpointBlockingStub patients;
+    private HospitalServiceEndpointBlockingStub hospitals;
+
+    @BeforeEach
+    void setUp() {
+        channel = InProcessChannelBuilder.forName("partitioned-endpoints-test").build();
+        patients = PatientServiceEndpointGrpc.newBlockingStub(channel);
+        hospitals = HospitalServiceEndpointGrpc.newBlockingStub(channel);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private PatientResponse createPatient(int number) {
+        return patients.createPatient(CreatePatientRequest.newBuilder()
+                .setName("Partitioned")
+                .setLastName("Patient" + number)
+                .setBirthDate("01/01/1990")
+                .setSex("female")
+                .build());
+    }
+
+    private HospitalResponse createHospital(String name) {
+        return hospitals.createHospital(HospitalOuterClass.CreateHospitalRequest.newBuilder()
+                .setName(name)
+                .setAddress("Partition Street")
+                .build());
+    }
+
+    private void register(long hospitalId, long patientId) {
+        patients.registerPatientInHospital(RegisterPatientRequest.newBuilder()
+                .setHospitalId(hospitalId)
+                .setPatientId(patientId)
+                .build());
+    }
+
+    @Test
+    void patientsAreRoutedByIdHashTest() {
+        assertTrue(partitionedStorage.isEnabled());
+        Set<Integer> used = new HashSet<>();
+        for (int number = 0; number < PATIENTS; number++) {
+            PatientResponse patient = createPatient(number);
+            used.add(partitionedStorage.partitionOf(patient.getId()));
+            assertTrue(partitionedStorage.findRowById(patient.getId()).isPresent());
+            assertTrue(patientRepository.findRowById(patient.getId()).isEmpty(), "written to the primary database");
+            assertEquals(patient, patients.findById(FindByIdRequest.newBuilder().setId(patient.getId()).build()));
+        }
+        assertEquals(3, used.size());
+
+        PatientResponse patient = createPatient(PATIENTS);
+        PatientResponse updated = patients.updatePatient(UpdatePatientRequest.newBuilder()
+                .setId(patient.getId())
+                .setName("Moved")
+                .setUpdateMask(FieldMask.newBuilder().addPaths("name"))
+                .build());
+        assertEquals("Moved", updated.getName());
+        assertEquals("Moved", partitionedStorage.findRowById(patient.getId()).orElseThrow().name());
+        assertEquals(updated, patients.findById(FindByIdRequest.newBuilder().setId(patient.getId()).build()));
+
+        assertTrue(patients.deletePatient(DeletePatientRequest.newBuilder().setId(patient.getId()).build()).getSuccess());
+        assertTrue(partitionedStorage.findRowById(patient.getId()).isEmpty());
+        assertEquals(List.of(patient.getId()), patients.findByIds(FindByIdsRequest.newBuilder().addIds(patient.getId()).build())
+                .getMissingIdsList());
+    }
+
+    @Test
+    void rosterPagesMergePartitionsInIdOrderTest() {
+        HospitalResponse hospital = createHospital("Partitioned Hospital");
+        List<Long> registered = new ArrayList<>();
+        for (int number = 0; number < PATIENTS; number++) {
+            PatientResponse patient = createPatient(number);
+            register(hospital.getId(), patient.getId());
+            registered.add(patient.getId());
+        }
+
+        List<Long> listed = new ArrayList<>();
+        String pageToken = "";
+        do {
+            ListPatientsResponse page = patients.listPatientsByHospitalId(ListByHospitalIdRequest.newBuilder()
+                    .setHospitalId(hospital.getId())
+                    .setPageSize(3)
+                    .setPageToken(pageToken)
+                    .build());
+            page.getPatientsList().forEach(patient -> listed.add(patient.getId()));
+            pageToken = page.getNextPageToken();
+        } while (!pageToken.isEmpty());
+        assertEquals(registered, listed);
+
+        // Other tests' patients are listed too, so only the order and the inclusion are checked
+        List<Long> allIds = patients.listAllPatients(ListAllPatientsRequest.newBuilder().setPageSize(1000).build())
+                .getPatientsList().stream().map(PatientResponse::getId).toList();
+        assertEquals(allIds.stream().sorted().toList(), allIds);
+        assertTrue(allIds.containsAll(registered));
+
+        // The hospital's copy in the patient's partition serves the other direction
+        long patientId = registered.get(0);
+        HospitalOuterClass.ListHospitalsResponse patientHospitals = hospitals.listHospitalsByPatientId(
+                HospitalOuterClass.ListByPatientIdRequest.newBuilder().setPatientId(patientId).build());
+        assertEquals(List.of(hospital), patientHospitals.getHospitalsList());
+    }
+
+    @Test
+    void rpcsOfThePrimaryDatabaseAreRejectedTest() {
+        StatusRuntimeException error = assertThrows(StatusRuntimeException.class,
+                () -> patients.searchPatients(SearchPatientsRequest.newBuilder().setLastNamePrefix("Patient").build()));
+        assertEquals(Status.Code.UNIMPLEMENTED, error.getStatus().getCode());
+    }
+}
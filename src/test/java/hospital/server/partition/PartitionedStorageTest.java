@@ -0,0 +1,161 @@
+package hospital.server.partition;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import hospital.server.repository.HospitalRow;
+import hospital.server.repository.PatientRow;
+import hospital.server.repository.PatientUpdate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+class PartitionedStorageTest {
+    private final String name = "partition-test-" + UUID.randomUUID();
+    private final List<PartitionedStorage> opened = new ArrayList<>();
+    private final AtomicLong sequence = new AtomicLong(1000);
+
+    private List<DataSource> dataSources(int count) {
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int partition = 0; partition < count; partition++) {
+            dataSources.add(new DriverManagerDataSource("jdbc:h2:mem:" + name + "-" + partition + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        }
+        return dataSources;
+    }
+
+    private PartitionedStorage storage(List<DataSource> dataSources) {
+        PartitionedStorage storage = new PartitionedStorage(dataSources, sequence::incrementAndGet);
+        storage.createSchema();
+        opened.add(storage);
+        return storage;
+    }
+
+    private static PatientRow patient(long id) {
+        return new PatientRow(id, "Name" + id, "LastName" + id, LocalDate.of(1990, 1, 1), "female");
+    }
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(PartitionedStorage::close);
+    }
+
+    @Test
+    void patientsAreSpreadAndListingsGatherInIdOrderTest() {
+        PartitionedStorage storage = storage(dataSources(3));
+        storage.insertHospital(1L, "Hospital", "Address");
+        LongStream.rangeClosed(1, 30).forEach(id -> {
+            storage.insertPatient(patient(id));
+            assertEquals(1, storage.insertRegistration(1L, id));
+        });
+
+        for (int partition = 0; partition < 3; partition++) {
+            assertTrue(storage.patientCount(partition) > 0, "Partition " + partition + " holds no patients");
+        }
+        assertEquals(0, storage.insertRegistration(1L, 5L));
+        assertEquals(List.of(11L, 12L, 13L, 14L, 15L),
+                storage.findRowsByHospitalId(1L, 10L, 5).stream().map(PatientRow::id).toList());
+        assertEquals(List.of(29L, 30L), storage.findRowsAfter(28L, 5).stream().map(PatientRow::id).toList());
+        assertEquals(patient(7L), storage.findRowById(7L).orElseThrow());
+        assertEquals(3, storage.findRowsByIdIn(List.of(1L, 2L, 3L, 99L)).size());
+
+        assertEquals(patient(7L), storage.deletePatient(7L).orElseThrow().patient());
+        assertTrue(storage.deletePatient(7L).isEmpty());
+        assertTrue(storage.findRowById(7L).isEmpty());
+        assertEquals(29, storage.findRowsByHospitalId(1L, 0L, 100).size());
+    }
+
+    @Test
+    void rebalanceMovesPatientsToTheirNewPartitionTest() {
+        List<DataSource> dataSources = dataSources(3);
+        PartitionedStorage before = storage(dataSources.subList(0, 2));
+        before.insertHospital(1L, "Hospital", "Address");
+        LongStream.rangeClosed(1, 50).forEach(id -> {
+            before.insertPatient(patient(id));
+            before.insertRegistration(1L, id);
+        });
+
+        long moved = PartitionRebalancer.rebalance(dataSources, 2, 3);
+        // Running again finds everything in place
+        assertEquals(0, PartitionRebalancer.rebalance(dataSources, 3, 3));
+
+        PartitionedStorage after = storage(dataSources);
+        assertTrue(moved > 0);
+        assertEquals(50, LongStream.range(0, 3).map(partition -> after.patientCount((int) partition)).sum());
+        LongStream.rangeClosed(1, 50).forEach(id -> assertEquals(patient(id), after.findRowById(id).orElseThrow()));
+        assertEquals(50, after.findRowsByHospitalId(1L, 0L, 100).size());
+    }
+
+    @Test
+    void gatheredPagesMergeAcrossPartitionsTest() {
+        PartitionedStorage storage = storage(dataSources(4));
+        storage.insertHospital(1L, "Hospital", "Address");
+        LongStream.rangeClosed(1, 40).forEach(id -> {
+            storage.insertPatient(patient(id));
+            // Every third patient stays unregistered, so partitions hold rosters of uneven length
+            if (id % 3 != 0) {
+                storage.insertRegistration(1L, id);
+            }
+        });
+
+        List<Long> roster = new ArrayList<>();
+        long afterId = 0;
+        List<PatientRow> page;
+        do {
+            page = storage.findRowsByHospitalId(1L, afterId, 4);
+            page.forEach(patient -> roster.add(patient.id()));
+            afterId = page.isEmpty() ? afterId : page.get(page.size() - 1).id();
+        } while (page.size() == 4);
+
+        assertEquals(LongStream.rangeClosed(1, 40).filter(id -> id % 3 != 0).boxed().toList(), roster);
+        assertEquals(List.of(1L, 2L, 3L), storage.findRowsAfter(0L, 3).stream().map(PatientRow::id).toList());
+    }
+
+    @Test
+    void writesRouteToPatientPartitionAndKeepCountsTest() {
+        List<DataSource> dataSources = dataSources(3);
+        PartitionedStorage storage = storage(dataSources);
+        storage.insertHospital(1L, "Hospital", "Address");
+        storage.insertHospital(2L, "Other Hospital", "Other Address");
+
+        PatientRow created = storage.createPatient("Routed", "Patient", LocalDate.of(1980, 5, 5), "male");
+        int home = storage.partitionOf(created.id());
+        assertEquals(1001L, created.id());
+        assertEquals(1, storage.patientCount(home));
+        assertEquals(1, storage.insertRegistration(2L, created.id()));
+        assertEquals(1, storage.insertRegistration(1L, created.id()));
+        assertEquals(List.of(new HospitalRow(1L, "Hospital", "Address"), new HospitalRow(2L, "Other Hospital", "Other Address")),
+                storage.findHospitalRowsByPatientId(created.id(), 0L, 10));
+        for (int partition = 0; partition < 3; partition++) {
+            long rows = new JdbcTemplate(dataSources.get(partition))
+                    .queryForObject("select count(*) from hospital_patient", Long.class);
+            assertEquals(partition == home ? 2 : 0, rows);
+        }
+
+        PartitionedStorage.Updated renamed = storage.updatePatient(created.id(), new PatientUpdate("Renamed", null, null, null))
+                .orElseThrow();
+        assertNull(renamed.previous());
+        assertEquals("Renamed", renamed.current().name());
+        assertEquals(List.of(), renamed.hospitalIds());
+        PartitionedStorage.Updated moved = storage.updatePatient(created.id(), new PatientUpdate(null, null, null, "female"))
+                .orElseThrow();
+        assertEquals("male", moved.previous().sex());
+        assertEquals(List.of(1L, 2L), moved.hospitalIds().stream().sorted().toList());
+        assertTrue(storage.updatePatient(99_999L, new PatientUpdate("Nobody", null, null, null)).isEmpty());
+
+        assertEquals(List.of(1L, 2L), storage.deletePatient(created.id()).orElseThrow().hospitalIds().stream().sorted().toList());
+        assertEquals(0, storage.patientCount(home));
+        storage.insertPatient(patient(5L));
+        // A recount agrees with the maintained counts
+        long maintained = storage.patientCount(storage.partitionOf(5L));
+        storage.recountPatients();
+        assertEquals(maintained, storage.patientCount(storage.partitionOf(5L)));
+    }
+}
@@ -0,0 +1,190 @@
+package hospital.server.reactive;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import hospital.server.cache.ResponseCache;
+import hospital.server.grpc.HospitalOuterClass;
+import hospital.server.grpc.HospitalOuterClass.HospitalResponse;
+import hospital.server.grpc.HospitalServiceEndpointGrpc;
+import hospital.server.grpc.HospitalServiceEndpointGrpc.HospitalServiceEndpointBlockingStub;
+import hospital.server.grpc.PatientOuterClass.CreatePatientRequest;
+import hospital.server.grpc.PatientOuterClass.DeletePatientRequest;
+import hospital.server.grpc.PatientOuterClass.FindByIdRequest;
+import hospital.server.grpc.PatientOuterClass.FindByIdsRequest;
+import hospital.server.grpc.PatientOuterClass.FindByIdsResponse;
+import hospital.server.grpc.PatientOuterClass.ListByHospitalIdRequest;
+import hospital.server.grpc.PatientOuterClass.ListPatientsResponse;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import hospital.server.grpc.PatientOuterClass.RegisterPatientRequest;
+import hospital.server.grpc.PatientOuterClass.UpdatePatientRequest;
+import hospital.server.grpc.PatientServiceEndpointGrpc;
+import hospital.server.grpc.PatientServiceEndpointGrpc.PatientServiceEndpointBlockingStub;
+import hospital.server.index.RegistrationIndex;
+import hospital.server.repository.PatientRepository;
+import com.google.protobuf.FieldMask;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the unary patient and hospital calls with {@code hospital.persistence.engine=r2dbc}: the
+ * writes land in the database the JPA repositories read, loads fill the response caches, and the
+ * roster pages come from the registration index.
+ */
+@SpringBootTest(properties = {
+        "grpc.server.port=-1",
+        "grpc.server.in-process-name=r2dbc-engine-test",
+        "spring.datasource.url=jdbc:h2:mem:r2dbc-engine-test;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.url=r2dbc:h2:mem:///r2dbc-engine-test",
+        "hospital.persistence.engine=r2dbc",
+        "hospital.index.enabled=true"})
+class R2dbcEngineTest {
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private ResponseCache<PatientResponse> patientResponseCache;
+
+    @Autowired
+    private ResponseCache<HospitalResponse> hospitalResponseCache;
+
+    @Autowired
+    private RegistrationIndex registrationIndex;
+
+    private ManagedChannel channel;
+    private PatientServiceEndpointBlockingStub patients;
+    private HospitalServiceEndpointBlockingStub hospitals;
+
+    @BeforeEach
+    void setUp() {
+        channel = InProcessChannelBuilder.forName("r2dbc-engine-test").build();
+        patients = PatientServiceEndpointGrpc.newBlockingStub(channel);
+        hospitals = HospitalServiceEndpointGrpc.newBlockingStub(channel);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private PatientResponse createPatient(String lastName) {
+        return patients.createPatient(CreatePatientRequest.newBuilder()
+                .setName("Reactive")
+                .setLastName(lastName)
+                .setBirthDate("01/01/1990")
+                .setSex("female")
+                .build());
+    }
+
+    private HospitalResponse createHospital(String name) {
+        return hospitals.createHospital(HospitalOuterClass.CreateHospitalRequest.newBuilder()
+                .setName(name)
+                .setAddress("Reactive Street")
+                .build());
+    }
+
+    @Test
+    void patientLifecycleTest() {
+        PatientResponse created = createPatient("Lifecycle");
+        assertTrue(patientRepository.findRowById(created.getId()).isPresent());
+
+        assertEquals(created, patients.findById(FindByIdRequest.newBuilder().setId(created.getId()).build()));
+        assertEquals(created, patientResponseCache.getAllPresent(List.of(created.getId())).get(created.getId()));
+
+        PatientResponse updated = patients.updatePatient(UpdatePatientRequest.newBuilder()
+                .setId(created.getId())
+                .setSex("male")
+                .setUpdateMask(FieldMask.newBuilder().addPaths("sex"))
+                .build());
+        assertEquals("male", updated.getSex());
+        assertEquals("Lifecycle", updated.getLastName());
+        assertTrue(patientResponseCache.getAllPresent(List.of(created.getId())).isEmpty());
+        assertEquals("male", patientRepository.findRowById(created.getId()).orElseThrow().sex());
+
+        assertTrue(patients.deletePatient(DeletePatientRequest.newBuilder().setId(created.getId()).build()).getSuccess());
+        assertFalse(patients.deletePatient(DeletePatientRequest.newBuilder().setId(created.getId()).build()).getSuccess());
+        StatusRuntimeException error = assertThrows(StatusRuntimeException.class,
+                () -> patients.findById(FindByIdRequest.newBuilder().setId(created.getId()).build()));
+        assertEquals(Status.Code.NOT_FOUND, error.getStatus().getCode());
+    }
+
+    @Test
+    void registeredPatientsArePagedFromIndexTest() {
+        assertTrue(registrationIndex.isReady());
+        HospitalResponse hospital = createHospital("Indexed Hospital");
+        PatientResponse first = createPatient("First");
+        PatientResponse second = createPatient("Second");
+        for (PatientResponse patient : List.of(first, second)) {
+            assertFalse(patients.registerPatientInHospital(RegisterPatientRequest.newBuilder()
+                    .setHospitalId(hospital.getId())
+                    .setPatientId(patient.getId())
+                    .build()).getAlreadyRegistered());
+        }
+        assertTrue(registrationIndex.isRegistered(hospital.getId(), first.getId()));
+
+        ListPatientsResponse page = patients.listPatientsByHospitalId(ListByHospitalIdRequest.newBuilder()
+                .setHospitalId(hospital.getId())
+                .setPageSize(1)
+                .build());
+        assertEquals(List.of(first), page.getPatientsList());
+        ListPatientsResponse next = patients.listPatientsByHospitalId(ListByHospitalIdRequest.newBuilder()
+                .setHospitalId(hospital.getId())
+                .setPageSize(1)
+                .setPageToken(page.getNextPageToken())
+                .build());
+        assertEquals(List.of(second), next.getPatientsList());
+        assertEquals("", next.getNextPageToken());
+
+        StatusRuntimeException error = assertThrows(StatusRuntimeException.class,
+                () -> patients.listPatientsByHospitalId(ListByHospitalIdRequest.newBuilder().setHospitalId(-1L).build()));
+        assertEquals(Status.Code.NOT_FOUND, error.getStatus().getCode());
+    }
+
+    @Test
+    void findByIdsFillsCacheAndReportsMissingIdsTest() {
+        PatientResponse patient = createPatient("Looked Up");
+        long missingId = patient.getId() + 1_000_000L;
+
+        FindByIdsResponse found = patients.findByIds(FindByIdsRequest.newBuilder()
+                .addIds(patient.getId())
+                .addIds(missingId)
+                .build());
+
+        assertEquals(List.of(patient), found.getPatientsList());
+        assertEquals(List.of(missingId), found.getMissingIdsList());
+        assertEquals(patient, patientResponseCache.getAllPresent(List.of(patient.getId())).get(patient.getId()));
+    }
+
+    @Test
+    void hospitalLifecycleTest() {
+        HospitalResponse created = createHospital("Reactive Hospital");
+        HospitalOuterClass.FindByIdRequest byId = HospitalOuterClass.FindByIdRequest.newBuilder().setId(created.getId()).build();
+
+        assertEquals(created, hospitals.findById(byId));
+        assertEquals(created, hospitalResponseCache.getAllPresent(List.of(created.getId())).get(created.getId()));
+
+        HospitalResponse renamed = hospitals.updateHospital(HospitalOuterClass.UpdateHospitalRequest.newBuilder()
+                .setId(created.getId())
+                .setName("Renamed Hospital")
+                .setUpdateMask(FieldMask.newBuilder().addPaths("name"))
+                .build());
+        assertEquals("Renamed Hospital", renamed.getName());
+        assertEquals("Reactive Street", renamed.getAddress());
+        assertEquals(renamed, hospitals.findById(byId));
+
+        assertTrue(hospitals.deleteHospital(HospitalOuterClass.DeleteHospitalRequest.newBuilder().setId(created.getId()).build())
+                .getSuccess());
+        StatusRuntimeException error = assertThrows(StatusRuntimeException.class, () -> hospitals.findById(byId));
+        assertEquals(Status.Code.NOT_FOUND, error.getStatus().getCode());
+    }
+}
@@ -0,0 +1,85 @@
+package hospital.server.routing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+class ReadWriteRoutingDataSourceTest {
+
+    @TempDir
+    Path directory;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate writes;
+    private TransactionTemplate reads;
+
+    // The replica is a copy of the primary's database file; the primary then moves ahead of it
+    @BeforeEach
+    void setUp() throws Exception {
+        DataSource primary = new DriverManagerDataSource("jdbc:h2:file:" + directory.resolve("primary"), "sa", "");
+        JdbcTemplate primaryTemplate = new JdbcTemplate(primary);
+        primaryTemplate.execute("create table markers (name varchar(32))");
+        primaryTemplate.update("insert into markers values ('copied')");
+        primaryTemplate.execute("shutdown");
+        Files.copy(directory.resolve("primary.mv.db"), directory.resolve("replica.mv.db"));
+        DataSource replica = new DriverManagerDataSource("jdbc:h2:file:" + directory.resolve("replica"), "sa", "");
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(
+                new ReadWriteRoutingDataSource(primary, List.of(replica), Duration.ofHours(1)));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        writes = new TransactionTemplate(transactionManager);
+        reads = new TransactionTemplate(transactionManager);
+        reads.setReadOnly(true);
+    }
+
+    private int markers() {
+        return reads.execute(status -> jdbcTemplate.queryForObject("select count(*) from markers", Integer.class));
+    }
+
+    private void write() {
+        writes.executeWithoutResult(status -> jdbcTemplate.update("insert into markers values ('primary only')"));
+    }
+
+    @Test
+    void readOnlyTransactionsOfCallsGoToReplicaTest() {
+        write();
+
+        assertEquals(1, new ReadRouting(false).call(this::markers));
+        // Outside of a call, reads stay on the primary
+        assertEquals(2, markers());
+    }
+
+    @Test
+    void callReadsPrimaryAfterItWroteTest() {
+        ReadRouting call = new ReadRouting(false);
+
+        call.run(this::write);
+
+        assertEquals(2, call.call(this::markers));
+        assertEquals(1, new ReadRouting(false).call(this::markers));
+    }
+
+    @Test
+    void readYourWritesCallReadsPrimaryWithinWindowTest() {
+        assertEquals(1, new ReadRouting(true).call(this::markers));
+
+        write();
+
+        assertEquals(2, new ReadRouting(true).call(this::markers));
+        assertEquals(1, new ReadRouting(false).call(this::markers));
+    }
+}
@@ -0,0 +1,169 @@
+package hospital.server.snapshot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import hospital.server.HospitalServerProperties;
+import hospital.server.SpringHibernateCrudApplication;
+import hospital.server.grpc.HospitalOuterClass.CensusResponse;
+import hospital.server.grpc.HospitalOuterClass.CreateHospitalRequest;
+import hospital.server.grpc.HospitalOuterClass.GetCensusRequest;
+import hospital.server.grpc.HospitalOuterClass.HospitalResponse;
+import hospital.server.grpc.HospitalServiceEndpointGrpc;
+import hospital.server.grpc.HospitalServiceEndpointGrpc.HospitalServiceEndpointBlockingStub;
+import hospital.server.grpc.PatientOuterClass.CreatePatientRequest;
+import hospital.server.grpc.PatientOuterClass.ListByHospitalIdRequest;
+import hospital.server.grpc.PatientOuterClass.PatientResponse;
+import hospital.server.grpc.PatientOuterClass.RegisterPatientRequest;
+import hospital.server.grpc.PatientServiceEndpointGrpc;
+import hospital.server.grpc.PatientServiceEndpointGrpc.PatientServiceEndpointBlockingStub;
+import hospital.server.grpc.SnapshotOuterClass.ExportSnapshotRequest;
+import hospital.server.grpc.SnapshotOuterClass.ImportSnapshotRequest;
+import hospital.server.grpc.SnapshotOuterClass.SnapshotResponse;
+import hospital.server.grpc.SnapshotServiceEndpointGrpc;
+import hospital.server.grpc.SnapshotServiceEndpointGrpc.SnapshotServiceEndpointBlockingStub;
+import hospital.server.index.RegistrationIndex;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Exports a populated server's store over gRPC and imports it into a second, empty server that
+ * shares the snapshot directory, checking the status of every way an import can be refused and
+ * that the registration index and the census are rebuilt from the imported rows.
+ */
+class SnapshotEndpointsTest {
+    private static final int PATIENTS = 12;
+
+    @TempDir
+    Path directory;
+
+    // Arguments rather than default properties, which application.properties would override
+    private ConfigurableApplicationContext start(String name) {
+        return new SpringApplicationBuilder(SpringHibernateCrudApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--grpc.server.port=-1",
+                        "--grpc.server.in-process-name=" + name,
+                        "--spring.datasource.url=jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1",
+                        "--hospital.index.enabled=true",
+                        "--hospital.snapshot.directory=" + directory);
+    }
+
+    private static StatusRuntimeException assertStatus(Status.Code code, Executable call) {
+        StatusRuntimeException error = assertThrows(StatusRuntimeException.class, call);
+        assertEquals(code, error.getStatus().getCode(), error.getStatus().getDescription());
+        return error;
+    }
+
+    private static ImportSnapshotRequest importRequest(String fileName) {
+        return ImportSnapshotRequest.newBuilder().setFileName(fileName).build();
+    }
+
+    @Test
+    void snapshotRestoresIntoEmptyServerTest() throws Exception {
+        long hospitalId;
+        List<Long> registered = new ArrayList<>();
+        SnapshotResponse exported;
+        try (ConfigurableApplicationContext source = start("snapshot-endpoints-source")) {
+            ManagedChannel channel = InProcessChannelBuilder.forName("snapshot-endpoints-source").build();
+            try {
+                HospitalResponse hospital = HospitalServiceEndpointGrpc.newBlockingStub(channel)
+                        .createHospital(CreateHospitalRequest.newBuilder().setName("Snapshot Hospital").setAddress("Snapshot Street").build());
+                hospitalId = hospital.getId();
+                PatientServiceEndpointBlockingStub patients = PatientServiceEndpointGrpc.newBlockingStub(channel);
+                for (int number = 0; number < PATIENTS; number++) {
+                    PatientResponse patient = patients.createPatient(CreatePatientRequest.newBuilder()
+                            .setName("Snapshot")
+                            .setLastName("Patient" + number)
+                            .setBirthDate("01/01/1990")
+                            .setSex(number % 2 == 0 ? "female" : "male")
+                            .build());
+                    patients.registerPatientInHospital(RegisterPatientRequest.newBuilder()
+                            .setHospitalId(hospitalId)
+                            .setPatientId(patient.getId())
+                            .build());
+                    registered.add(patient.getId());
+                }
+                SnapshotServiceEndpointBlockingStub snapshots = SnapshotServiceEndpointGrpc.newBlockingStub(channel);
+                exported = snapshots.exportSnapshot(ExportSnapshotRequest.newBuilder().setFileName("store.snapshot").build());
+                assertStatus(Status.Code.INVALID_ARGUMENT, () -> snapshots.exportSnapshot(
+                        ExportSnapshotRequest.newBuilder().setFileName("../outside.snapshot").build()));
+                assertFalse(Files.exists(directory.resolveSibling("outside.snapshot")));
+            } finally {
+                channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            }
+        }
+        assertEquals(PATIENTS, exported.getPatients());
+        assertEquals(PATIENTS, exported.getRegistrations());
+        // Written to the configured directory only, not to the default one under the working directory
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of(directory.resolve("store.snapshot")), files.toList());
+        }
+        assertFalse(Files.exists(Path.of(new HospitalServerProperties().getSnapshot().getDirectory(), "store.snapshot")));
+
+        byte[] damaged = Files.readAllBytes(directory.resolve("store.snapshot"));
+        damaged[damaged.length / 2] ^= 1;
+        Files.write(directory.resolve("damaged.snapshot"), damaged);
+
+        try (ConfigurableApplicationContext target = start("snapshot-endpoints-target")) {
+            ManagedChannel channel = InProcessChannelBuilder.forName("snapshot-endpoints-target").build();
+            try {
+                SnapshotServiceEndpointBlockingStub snapshots = SnapshotServiceEndpointGrpc.newBlockingStub(channel);
+                PatientServiceEndpointBlockingStub patients = PatientServiceEndpointGrpc.newBlockingStub(channel);
+                HospitalServiceEndpointBlockingStub hospitals = HospitalServiceEndpointGrpc.newBlockingStub(channel);
+
+                assertStatus(Status.Code.INVALID_ARGUMENT, () -> snapshots.importSnapshot(importRequest("../store.snapshot")));
+                assertStatus(Status.Code.INVALID_ARGUMENT, () -> snapshots.importSnapshot(importRequest(directory.resolve("store.snapshot").toString())));
+                assertStatus(Status.Code.NOT_FOUND, () -> snapshots.importSnapshot(importRequest("missing.snapshot")));
+                assertStatus(Status.Code.DATA_LOSS, () -> snapshots.importSnapshot(importRequest("damaged.snapshot")));
+
+                // Calls of the patient and hospital services are turned away while an import holds the gate
+                SnapshotImportGate gate = target.getBean(SnapshotImportGate.class);
+                gate.close();
+                try {
+                    assertStatus(Status.Code.UNAVAILABLE, () -> patients.createPatient(CreatePatientRequest.newBuilder()
+                            .setName("Racing")
+                            .setLastName("Patient")
+                            .build()));
+                    assertStatus(Status.Code.FAILED_PRECONDITION, () -> snapshots.importSnapshot(importRequest("store.snapshot")));
+                } finally {
+                    gate.open();
+                }
+
+                SnapshotResponse imported = snapshots.importSnapshot(importRequest("store.snapshot"));
+                assertEquals(exported.getChecksum(), imported.getChecksum());
+                assertEquals(PATIENTS, imported.getPatients());
+
+                // Rebuilt from the imported rows rather than from change events
+                assertTrue(target.getBean(RegistrationIndex.class).isReady());
+                List<Long> listed = patients.listPatientsByHospitalId(ListByHospitalIdRequest.newBuilder()
+                                .setHospitalId(hospitalId)
+                                .setPageSize(100)
+                                .build())
+                        .getPatientsList().stream().map(PatientResponse::getId).toList();
+                assertEquals(registered, listed);
+                CensusResponse census = hospitals.getCensus(GetCensusRequest.newBuilder().setHospitalId(hospitalId).build());
+                assertEquals(PATIENTS, census.getPatientCount());
+                assertEquals(PATIENTS / 2, census.getPatientsBySexOrThrow("female"));
+                assertEquals(PATIENTS, hospitals.getCensus(GetCensusRequest.getDefaultInstance()).getPatientCount());
+
+                assertStatus(Status.Code.FAILED_PRECONDITION, () -> snapshots.importSnapshot(importRequest("store.snapshot")));
+            } finally {
+                channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+}
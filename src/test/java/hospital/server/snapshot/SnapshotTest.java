@@ -0,0 +1,123 @@
+package hospital.server.snapshot;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+class SnapshotTest {
+    private static final String[] SCHEMA = {
+            "create sequence hospitals_seq start with 1 increment by 50",
+            "create sequence patients_seq start with 1 increment by 50",
+            "create table hospitals (id bigint primary key, name varchar(255), address varchar(255), "
+                    + "created_at timestamp(6) with time zone not null)",
+            "create table patients (id bigint primary key, name varchar(255), last_name varchar(255), name_key varchar(255), "
+                    + "last_name_key varchar(255), birth_date date, sex varchar(255), created_at timestamp(6) with time zone not null)",
+            "create table hospital_patient (hospital_id bigint not null references hospitals, "
+                    + "patient_id bigint not null references patients, unique (hospital_id, patient_id))"
+    };
+
+    @TempDir
+    Path directory;
+
+    private static JdbcTemplate database() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:snapshot-test-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        for (String statement : SCHEMA) {
+            jdbcTemplate.execute(statement);
+        }
+        return jdbcTemplate;
+    }
+
+    private static JdbcTemplate populatedDatabase() {
+        JdbcTemplate jdbcTemplate = database();
+        for (long hospitalId = 1; hospitalId <= 3; hospitalId++) {
+            jdbcTemplate.update("insert into hospitals values (?, ?, ?, current_timestamp)", hospitalId, "Hospital" + hospitalId,
+                    hospitalId == 3 ? null : "Address" + hospitalId);
+        }
+        for (long patientId = 1; patientId <= 40; patientId++) {
+            jdbcTemplate.update("insert into patients values (?, ?, ?, ?, ?, ?, ?, current_timestamp)", patientId,
+                    patientId % 7 == 0 ? null : "Name" + patientId, "LastName" + patientId,
+                    patientId % 7 == 0 ? null : "name" + patientId, "lastname" + patientId,
+                    patientId % 5 == 0 ? null : java.sql.Date.valueOf("1990-01-0" + (1 + patientId % 9)),
+                    patientId % 6 == 0 ? null : "female");
+            jdbcTemplate.update("insert into hospital_patient values (?, ?)", 1 + patientId % 3, patientId);
+        }
+        return jdbcTemplate;
+    }
+
+    private static SnapshotExporter exporter(JdbcTemplate jdbcTemplate) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        transactionTemplate.setReadOnly(true);
+        return new SnapshotExporter(jdbcTemplate, transactionTemplate);
+    }
+
+    private static SnapshotImporter importer(JdbcTemplate jdbcTemplate) {
+        // Small batches on several threads, so the load crosses batch and table boundaries
+        return new SnapshotImporter(jdbcTemplate,
+                new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource())), 3, 7);
+    }
+
+    private static List<Map<String, Object>> rows(JdbcTemplate jdbcTemplate, String query) {
+        return jdbcTemplate.queryForList(query);
+    }
+
+    @Test
+    void exportedSnapshotImportsIntoEmptyStoreTest() throws Exception {
+        JdbcTemplate source = populatedDatabase();
+        JdbcTemplate target = database();
+        Path snapshot = directory.resolve("store.snapshot");
+
+        SnapshotSummary exported = exporter(source).export(snapshot);
+        SnapshotSummary imported = importer(target).importFrom(snapshot);
+
+        assertEquals(3, exported.hospitals());
+        assertEquals(40, exported.patients());
+        assertEquals(40, exported.registrations());
+        assertEquals(exported.checksum(), imported.checksum());
+        assertEquals(exported.registrations(), imported.registrations());
+        // Null columns, such as the third hospital's address, come back as null rather than empty
+        for (String query : List.of(
+                "select * from hospitals order by id",
+                "select * from patients order by id",
+                "select * from hospital_patient order by hospital_id, patient_id")) {
+            assertEquals(rows(source, query), rows(target, query));
+        }
+        assertNull(target.queryForObject("select address from hospitals where id = 3", String.class));
+        // New ids continue after the imported ones
+        assertTrue(target.queryForObject("select next value for patients_seq", Long.class) > 40);
+    }
+
+    @Test
+    void damagedSnapshotLoadsNothingTest() throws Exception {
+        Path snapshot = directory.resolve("store.snapshot");
+        exporter(populatedDatabase()).export(snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(snapshot, bytes);
+        JdbcTemplate target = database();
+
+        assertThrows(StreamCorruptedException.class, () -> importer(target).importFrom(snapshot));
+        assertEquals(0, target.queryForObject("select count(*) from patients", Integer.class));
+    }
+
+    @Test
+    void importIntoStoreWithRowsIsRefusedTest() throws Exception {
+        Path snapshot = directory.resolve("store.snapshot");
+        exporter(populatedDatabase()).export(snapshot);
+        JdbcTemplate target = populatedDatabase();
+
+        assertThrows(IllegalStateException.class, () -> importer(target).importFrom(snapshot));
+    }
+}